@@ -13,8 +13,11 @@ import java.util.Set;
 
 import javax.jcr.Session;
 
+import org.apache.sling.jcr.api.SlingRepository;
+
 import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
 
 /** Installs AceBeans to content paths. */
@@ -28,8 +31,19 @@ public interface AceBeanInstaller {
      * @param session the jcr session
      * @param installationLog the installation log
      * @param authorizablesToRemoveAcesFor
-     * @param intermediateSaves whether the session should be saved after each path (for each ACL) */
+     * @param sessionSaver saves the session in batches of paths (for ACLs) if enabled */
+    void installPathBasedACEs(final Map<String, Set<AceBean>> pathBasedAceMapFromConfig, final AcConfiguration acConfiguration, final Session session,
+            final InstallationLogger installationLog, Set<String> authorizablesToRemoveAcesFor, BatchedSessionSaver sessionSaver) throws Exception;
+
+    /** Like {@link #installPathBasedACEs(Map, AcConfiguration, Session, InstallationLogger, Set, BatchedSessionSaver)}, but the ACLs of
+     * disjoint subtrees (e.g. /content, /conf, /home) are installed in parallel with one session per worker if maxConcurrentShards is
+     * greater than one. Each subtree is saved on its own. Falls back to serial installation if repository-level ACLs or initial content
+     * are configured or if the session saver uses an undo journal or checkpoint.
+     *
+     * @param repository the repository to log in the worker sessions
+     * @param maxConcurrentShards maximum number of subtrees to install in parallel (1 for serial installation) */
     void installPathBasedACEs(final Map<String, Set<AceBean>> pathBasedAceMapFromConfig, final AcConfiguration acConfiguration, final Session session,
-            final InstallationLogger installationLog, Set<String> authorizablesToRemoveAcesFor, boolean intermediateSaves) throws Exception;
+            final InstallationLogger installationLog, Set<String> authorizablesToRemoveAcesFor, BatchedSessionSaver sessionSaver,
+            SlingRepository repository, int maxConcurrentShards) throws Exception;
 
 }
\ No newline at end of file
@@ -9,61 +9,100 @@
 package biz.netcentric.cq.tools.actool.aceinstaller;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
+import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.security.AccessControlEntry;
-import javax.jcr.security.AccessControlException;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import biz.netcentric.cq.tools.actool.aceinstaller.AceBeanInstallerClassic.Configuration;
 import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport;
 import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport.AemCqActions;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.helper.RestrictionsHolder;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
 
 /** The way ACEs were installed in version one is still available and can be configured in "global_config" section by setting
  * "installAclsIncrementally=false". */
 @Component()
+@Designate(ocd=Configuration.class)
 public class AceBeanInstallerClassic extends BaseAceBeanInstaller implements AceBeanInstaller {
 
     private static final Logger LOG = LoggerFactory.getLogger(AceBeanInstallerClassic.class);
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy=ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
     volatile AemCqActionsSupport aemCqActionsSupport;
-    
-    /** Installs a full set of ACE beans that form an ACL for the path
+
+    volatile boolean resolveActionsInMemory = false;
+
+    @ObjectClassDefinition(name = "AC Tool ACE Installer (classic)",
+            description="Installs ACEs by removing all ACEs of the configured principals and adding the configured ACEs again.",
+            id="biz.netcentric.cq.tools.actool.aceinstaller.AceBeanInstallerClassic")
+    protected static @interface Configuration {
+        @AttributeDefinition(name="Resolve actions in memory", description="If enabled, actions are resolved to privileges in memory. If disabled, CqActions is used to install the actions (only needed if the installed AEM version maps actions differently).")
+        boolean resolveActionsInMemory() default false;
+    }
+
+    @Activate
+    public void activate(Configuration configuration) {
+        resolveActionsInMemory = configuration.resolveActionsInMemory();
+    }
+
+    /** Installs a full set of ACE beans that form an ACL for the path. The ACL is retrieved once, all changes are applied in memory and
+     * the ACL is written back with one setPolicy call. Additional writes are only needed for actions that are installed by CqActions
+     * (which writes the ACL itself) and for actions that depend on the allowed actions of a principal whose entries have been changed
+     * in memory (they are evaluated on the session).
      * 
      * @throws RepositoryException */
     protected void installAcl(Set<AceBean> aceBeanSetFromConfig, String path, Set<String> principalsToRemoveAcesFor, Session session,
-            InstallationLogger installLog) throws RepositoryException {
+            InstallationLogger installLog, PrivilegeIndex privilegeIndex) throws RepositoryException {
+
+        final String pathForPolicyApi = StringUtils.isNotBlank(path) ? path : /* repo level permission */null;
+        final AccessControlManager acMgr = session.getAccessControlManager();
+        final AclWriter aclWriter = new AclWriter(acMgr, pathForPolicyApi);
+        if (aclWriter.acl == null) {
+            installLog.addMessage(LOG, "Skipped installing privileges/actions for non existing path: " + path);
+            return;
+        }
 
         // Remove all config contained authorizables from ACL of this path
-        int countRemoved = AccessControlUtils.deleteAllEntriesForPrincipalsFromACL(session,
-                path, principalsToRemoveAcesFor.toArray(new String[principalsToRemoveAcesFor.size()]));
+        for (AccessControlEntry ace : aclWriter.acl.getAccessControlEntries()) {
+            String principalName = ace.getPrincipal().getName();
+            if (principalsToRemoveAcesFor.contains(principalName)) {
+                aclWriter.modified(principalName);
+            }
+        }
+        int countRemoved = AccessControlUtils.removeAllEntriesForPrincipals(aclWriter.acl,
+                principalsToRemoveAcesFor.toArray(new String[principalsToRemoveAcesFor.size()]));
 
         installLog.addVerboseMessage(LOG, "Deleted " + countRemoved + " ACEs for configured principals from path " + path);
 
@@ -73,145 +112,158 @@ public class AceBeanInstallerClassic extends BaseAceBeanInstaller implements Ace
             LOG.debug("Writing bean to repository {}", bean);
 
             Principal currentPrincipal = new PrincipalImpl(bean.getPrincipalName());
-            installAce(bean, session, currentPrincipal, installLog);
+            installAce(bean, session, currentPrincipal, aclWriter, installLog, privilegeIndex);
 
         }
 
+        aclWriter.write();
+        installLog.addCountPolicyWrites(aclWriter.countWrites);
         installLog.incCountAclsChanged();
 
     }
     
-    /** Installs the AccessControlEntry being represented by this bean in the repository
-    *
-    * @throws NoSuchMethodException */
-   private void installAce(AceBean aceBean, final Session session, Principal principal,
-            InstallationLogger installLog) throws RepositoryException {
+    /** Adds the AccessControlEntry being represented by this bean to the ACL (in memory) */
+   private void installAce(AceBean aceBean, final Session session, Principal principal, AclWriter aclWriter,
+            InstallationLogger installLog, PrivilegeIndex privilegeIndex) throws RepositoryException {
 
         if (aceBean.isInitialContentOnlyConfig()) {
             return;
         }
 
-        final AccessControlManager acMgr = session.getAccessControlManager();
-
-        JackrabbitAccessControlList acl = AccessControlUtils.getModifiableAcl(acMgr, aceBean.getJcrPathForPolicyApi());
-        if (acl == null) {
-            installLog.addMessage(LOG, "Skipped installing privileges/actions for non existing path: " + aceBean.getJcrPath());
-            return;
-        }
-
         // first install actions
-        final JackrabbitAccessControlList newAcl = installActions(aceBean, principal, acl, session, acMgr, installLog);
-        if (acl != newAcl) {
+        if (installActions(aceBean, principal, aclWriter, session, privilegeIndex)) {
             installLog.addVerboseMessage(LOG, "Added action(s) for path: " + aceBean.getJcrPath()
                     + ", principal: " + principal.getName() + ", actions: "
                     + aceBean.getActionsString() + ", allow: " + aceBean.isAllow());
-            removeRedundantPrivileges(aceBean, session);
-            acl = newAcl;
+            removeRedundantPrivileges(aceBean, session, privilegeIndex);
         }
 
         // then install (remaining) privileges
-        if (installPrivileges(aceBean, principal, acl, session, acMgr)) {
+        if (installPrivileges(aceBean, principal, aclWriter.acl, session, aclWriter.acMgr, privilegeIndex)) {
+            aclWriter.modified(principal.getName());
             installLog.addVerboseMessage(LOG, "Added privilege(s) for path: " + aceBean.getJcrPath()
                     + ", principal: " + principal.getName() + ", privileges: "
                     + aceBean.getPrivilegesString() + ", allow: " + aceBean.isAllow());
         }
 
-        if (!acl.isEmpty()) {
-            acMgr.setPolicy(aceBean.getJcrPathForPolicyApi(), acl);
-        } else {
-            acMgr.removePolicy(aceBean.getJcrPathForPolicyApi(), acl);
-        }
-
    }
     
 
-    /** Installs the CQ actions in the repository.
+    /** Installs the CQ actions in the given ACL. Unless disabled via configuration, the actions are resolved to privileges in memory (see
+     * {@link ActionsToPrivilegesResolver}) instead of letting CqActions write to the repository.
      * 
-     * @return either the same acl as given in the parameter {@code acl} if no actions have been installed otherwise the new
-     *         AccessControlList (comprising the entres being installed for the actions).
+     * @return true if entries for the actions have been added to the ACL
      * @throws RepositoryException */
-    private JackrabbitAccessControlList installActions(AceBean aceBean, Principal principal, JackrabbitAccessControlList acl,
-            Session session, AccessControlManager acMgr, InstallationLogger installLog) throws RepositoryException {
-        final Map<String, Boolean> actionMap = aceBean.getActionMap();
-        if (actionMap.isEmpty()) {
-            return acl;
+    private boolean installActions(AceBean aceBean, Principal principal, AclWriter aclWriter, Session session,
+            PrivilegeIndex privilegeIndex) throws RepositoryException {
+        if (aceBean.getActionMap().isEmpty()) {
+            return false;
         }
         
         if(aemCqActionsSupport==null) {
             throw new IllegalArgumentException("actions can only be used when using AC Tool in AEM (package com.day.cq.security.util with class CqActions is not available)");
         }
-        
-        final AemCqActions cqActions = aemCqActionsSupport.getCqActions(session);
-        final Collection<String> inheritedAllows = cqActions.getAllowedActions(
-                aceBean.getJcrPathForPolicyApi(), Collections.singleton(principal));
-        // this does always install new entries
-        cqActions.installActions(aceBean.getJcrPathForPolicyApi(), principal, actionMap, inheritedAllows);
 
-        // since the aclist has been modified, retrieve it again
-        final JackrabbitAccessControlList newAcl = AccessControlUtils.getAccessControlList(session, aceBean.getJcrPath());
-        final RestrictionsHolder restrictions = getRestrictions(aceBean, session, acl);
+        if (!resolveActionsInMemory) {
+            installActionsWithCqActions(aceBean, principal, aclWriter, session);
+            return true;
+        }
 
-        if (!aceBean.getRestrictions().isEmpty()) {
-            // additionally set restrictions on the installed actions (this is not supported by CQ Security API)
-            addAdditionalRestriction(aceBean, acl, newAcl, restrictions);
+        final boolean definesContent = definesContent(aceBean.getJcrPathForPolicyApi(), session);
+        Collection<String> inheritedAllows = Collections.emptySet();
+        if (ActionsToPrivilegesResolver.dependsOnInheritedAllows(aceBean.getActions(), definesContent)) {
+            // the allowed actions are evaluated on the session, so pending changes of the principal's entries have to be written first
+            aclWriter.writeIfModified(principal.getName());
+            inheritedAllows = aemCqActionsSupport.getCqActions(session).getAllowedActions(
+                    aceBean.getJcrPathForPolicyApi(), Collections.singleton(principal));
         }
-        return newAcl;
+        final List<AceBean> aceBeansForActions = new ActionsToPrivilegesResolver(privilegeIndex, aclWriter.acMgr).resolve(
+                aceBean.getActions(), aceBean.isAllow(), definesContent, inheritedAllows);
+        for (final AceBean aceBeanForActions : aceBeansForActions) {
+            if (aceBeanForActions.getRestrictions().isEmpty()) {
+                // additionally set restrictions on the installed actions (this is not supported by CQ Security API)
+                aceBeanForActions.getRestrictions().addAll(aceBean.getRestrictions());
+            }
+            if (installPrivileges(aceBeanForActions, principal, aclWriter.acl, session, aclWriter.acMgr, privilegeIndex)) {
+                aclWriter.modified(principal.getName());
+            }
+        }
+        return !aceBeansForActions.isEmpty();
     }
 
-    private void addAdditionalRestriction(AceBean aceBean, JackrabbitAccessControlList oldAcl, JackrabbitAccessControlList newAcl,
-            RestrictionsHolder restrictions)
+    /** Installs the CQ actions using CqActions, which writes the ACL itself. Hence the pending changes of the ACL are written first and
+     * the ACL is retrieved again afterwards. */
+    private void installActionsWithCqActions(AceBean aceBean, Principal principal, AclWriter aclWriter, Session session)
             throws RepositoryException {
-        final List<AccessControlEntry> changedAces = getModifiedAces(oldAcl, newAcl);
-        if (!changedAces.isEmpty()) {
-            for (final AccessControlEntry newAce : changedAces) {
-                addRestrictionIfNotSet(newAcl, restrictions, newAce);
-            }
-        } else {
-            // check cornercase: yaml file contains 2 ACEs with same action same principal same path but one with additional restriction
-            // (e.g. read and repGlob: '')
-            // in that case old and new acl contain the same elements (equals == true) and in both lists the last ace contains the action
-            // without restriction
-            // for that group
-            final AccessControlEntry lastOldAce = oldAcl.getAccessControlEntries()[oldAcl.getAccessControlEntries().length - 1];
-            final AccessControlEntry lastNewAce = newAcl.getAccessControlEntries()[newAcl.getAccessControlEntries().length - 1];
+        aclWriter.write();
+        final List<AccessControlEntry> acesBefore = Arrays.asList(aclWriter.acl.getAccessControlEntries());
 
-            if (lastOldAce.equals(lastNewAce) && lastNewAce.getPrincipal().getName().equals(aceBean.getPrincipalName())) {
-                addRestrictionIfNotSet(newAcl, restrictions, lastNewAce);
+        final AemCqActions cqActions = aemCqActionsSupport.getCqActions(session);
+        final Collection<String> inheritedAllows = cqActions.getAllowedActions(
+                aceBean.getJcrPathForPolicyApi(), Collections.singleton(principal));
+        // this does always install new entries
+        cqActions.installActions(aceBean.getJcrPathForPolicyApi(), principal, aceBean.getActionMap(), inheritedAllows);
+        aclWriter.reload();
 
-            } else {
-                throw new IllegalStateException("No new entries have been set for AccessControlList at " + aceBean.getJcrPath());
+        if (!aceBean.getRestrictions().isEmpty()) {
+            // additionally set restrictions on the installed actions (this is not supported by CQ Security API)
+            final RestrictionsHolder restrictions = getRestrictions(aceBean, session, aclWriter.acl);
+            for (final AccessControlEntry newAce : getAddedAces(acesBefore, aclWriter.acl)) {
+                if (((JackrabbitAccessControlEntry) newAce).getRestrictionNames().length == 0) {
+                    replaceWithRestrictedAce(aclWriter.acl, (JackrabbitAccessControlEntry) newAce, restrictions);
+                    aclWriter.modified(principal.getName());
+                }
             }
         }
     }
 
-    private void addRestrictionIfNotSet(JackrabbitAccessControlList newAcl, RestrictionsHolder restrictions,
-            AccessControlEntry newAce)
-                    throws RepositoryException, AccessControlException, UnsupportedRepositoryOperationException, SecurityException {
-        if (!(newAce instanceof JackrabbitAccessControlEntry)) {
-            throw new IllegalStateException(
-                    "Can not deal with non JackrabbitAccessControlEntrys, but entry is of type " + newAce.getClass().getName());
+    /** @return the entries of the ACL that are not contained in the given entries (or that are the last entry of the principal if CqActions
+     *         did not add new entries, e.g. if the same actions are configured once with and once without restrictions) */
+    private List<AccessControlEntry> getAddedAces(List<AccessControlEntry> acesBefore, JackrabbitAccessControlList acl)
+            throws RepositoryException {
+        final List<AccessControlEntry> aces = Arrays.asList(acl.getAccessControlEntries());
+        final List<AccessControlEntry> addedAces = new ArrayList<AccessControlEntry>(aces);
+        addedAces.removeAll(acesBefore);
+        if (addedAces.isEmpty() && !aces.isEmpty()) {
+            addedAces.add(aces.get(aces.size() - 1));
         }
-        final JackrabbitAccessControlEntry ace = (JackrabbitAccessControlEntry) newAce;
-        // only extend those AccessControlEntries which do not yet have a restriction
-
-        if (ace.getRestrictionNames().length == 0) {
-            // modify this AccessControlEntry by adding the restriction
-            extendExistingAceWithRestrictions(newAcl, ace, restrictions);
+        for (final AccessControlEntry addedAce : addedAces) {
+            if (!(addedAce instanceof JackrabbitAccessControlEntry)) {
+                throw new IllegalStateException(
+                        "Can not deal with non JackrabbitAccessControlEntrys, but entry is of type " + addedAce.getClass().getName());
+            }
         }
+        return addedAces;
     }
 
-    @SuppressWarnings("unchecked")
-    private List<AccessControlEntry> getModifiedAces(final JackrabbitAccessControlList oldAcl, JackrabbitAccessControlList newAcl)
+    /** Replaces the given entry with an entry with the given restrictions at the same position. */
+    private void replaceWithRestrictedAce(JackrabbitAccessControlList acl, JackrabbitAccessControlEntry ace, RestrictionsHolder restrictions)
             throws RepositoryException {
-        final List<AccessControlEntry> oldAces = Arrays.asList(oldAcl.getAccessControlEntries());
-        final List<AccessControlEntry> newAces = Arrays.asList(newAcl.getAccessControlEntries());
-        return (List<AccessControlEntry>) CollectionUtils.subtract(newAces, oldAces);
-
+        final Privilege[] privileges = ace.getPrivileges();
+        if (!acl.addEntry(ace.getPrincipal(), privileges, ace.isAllow(), restrictions.getSingleValuedRestrictionsMap(),
+                restrictions.getMultiValuedRestrictionsMap())) {
+            throw new IllegalStateException("Could not add entry, probably because it was already there!");
+        }
+        // the entry being added is the last one
+        final AccessControlEntry restrictedAce = acl.getAccessControlEntries()[acl.size() - 1];
+        acl.orderBefore(restrictedAce, ace);
+        acl.removeAccessControlEntry(ace);
     }
 
+    private boolean definesContent(String path, Session session) throws RepositoryException {
+        if (path == null || path.equals("/")) {
+            return false;
+        }
+        try {
+            return aemCqActionsSupport.definesContent(session.getNode(path));
+        } catch (PathNotFoundException e) {
+            return false;
+        }
+    }
 
-    private void removeRedundantPrivileges(AceBean aceBean, Session session) throws RepositoryException {
-        final Set<String> cleanedPrivileges = removeRedundantPrivileges(session, aceBean.getPrivileges(), aceBean.getActions());
+    private void removeRedundantPrivileges(AceBean aceBean, Session session, PrivilegeIndex privilegeIndex) throws RepositoryException {
+        final Set<String> cleanedPrivileges = removeRedundantPrivileges(session, aceBean.getPrivileges(), aceBean.getActions(),
+                privilegeIndex);
         aceBean.setPrivilegesString(StringUtils.join(cleanedPrivileges, ","));
     }
 
@@ -219,9 +271,8 @@ public class AceBeanInstallerClassic extends BaseAceBeanInstaller implements Ace
      * action can lead to privileges on multiple nodes.
      *
      * @throws RepositoryException */
-    private Set<String> removeRedundantPrivileges(Session session, String[] privileges, String[] actions)
+    private Set<String> removeRedundantPrivileges(Session session, String[] privileges, String[] actions, PrivilegeIndex privilegeIndex)
             throws RepositoryException {
-        final AemCqActions cqActions = aemCqActionsSupport.getCqActions(session);
         final Set<String> cleanedPrivileges = new HashSet<String>();
         if (privileges == null) {
             return cleanedPrivileges;
@@ -230,31 +281,75 @@ public class AceBeanInstallerClassic extends BaseAceBeanInstaller implements Ace
         if (actions == null) {
             return cleanedPrivileges;
         }
-        for (final String action : actions) {
-            final Set<Privilege> coveredPrivileges = cqActions.getPrivileges(action);
-            for (final Privilege coveredPrivilege : coveredPrivileges) {
-                cleanedPrivileges.remove(coveredPrivilege.getName());
+        final AccessControlManager acMgr = session.getAccessControlManager();
+        final BitSet coveredPrivilegeBits;
+        if (resolveActionsInMemory) {
+            coveredPrivilegeBits = new ActionsToPrivilegesResolver(privilegeIndex, acMgr).getPrivilegeBits(actions);
+        } else {
+            final AemCqActions cqActions = aemCqActionsSupport.getCqActions(session);
+            coveredPrivilegeBits = new BitSet();
+            for (final String action : actions) {
+                for (final Privilege coveredPrivilege : cqActions.getPrivileges(action)) {
+                    coveredPrivilegeBits.or(privilegeIndex.getBits(new String[] { coveredPrivilege.getName() }, acMgr));
+                }
+            }
+        }
+        final Iterator<String> cleanedPrivilegesIt = cleanedPrivileges.iterator();
+        while (cleanedPrivilegesIt.hasNext()) {
+            // also removes privileges that are covered by an aggregate privilege of the actions
+            final BitSet privilegeBits = privilegeIndex.getBits(new String[] { cleanedPrivilegesIt.next() }, acMgr);
+            if (PrivilegeIndex.isCoveredBy(privilegeBits, coveredPrivilegeBits)) {
+                cleanedPrivilegesIt.remove();
             }
         }
         return cleanedPrivileges;
     }
 
+    /** The ACL of one path that is modified in memory and written back with as few policy writes as possible. */
+    private static final class AclWriter {
+        private final AccessControlManager acMgr;
+        private final String pathForPolicyApi;
+        private JackrabbitAccessControlList acl;
+        // the principals whose entries have been changed since the last write
+        private final Set<String> modifiedPrincipalNames = new HashSet<String>();
+        private int countWrites = 0;
+
+        private AclWriter(AccessControlManager acMgr, String pathForPolicyApi) throws RepositoryException {
+            this.acMgr = acMgr;
+            this.pathForPolicyApi = pathForPolicyApi;
+            this.acl = AccessControlUtils.getModifiableAcl(acMgr, pathForPolicyApi);
+        }
 
-    private void extendExistingAceWithRestrictions(JackrabbitAccessControlList accessControlList,
-            JackrabbitAccessControlEntry accessControlEntry, RestrictionsHolder restrictions)
-                    throws SecurityException, UnsupportedRepositoryOperationException, RepositoryException {
+        private void modified(String principalName) {
+            modifiedPrincipalNames.add(principalName);
+        }
 
-        // 1. add new entry
-        if (!accessControlList.addEntry(accessControlEntry.getPrincipal(), accessControlEntry.getPrivileges(), accessControlEntry.isAllow(),
-                restrictions.getSingleValuedRestrictionsMap(), restrictions.getMultiValuedRestrictionsMap())) {
-            throw new IllegalStateException("Could not add entry, probably because it was already there!");
+        /** Writes the ACL if the entries of the given principal have been modified since the last write. */
+        private void writeIfModified(String principalName) throws RepositoryException {
+            if (modifiedPrincipalNames.contains(principalName)) {
+                write();
+            }
+        }
+
+        /** Writes the ACL if it has been modified since the last write. */
+        private void write() throws RepositoryException {
+            if (modifiedPrincipalNames.isEmpty()) {
+                return;
+            }
+            if (!acl.isEmpty()) {
+                acMgr.setPolicy(pathForPolicyApi, acl);
+            } else {
+                acMgr.removePolicy(pathForPolicyApi, acl);
+            }
+            modifiedPrincipalNames.clear();
+            countWrites++;
+        }
+
+        /** Retrieves the ACL again after it has been written by other means (pending changes are discarded). */
+        private void reload() throws RepositoryException {
+            acl = AccessControlUtils.getModifiableAcl(acMgr, pathForPolicyApi);
+            modifiedPrincipalNames.clear();
         }
-        // we assume the entry being added is the last one
-        final AccessControlEntry newAccessControlEntry = accessControlList.getAccessControlEntries()[accessControlList.size() - 1];
-        // 2. put it to the right position now!
-        accessControlList.orderBefore(newAccessControlEntry, accessControlEntry);
-        // 3. remove old entry
-        accessControlList.removeAccessControlEntry(accessControlEntry);
     }
 
 }
@@ -9,20 +9,17 @@
 package biz.netcentric.cq.tools.actool.aceinstaller;
 
 import java.security.Principal;
-import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
@@ -30,30 +27,40 @@ import javax.jcr.Session;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.security.AccessControlEntry;
 import javax.jcr.security.AccessControlManager;
-import javax.jcr.security.Privilege;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
 import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import biz.netcentric.cq.tools.actool.aceinstaller.AceBeanInstallerIncremental.Configuration;
 import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport;
 import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport.AemCqActions;
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.configmodel.Restriction;
 import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
 import biz.netcentric.cq.tools.actool.helper.Constants;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
 
 @Component
+@Designate(ocd=Configuration.class)
 public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements AceBeanInstaller {
 
     @Reference(policyOption=ReferencePolicyOption.GREEDY)
@@ -61,16 +68,139 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
     private static final Logger LOG = LoggerFactory.getLogger(AceBeanInstallerIncremental.class);
 
-    private Map<String, Set<AceBean>> actionsToPrivilegesMapping = new ConcurrentHashMap<String, Set<AceBean>>();
+    private static final int DEFAULT_ACTIONS_CACHE_MAX_ENTRIES = 1000;
+
+    private volatile ActionsToPrivilegesCache actionsToPrivilegesMapping = new ActionsToPrivilegesCache(DEFAULT_ACTIONS_CACHE_MAX_ENTRIES);
 
     @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy=ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
     volatile AemCqActionsSupport aemCqActionsSupport;
-    
+
+    private final AceFingerprint.Factory aceFingerprints = new AceFingerprint.Factory();
+
+    volatile boolean resolveActionsInMemory = false;
+
+    private final AclStateHashes aclStateHashes = new AclStateHashes();
+
+    volatile boolean forceFullAclCompare = false;
+
+    // part of the config hash of each ACL as the result of actions depends on it (set per installation run)
+    private volatile String actionsToPrivilegesValidityKey = "";
+
+    @ObjectClassDefinition(name = "AC Tool ACE Installer (incremental)",
+            description="Installs ACEs by only applying the differences to the ACLs in the repository.",
+            id="biz.netcentric.cq.tools.actool.aceinstaller.AceBeanInstallerIncremental")
+    protected static @interface Configuration {
+        @AttributeDefinition(name="Max cached action mappings", description="Maximum number of action to privilege mappings (as produced by CqActions) kept in memory and persisted below "
+                + HistoryUtils.ACHISTORY_PATH + ", the least recently used mappings are evicted first.")
+        int actionsToPrivilegesCacheMaxEntries() default DEFAULT_ACTIONS_CACHE_MAX_ENTRIES;
+
+        @AttributeDefinition(name="Resolve actions in memory", description="If enabled, actions are resolved to privileges without any repository writes. If disabled, CqActions is used on a throwaway session (only needed if the installed AEM version maps actions differently).")
+        boolean resolveActionsInMemory() default false;
+
+        @AttributeDefinition(name="Force full ACL compare", description="By default, ACLs whose configuration is unchanged and whose rep:policy node has not been changed since the last installation are skipped (tracked via hashes below "
+                + HistoryUtils.ACHISTORY_PATH + "). If enabled, all ACLs are compared ACE by ACE.")
+        boolean forceFullAclCompare() default false;
+    }
+
+    @Activate
+    public void activate(Configuration configuration) {
+        ActionsToPrivilegesCache cache = new ActionsToPrivilegesCache(configuration.actionsToPrivilegesCacheMaxEntries());
+        Session session = null;
+        try {
+            session = slingRepository.loginService(null, null);
+            cache.load(session, getActionsToPrivilegesCacheValidityKey(PrivilegeIndex.create(session)));
+            LOG.debug("Warmed up action to privilege mappings with {} persisted entries", cache.size());
+        } catch (Exception e) {
+            LOG.warn("Could not load persisted action to privilege mappings: " + e, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+        actionsToPrivilegesMapping = cache;
+        resolveActionsInMemory = configuration.resolveActionsInMemory();
+        forceFullAclCompare = configuration.forceFullAclCompare();
+    }
+
+    @Override
+    public void installPathBasedACEs(Map<String, Set<AceBean>> pathBasedAceMapFromConfig, AcConfiguration acConfiguration, Session session,
+            InstallationLogger history, Set<String> principalsToRemoveAcesFor, BatchedSessionSaver sessionSaver, SlingRepository repository,
+            int maxConcurrentShards) throws Exception {
+        PrivilegeIndex privilegeIndex = ensurePrivilegeIndex(acConfiguration, session);
+        actionsToPrivilegesValidityKey = getActionsToPrivilegesCacheValidityKey(privilegeIndex);
+        if (actionsToPrivilegesMapping.ensureValidityKey(actionsToPrivilegesValidityKey)) {
+            history.addVerboseMessage(LOG, "Discarded cached action to privilege mappings as CqActions version or registered privileges changed");
+        }
+        loadAclStateHashes(history);
+
+        // fingerprints are interned per run only to not keep the ACEs of all runs in memory
+        aceFingerprints.clear();
+        try {
+            super.installPathBasedACEs(pathBasedAceMapFromConfig, acConfiguration, session, history, principalsToRemoveAcesFor,
+                    sessionSaver, repository, maxConcurrentShards);
+        } finally {
+            LOG.debug("Compared ACLs using {} distinct ACE fingerprints", aceFingerprints.getCountInterned());
+            aceFingerprints.clear();
+            persistActionsToPrivilegesMappingAndAclStateHashes();
+        }
+    }
+
+    private String getActionsToPrivilegesCacheValidityKey(PrivilegeIndex privilegeIndex) {
+        AemCqActionsSupport aemCqActionsSupport = this.aemCqActionsSupport;
+        String cqActionsVersion = aemCqActionsSupport != null ? aemCqActionsSupport.getCqActionsVersion() : "none";
+        return DigestUtils.md5Hex(cqActionsVersion + "\n" + privilegeIndex.getRegisteredPrivilegesHash());
+    }
+
+    private void loadAclStateHashes(InstallationLogger history) {
+        if (forceFullAclCompare) {
+            history.addMessage(LOG, "Comparing all ACLs ACE by ACE (forceFullAclCompare is enabled)");
+        }
+        Session session = null;
+        try {
+            // loaded for each run as other instances may have installed ACLs in the meantime
+            session = slingRepository.loginService(null, null);
+            aclStateHashes.load(session);
+        } catch (Exception e) {
+            LOG.warn("Could not load ACL state hashes, all ACLs will be compared: " + e, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+    }
+
+    private void persistActionsToPrivilegesMappingAndAclStateHashes() {
+        Session session = null;
+        try {
+            // separate session as the installation session may not be saved (dry run) or have been rolled back (the ACL state hashes
+            // then do not match the repository and the ACLs are compared again)
+            session = slingRepository.loginService(null, null);
+            actionsToPrivilegesMapping.persist(session);
+            aclStateHashes.persist(session);
+        } catch (Exception e) {
+            LOG.warn("Could not persist action to privilege mappings/ACL state hashes: " + e, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+    }
+
     /** Installs a full set of ACE beans that form an ACL for the path
      * 
      * @throws RepositoryException */
     protected void installAcl(Set<AceBean> aceBeanSetFromConfig, String path, Set<String> principalsInConfiguration, Session session,
-            InstallationLogger installLog) throws RepositoryException {
+            InstallationLogger installLog, PrivilegeIndex privilegeIndex) throws RepositoryException {
+
+        String configHash = null;
+        if (StringUtils.isNotBlank(path)) {
+            configHash = getConfigHash(aceBeanSetFromConfig, path, principalsInConfiguration, session);
+            if (!forceFullAclCompare && aclStateHashes.isUnchanged(path, configHash, AclStateHashes.getAclStateHash(session, path))) {
+                installLog.incCountAclsNoChange();
+                installLog.incCountAclsSkippedByHash();
+                return;
+            }
+        }
 
         boolean hadPendingChanges = session.hasPendingChanges();
 
@@ -81,85 +211,92 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
         StringBuilder diffLog = new StringBuilder();
 
-        aceBeanSetFromConfig = transformActionsIntoPrivileges(aceBeanSetFromConfig, session, installLog);
-        aceBeanSetFromConfig = filterInitialContentOnlyNodes(aceBeanSetFromConfig);
-        aceBeanSetFromConfig = filterDuplicates(aceBeanSetFromConfig, session);
-
-        List<AceBean> configuredAceEntries = new ArrayList<AceBean>(aceBeanSetFromConfig);
-        int currentPositionConfig = 0;
-
-        boolean changeHasBeenFound = false;
-            
         AccessControlManager acMgr = session.getAccessControlManager();
 
-        JackrabbitAccessControlList acl = getAccessControlList(acMgr, path);
-        Iterator<AccessControlEntry> aceIt = Arrays.asList(acl.getAccessControlEntries()).iterator();
-        while (aceIt.hasNext()) {
-            AccessControlEntry ace = aceIt.next();
-            AceBean actualAceBean = AcHelper.getAceBean(ace, acl);
+        aceBeanSetFromConfig = transformActionsIntoPrivileges(aceBeanSetFromConfig, session, installLog, privilegeIndex);
+        aceBeanSetFromConfig = filterInitialContentOnlyNodes(aceBeanSetFromConfig);
+        Map<AceFingerprint, AceBean> configuredAcesByFingerprint = filterDuplicates(aceBeanSetFromConfig, privilegeIndex, acMgr);
 
-            String acePrincipalName = actualAceBean.getPrincipalName();
-            String actualAceBeanCompareStr = toAceCompareString(actualAceBean, acMgr);
+        List<AceBean> configuredAceEntries = new ArrayList<AceBean>(configuredAcesByFingerprint.values());
+        List<AceFingerprint> configuredAceFingerprints = new ArrayList<AceFingerprint>(configuredAcesByFingerprint.keySet());
 
-            if (!principalsInConfiguration.contains(acePrincipalName)) {
+        JackrabbitAccessControlList acl = getAccessControlList(acMgr, path);
+        List<AccessControlEntry> managedAces = new ArrayList<AccessControlEntry>();
+        List<AceFingerprint> managedAceFingerprints = new ArrayList<AceFingerprint>();
+        // managed ACEs before the last unmanaged ACE can only be kept as part of the common prefix
+        int firstManagedAceAfterUnmanagedAces = 0;
+        for (AccessControlEntry ace : acl.getAccessControlEntries()) {
+            AceFingerprint actualAceFingerprint = aceFingerprints.create(AcHelper.getAceBean(ace, acl), privilegeIndex, acMgr);
+
+            if (!principalsInConfiguration.contains(actualAceFingerprint.getPrincipalName())) {
+                firstManagedAceAfterUnmanagedAces = managedAces.size();
                 countOutsideConfig++;
-                diffLog.append("    OUTSIDE (not in Config) " + actualAceBeanCompareStr + "\n");
+                diffLog.append("    OUTSIDE (not in Config) " + actualAceFingerprint + "\n");
                 continue;
             }
+            managedAces.add(ace);
+            managedAceFingerprints.add(actualAceFingerprint);
+        }
+
+        // the ACEs in the longest common subsequence of repository and configuration are left untouched, only the others are removed
+        // resp. inserted at their position (after the unmanaged ACEs unless part of the common prefix)
+        AclDiff<AceFingerprint> aclDiff = new AclDiff<AceFingerprint>(managedAceFingerprints, configuredAceFingerprints,
+                firstManagedAceAfterUnmanagedAces);
 
-            AceBean configuredAceAtThisLocation;
-            if (currentPositionConfig < configuredAceEntries.size()) {
-                configuredAceAtThisLocation = configuredAceEntries.get(currentPositionConfig);
+        for (int i = 0; i < managedAces.size(); i++) {
+            if (aclDiff.isActualKept(i)) {
+                countNoChange++;
+                diffLog.append("    UNCHANGED               " + managedAceFingerprints.get(i) + "\n");
             } else {
-                // LOG.info("There are now fewer ACEs configured at path " + path + " than there was before");
-                changeHasBeenFound = true;
-                configuredAceAtThisLocation = null; // setting explicitly to null
+                acl.removeAccessControlEntry(managedAces.get(i));
+                countDeleted++;
+                diffLog.append("    DELETED (from Repo)     " + managedAceFingerprints.get(i) + "\n");
             }
+        }
 
-            String configuredAceAtThisLocationCompareStr = toAceCompareString(configuredAceAtThisLocation, acMgr);
-            boolean dumpEqualToConfig = StringUtils.equals(actualAceBeanCompareStr, configuredAceAtThisLocationCompareStr);
-
-            if (!changeHasBeenFound && !dumpEqualToConfig) {
-                String configBeanStr = configuredAceAtThisLocationCompareStr;
-                diffLog.append("<<< CHANGE (Repo Version)   " + actualAceBeanCompareStr
-                        + "\n>>> CHANGE (Config Version) " + configBeanStr + "\n");
+        boolean minimalEditApplied = true;
+        for (int j = 0; j < configuredAceEntries.size(); j++) {
+            if (aclDiff.getMatchedActualIndex(j) >= 0) {
+                continue;
             }
-
-            if (changeHasBeenFound || !dumpEqualToConfig) {
-                changeHasBeenFound = true; // first difference means we delete the rest of the acl and recreate it in the following loop
-                acl.removeAccessControlEntry(ace);
-                countDeleted++;
-
-                diffLog.append("    DELETED (from Repo)     " + actualAceBeanCompareStr + "\n");
-
-                continue; // we do not touch currentPositionConfig anymore, we'll have to recreate from there
+            int insertBeforeIndex = aclDiff.getInsertBeforeActualIndex(j);
+            AccessControlEntry insertBeforeAce = insertBeforeIndex >= 0 ? managedAces.get(insertBeforeIndex) : null;
+            if (!insertAce(configuredAceEntries.get(j), insertBeforeAce, acl, session, acMgr, privilegeIndex)) {
+                minimalEditApplied = false;
+                break;
             }
-
-            currentPositionConfig++; // found equal ACE, compare next pair
-            countNoChange++;
-            diffLog.append("    UNCHANGED               " + actualAceBeanCompareStr + "\n");
-
+            countAdded++;
+            diffLog.append((insertBeforeAce != null ? "    INSERTED (from Config)  " : "    APPENDED (from Config)  ")
+                    + configuredAceFingerprints.get(j) + "\n");
         }
 
-        // install missing - this can be either because not all configured ACEs were found (append) or because a change was detected and old
-        // aces have been deleted
-
-        for (int i = currentPositionConfig; i < configuredAceEntries.size(); i++) {
-            AceBean aceBeanToAppend = configuredAceEntries.get(i);
-
-            installPrivileges(aceBeanToAppend, new PrincipalImpl(aceBeanToAppend.getPrincipalName()), acl, session, acMgr);
-            diffLog.append("    APPENDED (from Config)  " + toAceCompareString(aceBeanToAppend, acMgr) + "\n");
-
-            countAdded++;
+        if (!minimalEditApplied) {
+            installLog.addVerboseMessage(LOG, "Could not place ACE at its position in ACL at path " + path
+                    + ", rewriting all ACEs of configured principals");
+            acl = getAccessControlList(acMgr, path);
+            countDeleted = removeAcesOfPrincipals(acl, principalsInConfiguration);
+            countNoChange = 0;
+            countAdded = 0;
+            for (AceBean aceBean : configuredAceEntries) {
+                installPrivileges(aceBean, new PrincipalImpl(aceBean.getPrincipalName()), acl, session, acMgr, privilegeIndex);
+                countAdded++;
+            }
+            diffLog.append("    REWRITTEN (from Config) " + countDeleted + " ACEs removed, " + countAdded + " ACEs appended\n");
         }
 
         if (countAdded > 0 || countDeleted > 0) {
             acMgr.setPolicy(StringUtils.isNotBlank(path) ? path : /* repo level permission */null, acl);
 
             installLog.incCountAclsChanged();
+            installLog.addCountPolicyWrites(1);
+
+            int countAceWrites = countAdded + countDeleted;
+            int countAceWritesSaved = aclDiff.getCountWritesRewritingFromFirstDifference() - countAceWrites;
+            installLog.addCountAceWrites(countAceWrites, countAceWritesSaved);
 
             installLog.addVerboseMessage(LOG, "Update result at path " + path + ": O=" + countOutsideConfig + " N="
-                    + countNoChange + " D=" + countDeleted + " A=" + countAdded
+                    + countNoChange + " D=" + countDeleted + " A=" + countAdded + " (ACE writes saved by minimal edit: "
+                    + countAceWritesSaved + ")"
                     + (LOG.isDebugEnabled() ? "\nDIFF at " + path + "\n" + diffLog : ""));
 
         } else {
@@ -173,25 +310,82 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
             }
         }
 
+        if (configHash != null) {
+            aclStateHashes.put(path, configHash, AclStateHashes.getAclStateHash(session, path));
+        }
+
+    }
+
+    /** @return the hash over everything the installed ACL depends on: the configured ACEs (in order), the principals whose ACEs are managed
+     *         at the path and the action to privilege mapping */
+    private String getConfigHash(Set<AceBean> aceBeanSetFromConfig, String path, Set<String> principalsInConfiguration, Session session)
+            throws RepositoryException {
+        StringBuilder config = new StringBuilder();
+        config.append(actionsToPrivilegesValidityKey).append("\n");
+        config.append(new TreeSet<String>(principalsInConfiguration)).append("\n");
+        boolean hasActions = false;
+        for (AceBean aceBean : aceBeanSetFromConfig) {
+            config.append(aceBean.getPrincipalName()).append("|").append(aceBean.getPermission()).append("|")
+                    .append(aceBean.getPrivilegesString()).append("|").append(aceBean.getActionsString()).append("|");
+            for (Restriction restriction : aceBean.getRestrictions()) {
+                config.append(restriction.getName()).append("=").append(restriction.getValues()).append(";");
+            }
+            config.append("|").append(aceBean.isInitialContentOnlyConfig()).append("\n");
+            hasActions |= !aceBean.getActionMap().isEmpty();
+        }
+        if (hasActions) {
+            config.append("definesContent=").append(definesContent(path, session));
+        }
+        return AclStateHashes.hash(config.toString());
+    }
+
+    // Returns false if the ACE could not be placed before the given ACE: Oak merges a new ACE into an existing one with the same principal,
+    // allow flag and restrictions (instead of adding a new entry) and not all ACL implementations support orderBefore()
+    private boolean insertAce(AceBean aceBean, AccessControlEntry insertBeforeAce, JackrabbitAccessControlList acl, Session session,
+            AccessControlManager acMgr, PrivilegeIndex privilegeIndex) throws RepositoryException {
+        int countEntriesBefore = acl.getAccessControlEntries().length;
+        if (!installPrivileges(aceBean, new PrincipalImpl(aceBean.getPrincipalName()), acl, session, acMgr, privilegeIndex)
+                || insertBeforeAce == null) {
+            return true;
+        }
+        AccessControlEntry[] entries = acl.getAccessControlEntries();
+        if (entries.length != countEntriesBefore + 1) {
+            return false;
+        }
+        try {
+            // new entries are always added at the end
+            acl.orderBefore(entries[entries.length - 1], insertBeforeAce);
+            return true;
+        } catch (UnsupportedRepositoryOperationException e) {
+            LOG.debug("orderBefore() is not supported by ACL at {}: {}", acl.getPath(), e.toString());
+            return false;
+        }
+    }
+
+    private int removeAcesOfPrincipals(JackrabbitAccessControlList acl, Set<String> principalNames) throws RepositoryException {
+        int countRemoved = 0;
+        for (AccessControlEntry ace : acl.getAccessControlEntries()) {
+            if (principalNames.contains(ace.getPrincipal().getName())) {
+                acl.removeAccessControlEntry(ace);
+                countRemoved++;
+            }
+        }
+        return countRemoved;
     }
 
     // When using actions, it often happens that the second entry produced (with the rep:glob '*/jcr:content*') is a duplicate
     // Also without this, a potential effective duplicate in config would be detected as change of incremental run when it is
     // really not since jackrabbit ignores adding a duplicate entry to ACL
-    private Set<AceBean> filterDuplicates(Set<AceBean> aceBeanSetFromConfig, Session session)
-            throws UnsupportedRepositoryOperationException, RepositoryException {
-
-        LinkedHashSet<AceBean> filteredAceBeans = new LinkedHashSet<AceBean>(aceBeanSetFromConfig);
-        Iterator<AceBean> aceBeansIt = filteredAceBeans.iterator();
-        Set<String> aceCompareKeysToAvoidDuplicates = new HashSet<String>();
-        while (aceBeansIt.hasNext()) {
-            String aceCompareKey = toAceCompareString(aceBeansIt.next(), session.getAccessControlManager());
-            if (aceCompareKeysToAvoidDuplicates.contains(aceCompareKey)) {
-                aceBeansIt.remove();
-            } else {
-                aceCompareKeysToAvoidDuplicates.add(aceCompareKey);
-            }
+    // Returns the ACE beans in configured order keyed by their fingerprint (so the fingerprint is created exactly once per ACE bean)
+    private Map<AceFingerprint, AceBean> filterDuplicates(Set<AceBean> aceBeanSetFromConfig, PrivilegeIndex privilegeIndex,
+            AccessControlManager acMgr) throws RepositoryException {
 
+        Map<AceFingerprint, AceBean> filteredAceBeans = new LinkedHashMap<AceFingerprint, AceBean>();
+        for (AceBean aceBean : aceBeanSetFromConfig) {
+            AceFingerprint aceFingerprint = aceFingerprints.create(aceBean, privilegeIndex, acMgr);
+            if (!filteredAceBeans.containsKey(aceFingerprint)) {
+                filteredAceBeans.put(aceFingerprint, aceBean);
+            }
         }
         return filteredAceBeans;
     }
@@ -214,7 +408,7 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
     }
 
     private Set<AceBean> transformActionsIntoPrivileges(Set<AceBean> aceBeanSetFromConfig, Session session,
-            InstallationLogger installLog) throws RepositoryException {
+            InstallationLogger installLog, PrivilegeIndex privilegeIndex) throws RepositoryException {
 
 
         Set<AceBean> aceBeanSetWithPrivilegesOnly = new LinkedHashSet<AceBean>();
@@ -224,7 +418,8 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
                 continue;
             }
 
-            Set<AceBean> aceBeansForActionEntry = getPrincipalAceBeansForActionAceBeanCached(origAceBean, session, installLog);
+            Set<AceBean> aceBeansForActionEntry = getPrincipalAceBeansForActionAceBeanCached(origAceBean, session, installLog,
+                    privilegeIndex);
             for (AceBean aceBeanResolvedFromAction : aceBeansForActionEntry) {
                 aceBeanSetWithPrivilegesOnly.add(aceBeanResolvedFromAction);
             }
@@ -234,26 +429,36 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
     }
 
     private Set<AceBean> getPrincipalAceBeansForActionAceBeanCached(AceBean origAceBean, Session session,
-            InstallationLogger installLog) throws RepositoryException {
+            InstallationLogger installLog, PrivilegeIndex privilegeIndex) throws RepositoryException {
         
-        String cacheKey = (definesContent(origAceBean.getJcrPathForPolicyApi(), session) ? "definesContent" : "simple")
+        boolean definesContent = definesContent(origAceBean.getJcrPathForPolicyApi(), session);
+        String cacheKey = (definesContent ? "definesContent" : "simple")
                 + "-" + origAceBean.getPermission() + "-" + getRestrictionsComparable(origAceBean.getRestrictions()) + "-"
                 + Arrays.toString(origAceBean.getActions());
         
-        if (actionsToPrivilegesMapping.containsKey(cacheKey)) {
+        Set<AceBean> cachedAceBeansForActions = actionsToPrivilegesMapping.get(cacheKey);
+        if (cachedAceBeansForActions != null) {
             installLog.incCountActionCacheHit();
             LOG.trace("Cache hit for key " + cacheKey);
-            Set<AceBean> cachedAceBeansForActions = actionsToPrivilegesMapping.get(cacheKey);
             Set<AceBean> principalCorrectedAceBeansForActions = new LinkedHashSet<AceBean>();
             for (AceBean aceBean : cachedAceBeansForActions) {
                 AceBean clone = aceBean.clone();
                 clone.setPrincipalName(origAceBean.getPrincipalName());
+                clone.setJcrPath(origAceBean.getJcrPath());
                 principalCorrectedAceBeansForActions.add(clone);
             }
             return principalCorrectedAceBeansForActions;
         } else {
             installLog.incCountActionCacheMiss();
 
+            if (resolveActionsInMemory) {
+                Set<AceBean> aceBeansForActionEntry = resolvePrincipalAceBeansForActionAceBean(origAceBean, definesContent,
+                        session.getAccessControlManager(), privilegeIndex);
+                LOG.debug("Adding to cache: {}={}", cacheKey, aceBeansForActionEntry);
+                actionsToPrivilegesMapping.put(cacheKey, aceBeansForActionEntry);
+                return aceBeansForActionEntry;
+            }
+
             Set<AceBean> aceBeansForActionEntry = null;
             Session newSession = null;
             try {
@@ -272,7 +477,7 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
                     LOG.warn("Reusing main session for path {} since the node was only just created in that session via 'initialContent'",
                             origAceBean.getJcrPath());
                 }
-                aceBeansForActionEntry = getPrincipalAceBeansForActionAceBean(origAceBean, relevantSessionToUse);
+                aceBeansForActionEntry = getPrincipalAceBeansForActionAceBean(origAceBean, relevantSessionToUse, privilegeIndex);
             } finally {
                 newSession.logout();
             }
@@ -286,7 +491,8 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
     }
 
-    Set<AceBean> getPrincipalAceBeansForActionAceBean(AceBean origAceBean, Session session) throws RepositoryException {
+    Set<AceBean> getPrincipalAceBeansForActionAceBean(AceBean origAceBean, Session session, PrivilegeIndex privilegeIndex)
+            throws RepositoryException {
 
         Set<AceBean> aceBeansForActionEntry = new LinkedHashSet<AceBean>();
 
@@ -295,7 +501,6 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
         JackrabbitAccessControlList newAcl = getAccessControlList(session.getAccessControlManager(), origAceBean.getJcrPathForPolicyApi());
 
-        boolean isFirst = true;
         for (AccessControlEntry newAce : newAcl.getAccessControlEntries()) {
             if (!newAce.getPrincipal().equals(testActionMapperPrincipal)) {
                 continue;
@@ -303,42 +508,68 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
             AceBean privilegesAceBeanForAction = AcHelper.getAceBean(newAce, newAcl);
             privilegesAceBeanForAction.setPrincipalName(origAceBean.getPrincipalName());
-
-            // handle restrictions
-            if (isFirst) {
-                if (origAceBean.containsRestriction(AceBean.RESTRICTION_NAME_GLOB)
-                        && privilegesAceBeanForAction.containsRestriction(AceBean.RESTRICTION_NAME_GLOB)) {
-                    throw new IllegalArgumentException(
-                            "When using actions that produce rep:glob restrictions (e.g. for page paths), rep:glob cannot be configured (origAceBean="
-                                    + origAceBean.getRestrictions() + ", privilegesAceBeanForAction="
-                                    + privilegesAceBeanForAction.getRestrictions() + "), check configuration for "
-                                    + origAceBean);
-                } else {
-                    // other restrictions are just taken over
-                    privilegesAceBeanForAction.getRestrictions().addAll(origAceBean.getRestrictions());
-                }
-            }
-
             aceBeansForActionEntry.add(privilegesAceBeanForAction);
 
             // remove the fake entry again
             newAcl.removeAccessControlEntry(newAce);
-            isFirst = false;
         }
         AccessControlManager acMgr = session.getAccessControlManager();
         acMgr.setPolicy(origAceBean.getJcrPath(), newAcl);
 
-        // handle privileges
-        AceBean firstMappedBean = aceBeansForActionEntry.iterator().next(); // apply additional privileges only to first bean
+        addConfiguredRestrictionsAndPrivileges(origAceBean, aceBeansForActionEntry, acMgr, privilegeIndex);
+        return aceBeansForActionEntry;
+    }
+
+    /** Resolves the actions of the given bean without any repository writes (see {@link ActionsToPrivilegesResolver}), the result is the
+     * same as for {@link #getPrincipalAceBeansForActionAceBean(AceBean, Session, PrivilegeIndex)}. */
+    Set<AceBean> resolvePrincipalAceBeansForActionAceBean(AceBean origAceBean, boolean definesContent, AccessControlManager acMgr,
+            PrivilegeIndex privilegeIndex) throws RepositoryException {
+        if (aemCqActionsSupport == null) {
+            throw new IllegalArgumentException(
+                    "actions can only be used when using AC Tool in AEM (package com.day.cq.security.util with class CqActions is not available)");
+        }
+
+        // as for the test principal used with CqActions, no actions are inherited
+        List<AceBean> resolvedAceBeans = new ActionsToPrivilegesResolver(privilegeIndex, acMgr).resolve(origAceBean.getActions(),
+                origAceBean.isAllow(), definesContent, Collections.<String> emptySet());
+        Set<AceBean> aceBeansForActionEntry = new LinkedHashSet<AceBean>();
+        for (AceBean resolvedAceBean : resolvedAceBeans) {
+            resolvedAceBean.setPrincipalName(origAceBean.getPrincipalName());
+            resolvedAceBean.setJcrPath(origAceBean.getJcrPath());
+            aceBeansForActionEntry.add(resolvedAceBean);
+        }
+
+        addConfiguredRestrictionsAndPrivileges(origAceBean, aceBeansForActionEntry, acMgr, privilegeIndex);
+        return aceBeansForActionEntry;
+    }
+
+    private void addConfiguredRestrictionsAndPrivileges(AceBean origAceBean, Set<AceBean> aceBeansForActionEntry, AccessControlManager acMgr,
+            PrivilegeIndex privilegeIndex) throws RepositoryException {
+
+        // handle restrictions
+        AceBean firstMappedBean = aceBeansForActionEntry.iterator().next(); // apply restrictions and additional privileges only to first bean
+        if (origAceBean.containsRestriction(AceBean.RESTRICTION_NAME_GLOB)
+                && firstMappedBean.containsRestriction(AceBean.RESTRICTION_NAME_GLOB)) {
+            throw new IllegalArgumentException(
+                    "When using actions that produce rep:glob restrictions (e.g. for page paths), rep:glob cannot be configured (origAceBean="
+                            + origAceBean.getRestrictions() + ", privilegesAceBeanForAction="
+                            + firstMappedBean.getRestrictions() + "), check configuration for "
+                            + origAceBean);
+        } else {
+            // other restrictions are just taken over
+            firstMappedBean.getRestrictions().addAll(origAceBean.getRestrictions());
+        }
+
         Set<String> newPrivilegesFirstMappedBean = new LinkedHashSet<String>();
         // first add regular privileges
         if (firstMappedBean.getPrivileges() != null) {
             newPrivilegesFirstMappedBean.addAll(Arrays.asList(firstMappedBean.getPrivileges()));
         }
-        Set<String> flatSetPrincipalsOfFirstMappedBean = flatSetResolvedAggregates(firstMappedBean.getPrivileges(), acMgr, true);
+        BitSet privilegeBitsOfFirstMappedBean = privilegeIndex.getBits(firstMappedBean.getPrivileges(), acMgr);
         if (origAceBean.getPrivileges() != null) {
             for (String origBeanPrivString : origAceBean.getPrivileges()) {
-                if (!flatSetPrincipalsOfFirstMappedBean.contains(origBeanPrivString)) {
+                BitSet origBeanPrivilegeBits = privilegeIndex.getBits(new String[] { origBeanPrivString }, acMgr);
+                if (!PrivilegeIndex.isCoveredBy(origBeanPrivilegeBits, privilegeBitsOfFirstMappedBean)) {
                     newPrivilegesFirstMappedBean.add(origBeanPrivString);
                 }
             }
@@ -347,16 +578,13 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
         if (LOG.isDebugEnabled()) {
             StringBuilder buf = new StringBuilder();
-            buf.append("CqActions at path " + origAceBean.getJcrPath()
-                    + " with authorizableId=" + origAceBean.getAuthorizableId() + "/" + testActionMapperPrincipal.getName() + " produced \n");
+            buf.append("Actions at path " + origAceBean.getJcrPath()
+                    + " with authorizableId=" + origAceBean.getAuthorizableId() + " resolved to \n");
             for (AceBean aceBean : aceBeansForActionEntry) {
-                buf.append("   " + toAceCompareString(aceBean, acMgr) + "\n");
+                buf.append("   " + aceFingerprints.create(aceBean, privilegeIndex, acMgr) + "\n");
             }
             LOG.debug(buf.toString());
         }
-
-        return aceBeansForActionEntry;
-
     }
 
     Principal getTestActionMapperPrincipal() {
@@ -384,27 +612,6 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
     }
 
-    private Set<String> flatSetResolvedAggregates(String[] privNames, AccessControlManager acMgr, boolean includeAggregates)
-            throws RepositoryException {
-        if (privNames == null) {
-            return Collections.emptySet();
-        }
-        final Set<String> privileges = new HashSet<String>();
-        for (final String name : privNames) {
-            final Privilege p = acMgr.privilegeFromName(name);
-            if (!p.isAggregate() || includeAggregates) {
-                privileges.add(p.getName());
-            }
-            if (p.isAggregate()) { // add "sub privileges" as well
-                for (Privilege subPriv : p.getDeclaredAggregatePrivileges()) {
-                    Set<String> subPrivileges = flatSetResolvedAggregates(new String[] { subPriv.getName() }, acMgr, includeAggregates);
-                    privileges.addAll(subPrivileges);
-                }
-            }
-        }
-        return privileges;
-    }
-
     boolean definesContent(String pagePath, Session session) throws RepositoryException {
         if (pagePath == null || pagePath.equals("/") || aemCqActionsSupport==null) {
             return false;
@@ -417,34 +624,15 @@ public class AceBeanInstallerIncremental extends BaseAceBeanInstaller implements
 
     }
 
-    private String toAceCompareString(AceBean aceBean, AccessControlManager acMgr) throws RepositoryException {
-        if (aceBean == null) {
-            return "null";
-        }
-
-        List<Restriction> restrictionsSorted = getRestrictionsComparable(aceBean.getRestrictions());
-
-        String nonAggregatePrivsNormalized = privilegesToComparableSet(aceBean.getPrivileges(), acMgr);
-
-        String aceCompareStr = aceBean.getPrincipalName() + " " + aceBean.getPermission() + " " + nonAggregatePrivsNormalized
-                + Arrays.toString(restrictionsSorted.toArray());
-        return aceCompareStr;
-    }
-
     private List<Restriction> getRestrictionsComparable(List<Restriction> restrictions) {
         List<Restriction> restrictionsSorted = new ArrayList<Restriction>(restrictions);
-        Collections.sort(restrictionsSorted, new Comparator<Restriction>() {
-
-            @Override
-            public int compare(Restriction r1, Restriction r2) {
-                return Collator.getInstance().compare(r1.getName(), r2.getName());
-            }
-        });
+        Collections.sort(restrictionsSorted, AceFingerprint.RESTRICTION_NAME_COMPARATOR);
         return restrictionsSorted;
     }
 
-    String privilegesToComparableSet(String[] privileges, AccessControlManager acMgr) throws RepositoryException {
-        return new TreeSet<String>(flatSetResolvedAggregates(privileges, acMgr, false)).toString();
+    String privilegesToComparableSet(String[] privileges, PrivilegeIndex privilegeIndex, AccessControlManager acMgr)
+            throws RepositoryException {
+        return privilegeIndex.getNames(privilegeIndex.getNonAggregateBits(privileges, acMgr)).toString();
     }
 
 
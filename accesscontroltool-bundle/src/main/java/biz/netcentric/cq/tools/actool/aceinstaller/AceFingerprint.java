@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.security.AccessControlManager;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.Restriction;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+
+/** Immutable, comparable form of an ACE as relevant for the incremental installation: principal, allow/deny, the set of (non-aggregate)
+ * privileges as bitset of the {@link PrivilegeIndex} and the restrictions sorted by name. Equal ACEs are represented by the same (interned)
+ * instance, equality and hash code are precomputed.
+ *
+ * Instances are created via {@link Factory} which holds the intern pool. Fingerprints are only equal if they were created with the same
+ * privilege index. */
+final class AceFingerprint {
+
+    static final Comparator<Restriction> RESTRICTION_NAME_COMPARATOR = new Comparator<Restriction>() {
+        @Override
+        public int compare(Restriction r1, Restriction r2) {
+            return r1.getName().compareTo(r2.getName());
+        }
+    };
+
+    private final PrivilegeIndex privilegeIndex;
+    private final String principalName;
+    private final boolean allow;
+    private final BitSet privileges;
+    private final String[] restrictionNames;
+    private final String[][] restrictionValues;
+    private final int hashCode;
+
+    private AceFingerprint(PrivilegeIndex privilegeIndex, String principalName, boolean allow, BitSet privileges, List<Restriction> restrictions) {
+        this.privilegeIndex = privilegeIndex;
+        this.principalName = principalName;
+        this.allow = allow;
+        this.privileges = privileges;
+
+        List<Restriction> restrictionsSorted = new ArrayList<Restriction>(restrictions);
+        Collections.sort(restrictionsSorted, RESTRICTION_NAME_COMPARATOR);
+        restrictionNames = new String[restrictionsSorted.size()];
+        restrictionValues = new String[restrictionsSorted.size()][];
+        for (int i = 0; i < restrictionsSorted.size(); i++) {
+            Restriction restriction = restrictionsSorted.get(i);
+            restrictionNames[i] = restriction.getName();
+            restrictionValues[i] = restriction.getValues().toArray(new String[restriction.getValues().size()]);
+        }
+
+        int hash = principalName != null ? principalName.hashCode() : 0;
+        hash = 31 * hash + (allow ? 1 : 0);
+        hash = 31 * hash + privileges.hashCode();
+        hash = 31 * hash + Arrays.hashCode(restrictionNames);
+        hash = 31 * hash + Arrays.deepHashCode(restrictionValues);
+        this.hashCode = hash;
+    }
+
+    String getPrincipalName() {
+        return principalName;
+    }
+
+    boolean isAllow() {
+        return allow;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AceFingerprint)) {
+            return false;
+        }
+        AceFingerprint other = (AceFingerprint) obj;
+        return hashCode == other.hashCode
+                && privilegeIndex == other.privilegeIndex
+                && allow == other.allow
+                && (principalName == null ? other.principalName == null : principalName.equals(other.principalName))
+                && privileges.equals(other.privileges)
+                && Arrays.equals(restrictionNames, other.restrictionNames)
+                && Arrays.deepEquals(restrictionValues, other.restrictionValues);
+    }
+
+    /** @return the same format as used for the diff log before (principal, permission, sorted non-aggregate privileges, restrictions) */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(principalName).append(" ").append(allow ? "allow" : "deny").append(" ");
+        buf.append(privilegeIndex.getNames(privileges));
+        buf.append("[");
+        for (int i = 0; i < restrictionNames.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append("[Restriction name=").append(restrictionNames[i]).append(", values=").append(Arrays.toString(restrictionValues[i]))
+                    .append("]");
+        }
+        buf.append("]");
+        return buf.toString();
+    }
+
+    /** Creates fingerprints and keeps the pool of interned fingerprints that is to be cleared at the beginning of each installation run via
+     * {@link #clear()}. Thread-safe. */
+    static final class Factory {
+
+        private final ConcurrentMap<AceFingerprint, AceFingerprint> internPool = new ConcurrentHashMap<AceFingerprint, AceFingerprint>();
+
+        AceFingerprint create(AceBean aceBean, PrivilegeIndex privilegeIndex, AccessControlManager acMgr) throws RepositoryException {
+            BitSet privilegeBits = privilegeIndex.getNonAggregateBits(aceBean.getPrivileges(), acMgr);
+            String principalName = aceBean.getPrincipalName() != null ? aceBean.getPrincipalName().intern() : null;
+            AceFingerprint fingerprint = new AceFingerprint(privilegeIndex, principalName, aceBean.isAllow(), privilegeBits,
+                    aceBean.getRestrictions());
+            AceFingerprint interned = internPool.putIfAbsent(fingerprint, fingerprint);
+            return interned != null ? interned : fingerprint;
+        }
+
+        void clear() {
+            internPool.clear();
+        }
+
+        int getCountInterned() {
+            return internPool.size();
+        }
+    }
+}
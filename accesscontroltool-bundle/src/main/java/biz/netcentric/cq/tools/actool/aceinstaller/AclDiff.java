@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** Minimal edit script to transform the list of actual (managed) ACEs of an ACL into the list of configured ACEs: the longest common
+ * subsequence of both lists is kept, all other actual entries are removed and all other configured entries are inserted. As the configured
+ * list is already in the required order (deny/allow order resp. keepOrder), the kept entries never have to be moved.
+ *
+ * Apart from the common prefix, only actual entries from a given anchor index on are kept (the entries before it are followed by unmanaged
+ * entries, new entries are placed after those as when rewriting everything after the first difference). For very long lists without
+ * common prefix and suffix, everything in between is rewritten instead of computing the longest common subsequence.
+ *
+ * @param <T> the type of the compared elements (equality is determined via {@link Object#equals(Object)}) */
+final class AclDiff<T> {
+
+    // limits the memory needed for the longest common subsequence (4 MB)
+    static final int MAX_LCS_MATRIX_CELLS = 1024 * 1024;
+
+    private final int countActual;
+    private final int countConfigured;
+
+    /** for each configured element the index of the actual element it is matched with or -1 if it has to be inserted */
+    private final int[] matchedActualIndexes;
+    /** for each actual element whether it is kept */
+    private final boolean[] actualKept;
+    private final int countCommonPrefix;
+
+    AclDiff(List<T> actual, List<T> configured) {
+        this(actual, configured, 0);
+    }
+
+    /** @param actual the actual entries
+     * @param configured the configured entries
+     * @param firstAnchorIndex the index of the first actual entry that may be kept outside of the common prefix */
+    AclDiff(List<T> actual, List<T> configured, int firstAnchorIndex) {
+        countActual = actual.size();
+        countConfigured = configured.size();
+        matchedActualIndexes = new int[countConfigured];
+        Arrays.fill(matchedActualIndexes, -1);
+        actualKept = new boolean[countActual];
+
+        // common prefix and suffix are matched directly (in most cases only a few entries in between differ)
+        int prefix = 0;
+        while (prefix < countActual && prefix < countConfigured && actual.get(prefix).equals(configured.get(prefix))) {
+            match(prefix, prefix);
+            prefix++;
+        }
+        countCommonPrefix = prefix;
+        int actualStart = Math.max(prefix, Math.min(firstAnchorIndex, countActual));
+        int suffix = 0;
+        while (suffix < countActual - actualStart && suffix < countConfigured - prefix
+                && actual.get(countActual - 1 - suffix).equals(configured.get(countConfigured - 1 - suffix))) {
+            match(countActual - 1 - suffix, countConfigured - 1 - suffix);
+            suffix++;
+        }
+
+        matchLongestCommonSubsequence(actual.subList(actualStart, countActual - suffix),
+                configured.subList(prefix, countConfigured - suffix), actualStart, prefix);
+    }
+
+    private void matchLongestCommonSubsequence(List<T> actual, List<T> configured, int actualOffset, int configuredOffset) {
+        int n = actual.size();
+        int m = configured.size();
+        if (n == 0 || m == 0 || (long) (n + 1) * (m + 1) > MAX_LCS_MATRIX_CELLS) {
+            // nothing to match or too large: everything in between is rewritten
+            return;
+        }
+        // lcsLengths[i][j] = length of LCS of actual[i..] and configured[j..]
+        int[][] lcsLengths = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                if (actual.get(i).equals(configured.get(j))) {
+                    lcsLengths[i][j] = lcsLengths[i + 1][j + 1] + 1;
+                } else {
+                    lcsLengths[i][j] = Math.max(lcsLengths[i + 1][j], lcsLengths[i][j + 1]);
+                }
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n && j < m) {
+            if (actual.get(i).equals(configured.get(j))) {
+                match(actualOffset + i, configuredOffset + j);
+                i++;
+                j++;
+            } else if (lcsLengths[i + 1][j] >= lcsLengths[i][j + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+    }
+
+    private void match(int actualIndex, int configuredIndex) {
+        actualKept[actualIndex] = true;
+        matchedActualIndexes[configuredIndex] = actualIndex;
+    }
+
+    boolean isActualKept(int actualIndex) {
+        return actualKept[actualIndex];
+    }
+
+    /** @return the index of the actual element the configured element is matched with or -1 if the configured element has to be
+     *         inserted */
+    int getMatchedActualIndex(int configuredIndex) {
+        return matchedActualIndexes[configuredIndex];
+    }
+
+    /** @return the index of the actual element a configured element that is to be inserted has to be placed before or -1 if it has to be
+     *         appended */
+    int getInsertBeforeActualIndex(int configuredIndex) {
+        for (int j = configuredIndex + 1; j < countConfigured; j++) {
+            if (matchedActualIndexes[j] >= 0) {
+                return matchedActualIndexes[j];
+            }
+        }
+        return -1;
+    }
+
+    int getCountRemovals() {
+        int countKept = 0;
+        for (boolean kept : actualKept) {
+            if (kept) {
+                countKept++;
+            }
+        }
+        return countActual - countKept;
+    }
+
+    int getCountInsertions() {
+        int countInsertions = 0;
+        for (int matchedActualIndex : matchedActualIndexes) {
+            if (matchedActualIndex < 0) {
+                countInsertions++;
+            }
+        }
+        return countInsertions;
+    }
+
+    /** @return the number of removals and insertions that would be needed when rewriting everything after the first difference */
+    int getCountWritesRewritingFromFirstDifference() {
+        return (countActual - countCommonPrefix) + (countConfigured - countCommonPrefix);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** Remembers for each ACL path the hash of the configuration that was installed (including everything else the result depends on) and
+ * the hash of the rep:policy node as it was after the installation. If both hashes are unchanged in the next run, the ACL is known to be
+ * up to date and does not need to be compared ACE by ACE.
+ *
+ * The hash of the rep:policy node is created from the raw node structure (names, node types and property values of the ACE nodes), so
+ * any change to the ACL (e.g. via CRXDE or a package) is detected without using the access control API. Entries are persisted below
+ * /var/statistics/achistory. Thread-safe. */
+class AclStateHashes {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AclStateHashes.class);
+
+    static final String NODE_NAME = "aclStateHashes";
+    private static final String PROPERTY_ENTRIES = "entries";
+
+    private static final String POLICY_NODE_NAME = "rep:policy";
+    private static final String NO_POLICY = "none";
+
+    // to keep the persisted entries compact, collisions are irrelevant for change detection
+    private static final int HASH_LENGTH = 16;
+
+    private final Map<String, String[]> hashesByPath = new HashMap<String, String[]>();
+    private boolean modified = false;
+
+    /** @return true if the given hashes match the ones recorded for the path after the last installation */
+    synchronized boolean isUnchanged(String path, String configHash, String aclStateHash) {
+        String[] hashes = hashesByPath.get(path);
+        return hashes != null && hashes[0].equals(configHash) && hashes[1].equals(aclStateHash);
+    }
+
+    synchronized void put(String path, String configHash, String aclStateHash) {
+        String[] previousHashes = hashesByPath.put(path, new String[] { configHash, aclStateHash });
+        if (previousHashes == null || !previousHashes[0].equals(configHash) || !previousHashes[1].equals(aclStateHash)) {
+            modified = true;
+        }
+    }
+
+    synchronized int size() {
+        return hashesByPath.size();
+    }
+
+    /** Loads the persisted entries (replacing the ones in memory). */
+    synchronized void load(Session session) throws RepositoryException {
+        hashesByPath.clear();
+        modified = false;
+        String nodePath = HistoryUtils.ACHISTORY_PATH + "/" + NODE_NAME;
+        if (!session.nodeExists(nodePath) || !session.getNode(nodePath).hasProperty(PROPERTY_ENTRIES)) {
+            return;
+        }
+        for (Value value : session.getNode(nodePath).getProperty(PROPERTY_ENTRIES).getValues()) {
+            String[] entry = StringUtils.split(value.getString(), " ", 3);
+            if (entry.length == 3) {
+                hashesByPath.put(entry[2], new String[] { entry[0], entry[1] });
+            }
+        }
+        LOG.debug("Loaded {} ACL state hashes", hashesByPath.size());
+    }
+
+    /** Persists the entries (if they have been modified since the last load/persist). The given session is saved. */
+    synchronized void persist(Session session) throws RepositoryException {
+        if (!modified) {
+            return;
+        }
+        List<String> entries = new ArrayList<String>(hashesByPath.size());
+        for (Map.Entry<String, String[]> entry : new TreeMap<String, String[]>(hashesByPath).entrySet()) {
+            entries.add(entry.getValue()[0] + " " + entry.getValue()[1] + " " + entry.getKey());
+        }
+        Node acHistoryRootNode = HistoryUtils.getAcHistoryRootNode(session);
+        Node node = acHistoryRootNode.hasNode(NODE_NAME) ? acHistoryRootNode.getNode(NODE_NAME)
+                : acHistoryRootNode.addNode(NODE_NAME, HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+        node.setProperty(PROPERTY_ENTRIES, entries.toArray(new String[entries.size()]));
+        session.save();
+        modified = false;
+        LOG.debug("Persisted {} ACL state hashes", entries.size());
+    }
+
+    /** @return a compact hash of the given string */
+    static String hash(String value) {
+        return DigestUtils.md5Hex(value).substring(0, HASH_LENGTH);
+    }
+
+    /** @param path the path of the ACL (not for repository-level ACLs)
+     * @return the hash of the rep:policy node at the given path as visible to the session (including its pending changes) */
+    static String getAclStateHash(Session session, String path) throws RepositoryException {
+        String policyNodePath = (path.endsWith("/") ? path : path + "/") + POLICY_NODE_NAME;
+        if (!session.nodeExists(policyNodePath)) {
+            return NO_POLICY;
+        }
+        StringBuilder nodeStructure = new StringBuilder();
+        appendNodeStructure(session.getNode(policyNodePath), nodeStructure);
+        return hash(nodeStructure.toString());
+    }
+
+    private static void appendNodeStructure(Node node, StringBuilder nodeStructure) throws RepositoryException {
+        nodeStructure.append(node.getName()).append("{");
+        // properties are sorted as their order is not significant (in contrast to the order of the ACE nodes)
+        SortedMap<String, String> properties = new TreeMap<String, String>();
+        PropertyIterator propertiesIt = node.getProperties();
+        while (propertiesIt.hasNext()) {
+            Property property = propertiesIt.nextProperty();
+            if (property.isMultiple()) {
+                List<String> values = new ArrayList<String>();
+                for (Value value : property.getValues()) {
+                    values.add(value.getString());
+                }
+                properties.put(property.getName(), values.toString());
+            } else {
+                properties.put(property.getName(), property.getString());
+            }
+        }
+        nodeStructure.append(properties);
+        NodeIterator childNodesIt = node.getNodes();
+        while (childNodesIt.hasNext()) {
+            appendNodeStructure(childNodesIt.nextNode(), nodeStructure);
+        }
+        nodeStructure.append("}");
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.Restriction;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** LRU cache for the ACEs that CqActions produces for actions. The cache is persisted below /var/statistics/achistory to be available
+ * right away after a restart (e.g. for startup hook installations). All entries are bound to a validity key (derived from the CqActions
+ * version and the registered privileges), if the validity key changes all entries are discarded. Thread-safe. */
+class ActionsToPrivilegesCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActionsToPrivilegesCache.class);
+
+    static final String CACHE_NODE_NAME = "actionsToPrivilegesCache";
+    private static final String PROPERTY_VALIDITY_KEY = "validityKey";
+    private static final String PROPERTY_ENTRIES = "entries";
+
+    private static final String KEY_CACHE_KEY = "key";
+    private static final String KEY_ACES = "aces";
+    private static final String KEY_PERMISSION = "permission";
+    private static final String KEY_PRIVILEGES = "privileges";
+    private static final String KEY_RESTRICTIONS = "restrictions";
+
+    private final Map<String, Set<AceBean>> entries;
+    private String validityKey;
+    private boolean modified = false;
+
+    ActionsToPrivilegesCache(final int maxEntries) {
+        entries = new LinkedHashMap<String, Set<AceBean>>(16, 0.75f, /* access order for LRU */ true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<AceBean>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    synchronized Set<AceBean> get(String cacheKey) {
+        return entries.get(cacheKey);
+    }
+
+    synchronized void put(String cacheKey, Set<AceBean> aceBeans) {
+        entries.put(cacheKey, aceBeans);
+        modified = true;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /** Discards all entries if they were created for a different validity key.
+     *
+     * @return true if the cache has been invalidated */
+    synchronized boolean ensureValidityKey(String currentValidityKey) {
+        if (StringUtils.equals(validityKey, currentValidityKey)) {
+            return false;
+        }
+        boolean hadEntries = !entries.isEmpty();
+        if (hadEntries) {
+            LOG.info("Discarding {} cached action to privilege mappings as CqActions version or registered privileges changed", entries.size());
+        }
+        entries.clear();
+        validityKey = currentValidityKey;
+        modified = true;
+        return hadEntries;
+    }
+
+    /** Loads the persisted entries if they are valid for the given validity key. */
+    synchronized void load(Session session, String currentValidityKey) throws RepositoryException {
+        validityKey = currentValidityKey;
+        modified = false;
+        entries.clear();
+
+        String cacheNodePath = HistoryUtils.ACHISTORY_PATH + "/" + CACHE_NODE_NAME;
+        if (!session.nodeExists(cacheNodePath)) {
+            return;
+        }
+        Node cacheNode = session.getNode(cacheNodePath);
+        String persistedValidityKey = cacheNode.hasProperty(PROPERTY_VALIDITY_KEY) ? cacheNode.getProperty(PROPERTY_VALIDITY_KEY).getString()
+                : null;
+        if (!StringUtils.equals(persistedValidityKey, currentValidityKey)) {
+            LOG.info("Persisted action to privilege mappings are outdated (CqActions version or registered privileges changed)");
+            modified = true;
+            return;
+        }
+        if (cacheNode.hasProperty(PROPERTY_ENTRIES)) {
+            fromYaml(cacheNode.getProperty(PROPERTY_ENTRIES).getString());
+        }
+        LOG.debug("Loaded {} persisted action to privilege mappings", entries.size());
+    }
+
+    /** Persists the entries (if they have been modified since the last load/persist). The given session is saved. */
+    synchronized void persist(Session session) throws RepositoryException {
+        if (!modified) {
+            return;
+        }
+        Node acHistoryRootNode = HistoryUtils.getAcHistoryRootNode(session);
+        Node cacheNode = acHistoryRootNode.hasNode(CACHE_NODE_NAME) ? acHistoryRootNode.getNode(CACHE_NODE_NAME)
+                : acHistoryRootNode.addNode(CACHE_NODE_NAME, HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+        cacheNode.setProperty(PROPERTY_VALIDITY_KEY, validityKey);
+        cacheNode.setProperty(PROPERTY_ENTRIES, toYaml());
+        session.save();
+        modified = false;
+        LOG.debug("Persisted {} action to privilege mappings", entries.size());
+    }
+
+    String toYaml() {
+        List<Map<String, Object>> yamlEntries = new ArrayList<Map<String, Object>>();
+        // from least to most recently used to restore the LRU order on load
+        for (Map.Entry<String, Set<AceBean>> entry : entries.entrySet()) {
+            List<Map<String, Object>> yamlAces = new ArrayList<Map<String, Object>>();
+            for (AceBean aceBean : entry.getValue()) {
+                Map<String, Object> yamlAce = new LinkedHashMap<String, Object>();
+                yamlAce.put(KEY_PERMISSION, aceBean.getPermission());
+                yamlAce.put(KEY_PRIVILEGES, aceBean.getPrivilegesString());
+                Map<String, List<String>> yamlRestrictions = new LinkedHashMap<String, List<String>>();
+                for (Restriction restriction : aceBean.getRestrictions()) {
+                    yamlRestrictions.put(restriction.getName(), new ArrayList<String>(restriction.getValues()));
+                }
+                yamlAce.put(KEY_RESTRICTIONS, yamlRestrictions);
+                yamlAces.add(yamlAce);
+            }
+            Map<String, Object> yamlEntry = new LinkedHashMap<String, Object>();
+            yamlEntry.put(KEY_CACHE_KEY, entry.getKey());
+            yamlEntry.put(KEY_ACES, yamlAces);
+            yamlEntries.add(yamlEntry);
+        }
+        return new Yaml().dump(yamlEntries);
+    }
+
+    @SuppressWarnings("unchecked")
+    void fromYaml(String yaml) {
+        List<Map<String, Object>> yamlEntries = new Yaml().loadAs(yaml, List.class);
+        if (yamlEntries == null) {
+            return;
+        }
+        for (Map<String, Object> yamlEntry : yamlEntries) {
+            Set<AceBean> aceBeans = new LinkedHashSet<AceBean>();
+            for (Map<String, Object> yamlAce : (List<Map<String, Object>>) yamlEntry.get(KEY_ACES)) {
+                AceBean aceBean = new AceBean();
+                aceBean.setPermission((String) yamlAce.get(KEY_PERMISSION));
+                aceBean.setPrivilegesString((String) yamlAce.get(KEY_PRIVILEGES));
+                List<Restriction> restrictions = new ArrayList<Restriction>();
+                Map<String, List<String>> yamlRestrictions = (Map<String, List<String>>) yamlAce.get(KEY_RESTRICTIONS);
+                if (yamlRestrictions != null) {
+                    for (Map.Entry<String, List<String>> yamlRestriction : yamlRestrictions.entrySet()) {
+                        restrictions.add(new Restriction(yamlRestriction.getKey(),
+                                yamlRestriction.getValue().toArray(new String[yamlRestriction.getValue().size()])));
+                    }
+                }
+                aceBean.setRestrictions(restrictions);
+                aceBeans.add(aceBean);
+            }
+            entries.put((String) yamlEntry.get(KEY_CACHE_KEY), aceBeans);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.security.AccessControlManager;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.Restriction;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+
+/** Resolves actions to the ACEs that {@code com.day.cq.security.util.CqActions#installActions()} creates for them, but without writing
+ * to (and reverting) the repository. The result only depends on the actions, the permission, the "definesContent" flag of the node
+ * (see {@code CqActions.definesContent()}) and the actions that are allowed for the principal via inherited ACEs (the latter only matter
+ * for "create" and "delete" without "modify" on nodes defining content).
+ *
+ * The produced ACEs are
+ * <ul>
+ * <li>one ACE with the privileges of all actions (as CqActions adds one entry per action with the same permission, they are merged by the
+ * ACL)</li>
+ * <li>for nodes defining content at most one ACE with restriction {@code rep:glob=*}{@code /jcr:content*} that allows or denies structural
+ * changes below jcr:content</li>
+ * </ul>
+ * Restrictions of the configured ACE are not part of the result. The differential test {@code ActionsToPrivilegesResolverTest} ensures
+ * the result matches CqActions. */
+final class ActionsToPrivilegesResolver {
+
+    static final String ACTION_READ = "read";
+    static final String ACTION_MODIFY = "modify";
+    static final String ACTION_CREATE = "create";
+    static final String ACTION_DELETE = "delete";
+    static final String ACTION_ACL_READ = "acl_read";
+    static final String ACTION_ACL_EDIT = "acl_edit";
+    static final String ACTION_REPLICATE = "replicate";
+
+    static final String CONTENT_RESTRICTION_GLOB = "*/jcr:content*";
+
+    private static final Map<String, String[]> ACTION_PRIVILEGES = new LinkedHashMap<String, String[]>();
+    static {
+        ACTION_PRIVILEGES.put(ACTION_READ, new String[] { "jcr:read" });
+        ACTION_PRIVILEGES.put(ACTION_MODIFY, new String[] { "jcr:modifyProperties", "jcr:lockManagement", "jcr:versionManagement" });
+        ACTION_PRIVILEGES.put(ACTION_CREATE, new String[] { "jcr:addChildNodes", "jcr:nodeTypeManagement" });
+        ACTION_PRIVILEGES.put(ACTION_DELETE, new String[] { "jcr:removeChildNodes", "jcr:removeNode" });
+        ACTION_PRIVILEGES.put(ACTION_ACL_READ, new String[] { "jcr:readAccessControl" });
+        ACTION_PRIVILEGES.put(ACTION_ACL_EDIT, new String[] { "jcr:modifyAccessControl" });
+        // only available if registered (not the case for plain Sling/Oak)
+        ACTION_PRIVILEGES.put(ACTION_REPLICATE, new String[] { "crx:replicate" });
+    }
+
+    private static final List<String> CONTENT_MODIFY_PRIVILEGES = Arrays.asList("jcr:nodeTypeManagement", "jcr:addChildNodes",
+            "jcr:removeChildNodes", "jcr:removeNode");
+    private static final List<String> CONTENT_CREATE_PRIVILEGES = Arrays.asList("jcr:addChildNodes", "jcr:nodeTypeManagement");
+    private static final List<String> CONTENT_DELETE_PRIVILEGES = Arrays.asList("jcr:removeChildNodes", "jcr:removeNode");
+
+    private final PrivilegeIndex privilegeIndex;
+    private final AccessControlManager acMgr;
+
+    /** @param privilegeIndex the privilege index of the installation run
+     * @param acMgr used to check privileges that are not part of the index yet (may be null) */
+    ActionsToPrivilegesResolver(PrivilegeIndex privilegeIndex, AccessControlManager acMgr) {
+        this.privilegeIndex = privilegeIndex;
+        this.acMgr = acMgr;
+    }
+
+    /** @return true if the result of {@link #resolve(String[], boolean, boolean, Collection)} depends on the inherited allowed actions */
+    static boolean dependsOnInheritedAllows(String[] actions, boolean definesContent) {
+        return definesContent && !ArrayUtils.contains(actions, ACTION_MODIFY)
+                && (ArrayUtils.contains(actions, ACTION_CREATE) || ArrayUtils.contains(actions, ACTION_DELETE));
+    }
+
+    /** @param actions the configured actions
+     * @param allow the permission of the configured ACE
+     * @param definesContent whether the node defines a jcr:content child node (pages, assets etc.)
+     * @param inheritedAllows the actions already allowed for the principal via inherited ACEs (may be null)
+     * @return the ACEs (permission, privileges and restrictions only) in the order they would appear in the ACL */
+    List<AceBean> resolve(String[] actions, boolean allow, boolean definesContent, Collection<String> inheritedAllows) {
+        List<AceBean> aceBeans = new ArrayList<AceBean>();
+        if (actions == null || actions.length == 0) {
+            return aceBeans;
+        }
+
+        Set<String> actionPrivileges = new LinkedHashSet<String>();
+        for (String action : ACTION_PRIVILEGES.keySet()) {
+            if (ArrayUtils.contains(actions, action) && isRegistered(ACTION_PRIVILEGES.get(action))) {
+                actionPrivileges.addAll(Arrays.asList(ACTION_PRIVILEGES.get(action)));
+            }
+        }
+        if (!actionPrivileges.isEmpty()) {
+            aceBeans.add(createAceBean(allow, actionPrivileges, null));
+        }
+
+        if (definesContent) {
+            Set<String> contentAllowPrivileges = new LinkedHashSet<String>();
+            Set<String> contentDenyPrivileges = new LinkedHashSet<String>();
+            boolean isCreate = ArrayUtils.contains(actions, ACTION_CREATE);
+            boolean isDelete = ArrayUtils.contains(actions, ACTION_DELETE);
+            boolean isModifyAllowed;
+            if (ArrayUtils.contains(actions, ACTION_MODIFY)) {
+                (allow ? contentAllowPrivileges : contentDenyPrivileges).addAll(CONTENT_MODIFY_PRIVILEGES);
+                isModifyAllowed = allow;
+            } else {
+                isModifyAllowed = inheritedAllows != null && inheritedAllows.contains(ACTION_MODIFY);
+            }
+            if (!isModifyAllowed) {
+                // structure below jcr:content can only be changed with modify
+                if (isCreate && allow) {
+                    contentDenyPrivileges.addAll(CONTENT_CREATE_PRIVILEGES);
+                }
+                if (isDelete && allow) {
+                    contentDenyPrivileges.addAll(CONTENT_DELETE_PRIVILEGES);
+                }
+            } else {
+                // denying create/delete must not deny modifying the content
+                if (isCreate && !allow) {
+                    contentAllowPrivileges.addAll(CONTENT_CREATE_PRIVILEGES);
+                }
+                if (isDelete && !allow) {
+                    contentAllowPrivileges.addAll(CONTENT_DELETE_PRIVILEGES);
+                }
+            }
+            Restriction contentRestriction = new Restriction(AceBean.RESTRICTION_NAME_GLOB, CONTENT_RESTRICTION_GLOB);
+            if (!contentAllowPrivileges.isEmpty()) {
+                aceBeans.add(createAceBean(true, contentAllowPrivileges, contentRestriction));
+            }
+            if (!contentDenyPrivileges.isEmpty()) {
+                aceBeans.add(createAceBean(false, contentDenyPrivileges, contentRestriction));
+            }
+        }
+        return aceBeans;
+    }
+
+    /** @return the bits of the privileges the given actions map to on the node itself (see
+     *         {@link PrivilegeIndex#getBits(String[], AccessControlManager)}) */
+    BitSet getPrivilegeBits(String[] actions) throws RepositoryException {
+        BitSet privilegeBits = new BitSet();
+        if (actions == null) {
+            return privilegeBits;
+        }
+        for (String action : actions) {
+            String[] privileges = ACTION_PRIVILEGES.get(action);
+            if (privileges != null && isRegistered(privileges)) {
+                privilegeBits.or(privilegeIndex.getBits(privileges, acMgr));
+            }
+        }
+        return privilegeBits;
+    }
+
+    private boolean isRegistered(String[] privileges) {
+        for (String privilege : privileges) {
+            if (!privilegeIndex.isRegistered(privilege, acMgr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AceBean createAceBean(boolean allow, Set<String> privileges, Restriction restriction) {
+        AceBean aceBean = new AceBean();
+        aceBean.setPermission(allow ? "allow" : "deny");
+        aceBean.setPrivilegesString(StringUtils.join(privileges, ","));
+        List<Restriction> restrictions = new ArrayList<Restriction>();
+        if (restriction != null) {
+            restrictions.add(restriction);
+        }
+        aceBean.setRestrictions(restrictions);
+        return aceBean;
+    }
+
+    static List<String> getActions() {
+        return Collections.unmodifiableList(new ArrayList<String>(ACTION_PRIVILEGES.keySet()));
+    }
+}
@@ -11,14 +11,23 @@ package biz.netcentric.cq.tools.actool.aceinstaller;
 import static biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger.msHumanReadable;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
@@ -27,8 +36,10 @@ import javax.jcr.ValueFormatException;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.sling.jcr.api.SlingRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +48,9 @@ import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.configmodel.Restriction;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
 import biz.netcentric.cq.tools.actool.helper.ContentHelper;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.helper.RestrictionsHolder;
 import biz.netcentric.cq.tools.actool.helper.runtime.RuntimeHelper;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
@@ -53,11 +66,23 @@ public abstract class BaseAceBeanInstaller implements AceBeanInstaller {
             final AcConfiguration acConfiguration,
             final Session session,
             final InstallationLogger history, Set<String> principalsToRemoveAcesFor,
-            boolean intermediateSaves) throws Exception {
+            BatchedSessionSaver sessionSaver) throws Exception {
+        installPathBasedACEs(pathBasedAceMapFromConfig, acConfiguration, session, history, principalsToRemoveAcesFor, sessionSaver, null, 1);
+    }
+
+    @Override
+    public void installPathBasedACEs(
+            final Map<String, Set<AceBean>> pathBasedAceMapFromConfig,
+            final AcConfiguration acConfiguration,
+            final Session session,
+            final InstallationLogger history, Set<String> principalsToRemoveAcesFor,
+            BatchedSessionSaver sessionSaver, SlingRepository repository, int maxConcurrentShards) throws Exception {
 
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
+        ensurePrivilegeIndex(acConfiguration, session);
+
         Set<String> paths = pathBasedAceMapFromConfig.keySet();
 
         history.addVerboseMessage(LOG, "Found " + paths.size() + "  paths in config");
@@ -65,25 +90,85 @@ public abstract class BaseAceBeanInstaller implements AceBeanInstaller {
         
         paths = filterReadOnlyPaths(paths, history, session);
 
-        if (intermediateSaves) {
-            history.addMessage(LOG, "Will save ACL for each path to session due to configuration option intermediateSaves=true - "
-                    + "rollback functionality is disabled.");
+        if (sessionSaver.isEnabled()) {
+            history.addMessage(LOG, "Will save ACLs to session in batches due to configuration options intermediateSaves/saveBatchSizeAclPaths/saveFlushIntervalMs - "
+                    + "regular rollback functionality is disabled (undo journal is used if enabled).");
         }
 
+        Map<String, List<String>> shards = repository != null && maxConcurrentShards > 1
+                ? getShardsForParallelInstallation(paths, pathBasedAceMapFromConfig, sessionSaver, history)
+                : null;
+
+        int countSkippedFromCheckpoint = 0;
+        if (shards != null) {
+            installAclsInParallelShards(shards, pathBasedAceMapFromConfig, acConfiguration, session, history,
+                    principalsToRemoveAcesFor, sessionSaver, repository, maxConcurrentShards);
+        } else {
+            countSkippedFromCheckpoint = installAcls(paths, pathBasedAceMapFromConfig, acConfiguration, session, history,
+                    principalsToRemoveAcesFor, sessionSaver);
+        }
+
+        if (countSkippedFromCheckpoint > 0) {
+            history.addMessage(LOG, "Skipped " + countSkippedFromCheckpoint + " ACLs that were already installed according to checkpoint");
+        }
+
+        if (sessionSaver.isEnabled()) {
+            sessionSaver.flush();
+            history.addMessage(LOG, "Batched saves of ACLs: " + sessionSaver.getStatistics());
+        }
+
+        if (history.getMissingParentPathsForInitialContent() > 0) {
+            history.addWarning(LOG, "There were " + history.getMissingParentPathsForInitialContent()
+                    + " parent paths missing for creation of initial content (those paths were skipped, see verbose log for details)");
+        }
+
+        history.addMessage(LOG, "ACL Update Statistics: Changed=" + history.getCountAclsChanged() + " Unchanged=" + history.getCountAclsUnchanged()
+                + " (skipped by hash=" + history.getCountAclsSkippedByHash() + ")"
+                + " Path not found=" + history.getCountAclsPathDoesNotExist() + " Policy writes=" + history.getCountPolicyWrites()
+                + " (max per path=" + history.getMaxCountPolicyWritesPerPath() + ", action cache hit/miss="
+                + history.getCountActionCacheHit() + "/" + history.getCountActionCacheMiss() + ")");
+        if (history.getCountAceWrites() > 0) {
+            history.addMessage(LOG, "ACE writes: " + history.getCountAceWrites() + " (saved by minimal edit compared to rewriting ACLs from "
+                    + "first difference: " + history.getCountAceWritesSaved() + ")");
+        }
+        history.addMessage(LOG, "*** Finished installation of " + paths.size() + " ACLs in "
+                + msHumanReadable(stopWatch.getTime()));
+    }
+
+    /** Installs the ACLs for the given paths one after the other using the given session.
+     * 
+     * @return the number of paths skipped because they were installed already according to the checkpoint */
+    private int installAcls(Collection<String> paths, Map<String, Set<AceBean>> pathBasedAceMapFromConfig, AcConfiguration acConfiguration,
+            Session session, InstallationLogger history, Set<String> principalsToRemoveAcesFor, BatchedSessionSaver sessionSaver)
+            throws Exception {
+
+        // the initial content of all paths is imported at once (parent paths first)
+        Set<String> pathsWithCreatedInitialContent = ContentHelper.createInitialContent(session, history, paths,
+                pathBasedAceMapFromConfig);
+        for (String path : pathsWithCreatedInitialContent) {
+            sessionSaver.nodeCreated(path);
+        }
+
+        int countSkippedFromCheckpoint = 0;
+        final PrivilegeIndex privilegeIndex = acConfiguration.getPrivilegeIndex();
         // loop through all nodes from config
         for (final String path : paths) {
-            
+
+            if (sessionSaver.isAclPathCompleted(path)) {
+                countSkippedFromCheckpoint++;
+                history.incCountAclPathsProcessed();
+                continue;
+            }
             final Set<AceBean> aceBeanSetFromConfig = pathBasedAceMapFromConfig
                     .get(path); // Set which holds the AceBeans of the current path in configuration
 
             // check if the path even exists
             final boolean pathExits = AccessControlUtils.getModifiableAcl(session.getAccessControlManager(), path) != null;
             if (!pathExits) {
-                if (!ContentHelper.createInitialContent(session, history, path, aceBeanSetFromConfig)) {
-                    history.addVerboseMessage(LOG, "Skipped installing privileges/actions for non existing path: " + path);
-                    history.incCountAclsPathDoesNotExist();
-                    continue;
-                }
+                history.addVerboseMessage(LOG, "Skipped installing privileges/actions for non existing path: " + path);
+                history.incCountAclsPathDoesNotExist();
+                history.incCountAclPathsProcessed();
+                continue;
             }
 
             // order entries (denies in front of allows)
@@ -94,24 +179,153 @@ public abstract class BaseAceBeanInstaller implements AceBeanInstaller {
             Set<String> principalsToRemoveAcesForAtThisPath = acConfiguration.getAuthorizablesConfig()
                     .removeUnmanagedPrincipalNamesAtPath(path, principalsToRemoveAcesFor,
                             acConfiguration.getGlobalConfiguration().getDefaultUnmanagedAcePathsRegex());
-            installAcl(orderedAceBeanSetFromConfig, path, principalsToRemoveAcesForAtThisPath, session, history);
+            sessionSaver.beforeAclChange(path);
+            installAcl(orderedAceBeanSetFromConfig, path, principalsToRemoveAcesForAtThisPath, session, history, privilegeIndex);
+            sessionSaver.aclPathCompleted(path);
+            history.incCountAclPathsProcessed();
 
-            if (intermediateSaves && session.hasPendingChanges()) {
-                history.addVerboseMessage(LOG, "Saved session for path " + path);
-                session.save();
+            if (sessionSaver.itemProcessed()) {
+                history.addVerboseMessage(LOG, "Saved session after path " + path);
             }
         }
+        return countSkippedFromCheckpoint;
+    }
 
-        if (history.getMissingParentPathsForInitialContent() > 0) {
-            history.addWarning(LOG, "There were " + history.getMissingParentPathsForInitialContent()
-                    + " parent paths missing for creation of initial content (those paths were skipped, see verbose log for details)");
+    /** @return the paths partitioned by shard or null if the ACLs have to be installed serially */
+    private Map<String, List<String>> getShardsForParallelInstallation(Set<String> paths,
+            Map<String, Set<AceBean>> pathBasedAceMapFromConfig, BatchedSessionSaver sessionSaver, InstallationLogger history) {
+        String reasonForSerialInstallation = null;
+        if (sessionSaver.isTrackingChanges()) {
+            reasonForSerialInstallation = "undo journal/checkpoint are bound to one session";
+        } else {
+            for (String path : paths) {
+                if (path == null) {
+                    reasonForSerialInstallation = "repository-level ACLs are configured";
+                    break;
+                }
+                if (hasInitialContent(pathBasedAceMapFromConfig.get(path))) {
+                    reasonForSerialInstallation = "initial content is configured for " + path;
+                    break;
+                }
+            }
+        }
+        Map<String, List<String>> shards = null;
+        if (reasonForSerialInstallation == null) {
+            shards = partitionBySubtree(paths);
+            if (shards.size() < 2) {
+                reasonForSerialInstallation = "all paths are in subtree " + (shards.isEmpty() ? "-" : shards.keySet().iterator().next());
+            }
         }
+        if (reasonForSerialInstallation != null) {
+            history.addMessage(LOG, "Installing ACLs serially (" + reasonForSerialInstallation + ")");
+            return null;
+        }
+        return shards;
+    }
 
-        history.addMessage(LOG, "ACL Update Statistics: Changed=" + history.getCountAclsChanged() + " Unchanged=" + history.getCountAclsUnchanged()
-                + " Path not found=" + history.getCountAclsPathDoesNotExist() + " (action cache hit/miss="
-                + history.getCountActionCacheHit() + "/" + history.getCountActionCacheMiss() + ")");
-        history.addMessage(LOG, "*** Finished installation of " + paths.size() + " ACLs in "
-                + msHumanReadable(stopWatch.getTime()));
+    private boolean hasInitialContent(Set<AceBean> aceBeans) {
+        if (aceBeans != null) {
+            for (AceBean aceBean : aceBeans) {
+                if (StringUtils.isNotBlank(aceBean.getInitialContent())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Partitions the paths by their top-level node (e.g. /content, /conf, /home). The shards are sorted by name, within a shard the given
+     * order of paths is retained.
+     * 
+     * @return the paths by shard (the root path / forms its own shard) */
+    static Map<String, List<String>> partitionBySubtree(Collection<String> paths) {
+        Map<String, List<String>> shards = new TreeMap<String, List<String>>();
+        for (String path : paths) {
+            int endOfFirstSegment = path.indexOf('/', 1);
+            String shard = endOfFirstSegment > 0 ? path.substring(0, endOfFirstSegment) : path;
+            List<String> shardPaths = shards.get(shard);
+            if (shardPaths == null) {
+                shardPaths = new ArrayList<String>();
+                shards.put(shard, shardPaths);
+            }
+            shardPaths.add(path);
+        }
+        return shards;
+    }
+
+    /** Installs the shards in parallel, each shard with its own session that is saved once the shard is complete (or in batches as
+     * configured). As all ACLs of a subtree are in the same shard, the workers never change the same nodes. */
+    private void installAclsInParallelShards(Map<String, List<String>> shards, final Map<String, Set<AceBean>> pathBasedAceMapFromConfig,
+            final AcConfiguration acConfiguration, Session session, final InstallationLogger history,
+            final Set<String> principalsToRemoveAcesFor, final BatchedSessionSaver sessionSaver, final SlingRepository repository,
+            int maxConcurrentShards) throws Exception {
+
+        if (session.hasPendingChanges()) {
+            // the worker sessions have to see the authorizables and the removed ACEs
+            session.save();
+            history.addVerboseMessage(LOG, "Saved pending changes before installing ACLs in parallel shards");
+        }
+
+        // largest shards first to minimize the overall time, the order is deterministic for the same configuration
+        List<Map.Entry<String, List<String>>> orderedShards = new ArrayList<Map.Entry<String, List<String>>>(shards.entrySet());
+        Collections.sort(orderedShards, new Comparator<Map.Entry<String, List<String>>>() {
+            @Override
+            public int compare(Map.Entry<String, List<String>> shard1, Map.Entry<String, List<String>> shard2) {
+                int sizeComparison = Integer.compare(shard2.getValue().size(), shard1.getValue().size());
+                return sizeComparison != 0 ? sizeComparison : shard1.getKey().compareTo(shard2.getKey());
+            }
+        });
+
+        int poolSize = Math.min(maxConcurrentShards, shards.size());
+        history.addMessage(LOG, "Installing ACLs of " + shards.size() + " subtrees " + shards.keySet() + " in parallel with " + poolSize
+                + " workers (each subtree is saved separately, regular rollback functionality is disabled)");
+
+        int countSaves = 0;
+        int countFailedShards = 0;
+        ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
+        try {
+            Map<String, Future<BatchedSessionSaver>> futures = new LinkedHashMap<String, Future<BatchedSessionSaver>>();
+            for (final Map.Entry<String, List<String>> shard : orderedShards) {
+                futures.put(shard.getKey(), executorService.submit(new Callable<BatchedSessionSaver>() {
+                    @Override
+                    public BatchedSessionSaver call() throws Exception {
+                        StopWatch shardStopWatch = new StopWatch();
+                        shardStopWatch.start();
+                        Session shardSession = repository.loginService(null, null);
+                        try {
+                            BatchedSessionSaver shardSessionSaver = sessionSaver.forSession(shardSession);
+                            installAcls(shard.getValue(), pathBasedAceMapFromConfig, acConfiguration, shardSession, history,
+                                    principalsToRemoveAcesFor, shardSessionSaver);
+                            shardSessionSaver.save();
+                            history.addVerboseMessage(LOG, "Installed " + shard.getValue().size() + " ACLs of subtree " + shard.getKey()
+                                    + " in " + msHumanReadable(shardStopWatch.getTime()));
+                            return shardSessionSaver;
+                        } finally {
+                            shardSession.logout();
+                        }
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<BatchedSessionSaver>> future : futures.entrySet()) {
+                try {
+                    countSaves += future.getValue().get().getCountSaves();
+                } catch (ExecutionException e) {
+                    countFailedShards++;
+                    history.addError(LOG, "Could not install ACLs of subtree " + future.getKey(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        if (countFailedShards > 0) {
+            throw new IllegalStateException("Installation of " + countFailedShards + " of " + shards.size()
+                    + " subtrees failed (the other subtrees have been saved)");
+        }
+        history.addMessage(LOG, "Saved ACLs of " + shards.size() + " subtrees with " + countSaves + " saves");
     }
 
     private Set<String> filterReadOnlyPaths(Set<String> paths, InstallationLogger history, Session session) {
@@ -136,16 +350,17 @@ public abstract class BaseAceBeanInstaller implements AceBeanInstaller {
 
     /** Installs a full set of ACE beans that form an ACL for the path
      * 
+     * @param privilegeIndex the privilege index of the current installation run
      * @throws RepositoryException */
     protected abstract void installAcl(Set<AceBean> aceBeanSetFromConfig, String path, Set<String> authorizablesToRemoveAcesFor,
-            Session session, InstallationLogger history) throws RepositoryException;
+            Session session, InstallationLogger history, PrivilegeIndex privilegeIndex) throws RepositoryException;
     
 
     protected boolean installPrivileges(AceBean aceBean, Principal principal, JackrabbitAccessControlList acl, Session session,
-            AccessControlManager acMgr)
+            AccessControlManager acMgr, PrivilegeIndex privilegeIndex)
             throws RepositoryException {
 
-        final Set<Privilege> privileges = getPrivilegeSet(aceBean.getPrivileges(), acMgr);
+        final Set<Privilege> privileges = getPrivilegeSet(aceBean.getPrivileges(), privilegeIndex, acMgr);
         if (!privileges.isEmpty()) {
             final RestrictionsHolder restrictions = getRestrictions(aceBean, session, acl);
             if (!restrictions.isEmpty()) {
@@ -193,26 +408,33 @@ public abstract class BaseAceBeanInstaller implements AceBeanInstaller {
         return restrictionsHolder;
     }
 
-    /** Converts the given privilege names into a set of privilege objects.
+    /** Converts the given privilege names into a set of privilege objects (aggregates are resolved to the non-aggregate privileges they
+     * consist of).
      * 
      * @param privNames (may be {@code null}
+     * @param privilegeIndex the privilege index of the current installation run
      * @param acMgr
      * @return a set of privileges (never {@code null}, but may be empty set)
      * @throws RepositoryException */
-    public Set<Privilege> getPrivilegeSet(String[] privNames, AccessControlManager acMgr) throws RepositoryException {
+    public Set<Privilege> getPrivilegeSet(String[] privNames, PrivilegeIndex privilegeIndex, AccessControlManager acMgr)
+            throws RepositoryException {
         if (privNames == null) {
             return Collections.emptySet();
         }
-        final Set<Privilege> privileges = new HashSet<Privilege>(privNames.length);
-        for (final String name : privNames) {
-            final Privilege p = acMgr.privilegeFromName(name);
-            if (p.isAggregate()) {
-                privileges.addAll(Arrays.asList(p.getAggregatePrivileges()));
-            } else {
-                privileges.add(p);
-            }
+        Privilege[] privileges = privilegeIndex.getPrivileges(privilegeIndex.getNonAggregateBits(privNames, acMgr));
+        return new LinkedHashSet<Privilege>(Arrays.asList(privileges));
+    }
+
+    /** Ensures the configuration has a privilege index. The index is kept per installation run in the configuration (and not in the
+     * installer) as runs of different configuration root paths may be executed concurrently.
+     *
+     * @return the privilege index of the configuration */
+    protected PrivilegeIndex ensurePrivilegeIndex(AcConfiguration acConfiguration, Session session) throws RepositoryException {
+        if (acConfiguration.getPrivilegeIndex() == null) {
+            // only configurations created by the configuration merger come with an index
+            acConfiguration.setPrivilegeIndex(PrivilegeIndex.create(session));
         }
-        return privileges;
+        return acConfiguration.getPrivilegeIndex();
     }
 
 }
@@ -34,4 +34,7 @@ public interface AemCqActionsSupport {
     
     
     public boolean definesContent(Node node) throws RepositoryException;
+
+    /** @return the version of the bundle providing CqActions (the ACEs produced for actions may differ between versions) */
+    public String getCqActionsVersion();
 }
@@ -18,6 +18,8 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.security.Privilege;
 
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.service.component.annotations.Component;
 
 import com.day.cq.security.util.CqActions;
@@ -63,5 +65,11 @@ public class AemCqActionsSupportImpl implements AemCqActionsSupport {
     public boolean definesContent(Node node) throws RepositoryException {
         return CqActions.definesContent(node);
     }
+
+    @Override
+    public String getCqActionsVersion() {
+        Bundle bundle = FrameworkUtil.getBundle(CqActions.class);
+        return bundle != null ? bundle.getSymbolicName() + ":" + bundle.getVersion() : "unknown";
+    }
     
 }
@@ -49,7 +49,49 @@ public interface AcInstallationService {
      * @return the installation log */
     public InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged);
 
-    
+    /** Applies the configuration as stored at the given configurationRootPath to the repository, but only apply ACEs to given
+     * restrictedToPaths. If the session is saved in batches, a checkpoint is persisted with each batch that allows to resume an aborted
+     * installation.
+     * 
+     * @param restrictedToPaths only apply ACLs to root paths as given
+     * @param configurationRootPath the root path for configuration files
+     * @param skipIfConfigUnchanged will check if the config is unchanged compared to last execution with same parameters
+     * @param resume if true, authorizables and ACLs that have been saved already by a previous (aborted) installation of the same
+     *            configuration are skipped
+     * @return the installation log */
+    public InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged, boolean resume);
+
+    /** Applies the configuration as stored at the given configurationRootPath asynchronously. The progress of the installation can be polled
+     * using the returned job id via the AC Tool UI.
+     * 
+     * @param configurationRootPath the root path for configuration files (may be null to apply the configured root path(s))
+     * @param restrictedToPaths only apply ACLs to root paths as given
+     * @param skipIfConfigUnchanged will check if the config is unchanged compared to last execution with same parameters
+     * @return the job id */
+    public String applyAsync(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged);
+
+    /** Computes the changes that applying the configuration as stored at the given configurationRootPath would make to the repository
+     * (dry-run, nothing is changed in the repository except for storing the plan). The plan id is contained in the returned log.
+     * 
+     * @param configurationRootPath the root path for configuration files (may be null if only one root path is configured)
+     * @param restrictedToPaths only apply ACLs to root paths as given
+     * @return the installation log of the dry-run */
+    public InstallationLog plan(String configurationRootPath, String[] restrictedToPaths);
+
+    /** Applies a plan as created by {@link #plan(String, String[])}. The plan is only applied if none of the affected ACLs and
+     * authorizables have been changed in the repository since the plan was created.
+     * 
+     * @param planId the id of the plan
+     * @return the installation log */
+    public InstallationLog applyPlan(String planId);
+
+    /** Re-applies the configuration to the ACL paths and authorizables that have been changed outside of the AC Tool since the last
+     * installation (as recorded by the change journal, the observation has to be enabled at PID
+     * biz.netcentric.cq.tools.actool.impl.AcChangeJournal). Other ACLs and authorizables are not touched.
+     * 
+     * @return the installation log */
+    public InstallationLog reconcileDirty();
+
     /** purges all acls of the node specified by path (no deletion of acls of subnodes)
      *
      * @param path the path from which to purge the ACL
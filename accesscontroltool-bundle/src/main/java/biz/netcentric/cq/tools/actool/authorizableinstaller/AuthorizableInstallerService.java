@@ -18,13 +18,16 @@ import org.apache.sling.api.resource.LoginException;
 
 import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
 import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
 
 public interface AuthorizableInstallerService {
 
+    /** @param acConfiguration the complete configuration (its authorizables are never removed as members of installed groups)
+     * @param authorizablesConfigBeans the authorizables to install, all of them or a subset of the authorizables of acConfiguration */
     void installAuthorizables(
             AcConfiguration acConfiguration,
             AuthorizablesConfig authorizablesConfigBeans,
-            final Session session, InstallationLogger installLog)
+            final Session session, InstallationLogger installLog, BatchedSessionSaver sessionSaver)
     throws RepositoryException, AuthorizableCreatorException, LoginException, IOException, GeneralSecurityException;
 }
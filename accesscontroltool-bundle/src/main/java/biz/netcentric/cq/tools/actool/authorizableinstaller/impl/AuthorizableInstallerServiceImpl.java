@@ -68,6 +68,7 @@ import biz.netcentric.cq.tools.actool.configmodel.pkcs.RandomPassword;
 import biz.netcentric.cq.tools.actool.crypto.DecryptionService;
 import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
 import biz.netcentric.cq.tools.actool.helper.Constants;
 import biz.netcentric.cq.tools.actool.helper.ContentHelper;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
@@ -108,18 +109,35 @@ public class AuthorizableInstallerServiceImpl implements
     public void installAuthorizables(
             AcConfiguration acConfiguration,
             AuthorizablesConfig authorizablesConfigBeans,
-            final Session session, InstallationLogger installLog)
+            final Session session, InstallationLogger installLog, BatchedSessionSaver sessionSaver)
             throws RepositoryException, AuthorizableCreatorException, LoginException, IOException, GeneralSecurityException {
 
         AuthInstallerUserManager userManager = new AuthInstallerUserManagerPrefetchingImpl(AccessControlUtils.getUserManagerAutoSaveDisabled(session), session.getValueFactory(), installLog);
 
-        Set<String> authorizablesFromConfigurations = authorizablesConfigBeans.getAuthorizableIds();
+        // also contains the authorizables not installed in this run (if only a subset is installed)
+        Set<String> authorizablesFromConfigurations = acConfiguration.getAuthorizablesConfig().getAuthorizableIds();
+        int countSkippedFromCheckpoint = 0;
         for (AuthorizableConfigBean authorizableConfigBean : authorizablesConfigBeans) {
 
+            if (sessionSaver.isAuthorizableCompleted(authorizableConfigBean.getAuthorizableId())) {
+                countSkippedFromCheckpoint++;
+                installLog.incCountAuthorizablesProcessed();
+                continue;
+            }
+            sessionSaver.beforeAuthorizableChange(authorizableConfigBean.getAuthorizableId());
             installAuthorizableConfigurationBean(session, userManager, acConfiguration,
                     authorizableConfigBean, installLog, authorizablesFromConfigurations);
+            sessionSaver.authorizableCompleted(authorizableConfigBean.getAuthorizableId());
+            installLog.incCountAuthorizablesProcessed();
+
+            if (sessionSaver.itemProcessed()) {
+                installLog.addVerboseMessage(LOG, "Saved session after authorizable " + authorizableConfigBean.getAuthorizableId());
+            }
         }
 
+        if (countSkippedFromCheckpoint > 0) {
+            installLog.addMessage(LOG, "Skipped " + countSkippedFromCheckpoint + " authorizables that were already installed according to checkpoint");
+        }
         installLog.addMessage(LOG, "Created "+installLog.getCountAuthorizablesCreated() + " authorizables (moved "+installLog.getCountAuthorizablesMoved() + " authorizables)");
 
     }
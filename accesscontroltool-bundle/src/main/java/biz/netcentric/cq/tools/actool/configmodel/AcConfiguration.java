@@ -8,6 +8,7 @@
  */
 package biz.netcentric.cq.tools.actool.configmodel;
 
+import java.beans.Transient;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -17,6 +18,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+
 /** Root class of the configuration model as it is constructed from the multiple yaml files, it is a fully merged configuration. All loops
  * and variables have been processed. */
 public class AcConfiguration {
@@ -35,6 +38,9 @@ public class AcConfiguration {
 
     private List<AuthorizableConfigBean> virtualGroups = new ArrayList<AuthorizableConfigBean>();
 
+    // privileges of the repository the configuration is applied to (created once per installation run)
+    private PrivilegeIndex privilegeIndex;
+
     public GlobalConfiguration getGlobalConfiguration() {
         return globalConfiguration;
     }
@@ -99,5 +105,14 @@ public class AcConfiguration {
     public void setVirtualGroups(List<AuthorizableConfigBean> virtualGroups) {
         this.virtualGroups = virtualGroups;
     }
+
+    @Transient // not part of the yaml representation of the configuration
+    public PrivilegeIndex getPrivilegeIndex() {
+        return privilegeIndex;
+    }
+
+    public void setPrivilegeIndex(PrivilegeIndex privilegeIndex) {
+        this.privilegeIndex = privilegeIndex;
+    }
     
 }
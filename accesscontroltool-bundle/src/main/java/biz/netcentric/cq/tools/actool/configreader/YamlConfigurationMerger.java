@@ -42,6 +42,7 @@ import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
 import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
 import biz.netcentric.cq.tools.actool.configmodel.GlobalConfiguration;
 import biz.netcentric.cq.tools.actool.helper.Constants;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
 import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
 import biz.netcentric.cq.tools.actool.slingsettings.ExtendedSlingSettingsService;
@@ -110,6 +111,7 @@ public class YamlConfigurationMerger implements ConfigurationMerger {
             yamlParser = new Yaml();
         }
         final ConfigurationsValidator configurationsValidator = new YamlConfigurationsValidator();
+        final PrivilegeIndex privilegeIndex = session != null ? PrivilegeIndex.create(session) : new PrivilegeIndex();
 
         Map<String, Object> globalVariables = getGlobalVariablesForYamlMacroProcessing();
         
@@ -186,8 +188,12 @@ public class YamlConfigurationMerger implements ConfigurationMerger {
             }
 
             // --- ace_config section
+            final AceBeanValidatorImpl aceBeanValidator = getAceBeanValidator(authorizableIdsFromAllConfigs);
+            if (aceBeanValidator != null) {
+                aceBeanValidator.setPrivilegeIndex(privilegeIndex);
+            }
             final Set<AceBean> currentAceBeansFromConfig = configReader.getAceConfigurationBeans(yamlRootList,
-                    getAceBeanValidator(authorizableIdsFromAllConfigs), session, sourceFile);
+                    aceBeanValidator, session, sourceFile);
 
             configurationsValidator.validateKeepOrder(mergedAceBeansFromConfig, currentAceBeansFromConfig, sourceFile);
 
@@ -215,6 +221,7 @@ public class YamlConfigurationMerger implements ConfigurationMerger {
         acConfiguration.setAuthorizablesConfig(mergedAuthorizablesBeansfromConfig);
         acConfiguration.setAceConfig(mergedAceBeansFromConfig);
         acConfiguration.setObsoleteAuthorizables(obsoleteAuthorizables);
+        acConfiguration.setPrivilegeIndex(privilegeIndex);
 
         virtualGroupProcessor.flattenGroupTree(acConfiguration, installLog);
 
@@ -8,6 +8,8 @@
  */
 package biz.netcentric.cq.tools.actool.dumpservice;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -27,10 +29,20 @@ public class AcDumpElementYamlVisitor implements AcDumpElementVisitor {
     public static final String YAML_STRUCTURAL_ELEMENT_PREFIX = "- ";
     private final StringBuilder sb;
     private final int mapOrder;
+    private final Writer writer;
 
     public AcDumpElementYamlVisitor(final int mapOrder, final StringBuilder sb) {
         this.mapOrder = mapOrder;
         this.sb = sb;
+        this.writer = null;
+    }
+
+    /** Creates a visitor that writes each element to the given writer as soon as it is visited (only one element is kept in memory at a
+     * time). IOExceptions of the writer are thrown wrapped in an {@link IllegalStateException}. */
+    public AcDumpElementYamlVisitor(final int mapOrder, final Writer writer) {
+        this.mapOrder = mapOrder;
+        this.sb = new StringBuilder();
+        this.writer = writer;
     }
 
     @Override
@@ -68,6 +80,7 @@ public class AcDumpElementYamlVisitor implements AcDumpElementVisitor {
         }
 
         sb.append("\n");
+        writeToWriter();
     }
 
     private void writeIsMemberOf(final AuthorizableConfigBean authorizableConfigBean) {
@@ -129,6 +142,7 @@ public class AcDumpElementYamlVisitor implements AcDumpElementVisitor {
         writeRestrictions(aceBean, sb);
         sb.append("\n");
         sb.append("\n");
+        writeToWriter();
     }
 
     private void writeRestrictions(final AceBean aceBean, final StringBuilder sb) {
@@ -163,6 +177,7 @@ public class AcDumpElementYamlVisitor implements AcDumpElementVisitor {
                 + commentingDumpElement.getString());
         sb.append("\n");
         sb.append("\n");
+        writeToWriter();
     }
 
     @Override
@@ -182,6 +197,19 @@ public class AcDumpElementYamlVisitor implements AcDumpElementVisitor {
 
         sb.append("\n");
         sb.append("\n");
+        writeToWriter();
+    }
+
+    private void writeToWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.append(sb);
+            sb.setLength(0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write dump: " + e, e);
+        }
     }
 
     public int getMapOrder() {
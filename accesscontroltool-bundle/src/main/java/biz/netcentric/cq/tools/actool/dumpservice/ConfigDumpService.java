@@ -8,7 +8,10 @@
  */
 package biz.netcentric.cq.tools.actool.dumpservice;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.util.List;
 import java.util.Set;
 
@@ -35,6 +38,16 @@ public interface ConfigDumpService {
     public Set<AclBean> getACLDumpBeans(final Session session)
             throws RepositoryException;
 
+    /** Same as {@link #getACLDumpBeans(Session)} but only queries the subtrees relevant for the given restricted paths (the result may
+     * contain ACLs outside of the restricted paths though).
+     *
+     * @param session a JCR session
+     * @param restrictedToPaths paths or regular expressions as used for installations with restricted paths, if empty all ACLs are
+     *            returned
+     * @return the ACLs */
+    public Set<AclBean> getACLDumpBeans(final Session session, final String[] restrictedToPaths)
+            throws RepositoryException;
+
     /** returns a Map with holds either principal or path based ACE data
      *
      * @param keyOrder either principals (AceHelper.PRINCIPAL_BASED_ORDERING) or node paths (AceHelper.PATH_BASED_ORDERING) as keys
@@ -47,6 +60,25 @@ public interface ConfigDumpService {
     public AceDumpData createAclDumpMap(int keyOrder, int aclOrdering,
             List<String> excludePaths, boolean isIncludeUsers, Session session) throws RepositoryException;
 
+    /** Same as {@link #createAclDumpMap(int, int, List, boolean, Session)} but only takes ACLs into account that are found via
+     * {@link #getACLDumpBeans(Session, String[])} for the given restricted paths.
+     *
+     * @param restrictedToPaths paths or regular expressions as used for installations with restricted paths
+     * @return AceDumpData */
+    public AceDumpData createAclDumpMap(int keyOrder, int aclOrdering,
+            List<String> excludePaths, boolean isIncludeUsers, String[] restrictedToPaths, Session session) throws RepositoryException;
+
+    /** returns a path based map containing only the ACEs of the given principals. Instead of traversing all ACLs of the repository, the
+     * ACLs are retrieved via {@link org.apache.jackrabbit.api.security.JackrabbitAccessControlManager#getEffectivePolicies(Set)}. As for
+     * the path based dump, ACEs of principals without authorizable are not contained.
+     *
+     * @param principalNames the principals to retrieve the ACEs for
+     * @param principalBatchSize the number of principals to retrieve the ACLs for at once
+     * @param session a JCR session
+     * @return AceDumpData */
+    public AceDumpData createPrincipalScopedAclDumpMap(Set<String> principalNames, int principalBatchSize, Session session)
+            throws RepositoryException;
+
     /** method that return a dump comprising of all groups and all aces in path based view
      *
      * @return a string comprising the dump information */
@@ -57,4 +89,35 @@ public interface ConfigDumpService {
      * @return a string comprising the dump information */
     public String getCompletePrincipalBasedDumpsAsString();
 
+    /** Writes a dump comprising of all groups and all ACEs in YAML format to the given writer. For the path based view, the ACLs are read
+     * and written one after the other (only one ACL is held in memory at a time), users (if included) are written after the ACEs in that
+     * case.
+     *
+     * @param keyOrder either principals (AcHelper.PRINCIPAL_BASED_ORDER) or node paths (AcHelper.PATH_BASED_ORDER) as keys
+     * @param writer the writer to write the dump to (it is not closed)
+     * @param session a JCR session */
+    public void writeCompleteDump(int keyOrder, Writer writer, Session session) throws IOException, RepositoryException;
+
+    /** Writes a dump as with {@link #writeCompleteDump(int, Writer, Session)} to a new file in the temp directory. Files of previous calls
+     * are deleted once there are more than the configured number of dumps to save.
+     *
+     * @param keyOrder either principals (AcHelper.PRINCIPAL_BASED_ORDER) or node paths (AcHelper.PATH_BASED_ORDER) as keys
+     * @param persistDump if true, the file is also saved in the repository like {@link #getCompletePathBasedDumpsAsString()} (always
+     *            completely, as the file is streamed to the repository)
+     * @return the file containing the dump */
+    public File getCompleteDumpAsFile(int keyOrder, boolean persistDump) throws IOException;
+
+
+    /** Returns the storage information of the dumps persisted in the repository (the dumps themselves are not read).
+     *
+     * @param session the session to read the dumps with
+     * @return the persisted dumps, newest first */
+    public List<PersistedDumpInfo> getPersistedDumpInfos(Session session) throws IOException, RepositoryException;
+
+    /** Opens a dump persisted in the repository, dumps stored as delta are reconstructed from the dumps they are based on.
+     *
+     * @param dumpName the name of the dump node as returned by {@link PersistedDumpInfo#getName()}
+     * @param session the session to read the dump with
+     * @return the dump in YAML format (UTF-8) */
+    public InputStream openPersistedDump(String dumpName, Session session) throws IOException, RepositoryException;
 }
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+
+/** Storage information of a dump persisted below /var/statistics/achistory. */
+public class PersistedDumpInfo {
+
+    private final String name;
+    private final Date created;
+    private final boolean isDelta;
+    private final String baseDumpName;
+    private final long storageSize;
+    private final long size;
+    private final int countDumpsToRead;
+
+    public PersistedDumpInfo(String name, Date created, boolean isDelta, String baseDumpName, long storageSize, long size,
+            int countDumpsToRead) {
+        this.name = name;
+        this.created = created;
+        this.isDelta = isDelta;
+        this.baseDumpName = baseDumpName;
+        this.storageSize = storageSize;
+        this.size = size;
+        this.countDumpsToRead = countDumpsToRead;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+    /** @return true if the dump is stored as delta to the dump {@link #getBaseDumpName()}, false if it is stored completely */
+    public boolean isDelta() {
+        return isDelta;
+    }
+
+    /** @return the name of the dump the delta is based on or null for complete dumps */
+    public String getBaseDumpName() {
+        return baseDumpName;
+    }
+
+    /** @return the number of bytes stored in the repository (compressed) */
+    public long getStorageSize() {
+        return storageSize;
+    }
+
+    /** @return the number of bytes of the dump (uncompressed) */
+    public long getSize() {
+        return size;
+    }
+
+    /** @return the number of dumps that have to be read to reconstruct the dump (the dump itself and all dumps it is based on) */
+    public int getCountDumpsToRead() {
+        return countDumpsToRead;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + (created != null ? new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(created) : "unknown date") + "): "
+                + (isDelta ? "delta to " + baseDumpName : "complete") + ", " + FileUtils.byteCountToDisplaySize(storageSize)
+                + " stored for " + FileUtils.byteCountToDisplaySize(size) + ", reconstructed from " + countDumpsToRead + " dump(s)";
+    }
+}
@@ -8,9 +8,21 @@ d * (C) Copyright 2015 Netcentric AG.
  */
 package biz.netcentric.cq.tools.actool.dumpservice.impl;
 
+import static biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger.msHumanReadable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -20,26 +32,27 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.AccessDeniedException;
-import javax.jcr.ItemExistsException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
-import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.ValueFormatException;
-import javax.jcr.lock.LockException;
-import javax.jcr.nodetype.ConstraintViolationException;
-import javax.jcr.nodetype.NoSuchNodeTypeException;
 import javax.jcr.security.AccessControlEntry;
-import javax.jcr.version.VersionException;
+import javax.jcr.security.AccessControlPolicy;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.Group;
@@ -54,6 +67,7 @@ import org.apache.jackrabbit.util.Text;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
@@ -66,18 +80,22 @@ import biz.netcentric.cq.tools.actool.authorizableinstaller.impl.AuthorizableIns
 import biz.netcentric.cq.tools.actool.comparators.AcePathComparator;
 import biz.netcentric.cq.tools.actool.comparators.AcePermissionComparator;
 import biz.netcentric.cq.tools.actool.comparators.AuthorizableBeanIDComparator;
-import biz.netcentric.cq.tools.actool.comparators.JcrCreatedComparator;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
 import biz.netcentric.cq.tools.actool.dumpservice.AcDumpElementYamlVisitor;
 import biz.netcentric.cq.tools.actool.dumpservice.AceDumpData;
 import biz.netcentric.cq.tools.actool.dumpservice.CompleteAcDump;
 import biz.netcentric.cq.tools.actool.dumpservice.ConfigDumpService;
+import biz.netcentric.cq.tools.actool.dumpservice.DumpComment;
+import biz.netcentric.cq.tools.actool.dumpservice.DumpSectionElement;
+import biz.netcentric.cq.tools.actool.dumpservice.MapKey;
+import biz.netcentric.cq.tools.actool.dumpservice.PersistedDumpInfo;
 import biz.netcentric.cq.tools.actool.dumpservice.impl.DumpServiceImpl.Configuration;
 import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
 import biz.netcentric.cq.tools.actool.helper.AceWrapper;
 import biz.netcentric.cq.tools.actool.helper.AclBean;
+import biz.netcentric.cq.tools.actool.helper.AclQueryStatistics;
 import biz.netcentric.cq.tools.actool.helper.Constants;
 import biz.netcentric.cq.tools.actool.helper.QueryHelper;
 import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
@@ -101,10 +119,18 @@ public class DumpServiceImpl implements ConfigDumpService {
     static final String DUMP_SERVICE_EXCLUDE_PATHS_PATH = "DumpService.queryExcludePaths";
     static final String DUMP_SERVICE_NR_OF_SAVED_DUMPS = "DumpService.nrOfSavedDumps";
     static final String DUMP_INCLUDE_USERS = "DumpService.includeUsers";
+    static final String DUMP_FILES_DIRECTORY = "actool-dumps";
 
     private String[] queryExcludePaths;
     private int nrOfSavedDumps;
+    private int fullDumpInterval;
     private boolean includeUsersInDumps = false;
+    private int maxConcurrentAclQueries;
+    private int aclQuerySplitThreshold;
+
+    /** Children of jcr:root whose ACL query exceeded the split threshold, they are queried per child node right away. */
+    private final Set<String> largeAclQueryRootPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private ExecutorService aclQueryExecutor;
 
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     private SlingRepository repository;
@@ -116,18 +142,50 @@ public class DumpServiceImpl implements ConfigDumpService {
         @AttributeDefinition(name="Number of dumps to save", description="Number of last dumps which get saved in the repository under /var/statistics/achistory")
         int DumpService_nrOfSavedDumps() default 5;
         
+        @AttributeDefinition(name="Full dump interval", description="Dumps are saved gzip-compressed, each dump as delta to the previous one, except for every n-th dump that is saved completely (1 saves all dumps completely)")
+        int DumpService_fullDumpInterval() default 10;
+
         @AttributeDefinition(name="Include users in dumps", description="If selected, also users with their ACEs get added to dumps")
         boolean DumpService_includeUsers() default false;
         
         @AttributeDefinition(name="AC query exclude paths", description="direct children of jcr:root which get excluded from all dumps (also from internal dumps)")
         String[] DumpService_queryExcludePaths() default {"/home", "/jcr:system", "/tmp"};
+
+        @AttributeDefinition(name="Max concurrent ACL queries", description="Number of queries for ACLs (one per child of jcr:root) that run in parallel, each with its own service session. 1 runs the queries one after the other.")
+        int DumpService_maxConcurrentAclQueries() default 4;
+
+        @AttributeDefinition(name="ACL query split threshold", description="If the query for ACLs below a child of jcr:root returns more ACLs than this, it is stopped and run per child node (one level deeper) instead, also for subsequent dumps. 0 disables splitting.")
+        int DumpService_aclQuerySplitThreshold() default 5000;
     }
     
     @Activate
     public void activate(Configuration configuration) throws Exception {
         queryExcludePaths = configuration.DumpService_queryExcludePaths();
         nrOfSavedDumps = configuration.DumpService_nrOfSavedDumps();
+        fullDumpInterval = Math.max(1, configuration.DumpService_fullDumpInterval());
         includeUsersInDumps = configuration.DumpService_includeUsers();
+        maxConcurrentAclQueries = configuration.DumpService_maxConcurrentAclQueries();
+        aclQuerySplitThreshold = configuration.DumpService_aclQuerySplitThreshold();
+        largeAclQueryRootPaths.clear();
+        if (maxConcurrentAclQueries > 1) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            aclQueryExecutor = Executors.newFixedThreadPool(maxConcurrentAclQueries, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ACTool-ACL-Query-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (aclQueryExecutor != null) {
+            aclQueryExecutor.shutdown();
+            aclQueryExecutor = null;
+        }
     }
 
     @Override
@@ -175,71 +233,175 @@ public class DumpServiceImpl implements ConfigDumpService {
 
     }
 
-    private void persistDump(String dump, Session session) {
+    @Override
+    public File getCompleteDumpAsFile(int keyOrder, boolean persistDump) throws IOException {
+        File dumpDirectory = new File(System.getProperty("java.io.tmpdir"), DUMP_FILES_DIRECTORY);
+        if (!dumpDirectory.isDirectory() && !dumpDirectory.mkdirs()) {
+            throw new IOException("Could not create directory " + dumpDirectory);
+        }
+        deleteOldDumpFiles(dumpDirectory);
+        File dumpFile = File.createTempFile(DUMP_NODE_PREFIX, DUMP_FILE_EXTENSION, dumpDirectory);
+        Session session = null;
         try {
-            Node rootNode = HistoryUtils.getAcHistoryRootNode(session);
-            createTransientDumpNode(dump, rootNode);
-            session.save();
-        } catch (RepositoryException e) {
-            LOG.error("RepositoryException: {}", e);
+            session = repository.loginService(null, null);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dumpFile), StandardCharsets.UTF_8))) {
+                writeCompleteDump(keyOrder, writer, session);
+            }
+            if (persistDump) {
+                persistDump(dumpFile, session);
+            }
+            return dumpFile;
+        } catch (RepositoryException | IOException | RuntimeException e) {
+            if (!dumpFile.delete()) {
+                LOG.debug("Could not delete incomplete dump file {}", dumpFile);
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("Could not create dump: " + e, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
         }
     }
 
-    private void createTransientDumpNode(String dump, Node rootNode)
-            throws ItemExistsException, PathNotFoundException,
-            NoSuchNodeTypeException, LockException, VersionException,
-            ConstraintViolationException, RepositoryException,
-            ValueFormatException {
-
-        NodeIterator nodeIt = rootNode.getNodes();
+    private void deleteOldDumpFiles(File dumpDirectory) {
+        File[] dumpFiles = dumpDirectory.listFiles();
+        if (dumpFiles == null || dumpFiles.length < nrOfSavedDumps) {
+            return;
+        }
+        Arrays.sort(dumpFiles, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Long.compare(file2.lastModified(), file1.lastModified());
+            }
+        });
+        // keep space for the new dump
+        for (int i = Math.max(nrOfSavedDumps - 1, 0); i < dumpFiles.length; i++) {
+            if (!dumpFiles[i].delete()) {
+                LOG.warn("Could not delete old dump file {}", dumpFiles[i]);
+            }
+        }
+    }
 
-        // TreeSet used here since only this type offers the methods first() and
-        // last()
-        TreeSet<Node> dumpNodes = new TreeSet<Node>(new JcrCreatedComparator());
+    @Override
+    public void writeCompleteDump(int keyOrder, Writer writer, Session session) throws IOException, RepositoryException {
+        LOG.info("Starting to write dump for "
+                + (keyOrder == AcHelper.PRINCIPAL_BASED_ORDER ? "PRINCIPAL_BASED_ORDER" : "PATH_BASED_ORDER"));
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        PrincipalResolutionCache principalResolutionCache = new PrincipalResolutionCache(((JackrabbitSession) session).getUserManager());
+        AcDumpElementYamlVisitor visitor = new AcDumpElementYamlVisitor(keyOrder, writer);
+        try {
+            if (keyOrder == AcHelper.PATH_BASED_ORDER) {
+                writePathBasedDump(visitor, session, principalResolutionCache);
+            } else {
+                // the ACEs have to be grouped by principal, only the YAML is streamed
+                AceDumpData aceDumpData = createAclDumpMap(keyOrder, AcHelper.ACE_ORDER_ACTOOL_BEST_PRACTICE, includeUsersInDumps, null,
+                        session, principalResolutionCache);
+                Set<User> usersFromACEs = getUsersFromAces(keyOrder, aceDumpData.getAceDump(), principalResolutionCache);
+                new CompleteAcDump(aceDumpData, getGroupBeans(session), getUserBeans(usersFromACEs), keyOrder,
+                        "Dump created: " + new Date(), this).accept(visitor);
+            }
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        writer.flush();
+        LOG.info("Wrote dump in {} (resolved principals: {})", msHumanReadable(stopWatch.getTime()), principalResolutionCache);
+    }
 
-        Node previousDumpNode = null;
+    /** Writes the ACLs in order of their paths, only one ACL is held in memory at a time. As the order of the sections is not relevant
+     * for YAML, the users (that are only known once all ACEs are read) are written at the end. */
+    private void writePathBasedDump(AcDumpElementYamlVisitor visitor, Session session,
+            PrincipalResolutionCache principalResolutionCache) throws RepositoryException {
+        visitor.visit(new DumpComment("Dump created: " + new Date()));
+        visitor.visit(new DumpSectionElement(Constants.GROUP_CONFIGURATION_KEY));
+        for (AuthorizableConfigBean groupBean : getGroupBeans(session)) {
+            groupBean.accept(visitor);
+        }
 
-        // get all dump nodes
-        while (nodeIt.hasNext()) {
-            Node currNode = nodeIt.nextNode();
+        principalResolutionCache.prefetchGroups();
+        // sorted by path as for the map based dump, repo policies use an empty key
+        Map<String, String> contextPathsByKey = new TreeMap<String, String>();
+        for (String repPolicyNodePath : getRepPolicyNodePaths(session, null)) {
+            String contextPath = getContextPath(repPolicyNodePath);
+            contextPathsByKey.put(StringUtils.defaultString(contextPath), contextPath);
+        }
 
-            if (currNode.getName().startsWith(DUMP_NODE_PREFIX)) {
-                dumpNodes.add(currNode);
+        visitor.visit(new DumpSectionElement(Constants.ACE_CONFIGURATION_KEY));
+        Set<User> usersFromACEs = new HashSet<User>();
+        for (Map.Entry<String, String> contextPathEntry : contextPathsByKey.entrySet()) {
+            AclBean aclBean;
+            try {
+                aclBean = new AclBean(AccessControlUtils.getAccessControlList(session, contextPathEntry.getValue()),
+                        contextPathEntry.getValue());
+            } catch (RepositoryException e) {
+                LOG.error("RepositoryException: {}", e);
+                continue;
+            }
+            if (aclBean.getAcl() == null) {
+                continue;
+            }
+            Set<AceBean> aceBeans = getNewAceSet(AcHelper.ACE_ORDER_ACTOOL_BEST_PRACTICE);
+            aceBeans.addAll(getAceBeans(aclBean, includeUsersInDumps, principalResolutionCache, new ArrayList<AceBean>()));
+            if (aceBeans.isEmpty()) {
+                continue;
+            }
+            visitor.visit(new MapKey(contextPathEntry.getKey(), null));
+            for (AceBean aceBean : aceBeans) {
+                aceBean.accept(visitor);
+                if (includeUsersInDumps) {
+                    Authorizable authorizable = principalResolutionCache.getAuthorizable(aceBean.getPrincipalName());
+                    // principals without authorizable (legacy ACEs) are not included
+                    if (authorizable != null && !authorizable.isGroup()) {
+                        usersFromACEs.add((User) authorizable);
+                    }
+                }
             }
         }
-        // try to get previous dump node
-        if (!dumpNodes.isEmpty()) {
-            previousDumpNode = dumpNodes.first();
+
+        if (includeUsersInDumps) {
+            visitor.visit(new DumpSectionElement(Constants.USER_CONFIGURATION_KEY));
+            for (AuthorizableConfigBean userBean : getUserBeans(usersFromACEs)) {
+                userBean.accept(visitor);
+            }
         }
-        // is limit of dump nodes to save reached?
-        if (dumpNodes.size() > (nrOfSavedDumps - 1)) {
-            Node oldestDumpNode = dumpNodes.last();
-            oldestDumpNode.remove();
+    }
+
+    private void persistDump(String dump, Session session) {
+        try {
+            getPersistedDumpStore().persist(dump, HistoryUtils.getAcHistoryRootNode(session));
+            session.save();
+        } catch (RepositoryException | IOException e) {
+            LOG.error("Could not persist dump: " + e, e);
         }
-        Node dumpNode = getNewDumpNode(dump, rootNode);
+    }
 
-        // order the newest dump node as first child node of ac root node
-        if (previousDumpNode != null) {
-            rootNode.orderBefore(dumpNode.getName(), previousDumpNode.getName());
+    private void persistDump(File dumpFile, Session session) {
+        try {
+            getPersistedDumpStore().persist(dumpFile, HistoryUtils.getAcHistoryRootNode(session));
+            session.save();
+        } catch (RepositoryException | IOException e) {
+            LOG.error("Could not persist dump: " + e, e);
         }
     }
 
-    private Node getNewDumpNode(String dump, Node rootNode)
-            throws ItemExistsException, PathNotFoundException,
-            NoSuchNodeTypeException, LockException, VersionException,
-            ConstraintViolationException, RepositoryException,
-            ValueFormatException {
-        // create necessary child node&properties
-        long timestamp = System.currentTimeMillis();
-        Node dumpNode = rootNode.addNode(DUMP_NODE_PREFIX + timestamp
-                + DUMP_FILE_EXTENSION, "nt:file");
+    @Override
+    public List<PersistedDumpInfo> getPersistedDumpInfos(Session session) throws IOException, RepositoryException {
+        return getPersistedDumpStore().getDumpInfos(HistoryUtils.getAcHistoryRootNode(session));
+    }
+
+    @Override
+    public InputStream openPersistedDump(String dumpName, Session session) throws IOException, RepositoryException {
+        return getPersistedDumpStore().open(HistoryUtils.getAcHistoryRootNode(session), dumpName);
+    }
 
-        Node dumpJcrContenNodet = dumpNode
-                .addNode("jcr:content", "nt:resource");
-        dumpJcrContenNodet.setProperty("jcr:mimeType", "text/plain");
-        dumpJcrContenNodet.setProperty("jcr:encoding", "utf-8");
-        dumpJcrContenNodet.setProperty("jcr:data", dump);
-        return dumpNode;
+    private PersistedDumpStore getPersistedDumpStore() {
+        return new PersistedDumpStore(DUMP_NODE_PREFIX, DUMP_FILE_EXTENSION, nrOfSavedDumps, fullDumpInterval);
     }
 
     /** returns the complete AC dump (groups&ACEs) as String in YAML format
@@ -254,15 +416,19 @@ public class DumpServiceImpl implements ConfigDumpService {
                 + (keyOrder == AcHelper.PRINCIPAL_BASED_ORDER ? "PRINCIPAL_BASED_ORDER" : "PATH_BASED_ORDER"));
         try {
 
+            // the principals are resolved once for both the ACEs and the users
+            PrincipalResolutionCache principalResolutionCache = new PrincipalResolutionCache(
+                    ((JackrabbitSession) session).getUserManager());
             AceDumpData aceDumpData = createAclDumpMap(
                     keyOrder, AcHelper.ACE_ORDER_ACTOOL_BEST_PRACTICE, // this ORDER is important to keep the ORDER of denies with
                                                                        // "keepOrder"
                     // attribute that is automatically added if needed
-                    Arrays.asList(queryExcludePaths), session);
+                    includeUsersInDumps, null, session, principalResolutionCache);
             Map<String, Set<AceBean>> aclDumpMap = aceDumpData.getAceDump();
 
             Set<AuthorizableConfigBean> groupBeans = getGroupBeans(session);
-            Set<User> usersFromACEs = getUsersFromAces(keyOrder, session, aclDumpMap);
+            Set<User> usersFromACEs = getUsersFromAces(keyOrder, aclDumpMap, principalResolutionCache);
+            LOG.debug("Resolved principals of dump: {}", principalResolutionCache);
             Set<AuthorizableConfigBean> userBeans = getUserBeans(usersFromACEs);
 
             String configurationDumpAsString = getConfigurationDumpAsString(aceDumpData, groupBeans,
@@ -288,12 +454,11 @@ public class DumpServiceImpl implements ConfigDumpService {
      * @throws AccessDeniedException
      * @throws UnsupportedRepositoryOperationException
      * @throws RepositoryException */
-    private Set<User> getUsersFromAces(int mapOrder, Session session,
-            Map<String, Set<AceBean>> aclDumpMap) throws AccessDeniedException,
+    private Set<User> getUsersFromAces(int mapOrder,
+            Map<String, Set<AceBean>> aclDumpMap, PrincipalResolutionCache principalResolutionCache) throws AccessDeniedException,
             UnsupportedRepositoryOperationException, RepositoryException {
 
         Set<User> usersFromACEs = new HashSet<User>();
-        UserManager um = ((JackrabbitSession) session).getUserManager();
 
         // if we have a principal ordered ACE map, all authorizables are
         // contained in the keySet of the map
@@ -302,7 +467,7 @@ public class DumpServiceImpl implements ConfigDumpService {
             userIds = aclDumpMap.keySet();
 
             for (String id : userIds) {
-                Authorizable authorizable = um.getAuthorizable(new PrincipalImpl(id));
+                Authorizable authorizable = principalResolutionCache.getAuthorizable(id);
                 if (!authorizable.isGroup()) {
                     User user = (User) authorizable;
                     usersFromACEs.add(user);
@@ -316,7 +481,7 @@ public class DumpServiceImpl implements ConfigDumpService {
 
                 for (AceBean aceBean : aceBeanSet) {
                     String principalId = aceBean.getPrincipalName();
-                    Authorizable authorizable = um.getAuthorizable(new PrincipalImpl(principalId));
+                    Authorizable authorizable = principalResolutionCache.getAuthorizable(principalId);
                     if (!authorizable.isGroup()) {
                         User user = (User) authorizable;
                         usersFromACEs.add(user);
@@ -345,18 +510,21 @@ public class DumpServiceImpl implements ConfigDumpService {
     @Override
     public Set<AclBean> getACLDumpBeans(final Session session)
             throws RepositoryException {
+        return getACLDumpBeans(session, null);
+    }
+
+    @Override
+    public Set<AclBean> getACLDumpBeans(final Session session, final String[] restrictedToPaths)
+            throws RepositoryException {
 
-        List<String> excludeNodesList = Arrays.asList(queryExcludePaths);
-        Set<String> resultPaths = QueryHelper.getRepPolicyNodePaths(session, excludeNodesList);
+        Set<String> resultPaths = getRepPolicyNodePaths(session, restrictedToPaths);
         Set<AclBean> accessControBeanSet = new LinkedHashSet<AclBean>();
 
         // assemble big query result set using the query results of the child
         // paths of jcr:root node
         for (String path : resultPaths) {
             try {
-                String contextPath = !Constants.REPO_POLICY_NODE.equals(Text.getName(path))
-                        ? Text.getRelativeParent(path, 1)
-                        : null /*  repo policies are accessed by using a null path */;
+                String contextPath = getContextPath(path);
 
                 JackrabbitAccessControlList jackrabbitAcl = AccessControlUtils.getAccessControlList(session, contextPath);
                 AclBean aclBean = new AclBean(jackrabbitAcl, contextPath);
@@ -372,6 +540,25 @@ public class DumpServiceImpl implements ConfigDumpService {
         return accessControBeanSet;
     }
 
+    private Set<String> getRepPolicyNodePaths(final Session session, final String[] restrictedToPaths) {
+        List<String> excludeNodesList = Arrays.asList(queryExcludePaths);
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        AclQueryStatistics aclQueryStatistics = new AclQueryStatistics();
+        Set<String> resultPaths = QueryHelper.getRepPolicyNodePaths(session, excludeNodesList, restrictedToPaths, repository,
+                aclQueryExecutor, maxConcurrentAclQueries, aclQuerySplitThreshold, largeAclQueryRootPaths, aclQueryStatistics);
+        LOG.info("Found {} ACLs with {} queries in {} (slowest first: {})", resultPaths.size(), aclQueryStatistics.getCountQueries(),
+                msHumanReadable(stopWatch.getTime()), StringUtils.abbreviate(aclQueryStatistics.toString(), 500));
+        return resultPaths;
+    }
+
+    /** @return the path the ACL at the given rep:policy node path is effective on (null for repo policies) */
+    private static String getContextPath(String repPolicyNodePath) {
+        return !Constants.REPO_POLICY_NODE.equals(Text.getName(repPolicyNodePath))
+                ? Text.getRelativeParent(repPolicyNodePath, 1)
+                : null /* repo policies are accessed by using a null path */;
+    }
+
     /** Called from JMX console using the OSGi configuration.
      * 
      * @param keyOrder
@@ -399,13 +586,27 @@ public class DumpServiceImpl implements ConfigDumpService {
     @Override
     public AceDumpData createAclDumpMap(final int keyOrder, final int aclOrdering,
             final List<String> excludePaths, final boolean isIncludeUsers, Session session) throws RepositoryException {
+        return createAclDumpMap(keyOrder, aclOrdering, excludePaths, isIncludeUsers, null, session);
+    }
+
+    @Override
+    public AceDumpData createAclDumpMap(final int keyOrder, final int aclOrdering,
+            final List<String> excludePaths, final boolean isIncludeUsers, final String[] restrictedToPaths, Session session)
+            throws RepositoryException {
+        return createAclDumpMap(keyOrder, aclOrdering, isIncludeUsers, restrictedToPaths, session,
+                new PrincipalResolutionCache(((JackrabbitSession) session).getUserManager()));
+    }
+
+    private AceDumpData createAclDumpMap(final int keyOrder, final int aclOrdering, final boolean isIncludeUsers,
+            final String[] restrictedToPaths, Session session, PrincipalResolutionCache principalResolutionCache)
+            throws RepositoryException {
 
         AceDumpData aceDumpData = new AceDumpData();
-        UserManager um = ((JackrabbitSession) session).getUserManager();
+        principalResolutionCache.prefetchGroups();
         Map<String, Set<AceBean>> aceMap = new TreeMap<String, Set<AceBean>>();
         Map<String, Set<AceBean>> legacyAceMap = new TreeMap<String, Set<AceBean>>();
 
-        Set<AclBean> aclBeanSet = getACLDumpBeans(session);
+        Set<AclBean> aclBeanSet = getACLDumpBeans(session, restrictedToPaths);
 
         // build a set containing all ACE found in the original order
         for (AclBean aclBean : aclBeanSet) {
@@ -414,45 +615,114 @@ public class DumpServiceImpl implements ConfigDumpService {
                 continue;
             }
 
-            boolean allowExistsInListEarlier = false;
-            for (AccessControlEntry ace : aclBean.getAcl()
-                    .getAccessControlEntries()) {
-                if (!(ace instanceof JackrabbitAccessControlEntry)) {
-                    throw new IllegalStateException("AC entry is not a JackrabbitAccessControlEntry: " + ace);
+            List<AceBean> legacyAceBeans = new ArrayList<AceBean>();
+            for (AceBean aceBean : getAceBeans(aclBean, isIncludeUsers, principalResolutionCache, legacyAceBeans)) {
+                addBeanToMap(keyOrder, aclOrdering, aceMap, aceBean);
+            }
+            // otherwise put in map holding legacy ACEs
+            for (AceBean legacyAceBean : legacyAceBeans) {
+                addBeanToMap(keyOrder, aclOrdering, legacyAceMap, legacyAceBean);
+            }
+        }
+
+        aceDumpData.setAceDump(aceMap);
+        LOG.info("Resolved principals of {} ACLs ({})", aclBeanSet.size(), principalResolutionCache);
+
+        return aceDumpData;
+
+    }
+
+    /** @return the ACEs of the given ACL for the dump, ACEs of principals without authorizable are added to legacyAceBeans */
+    private List<AceBean> getAceBeans(AclBean aclBean, boolean isIncludeUsers, PrincipalResolutionCache principalResolutionCache,
+            List<AceBean> legacyAceBeans) throws RepositoryException {
+        List<AceBean> aceBeans = new ArrayList<AceBean>();
+        boolean allowExistsInListEarlier = false;
+        for (AccessControlEntry ace : aclBean.getAcl()
+                .getAccessControlEntries()) {
+            if (!(ace instanceof JackrabbitAccessControlEntry)) {
+                throw new IllegalStateException("AC entry is not a JackrabbitAccessControlEntry: " + ace);
+            }
+            AceWrapper tmpBean = new AceWrapper((JackrabbitAccessControlEntry) ace, aclBean.getJcrPath());
+            AceBean tmpAceBean = AcHelper.getAceBean(tmpBean);
+
+            // sets keepOrder true if ACE deny entries are found that are not at top of list
+            if (tmpAceBean.isAllow()) {
+                allowExistsInListEarlier = true;
+            } else {
+                if (allowExistsInListEarlier && !tmpAceBean.isAllow()) {
+                    tmpAceBean.setKeepOrder(true);
                 }
-                AceWrapper tmpBean = new AceWrapper((JackrabbitAccessControlEntry) ace, aclBean.getJcrPath());
-                AceBean tmpAceBean = AcHelper.getAceBean(tmpBean);
-
-                // sets keepOrder true if ACE deny entries are found that are not at top of list
-                if (tmpAceBean.isAllow()) {
-                    allowExistsInListEarlier = true;
-                } else {
-                    if (allowExistsInListEarlier && !tmpAceBean.isAllow()) {
-                        tmpAceBean.setKeepOrder(true);
-                    }
+            }
+
+            Authorizable authorizable = principalResolutionCache.getAuthorizable(tmpAceBean.getPrincipalName());
+
+            // if this group exists under home
+            if (authorizable != null) {
+                tmpAceBean.setAuthorizableId(authorizable.getID());
+                if (authorizable.isGroup() || isIncludeUsers) {
+                    aceBeans.add(tmpAceBean);
                 }
+            } else {
+                legacyAceBeans.add(tmpAceBean);
+            }
+        }
+        return aceBeans;
+    }
 
-                Authorizable authorizable = um.getAuthorizable(new PrincipalImpl(tmpAceBean.getPrincipalName()));
+    @Override
+    public AceDumpData createPrincipalScopedAclDumpMap(Set<String> principalNames, int principalBatchSize, Session session)
+            throws RepositoryException {
 
-                // if this group exists under home
-                if (authorizable != null) {
-                    tmpAceBean.setAuthorizableId(authorizable.getID());
-                    if (authorizable.isGroup() || isIncludeUsers) {
-                        addBeanToMap(keyOrder, aclOrdering, aceMap, tmpAceBean);
-                    }
+        JackrabbitAccessControlManager acMgr = (JackrabbitAccessControlManager) session.getAccessControlManager();
+        // only few principals are resolved, hence groups are not prefetched
+        PrincipalResolutionCache principalResolutionCache = new PrincipalResolutionCache(((JackrabbitSession) session).getUserManager());
+        Map<String, Set<AceBean>> aceMap = new TreeMap<String, Set<AceBean>>();
+
+        List<String> principalNamesList = new ArrayList<String>(principalNames);
+        for (int i = 0; i < principalNamesList.size(); i += principalBatchSize) {
+            Set<Principal> principalsBatch = new HashSet<Principal>();
+            for (String principalName : principalNamesList.subList(i, Math.min(i + principalBatchSize, principalNamesList.size()))) {
+                principalsBatch.add(new PrincipalImpl(principalName));
+            }
+
+            for (AccessControlPolicy policy : acMgr.getEffectivePolicies(principalsBatch)) {
+                if (!(policy instanceof JackrabbitAccessControlList)) {
+                    continue;
                 }
-                // otherwise put in map holding legacy ACEs
-                else {
-                    addBeanToMap(keyOrder, aclOrdering, legacyAceMap, tmpAceBean);
+                JackrabbitAccessControlList acl = (JackrabbitAccessControlList) policy;
+                String aclPath = acl.getPath();
+                if (isExcludedFromAclQuery(aclPath)) {
+                    continue;
+                }
+                // same as for the path based dump: authorizable ids are set, ACEs of legacy principals are not contained
+                List<AceBean> legacyAceBeans = new ArrayList<AceBean>();
+                for (AceBean aceBean : getAceBeans(new AclBean(acl, aclPath), true, principalResolutionCache, legacyAceBeans)) {
+                    // depending on the implementation effective policies can contain entries of other principals
+                    if (principalNames.contains(aceBean.getPrincipalName())) {
+                        addBeanToMap(AcHelper.PATH_BASED_ORDER, AcHelper.ACE_ORDER_NONE, aceMap, aceBean);
+                    }
                 }
-
             }
         }
 
+        AceDumpData aceDumpData = new AceDumpData();
         aceDumpData.setAceDump(aceMap);
-
+        LOG.info("Resolved principals of ACLs of {} principals ({})", principalNames.size(), principalResolutionCache);
         return aceDumpData;
+    }
 
+    /** Same semantics as the excludes for {@link QueryHelper#getRepPolicyNodePaths(Session, List)}: The ACL of the excluded node itself is
+     * still contained. */
+    private boolean isExcludedFromAclQuery(String aclPath) {
+        if (aclPath == null) {
+            return false;
+        }
+        for (String queryExcludePath : queryExcludePaths) {
+            if (aclPath.startsWith(queryExcludePath + "/")) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void addBeanToMap(final int keyOrder, final int aclOrdering,
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/** Line based delta between two texts. The delta consists of the operations
+ * <ul>
+ * <li><code>=start,count</code>: copy count lines of the base text starting at line start (0-based)</li>
+ * <li><code>+count</code>: insert the count lines following the operation</li>
+ * </ul>
+ * As dumps are ordered, the copy operations are searched close to the end of the previous copy first. */
+final class LineDelta {
+
+    private static final char OP_COPY = '=';
+    private static final char OP_INSERT = '+';
+
+    // number of positions of a line in the base text that are checked for the longest match
+    private static final int MAX_CANDIDATES = 16;
+    // shorter lines are inserted rather than copied if they do not start a longer match
+    private static final int MIN_LENGTH_SINGLE_LINE_COPY = 16;
+
+    private LineDelta() {
+    }
+
+    /** Splits the text at '\n' (a trailing '\n' results in an empty last line, hence {@link #join(List)} restores the exact text). */
+    static List<String> splitLines(String text) {
+        if (text.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(Arrays.asList(StringUtils.splitPreserveAllTokens(text, '\n')));
+    }
+
+    static String join(List<String> lines) {
+        return StringUtils.join(lines, '\n');
+    }
+
+    /** @return the delta lines that create target when applied to base */
+    static List<String> encode(List<String> base, List<String> target) {
+        Map<String, List<Integer>> basePositionsByLine = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < base.size(); i++) {
+            List<Integer> positions = basePositionsByLine.get(base.get(i));
+            if (positions == null) {
+                positions = new ArrayList<Integer>(1);
+                basePositionsByLine.put(base.get(i), positions);
+            }
+            positions.add(i);
+        }
+
+        List<String> delta = new ArrayList<String>();
+        List<String> linesToInsert = new ArrayList<String>();
+        int expectedBasePosition = 0;
+        int i = 0;
+        while (i < target.size()) {
+            int bestStart = -1;
+            int bestLength = 0;
+            List<Integer> positions = basePositionsByLine.get(target.get(i));
+            if (positions != null) {
+                int fromIndex = Collections.binarySearch(positions, expectedBasePosition);
+                if (fromIndex < 0) {
+                    fromIndex = -fromIndex - 1;
+                }
+                int countCandidates = Math.min(MAX_CANDIDATES, positions.size());
+                for (int c = 0; c < countCandidates; c++) {
+                    int candidate = positions.get((fromIndex + c) % positions.size());
+                    int length = getMatchLength(base, candidate, target, i);
+                    if (length > bestLength) {
+                        bestStart = candidate;
+                        bestLength = length;
+                    }
+                    if (candidate == expectedBasePosition) {
+                        // continuation of the previous copy
+                        break;
+                    }
+                }
+            }
+
+            if (bestLength > 1 || (bestLength == 1 && target.get(i).length() >= MIN_LENGTH_SINGLE_LINE_COPY)) {
+                addInsert(delta, linesToInsert);
+                delta.add(OP_COPY + String.valueOf(bestStart) + "," + bestLength);
+                i += bestLength;
+                expectedBasePosition = bestStart + bestLength;
+            } else {
+                linesToInsert.add(target.get(i));
+                i++;
+            }
+        }
+        addInsert(delta, linesToInsert);
+        return delta;
+    }
+
+    private static int getMatchLength(List<String> base, int baseStart, List<String> target, int targetStart) {
+        int length = 0;
+        while (baseStart + length < base.size() && targetStart + length < target.size()
+                && base.get(baseStart + length).equals(target.get(targetStart + length))) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void addInsert(List<String> delta, List<String> linesToInsert) {
+        if (linesToInsert.isEmpty()) {
+            return;
+        }
+        delta.add(OP_INSERT + String.valueOf(linesToInsert.size()));
+        delta.addAll(linesToInsert);
+        linesToInsert.clear();
+    }
+
+    /** @return the target lines as created by applying the delta to base
+     * @throws IllegalArgumentException if the delta does not match the base */
+    static List<String> apply(List<String> base, List<String> delta) {
+        List<String> target = new ArrayList<String>(base.size());
+        int i = 0;
+        while (i < delta.size()) {
+            String operation = delta.get(i);
+            try {
+                if (operation.charAt(0) == OP_COPY) {
+                    int start = Integer.parseInt(StringUtils.substringBetween(operation, String.valueOf(OP_COPY), ","));
+                    int count = Integer.parseInt(StringUtils.substringAfter(operation, ","));
+                    target.addAll(base.subList(start, start + count));
+                    i++;
+                } else if (operation.charAt(0) == OP_INSERT) {
+                    int count = Integer.parseInt(operation.substring(1));
+                    target.addAll(delta.subList(i + 1, i + 1 + count));
+                    i += 1 + count;
+                } else {
+                    throw new IllegalArgumentException("Invalid operation '" + operation + "' at line " + i + " of delta");
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Delta does not match base text at operation '" + operation + "' (line " + i + ")", e);
+            }
+        }
+        return target;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.comparators.JcrCreatedComparator;
+import biz.netcentric.cq.tools.actool.dumpservice.PersistedDumpInfo;
+
+/** Stores dumps gzip-compressed below the history root node. A dump held in memory is stored as {@link LineDelta} to the previous dump,
+ * except for every n-th dump (full dump interval) and dumps that differ too much from the previous one. Dumps written to a file are always
+ * stored completely. Dumps stored before (uncompressed, without dump type) are read as complete dumps. */
+class PersistedDumpStore {
+    private static final Logger LOG = LoggerFactory.getLogger(PersistedDumpStore.class);
+
+    static final String PROPERTY_DUMP_TYPE = "dumpType";
+    static final String PROPERTY_BASE_DUMP = "baseDump";
+    static final String PROPERTY_SIZE = "size";
+    static final String DUMP_TYPE_FULL = "full";
+    static final String DUMP_TYPE_DELTA = "delta";
+
+    private static final String MIME_TYPE_GZIP = "application/gzip";
+
+    private final String dumpNodePrefix;
+    private final String dumpFileExtension;
+    private final int nrOfSavedDumps;
+    private final int fullDumpInterval;
+
+    PersistedDumpStore(String dumpNodePrefix, String dumpFileExtension, int nrOfSavedDumps, int fullDumpInterval) {
+        this.dumpNodePrefix = dumpNodePrefix;
+        this.dumpFileExtension = dumpFileExtension;
+        this.nrOfSavedDumps = nrOfSavedDumps;
+        this.fullDumpInterval = fullDumpInterval;
+    }
+
+    /** Adds the dump as newest dump node (transient) and removes the oldest dump nodes exceeding the number of dumps to save. As the
+     * dump is already held in memory, it is stored as delta to the previous dump where possible. */
+    void persist(String dump, Node rootNode) throws IOException, RepositoryException {
+        List<Node> dumpNodes = getDumpNodes(rootNode);
+        Node previousDumpNode = dumpNodes.isEmpty() ? null : dumpNodes.get(0);
+
+        List<String> delta = null;
+        if (previousDumpNode != null && getCountPreviousDeltas(previousDumpNode) + 1 < fullDumpInterval) {
+            try {
+                List<String> lines = LineDelta.splitLines(dump);
+                delta = LineDelta.encode(readLines(previousDumpNode), lines);
+                if (delta.size() > lines.size() / 2) {
+                    LOG.debug("Dump differs too much from previous dump {}, storing it completely", previousDumpNode.getName());
+                    delta = null;
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                LOG.warn("Could not read previous dump " + previousDumpNode.getName() + ", storing dump completely: " + e, e);
+                delta = null;
+            }
+        }
+
+        long size = getUtf8Length(dump);
+        if (delta != null) {
+            addDumpNode(rootNode, dumpNodes, DUMP_TYPE_DELTA, previousDumpNode.getName(),
+                    IOUtils.toInputStream(LineDelta.join(delta), StandardCharsets.UTF_8), size);
+        } else {
+            addDumpNode(rootNode, dumpNodes, DUMP_TYPE_FULL, null, IOUtils.toInputStream(dump, StandardCharsets.UTF_8), size);
+        }
+    }
+
+    /** Adds the dump file as newest dump node (transient) and removes the oldest dump nodes exceeding the number of dumps to save. The
+     * file is always stored completely as it is streamed to the repository (to create a delta, the dump would have to be held in
+     * memory). */
+    void persist(File dumpFile, Node rootNode) throws IOException, RepositoryException {
+        try (InputStream dump = new FileInputStream(dumpFile)) {
+            addDumpNode(rootNode, getDumpNodes(rootNode), DUMP_TYPE_FULL, null, dump, dumpFile.length());
+        }
+    }
+
+    private void addDumpNode(Node rootNode, List<Node> dumpNodes, String dumpType, String baseDumpName, InputStream content, long size)
+            throws IOException, RepositoryException {
+        Node previousDumpNode = dumpNodes.isEmpty() ? null : dumpNodes.get(0);
+        Node dumpNode = rootNode.addNode(dumpNodePrefix + System.currentTimeMillis() + dumpFileExtension + ".gz", "nt:file");
+        Node contentNode = dumpNode.addNode("jcr:content", "nt:unstructured");
+        setContent(contentNode, dumpType, baseDumpName, content, size);
+        LOG.info("Persisted dump {} as {} ({} bytes compressed for {} bytes)", dumpNode.getName(),
+                baseDumpName != null ? "delta to " + baseDumpName : "full dump", contentNode.getProperty("jcr:data").getLength(), size);
+
+        // order the newest dump node as first child node of ac root node
+        if (previousDumpNode != null) {
+            rootNode.orderBefore(dumpNode.getName(), previousDumpNode.getName());
+        }
+
+        dumpNodes.add(0, dumpNode);
+        removeOldestDumps(dumpNodes);
+    }
+
+    private void removeOldestDumps(List<Node> dumpNodes) throws IOException, RepositoryException {
+        for (int i = dumpNodes.size() - 1; i >= Math.max(nrOfSavedDumps, 1); i--) {
+            Node oldestDumpNode = dumpNodes.get(i);
+            Node successorDumpNode = dumpNodes.get(i - 1);
+            Node successorContentNode = successorDumpNode.getNode("jcr:content");
+            if (isDelta(successorContentNode)
+                    && oldestDumpNode.getName().equals(successorContentNode.getProperty(PROPERTY_BASE_DUMP).getString())) {
+                // the successor must not depend on the removed dump
+                List<String> successorLines = readLines(successorDumpNode);
+                setContent(successorContentNode, DUMP_TYPE_FULL, null,
+                        IOUtils.toInputStream(LineDelta.join(successorLines), StandardCharsets.UTF_8),
+                        successorContentNode.getProperty(PROPERTY_SIZE).getLong());
+                LOG.debug("Stored dump {} completely as its base dump {} is removed", successorDumpNode.getName(),
+                        oldestDumpNode.getName());
+            }
+            oldestDumpNode.remove();
+        }
+    }
+
+    /** @return the dump as stream, complete dumps are decompressed while reading (deltas are only created for dumps that were held in
+     *         memory, those are reconstructed in memory) */
+    InputStream open(Node rootNode, String dumpName) throws IOException, RepositoryException {
+        Node dumpNode = rootNode.getNode(dumpName);
+        Node contentNode = dumpNode.getNode("jcr:content");
+        if (!isDelta(contentNode)) {
+            return openContent(contentNode);
+        }
+        return IOUtils.toInputStream(LineDelta.join(readLines(dumpNode)), StandardCharsets.UTF_8);
+    }
+
+    /** Returns the storage information as stored with the dump nodes, no dump is read to do so.
+     *
+     * @return the storage information of all dumps, newest first */
+    List<PersistedDumpInfo> getDumpInfos(Node rootNode) throws RepositoryException {
+        List<PersistedDumpInfo> dumpInfos = new ArrayList<PersistedDumpInfo>();
+        for (Node dumpNode : getDumpNodes(rootNode)) {
+            Node contentNode = dumpNode.getNode("jcr:content");
+            boolean isDelta = isDelta(contentNode);
+            String baseDumpName = isDelta ? contentNode.getProperty(PROPERTY_BASE_DUMP).getString() : null;
+            long storageSize = contentNode.getProperty("jcr:data").getLength();
+            // dumps stored before were not compressed
+            long size = contentNode.hasProperty(PROPERTY_SIZE) ? contentNode.getProperty(PROPERTY_SIZE).getLong() : storageSize;
+            Date created = dumpNode.hasProperty("jcr:created") ? dumpNode.getProperty("jcr:created").getDate().getTime() : null;
+            dumpInfos.add(new PersistedDumpInfo(dumpNode.getName(), created, isDelta, baseDumpName, storageSize, size,
+                    getCountPreviousDeltas(dumpNode) + 1));
+        }
+        return dumpInfos;
+    }
+
+    /** @return the dump nodes, newest first */
+    private List<Node> getDumpNodes(Node rootNode) throws RepositoryException {
+        List<Node> dumpNodes = new ArrayList<Node>();
+        NodeIterator nodeIt = rootNode.getNodes();
+        while (nodeIt.hasNext()) {
+            Node currNode = nodeIt.nextNode();
+            if (currNode.getName().startsWith(dumpNodePrefix)) {
+                dumpNodes.add(currNode);
+            }
+        }
+        Collections.sort(dumpNodes, new JcrCreatedComparator());
+        return dumpNodes;
+    }
+
+    private int getCountPreviousDeltas(Node dumpNode) throws RepositoryException {
+        int count = 0;
+        Node contentNode = dumpNode.getNode("jcr:content");
+        while (isDelta(contentNode) && dumpNode.getParent().hasNode(contentNode.getProperty(PROPERTY_BASE_DUMP).getString())) {
+            count++;
+            contentNode = dumpNode.getParent().getNode(contentNode.getProperty(PROPERTY_BASE_DUMP).getString()).getNode("jcr:content");
+        }
+        return count;
+    }
+
+    /** @return the lines of the given dump, for deltas all base dumps are read and the deltas are applied */
+    private List<String> readLines(Node dumpNode) throws IOException, RepositoryException {
+        Deque<Node> deltaContentNodes = new ArrayDeque<Node>();
+        Node contentNode = dumpNode.getNode("jcr:content");
+        while (isDelta(contentNode)) {
+            deltaContentNodes.push(contentNode);
+            String baseDumpName = contentNode.getProperty(PROPERTY_BASE_DUMP).getString();
+            if (!dumpNode.getParent().hasNode(baseDumpName)) {
+                throw new IOException("Base dump " + baseDumpName + " of dump " + contentNode.getParent().getName() + " does not exist");
+            }
+            contentNode = dumpNode.getParent().getNode(baseDumpName).getNode("jcr:content");
+        }
+
+        List<String> lines = readContentLines(contentNode);
+        while (!deltaContentNodes.isEmpty()) {
+            lines = LineDelta.apply(lines, readContentLines(deltaContentNodes.pop()));
+        }
+        return lines;
+    }
+
+    private List<String> readContentLines(Node contentNode) throws IOException, RepositoryException {
+        try (InputStream in = openContent(contentNode)) {
+            return LineDelta.splitLines(IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    private InputStream openContent(Node contentNode) throws IOException, RepositoryException {
+        InputStream in = contentNode.getProperty("jcr:data").getBinary().getStream();
+        // dumps stored before were neither compressed nor had a type
+        return contentNode.hasProperty(PROPERTY_DUMP_TYPE) ? new GZIPInputStream(in) : in;
+    }
+
+    private static boolean isDelta(Node contentNode) throws RepositoryException {
+        return contentNode.hasProperty(PROPERTY_DUMP_TYPE)
+                && DUMP_TYPE_DELTA.equals(contentNode.getProperty(PROPERTY_DUMP_TYPE).getString());
+    }
+
+    /** Compresses the content to a temporary file that is then streamed to the binary. */
+    private static void setContent(Node contentNode, String dumpType, String baseDumpName, InputStream content, long size)
+            throws IOException, RepositoryException {
+        File compressedFile = File.createTempFile("actool-dump", ".gz");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(compressedFile))) {
+                IOUtils.copy(content, out);
+            }
+            try (InputStream compressedContent = new FileInputStream(compressedFile)) {
+                contentNode.setProperty("jcr:data", contentNode.getSession().getValueFactory().createBinary(compressedContent));
+            }
+        } finally {
+            if (!compressedFile.delete()) {
+                LOG.debug("Could not delete temporary file {}", compressedFile);
+            }
+        }
+        contentNode.setProperty("jcr:mimeType", MIME_TYPE_GZIP);
+        contentNode.setProperty(PROPERTY_DUMP_TYPE, dumpType);
+        contentNode.setProperty(PROPERTY_BASE_DUMP, baseDumpName);
+        contentNode.setProperty(PROPERTY_SIZE, size);
+    }
+
+    private static long getUtf8Length(String text) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+        return out.getByteCount();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.Query;
+import org.apache.jackrabbit.api.security.user.QueryBuilder;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+
+/** Resolves principal names to authorizables for the creation of one dump. All groups are loaded with one query upfront, users are
+ * looked up on demand. Principals without authorizable (legacy principals) are remembered as well. Not thread-safe. */
+class PrincipalResolutionCache {
+
+    private final UserManager userManager;
+
+    // contains null values for principals without authorizable
+    private final Map<String, Authorizable> authorizablesByPrincipalName = new HashMap<String, Authorizable>();
+
+    private int countPrefetched = 0;
+    private int countHits = 0;
+    private int countMisses = 0;
+
+    PrincipalResolutionCache(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /** Loads all groups with one query. */
+    void prefetchGroups() throws RepositoryException {
+        Iterator<Authorizable> groupsIt = userManager.findAuthorizables(new Query() {
+            @Override
+            public void build(QueryBuilder builder) {
+                builder.setSelector(Group.class);
+            }
+        });
+        while (groupsIt.hasNext()) {
+            Authorizable group = groupsIt.next();
+            if (group != null) {
+                authorizablesByPrincipalName.put(group.getPrincipal().getName(), group);
+                countPrefetched++;
+            }
+        }
+    }
+
+    /** @return the authorizable for the given principal name or null if there is none */
+    Authorizable getAuthorizable(String principalName) throws RepositoryException {
+        if (authorizablesByPrincipalName.containsKey(principalName)) {
+            countHits++;
+            return authorizablesByPrincipalName.get(principalName);
+        }
+        countMisses++;
+        Authorizable authorizable = userManager.getAuthorizable(new PrincipalImpl(principalName));
+        authorizablesByPrincipalName.put(principalName, authorizable);
+        return authorizable;
+    }
+
+    int getCountPrefetched() {
+        return countPrefetched;
+    }
+
+    int getCountHits() {
+        return countHits;
+    }
+
+    int getCountMisses() {
+        return countMisses;
+    }
+
+    @Override
+    public String toString() {
+        return "prefetched groups=" + countPrefetched + ", hits=" + countHits + ", misses=" + countMisses;
+    }
+}
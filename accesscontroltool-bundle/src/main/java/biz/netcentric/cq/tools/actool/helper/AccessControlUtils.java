@@ -172,6 +172,26 @@ public class AccessControlUtils {
             // do nothing, if there is no content node at the given path
             return 0;
         }
+
+        int countRemoved = removeAllEntriesForPrincipals(acl, principalNamesToBeDeleted);
+
+        if (countRemoved > 0) {
+            // bind new policy
+            if (!acl.isEmpty()) {
+                accessControlManager.setPolicy(path, acl);
+            } else {
+                accessControlManager.removePolicy(path, acl);
+            }
+        }
+
+        return countRemoved;
+    }
+
+    /** Removes the entries of the given principal names from the given ACL (in memory only, the ACL is not written back to the repository).
+     * 
+     * @return count ACEs that were removed */
+    public static int removeAllEntriesForPrincipals(JackrabbitAccessControlList acl, String[] principalNamesToBeDeleted)
+            throws RepositoryException {
         // get ACEs of the node
         final AccessControlEntry[] aces = acl.getAccessControlEntries();
 
@@ -187,16 +207,6 @@ public class AccessControlUtils {
                 countRemoved++;
             }
         }
-
-        if (countRemoved > 0) {
-            // bind new policy
-            if (!acl.isEmpty()) {
-                accessControlManager.setPolicy(path, acl);
-            } else {
-                accessControlManager.removePolicy(path, acl);
-            }
-        }
-
         return countRemoved;
     }
 
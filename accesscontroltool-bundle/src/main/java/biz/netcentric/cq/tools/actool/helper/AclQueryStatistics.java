@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Records duration and result count of the queries for ACLs per query root path as run by
+ * {@link QueryHelper#getRepPolicyNodePaths(javax.jcr.Session, List, String[], org.apache.sling.jcr.api.SlingRepository, int, int, AclQueryStatistics)}.
+ * Thread-safe. */
+public class AclQueryStatistics {
+
+    private final Map<String, long[]> durationAndCountByPath = new LinkedHashMap<String, long[]>();
+
+    synchronized void recordQuery(String queryRootPath, long durationMs, int countAcls) {
+        durationAndCountByPath.put(queryRootPath, new long[] { durationMs, countAcls });
+    }
+
+    public synchronized Set<String> getQueryRootPaths() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(durationAndCountByPath.keySet()));
+    }
+
+    /** @return the duration of the query for the given root path in ms or -1 if it was not queried */
+    public synchronized long getDurationMs(String queryRootPath) {
+        long[] durationAndCount = durationAndCountByPath.get(queryRootPath);
+        return durationAndCount != null ? durationAndCount[0] : -1;
+    }
+
+    /** @return the number of ACLs found by the query for the given root path or -1 if it was not queried */
+    public synchronized int getCountAcls(String queryRootPath) {
+        long[] durationAndCount = durationAndCountByPath.get(queryRootPath);
+        return durationAndCount != null ? (int) durationAndCount[1] : -1;
+    }
+
+    public synchronized int getCountQueries() {
+        return durationAndCountByPath.size();
+    }
+
+    /** @return the query root paths with duration and count, the slowest queries first */
+    @Override
+    public synchronized String toString() {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(durationAndCountByPath.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> entry1, Map.Entry<String, long[]> entry2) {
+                return Long.compare(entry2.getValue()[0], entry1.getValue()[0]);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : entries) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(": ").append(entry.getValue()[0]).append("ms (").append(entry.getValue()[1])
+                    .append(" ACLs)");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger.msHumanReadable;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+/** Saves a session after a configurable number of processed items and/or after a time interval. Keeps track of the time needed for each
+ * save (commit latency).
+ *
+ * If neither a batch size nor a flush interval is given, the session is never saved by this class. If an {@link UndoJournal} is given, the
+ * changes are recorded in it (via the before*() methods) and the journal is persisted with each batch. Likewise, if an
+ * {@link InstallationCheckpoint} is given, the completed items are persisted with each batch. If an {@link InstallationAbortSignal} is set,
+ * it is checked with each item and before each save. */
+public class BatchedSessionSaver {
+
+    private static final long[] LATENCY_BUCKET_LIMITS_MS = new long[] { 10, 50, 100, 500, 1000, 5000 };
+
+    private final Session session;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final UndoJournal undoJournal;
+    private final InstallationCheckpoint checkpoint;
+    private InstallationAbortSignal abortSignal;
+
+    private int itemsSinceLastSave = 0;
+    private long lastSaveTime;
+
+    private int countSaves = 0;
+    private long totalSaveTime = 0;
+    private long maxSaveTime = 0;
+    private final int[] latencyHistogram = new int[LATENCY_BUCKET_LIMITS_MS.length + 1];
+
+    /** @param session the session to save
+     * @param batchSize the number of items after which the session is saved (0 to only use the interval)
+     * @param flushIntervalMs the time after which the session is saved with the next item (0 to only use the batch size) */
+    public BatchedSessionSaver(Session session, int batchSize, long flushIntervalMs) {
+        this(session, batchSize, flushIntervalMs, null);
+    }
+
+    /** @param session the session to save
+     * @param batchSize the number of items after which the session is saved (0 to only use the interval)
+     * @param flushIntervalMs the time after which the session is saved with the next item (0 to only use the batch size)
+     * @param undoJournal the journal to record changes in (may be null) */
+    public BatchedSessionSaver(Session session, int batchSize, long flushIntervalMs, UndoJournal undoJournal) {
+        this(session, batchSize, flushIntervalMs, undoJournal, null);
+    }
+
+    /** @param session the session to save
+     * @param batchSize the number of items after which the session is saved (0 to only use the interval)
+     * @param flushIntervalMs the time after which the session is saved with the next item (0 to only use the batch size)
+     * @param undoJournal the journal to record changes in (may be null)
+     * @param checkpoint the checkpoint to record completed items in (may be null) */
+    public BatchedSessionSaver(Session session, int batchSize, long flushIntervalMs, UndoJournal undoJournal,
+            InstallationCheckpoint checkpoint) {
+        this.session = session;
+        this.undoJournal = undoJournal;
+        this.checkpoint = checkpoint;
+        this.batchSize = Math.max(0, batchSize);
+        this.flushIntervalMs = Math.max(0, flushIntervalMs);
+        this.lastSaveTime = currentTimeMillis();
+    }
+
+    /** @return the current time, to be overridden by tests to control the flush interval */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public boolean isEnabled() {
+        return batchSize > 0 || flushIntervalMs > 0;
+    }
+
+    /** @return true if changes are recorded in an undo journal or completed items in a checkpoint (both are bound to the session of this
+     *         saver) */
+    public boolean isTrackingChanges() {
+        return undoJournal != null || checkpoint != null;
+    }
+
+    /** @param abortSignal the signal to check with each item and before each save (may be null) */
+    public void setAbortSignal(InstallationAbortSignal abortSignal) {
+        this.abortSignal = abortSignal;
+    }
+
+    /** @throws IllegalStateException if the installation has been aborted via the {@link InstallationAbortSignal} */
+    public void checkNotAborted() {
+        if (abortSignal != null) {
+            abortSignal.checkNotAborted();
+        }
+    }
+
+    /** @return a saver with the same batch size, flush interval and abort signal for the given session (e.g. for a worker session of a
+     *         parallel installation), without undo journal and checkpoint */
+    public BatchedSessionSaver forSession(Session otherSession) {
+        BatchedSessionSaver otherSessionSaver = new BatchedSessionSaver(otherSession, batchSize, flushIntervalMs);
+        otherSessionSaver.setAbortSignal(abortSignal);
+        return otherSessionSaver;
+    }
+
+    /** To be called before the ACL at the given path is changed. */
+    public void beforeAclChange(String path) throws RepositoryException {
+        if (undoJournal != null) {
+            undoJournal.recordAcl(session, path);
+        }
+    }
+
+    /** To be called before the authorizable with the given id is created or changed. */
+    public void beforeAuthorizableChange(String authorizableId) throws RepositoryException {
+        if (undoJournal != null) {
+            undoJournal.recordAuthorizable(AccessControlUtils.getUserManagerAutoSaveDisabled(session), authorizableId);
+        }
+    }
+
+    /** To be called after a node has been created at the given path. */
+    public void nodeCreated(String path) {
+        if (undoJournal != null) {
+            undoJournal.recordCreatedNode(path);
+        }
+    }
+
+    /** @return true if the authorizable has been installed already by a previous (aborted) installation */
+    public boolean isAuthorizableCompleted(String authorizableId) {
+        return checkpoint != null && checkpoint.isAuthorizableCompleted(authorizableId);
+    }
+
+    /** To be called after the authorizable with the given id has been installed (before {@link #itemProcessed()}). */
+    public void authorizableCompleted(String authorizableId) {
+        if (checkpoint != null) {
+            checkpoint.authorizableCompleted(authorizableId);
+        }
+    }
+
+    /** @return true if the ACL at the given path has been installed already by a previous (aborted) installation */
+    public boolean isAclPathCompleted(String path) {
+        return checkpoint != null && checkpoint.isAclPathCompleted(path);
+    }
+
+    /** To be called after the ACL at the given path has been installed (before {@link #itemProcessed()}). */
+    public void aclPathCompleted(String path) {
+        if (checkpoint != null) {
+            checkpoint.aclPathCompleted(path);
+        }
+    }
+
+    /** To be called after an item (e.g. an ACL or an authorizable) has been processed.
+     *
+     * @return true if the session has been saved */
+    public boolean itemProcessed() throws RepositoryException {
+        checkNotAborted();
+        if (!isEnabled()) {
+            return false;
+        }
+        itemsSinceLastSave++;
+        boolean batchIsComplete = batchSize > 0 && itemsSinceLastSave >= batchSize;
+        boolean flushIntervalIsReached = flushIntervalMs > 0 && currentTimeMillis() - lastSaveTime >= flushIntervalMs;
+        if (batchIsComplete || flushIntervalIsReached) {
+            return save();
+        }
+        return false;
+    }
+
+    /** Saves the session if there are pending changes (only if batched saves are enabled).
+     *
+     * @return true if the session has been saved */
+    public boolean flush() throws RepositoryException {
+        if (!isEnabled()) {
+            return false;
+        }
+        return save();
+    }
+
+    /** Saves the session if there are pending changes (also if batched saves are not enabled).
+     *
+     * @return true if the session has been saved */
+    public boolean save() throws RepositoryException {
+        itemsSinceLastSave = 0;
+        lastSaveTime = currentTimeMillis();
+        if (!session.hasPendingChanges()) {
+            return false;
+        }
+        checkNotAborted();
+        if (undoJournal != null) {
+            undoJournal.persistPendingRecords(session);
+        }
+        if (checkpoint != null) {
+            checkpoint.persistPendingItems(session);
+        }
+        session.save();
+        long saveTime = currentTimeMillis() - lastSaveTime;
+        lastSaveTime += saveTime;
+
+        countSaves++;
+        totalSaveTime += saveTime;
+        maxSaveTime = Math.max(maxSaveTime, saveTime);
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_LIMITS_MS.length && saveTime >= LATENCY_BUCKET_LIMITS_MS[bucket]) {
+            bucket++;
+        }
+        latencyHistogram[bucket]++;
+        return true;
+    }
+
+    public int getCountSaves() {
+        return countSaves;
+    }
+
+    /** @return number of saves, average/max commit latency and the commit latency histogram */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(countSaves).append(" saves");
+        if (countSaves > 0) {
+            sb.append(" (avg ").append(msHumanReadable(totalSaveTime / countSaves)).append(", max ").append(msHumanReadable(maxSaveTime))
+                    .append("), commit latency histogram:");
+            for (int i = 0; i < latencyHistogram.length; i++) {
+                sb.append(" ").append(i < LATENCY_BUCKET_LIMITS_MS.length ? "<" + LATENCY_BUCKET_LIMITS_MS[i] + "ms"
+                        : ">=" + LATENCY_BUCKET_LIMITS_MS[LATENCY_BUCKET_LIMITS_MS.length - 1] + "ms").append("=")
+                        .append(latencyHistogram[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** A lock node below /var/statistics/achistory that ensures only one instance of a cluster (e.g. MongoMK) installs a configuration root path
+ * at a time (the cluster leader for this installation). The lock is bound to a lease that has to be renewed by the leader while the
+ * installation is running, if the leader instance dies the lock expires and can be taken over by another instance.
+ *
+ * Concurrent attempts to take the lock are resolved by the repository: only one of the conflicting saves succeeds.
+ *
+ * The lease is written with the clock of the owner and checked with the clock of the other instances, therefore a lock of another instance
+ * only expires after an additional clock skew tolerance. The clocks of the cluster instances must not differ by more than this tolerance
+ * (e.g. synchronized via NTP). */
+public class ClusterInstallationLock {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterInstallationLock.class);
+
+    public static final String LOCK_NODE_NAME_PREFIX = "lock_";
+
+    private static final String PROPERTY_EXECUTION_KEY = "executionKey";
+    private static final String PROPERTY_OWNER = "owner";
+    private static final String PROPERTY_ACQUIRED = "acquired";
+    private static final String PROPERTY_LEASE_UNTIL = "leaseUntil";
+
+    public static final long DEFAULT_CLOCK_SKEW_TOLERANCE_MS = 30000;
+
+    public enum State {
+        /** no instance holds the lock */
+        FREE,
+        /** the lock is held by another instance */
+        HELD_BY_OTHER_INSTANCE,
+        /** the lock has been held by an instance that did not renew its lease (within the clock skew tolerance) */
+        EXPIRED,
+        /** the lock is held by this instance */
+        HELD
+    }
+
+    private final String executionKey;
+    private final String instanceId;
+    private final long leaseMs;
+    private final long clockSkewToleranceMs;
+    private final String nodeName;
+
+    /** @param executionKey the key of the execution (e.g. the config root path)
+     * @param instanceId the id of this instance (sling id)
+     * @param leaseMs the time after which the lock expires if it is not renewed */
+    public ClusterInstallationLock(String executionKey, String instanceId, long leaseMs) {
+        this(executionKey, instanceId, leaseMs, DEFAULT_CLOCK_SKEW_TOLERANCE_MS);
+    }
+
+    /** @param executionKey the key of the execution (e.g. the config root path)
+     * @param instanceId the id of this instance (sling id)
+     * @param leaseMs the time after which the lock expires if it is not renewed
+     * @param clockSkewToleranceMs the time the lease is extended by when checked by other instances */
+    public ClusterInstallationLock(String executionKey, String instanceId, long leaseMs, long clockSkewToleranceMs) {
+        this.executionKey = executionKey;
+        this.instanceId = instanceId;
+        this.leaseMs = leaseMs;
+        this.clockSkewToleranceMs = Math.max(0, clockSkewToleranceMs);
+        this.nodeName = LOCK_NODE_NAME_PREFIX + DigestUtils.md5Hex(StringUtils.defaultString(executionKey));
+    }
+
+    public State getState(Session session) throws RepositoryException {
+        Node lockNode = getLockNode(session);
+        if (lockNode == null) {
+            return State.FREE;
+        }
+        boolean isOwner = instanceId.equals(getOwner(lockNode));
+        // the lease of other instances has been written with their clock
+        long tolerance = isOwner ? 0 : clockSkewToleranceMs;
+        if (getLeaseUntil(lockNode) + tolerance < System.currentTimeMillis()) {
+            return State.EXPIRED;
+        } else if (isOwner) {
+            return State.HELD;
+        } else {
+            return State.HELD_BY_OTHER_INSTANCE;
+        }
+    }
+
+    /** @return the instance id of the current (or last if expired) owner or null if the lock is free */
+    public String getOwner(Session session) throws RepositoryException {
+        Node lockNode = getLockNode(session);
+        return lockNode != null ? getOwner(lockNode) : null;
+    }
+
+    /** Acquires the lock if it is free or expired. The given session must not have pending changes as it is saved by this method.
+     *
+     * @return true if the lock is held by this instance */
+    public boolean tryAcquire(Session session) throws RepositoryException {
+        State state = getState(session);
+        if (state == State.HELD) {
+            return true;
+        } else if (state == State.HELD_BY_OTHER_INSTANCE) {
+            return false;
+        }
+
+        Node lockNode = getLockNode(session);
+        if (lockNode == null) {
+            lockNode = HistoryUtils.getAcHistoryRootNode(session).addNode(nodeName, HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+            lockNode.setProperty(PROPERTY_EXECUTION_KEY, executionKey);
+        } else {
+            LOG.info("Taking over expired lock {} from instance {}", lockNode.getPath(), getOwner(lockNode));
+        }
+        long now = System.currentTimeMillis();
+        lockNode.setProperty(PROPERTY_OWNER, instanceId);
+        lockNode.setProperty(PROPERTY_ACQUIRED, now);
+        lockNode.setProperty(PROPERTY_LEASE_UNTIL, now + leaseMs);
+        try {
+            session.save();
+        } catch (RepositoryException e) {
+            // another instance was faster
+            LOG.debug("Could not acquire lock for {}: {}", executionKey, e.toString());
+            session.refresh(false);
+            return false;
+        }
+        session.refresh(false);
+        return getState(session) == State.HELD;
+    }
+
+    /** Extends the lease of the lock (if it is held by this instance).
+     *
+     * @return true if the lease has been renewed */
+    public boolean renew(Session session) throws RepositoryException {
+        Node lockNode = getLockNode(session);
+        if (lockNode == null || !instanceId.equals(getOwner(lockNode))) {
+            return false;
+        }
+        lockNode.setProperty(PROPERTY_LEASE_UNTIL, System.currentTimeMillis() + leaseMs);
+        session.save();
+        return true;
+    }
+
+    /** Removes the lock (if it is held by this instance). */
+    public void release(Session session) throws RepositoryException {
+        Node lockNode = getLockNode(session);
+        if (lockNode != null && instanceId.equals(getOwner(lockNode))) {
+            lockNode.remove();
+            session.save();
+        }
+    }
+
+    private Node getLockNode(Session session) throws RepositoryException {
+        String lockPath = HistoryUtils.ACHISTORY_PATH + "/" + nodeName;
+        return session.nodeExists(lockPath) ? session.getNode(lockPath) : null;
+    }
+
+    private static String getOwner(Node lockNode) throws RepositoryException {
+        return lockNode.hasProperty(PROPERTY_OWNER) ? lockNode.getProperty(PROPERTY_OWNER).getString() : null;
+    }
+
+    private static long getLeaseUntil(Node lockNode) throws RepositoryException {
+        return lockNode.hasProperty(PROPERTY_LEASE_UNTIL) ? lockNode.getProperty(PROPERTY_LEASE_UNTIL).getLong() : 0;
+    }
+}
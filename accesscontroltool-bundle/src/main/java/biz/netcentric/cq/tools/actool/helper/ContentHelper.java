@@ -12,10 +12,18 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.InvalidSerializedDataException;
@@ -85,6 +93,104 @@ public class ContentHelper {
         }
     }
 
+    /** Creates the initial content for all given paths that do not exist yet. The content of all paths is imported with one FileVault
+     * import (parent paths first), if that import fails the paths are imported one by one to report failures per path.
+     * 
+     * @return the paths initial content has been created for */
+    public static Set<String> createInitialContent(final Session session, final InstallationLogger history, Collection<String> paths,
+            Map<String, Set<AceBean>> pathBasedAceMapFromConfig) throws RepositoryException {
+
+        SortedMap<String, String> initialContentByPath = new TreeMap<String, String>(PARENT_FIRST);
+        for (String path : paths) {
+            if (StringUtils.isBlank(path)) {
+                continue;
+            }
+            String initialContent = findInitialContentInConfigsForPath(pathBasedAceMapFromConfig.get(path), history);
+            if (StringUtils.isNotBlank(initialContent) && !session.nodeExists(path)) {
+                initialContentByPath.put(path, initialContent);
+            }
+        }
+
+        Set<String> pathsWithCreatedContent = new LinkedHashSet<String>();
+        if (initialContentByPath.isEmpty()) {
+            return pathsWithCreatedContent;
+        }
+
+        Map<String, String> contentXmlByPath = new LinkedHashMap<String, String>();
+        // the parent of those paths is only created by the content of an ancestor (if at all), they are imported afterwards
+        List<String> pathsWithParentFromBatch = new ArrayList<String>();
+        for (Map.Entry<String, String> initialContentEntry : initialContentByPath.entrySet()) {
+            String path = initialContentEntry.getKey();
+            String parentPath = StringUtils.substringBeforeLast(path, "/");
+            if (!contentXmlByPath.containsKey(parentPath) && !session.nodeExists(parentPath)) {
+                if (hasAncestorIn(path, contentXmlByPath.keySet())) {
+                    pathsWithParentFromBatch.add(path);
+                } else {
+                    history.incMissingParentPathsForInitialContent();
+                    history.addVerboseMessage(LOG, "Parent path " + parentPath + " missing for initial content at " + path);
+                }
+                continue;
+            }
+            try {
+                contentXmlByPath.put(path, adjustContentXml(path, initialContentEntry.getValue()));
+            } catch (Exception e) {
+                history.addWarning(LOG, "Failed creating initial content for path " + path + ": " + e);
+            }
+        }
+
+        if (!contentXmlByPath.isEmpty()) {
+            try {
+                LOG.debug("Importing content for paths {}", contentXmlByPath.keySet());
+                runImport(session, new ContentFilesArchive(contentXmlByPath));
+                for (String path : contentXmlByPath.keySet()) {
+                    if (session.nodeExists(path)) {
+                        history.addMessage(LOG, "Created initial content for path " + path);
+                        pathsWithCreatedContent.add(path);
+                    } else {
+                        history.addWarning(LOG, "Failed creating initial content for path " + path + ": path does not exist after import");
+                    }
+                }
+            } catch (Exception e) {
+                history.addVerboseMessage(LOG, "Import of initial content for " + contentXmlByPath.size()
+                        + " paths failed, importing paths one by one: " + e);
+                LOG.debug("Exception: " + e, e); // log stack trace only debug
+                // remove what has been imported partially (children first)
+                List<String> importedPaths = new ArrayList<String>(contentXmlByPath.keySet());
+                Collections.reverse(importedPaths);
+                for (String path : importedPaths) {
+                    if (session.nodeExists(path)) {
+                        session.getNode(path).remove();
+                    }
+                }
+                pathsWithParentFromBatch.addAll(0, contentXmlByPath.keySet());
+            }
+        }
+
+        for (String path : pathsWithParentFromBatch) {
+            if (createInitialContent(session, history, path, pathBasedAceMapFromConfig.get(path))) {
+                pathsWithCreatedContent.add(path);
+            }
+        }
+        return pathsWithCreatedContent;
+    }
+
+    private static final Comparator<String> PARENT_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String path1, String path2) {
+            int depthComparison = Integer.compare(StringUtils.countMatches(path1, "/"), StringUtils.countMatches(path2, "/"));
+            return depthComparison != 0 ? depthComparison : path1.compareTo(path2);
+        }
+    };
+
+    private static boolean hasAncestorIn(String path, Collection<String> paths) {
+        for (String otherPath : paths) {
+            if (path.startsWith(otherPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static String findInitialContentInConfigsForPath(Set<AceBean> aceBeanSetFromConfig, InstallationLogger history) {
         String initialContent = null;
         for (AceBean aceBean : aceBeanSetFromConfig) {
@@ -111,6 +217,15 @@ public class ContentHelper {
             throw new PathNotFoundException("Parent path " + parentPath + " for creating content at " + path + " does not exist", e);
         }
 
+        String contentXmlStrAdjusted = adjustContentXml(path, contentXmlStr);
+
+        LOG.debug("Importing content for path {}\n{}", path, contentXmlStrAdjusted);
+        runImport(session, new ContentFilesArchive(Collections.singletonMap(path, contentXmlStrAdjusted)));
+        LOG.debug("Imported content for path {}\n{}", path, contentXmlStrAdjusted);
+
+    }
+
+    private static String adjustContentXml(String path, String contentXmlStr) {
         String rootElementStr = "<jcr:root ";
         if (!contentXmlStr.contains(rootElementStr)) {
             throw new IllegalStateException("Invalid initial content for path " + path + ": " + rootElementStr
@@ -129,12 +244,12 @@ public class ContentHelper {
             contentXmlStrAdjusted = contentXmlStrAdjusted.replace(rootElementStr, rootElementStr
                     + " xmlns:sling=\"http://sling.apache.org/jcr/sling/1.0\" ");
         }
+        return contentXmlStrAdjusted;
+    }
 
-        LOG.debug("Importing content for path {}\n{}", path, contentXmlStrAdjusted);
+    private static void runImport(final Session session, Archive archive) throws RepositoryException {
         try {
 
-            Archive archive = new SingleContentFileArchive(path, contentXmlStrAdjusted);
-
             ImportOptions importOptions = new ImportOptions();
             importOptions.setAutoSaveThreshold(Integer.MAX_VALUE); // IMPORTANT: this disables saving the session in Importer
             importOptions.setStrict(true);
@@ -163,23 +278,25 @@ public class ContentHelper {
         } catch (ConfigurationException e) {
             throw new RepositoryException("ConfigurationException during import operation: " + e, e);
         }
-
-        LOG.debug("Imported content for path {}\n{}", path, contentXmlStrAdjusted);
-
     }
 
-    static class SingleContentFileArchive implements Archive {
+    /** Archive with one .content.xml file per path, used to import the initial content of one or many paths with one import. */
+    static class ContentFilesArchive implements Archive {
 
-        private final String filterPath;
-        private final String xmlContent;
+        private final Map<String, String> xmlContentByPath;
 
-        private final Entry root;
+        private final ContentFilesArchiveEntry root = new ContentFilesArchiveEntry("", null);
 
-        public SingleContentFileArchive(String path, String xmlContent) {
-            this.filterPath = path;
-            this.xmlContent = xmlContent;
-            // the contructor SingleContentFileArchiveEntry automatically creates the tree to the xml file
-            this.root = new SingleContentFileArchiveEntry("/" + Constants.ROOT_DIR + path + "/" + Constants.DOT_CONTENT_XML);
+        public ContentFilesArchive(Map<String, String> xmlContentByPath) {
+            this.xmlContentByPath = xmlContentByPath;
+            for (Map.Entry<String, String> xmlContentEntry : xmlContentByPath.entrySet()) {
+                ContentFilesArchiveEntry entry = root.getOrAddDirectory(Constants.ROOT_DIR);
+                for (String name : Text.explode(xmlContentEntry.getKey(), '/')) {
+                    entry = entry.getOrAddDirectory(name);
+                }
+                entry.children.put(Constants.DOT_CONTENT_XML,
+                        new ContentFilesArchiveEntry(Constants.DOT_CONTENT_XML, xmlContentEntry.getValue()));
+            }
         }
 
         @Override
@@ -194,37 +311,29 @@ public class ContentHelper {
 
         @Override
         public InputStream openInputStream(Entry entry) throws IOException {
-            if (Constants.DOT_CONTENT_XML.equals(entry.getName())) {
-                ByteArrayInputStream inputStream = new ByteArrayInputStream(xmlContent.getBytes(StandardCharsets.UTF_8));
-                return inputStream;
-            } else {
-                return null;
-            }
-
+            String xmlContent = ((ContentFilesArchiveEntry) entry).xmlContent;
+            return xmlContent != null ? new ByteArrayInputStream(xmlContent.getBytes(StandardCharsets.UTF_8)) : null;
         }
 
         @Override
         public VaultInputSource getInputSource(Entry entry) throws IOException {
-            if (Constants.DOT_CONTENT_XML.equals(entry.getName())) {
-                InputStream is = openInputStream(entry);
-                VaultInputSource vaultInputSource = new VaultInputSource(is) {
-
-                    @Override
-                    public long getContentLength() {
-                        return xmlContent.length();
-                    }
-
-                    @Override
-                    public long getLastModified() {
-                        return 0;
-                    }
-
-                };
-                return vaultInputSource;
-            } else {
+            final String xmlContent = ((ContentFilesArchiveEntry) entry).xmlContent;
+            if (xmlContent == null) {
                 return null;
             }
+            return new VaultInputSource(openInputStream(entry)) {
 
+                @Override
+                public long getContentLength() {
+                    return xmlContent.length();
+                }
+
+                @Override
+                public long getLastModified() {
+                    return 0;
+                }
+
+            };
         }
 
         @Override
@@ -257,26 +366,36 @@ public class ContentHelper {
         public MetaInf getMetaInf() {
             DefaultMetaInf defaultMetaInf = new DefaultMetaInf();
             DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
-            PathFilterSet pathFilterSet = new PathFilterSet();
-            pathFilterSet.setRoot(filterPath); // the only non-default value
-            filter.add(pathFilterSet);
+            for (String path : xmlContentByPath.keySet()) {
+                PathFilterSet pathFilterSet = new PathFilterSet();
+                pathFilterSet.setRoot(path);
+                filter.add(pathFilterSet);
+            }
             defaultMetaInf.setFilter(filter);
-            Properties props = new Properties();
-            defaultMetaInf.setProperties(props);
-            VaultSettings settings = new VaultSettings();
-            defaultMetaInf.setSettings(settings);
+            defaultMetaInf.setProperties(new Properties());
+            defaultMetaInf.setSettings(new VaultSettings());
             return defaultMetaInf;
         }
 
-        static class SingleContentFileArchiveEntry implements Entry {
+        static class ContentFilesArchiveEntry implements Entry {
+
+            private final String name;
+            private final String xmlContent;
+            private final Map<String, ContentFilesArchiveEntry> children;
 
-            private Entry child;
-            private String name;
+            ContentFilesArchiveEntry(String name, String xmlContent) {
+                this.name = name;
+                this.xmlContent = xmlContent;
+                this.children = xmlContent == null ? new LinkedHashMap<String, ContentFilesArchiveEntry>() : null;
+            }
 
-            SingleContentFileArchiveEntry(String relPath) {
-                String[] pathBits = relPath.split("/", 2);
-                name = pathBits[0];
-                child = pathBits.length == 2 ? new SingleContentFileArchiveEntry(pathBits[1]) : null;
+            private ContentFilesArchiveEntry getOrAddDirectory(String name) {
+                ContentFilesArchiveEntry directory = children.get(name);
+                if (directory == null) {
+                    directory = new ContentFilesArchiveEntry(name, null);
+                    children.put(name, directory);
+                }
+                return directory;
             }
 
             @Override
@@ -286,17 +405,17 @@ public class ContentHelper {
 
             @Override
             public boolean isDirectory() {
-                return child != null;
+                return children != null;
             }
 
             @Override
             public Collection<? extends Entry> getChildren() {
-                return child != null ? Arrays.asList(child) : null;
+                return children != null ? children.values() : null;
             }
 
             @Override
             public Entry getChild(String name) {
-                return (name != null && name.equals(child.getName())) ? child : null;
+                return children != null ? children.get(name) : null;
             }
 
         }
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+/** Signals a running installation from another thread that it has to be aborted (e.g. because the cluster lock has been lost). The
+ * installation checks the signal before each save, so the changes since the last save are rolled back as for any other error.
+ *
+ * The installation thread is deliberately not interrupted as the repository may close its file channels on interrupts. */
+public class InstallationAbortSignal {
+
+    private volatile String reason;
+
+    /** @param reason the reason to report in the installation log */
+    public void abort(String reason) {
+        this.reason = reason;
+    }
+
+    public boolean isAborted() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /** @throws IllegalStateException if the installation has been aborted */
+    public void checkNotAborted() {
+        String currentReason = reason;
+        if (currentReason != null) {
+            throw new IllegalStateException("Installation aborted: " + currentReason);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** Keeps track of the authorizables and ACL paths that have been committed by batched saves of an installation. The checkpoint is
+ * persisted below /var/statistics/achistory together with each saved batch. If an installation is aborted (e.g. because of an exception or
+ * a restart of the instance), a following installation of the same configuration can be resumed from the checkpoint.
+ *
+ * The checkpoint is bound to the hash of the configuration files: if the configuration has changed, the checkpoint is discarded. */
+public class InstallationCheckpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstallationCheckpoint.class);
+
+    public static final String CHECKPOINT_NODE_NAME_PREFIX = "checkpoint_";
+    private static final String BATCH_NODE_NAME_PREFIX = "batch_";
+
+    private static final String PROPERTY_EXECUTION_KEY = "executionKey";
+    private static final String PROPERTY_CONFIG_HASH = "configHash";
+    private static final String PROPERTY_COMPLETED_AUTHORIZABLES = "completedAuthorizables";
+    private static final String PROPERTY_COMPLETED_ACL_PATHS = "completedAclPaths";
+
+    private final String executionKey;
+    private final String configHash;
+    private final String nodeName;
+
+    private final Set<String> completedAuthorizables = new HashSet<String>();
+    private final Set<String> completedAclPaths = new HashSet<String>();
+    private final List<String> pendingAuthorizables = new ArrayList<String>();
+    private final List<String> pendingAclPaths = new ArrayList<String>();
+
+    private int countBatches = 0;
+    private boolean resumed = false;
+
+    /** @param executionKey the key of the execution (config root path and restricted paths)
+     * @param configHash the hash over all configuration files */
+    public InstallationCheckpoint(String executionKey, String configHash) {
+        this.executionKey = executionKey;
+        this.configHash = configHash;
+        this.nodeName = CHECKPOINT_NODE_NAME_PREFIX + DigestUtils.md5Hex(executionKey);
+    }
+
+    /** Loads the completed items from the persisted checkpoint of a previous (aborted) installation. If the persisted checkpoint belongs to a
+     * different configuration, it is removed (the removal is saved with the first batch).
+     *
+     * @return true if the installation can be resumed from the checkpoint */
+    public boolean load(Session session) throws RepositoryException {
+        Node checkpointNode = getCheckpointNode(session);
+        if (checkpointNode == null) {
+            return false;
+        }
+        String persistedConfigHash = checkpointNode.hasProperty(PROPERTY_CONFIG_HASH)
+                ? checkpointNode.getProperty(PROPERTY_CONFIG_HASH).getString()
+                : null;
+        if (!StringUtils.equals(configHash, persistedConfigHash)) {
+            LOG.debug("Checkpoint {} was created for config hash {}, current config hash is {}", checkpointNode.getPath(),
+                    persistedConfigHash, configHash);
+            checkpointNode.remove();
+            return false;
+        }
+
+        NodeIterator batchNodesIt = checkpointNode.getNodes();
+        while (batchNodesIt.hasNext()) {
+            Node batchNode = batchNodesIt.nextNode();
+            completedAuthorizables.addAll(getValues(batchNode, PROPERTY_COMPLETED_AUTHORIZABLES));
+            completedAclPaths.addAll(getValues(batchNode, PROPERTY_COMPLETED_ACL_PATHS));
+            countBatches++;
+        }
+        resumed = true;
+        return true;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public boolean isAuthorizableCompleted(String authorizableId) {
+        return completedAuthorizables.contains(authorizableId);
+    }
+
+    public boolean isAclPathCompleted(String path) {
+        return completedAclPaths.contains(StringUtils.defaultString(path));
+    }
+
+    public void authorizableCompleted(String authorizableId) {
+        if (completedAuthorizables.add(authorizableId)) {
+            pendingAuthorizables.add(authorizableId);
+        }
+    }
+
+    public void aclPathCompleted(String path) {
+        String aclPath = StringUtils.defaultString(path);
+        if (completedAclPaths.add(aclPath)) {
+            pendingAclPaths.add(aclPath);
+        }
+    }
+
+    public int getCountCompletedAuthorizables() {
+        return completedAuthorizables.size();
+    }
+
+    public int getCountCompletedAclPaths() {
+        return completedAclPaths.size();
+    }
+
+    /** Adds the items completed since the last call to the checkpoint node. To be called before the session is saved, so the checkpoint is
+     * saved together with the changes of the batch. */
+    public void persistPendingItems(Session session) throws RepositoryException {
+        if (pendingAuthorizables.isEmpty() && pendingAclPaths.isEmpty()) {
+            return;
+        }
+        Node checkpointNode = getCheckpointNode(session);
+        if (checkpointNode == null) {
+            checkpointNode = HistoryUtils.getAcHistoryRootNode(session).addNode(nodeName, HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+            checkpointNode.setProperty(PROPERTY_EXECUTION_KEY, executionKey);
+            checkpointNode.setProperty(PROPERTY_CONFIG_HASH, configHash);
+        }
+        Node batchNode = checkpointNode.addNode(BATCH_NODE_NAME_PREFIX + (++countBatches), HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+        batchNode.setProperty(PROPERTY_COMPLETED_AUTHORIZABLES, pendingAuthorizables.toArray(new String[pendingAuthorizables.size()]));
+        batchNode.setProperty(PROPERTY_COMPLETED_ACL_PATHS, pendingAclPaths.toArray(new String[pendingAclPaths.size()]));
+        pendingAuthorizables.clear();
+        pendingAclPaths.clear();
+    }
+
+    /** Removes the checkpoint node after the installation has finished (the removal is saved with the next session save). */
+    public void remove(Session session) throws RepositoryException {
+        Node checkpointNode = getCheckpointNode(session);
+        if (checkpointNode != null) {
+            checkpointNode.remove();
+        }
+        completedAuthorizables.clear();
+        completedAclPaths.clear();
+        pendingAuthorizables.clear();
+        pendingAclPaths.clear();
+    }
+
+    private Node getCheckpointNode(Session session) throws RepositoryException {
+        String checkpointPath = HistoryUtils.ACHISTORY_PATH + "/" + nodeName;
+        return session.nodeExists(checkpointPath) ? session.getNode(checkpointPath) : null;
+    }
+
+    private static List<String> getValues(Node node, String propertyName) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return new ArrayList<String>();
+        }
+        List<String> values = new ArrayList<String>();
+        for (Value value : Arrays.asList(node.getProperty(propertyName).getValues())) {
+            values.add(value.getString());
+        }
+        return values;
+    }
+
+}
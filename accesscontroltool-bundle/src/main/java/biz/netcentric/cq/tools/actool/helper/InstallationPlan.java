@@ -0,0 +1,312 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.AclUndoRecord;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.AuthorizableUndoRecord;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.NodeUndoRecord;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.UndoRecord;
+import biz.netcentric.cq.tools.actool.history.InstallationLogger;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** The changes an installation would make to the repository, computed by a dry-run (the installation is run against a session that is
+ * never saved). For each changed ACL and authorizable, the target state and a fingerprint of the state before the installation is kept.
+ * The plan is persisted below /var/statistics/achistory and can be applied later without recomputing the diff, as long as the
+ * fingerprints still match the repository. */
+public class InstallationPlan {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstallationPlan.class);
+
+    public static final String PLAN_NODE_NAME_PREFIX = "plan_";
+    private static final String PROPERTY_PLAN = "plan";
+
+    private static final String KEY_CONFIGURATION_ROOT_PATH = "configurationRootPath";
+    private static final String KEY_RESTRICTED_TO_PATHS = "restrictedToPaths";
+    private static final String KEY_CHANGES = "changes";
+    private static final String KEY_PURGE_AUTHORIZABLES = "purgeAuthorizables";
+    private static final String KEY_BEFORE = "before";
+    private static final String KEY_TARGET = "target";
+    private static final String KEY_INITIAL_CONTENT = "initialContent";
+
+    private final String configurationRootPath;
+    private final String[] restrictedToPaths;
+    private final List<PlannedChange> changes;
+    private final Set<String> authorizablesToPurge;
+
+    private InstallationPlan(String configurationRootPath, String[] restrictedToPaths, List<PlannedChange> changes,
+            Set<String> authorizablesToPurge) {
+        this.configurationRootPath = configurationRootPath;
+        this.restrictedToPaths = restrictedToPaths;
+        this.changes = changes;
+        this.authorizablesToPurge = authorizablesToPurge;
+    }
+
+    /** Creates the plan by comparing the states recorded by the given recorder with the current (unsaved) state of the session.
+     *
+     * @param recorder the journal that recorded the state of the items before they were changed
+     * @param acConfiguration the configuration (used to look up initial content)
+     * @param authorizablesToPurge existing obsolete authorizables and virtual groups
+     * @param configurationRootPath the configuration root path
+     * @param restrictedToPaths the paths the installation was restricted to (may be null)
+     * @param session the session containing the unsaved changes of the installation
+     * @throws IllegalStateException if the installation creates regular users (they cannot be created from a plan as passwords are not
+     *             recorded) or if it changes authorizables configured with content or external id (neither is recorded) */
+    public static InstallationPlan create(UndoJournal recorder, AcConfiguration acConfiguration, Set<String> authorizablesToPurge,
+            String configurationRootPath, String[] restrictedToPaths, Session session) throws RepositoryException {
+        UserManager userManager = AccessControlUtils.getUserManagerAutoSaveDisabled(session);
+        List<PlannedChange> changes = new ArrayList<PlannedChange>();
+        Set<String> usersToCreate = new LinkedHashSet<String>();
+        Set<String> authorizablesWithUnrecordedContent = new LinkedHashSet<String>();
+        for (UndoRecord before : recorder.getRecords()) {
+            if (before instanceof AuthorizableUndoRecord
+                    && hasUnrecordedContent(acConfiguration, ((AuthorizableUndoRecord) before).getAuthorizableId())) {
+                authorizablesWithUnrecordedContent.add(((AuthorizableUndoRecord) before).getAuthorizableId());
+            }
+            if (before instanceof NodeUndoRecord) {
+                String path = ((NodeUndoRecord) before).getPath();
+                changes.add(new PlannedChange(null, before, findInitialContent(acConfiguration, path), null));
+                continue;
+            }
+            UndoRecord target = before instanceof AclUndoRecord
+                    ? UndoJournal.captureAcl(session, ((AclUndoRecord) before).getPath())
+                    : UndoJournal.captureAuthorizable(userManager, ((AuthorizableUndoRecord) before).getAuthorizableId());
+            if (target instanceof AuthorizableUndoRecord && ((AuthorizableUndoRecord) target).isRegularUser()
+                    && !((AuthorizableUndoRecord) before).isRegularUser()) {
+                usersToCreate.add(((AuthorizableUndoRecord) target).getAuthorizableId());
+            }
+            String beforeFingerprint = fingerprint(before);
+            if (!beforeFingerprint.equals(fingerprint(target))) {
+                changes.add(new PlannedChange(beforeFingerprint, target, null, describe(before, target)));
+            }
+        }
+        if (!authorizablesWithUnrecordedContent.isEmpty()) {
+            throw new IllegalStateException("The authorizables " + authorizablesWithUnrecordedContent
+                    + " are configured with profileContent, preferencesContent, socialContent or externalId, this cannot be done via a plan"
+                    + " as neither is recorded (apply the configuration directly instead)");
+        }
+        if (!usersToCreate.isEmpty()) {
+            throw new IllegalStateException("The installation creates the users " + usersToCreate
+                    + ", this cannot be done via a plan as passwords are not recorded (apply the configuration directly instead)");
+        }
+        return new InstallationPlan(configurationRootPath, restrictedToPaths, changes,
+                new LinkedHashSet<String>(authorizablesToPurge));
+    }
+
+    /** Loads the plan with the given id.
+     *
+     * @throws IllegalArgumentException if the plan does not exist */
+    @SuppressWarnings("unchecked")
+    public static InstallationPlan load(Session session, String planId) throws RepositoryException {
+        String planPath = HistoryUtils.ACHISTORY_PATH + "/" + planId;
+        if (!StringUtils.startsWith(planId, PLAN_NODE_NAME_PREFIX) || !session.nodeExists(planPath)) {
+            throw new IllegalArgumentException("Plan " + planId + " does not exist");
+        }
+        Map<String, Object> planMap = (Map<String, Object>) new Yaml()
+                .load(session.getNode(planPath).getProperty(PROPERTY_PLAN).getString());
+
+        List<PlannedChange> changes = new ArrayList<PlannedChange>();
+        for (Map<String, Object> changeMap : (List<Map<String, Object>>) planMap.get(KEY_CHANGES)) {
+            changes.add(new PlannedChange((String) changeMap.get(KEY_BEFORE),
+                    UndoJournal.recordFromMap((Map<String, Object>) changeMap.get(KEY_TARGET)),
+                    (String) changeMap.get(KEY_INITIAL_CONTENT), null));
+        }
+        List<String> restrictedToPaths = (List<String>) planMap.get(KEY_RESTRICTED_TO_PATHS);
+        return new InstallationPlan((String) planMap.get(KEY_CONFIGURATION_ROOT_PATH),
+                restrictedToPaths != null ? restrictedToPaths.toArray(new String[restrictedToPaths.size()]) : null,
+                changes, new LinkedHashSet<String>((List<String>) planMap.get(KEY_PURGE_AUTHORIZABLES)));
+    }
+
+    /** Persists the plan (the node is saved with the next session save).
+     *
+     * @return the id of the plan */
+    public String persist(Session session) throws RepositoryException {
+        Map<String, Object> planMap = new LinkedHashMap<String, Object>();
+        planMap.put(KEY_CONFIGURATION_ROOT_PATH, configurationRootPath);
+        if (restrictedToPaths != null) {
+            planMap.put(KEY_RESTRICTED_TO_PATHS, Arrays.asList(restrictedToPaths));
+        }
+        List<Map<String, Object>> changeMaps = new ArrayList<Map<String, Object>>();
+        for (PlannedChange change : changes) {
+            Map<String, Object> changeMap = new LinkedHashMap<String, Object>();
+            if (change.beforeFingerprint != null) {
+                changeMap.put(KEY_BEFORE, change.beforeFingerprint);
+            }
+            changeMap.put(KEY_TARGET, change.target.toMap());
+            if (change.initialContent != null) {
+                changeMap.put(KEY_INITIAL_CONTENT, change.initialContent);
+            }
+            changeMaps.add(changeMap);
+        }
+        planMap.put(KEY_CHANGES, changeMaps);
+        planMap.put(KEY_PURGE_AUTHORIZABLES, new ArrayList<String>(authorizablesToPurge));
+
+        Node planNode = HistoryUtils.getAcHistoryRootNode(session).addNode(PLAN_NODE_NAME_PREFIX + System.currentTimeMillis(),
+                HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+        planNode.setProperty(PROPERTY_PLAN, new Yaml().dump(planMap));
+        return planNode.getName();
+    }
+
+    /** Removes the plan with the given id (the removal is saved with the next session save). */
+    public static void remove(Session session, String planId) throws RepositoryException {
+        String planPath = HistoryUtils.ACHISTORY_PATH + "/" + planId;
+        if (session.nodeExists(planPath)) {
+            session.getNode(planPath).remove();
+        }
+    }
+
+    /** @return the items that have been changed in the repository since the plan was created */
+    public List<String> findChangedItems(Session session) throws RepositoryException {
+        UserManager userManager = AccessControlUtils.getUserManagerAutoSaveDisabled(session);
+        List<String> changedItems = new ArrayList<String>();
+        for (PlannedChange change : changes) {
+            UndoRecord current;
+            if (change.target instanceof NodeUndoRecord) {
+                if (session.nodeExists(((NodeUndoRecord) change.target).getPath())) {
+                    changedItems.add(change.target.getKey());
+                }
+                continue;
+            } else if (change.target instanceof AclUndoRecord) {
+                current = UndoJournal.captureAcl(session, ((AclUndoRecord) change.target).getPath());
+            } else {
+                current = UndoJournal.captureAuthorizable(userManager, ((AuthorizableUndoRecord) change.target).getAuthorizableId());
+            }
+            if (!StringUtils.equals(change.beforeFingerprint, fingerprint(current))) {
+                changedItems.add(change.target.getKey());
+            }
+        }
+        return changedItems;
+    }
+
+    /** Writes the planned changes to the session (without saving it). The authorizables to purge are not handled here.
+     *
+     * @throws IllegalStateException if a regular user of the plan does not exist (it cannot be created as the password is not recorded) */
+    public void apply(Session session, InstallationLogger installLog) throws RepositoryException {
+        UserManager userManager = AccessControlUtils.getUserManagerAutoSaveDisabled(session);
+        for (PlannedChange change : changes) {
+            if (change.target instanceof AuthorizableUndoRecord && ((AuthorizableUndoRecord) change.target).isMissingUser(userManager)) {
+                // otherwise the user and its ACEs would be skipped silently
+                throw new IllegalStateException("User " + ((AuthorizableUndoRecord) change.target).getAuthorizableId()
+                        + " does not exist and cannot be created from the plan (the password is not recorded)");
+            }
+        }
+        for (PlannedChange change : changes) {
+            if (change.target instanceof NodeUndoRecord) {
+                ContentHelper.importContent(session, ((NodeUndoRecord) change.target).getPath(), change.initialContent);
+            } else {
+                change.target.restore(session, userManager);
+            }
+            installLog.addVerboseMessage(LOG, "Applied planned change of " + change.target.getKey());
+        }
+    }
+
+    public String getConfigurationRootPath() {
+        return configurationRootPath;
+    }
+
+    public String[] getRestrictedToPaths() {
+        return restrictedToPaths;
+    }
+
+    public int getCountChanges() {
+        return changes.size();
+    }
+
+    public Set<String> getAuthorizablesToPurge() {
+        return authorizablesToPurge;
+    }
+
+    /** @return a human readable description of each planned change */
+    public List<String> getChangeDescriptions() {
+        List<String> descriptions = new ArrayList<String>();
+        for (PlannedChange change : changes) {
+            if (change.target instanceof NodeUndoRecord) {
+                descriptions.add("Create initial content at " + ((NodeUndoRecord) change.target).getPath());
+            } else {
+                descriptions.add("Change " + change.target.getKey() + (change.description != null ? ": " + change.description : ""));
+            }
+        }
+        for (String authorizableId : authorizablesToPurge) {
+            descriptions.add("Purge authorizable " + authorizableId);
+        }
+        return descriptions;
+    }
+
+    static String fingerprint(UndoRecord record) {
+        return DigestUtils.md5Hex(new Yaml().dump(record.toMap()));
+    }
+
+    private static String describe(UndoRecord before, UndoRecord target) {
+        if (before instanceof AclUndoRecord) {
+            return ((AclUndoRecord) before).getCountAces() + " -> " + ((AclUndoRecord) target).getCountAces() + " ACEs";
+        } else {
+            return ((AuthorizableUndoRecord) target).getDifferences((AuthorizableUndoRecord) before);
+        }
+    }
+
+    /** @return true if the authorizable is configured with content that is imported as is or with an external id, both are not recorded
+     *         by the {@link UndoJournal} */
+    private static boolean hasUnrecordedContent(AcConfiguration acConfiguration, String authorizableId) {
+        AuthorizableConfigBean authorizableConfigBean = acConfiguration.getAuthorizablesConfig() != null
+                ? acConfiguration.getAuthorizablesConfig().getAuthorizableConfig(authorizableId)
+                : null;
+        return authorizableConfigBean != null && (StringUtils.isNotBlank(authorizableConfigBean.getProfileContent())
+                || StringUtils.isNotBlank(authorizableConfigBean.getPreferencesContent())
+                || StringUtils.isNotBlank(authorizableConfigBean.getSocialContent())
+                || StringUtils.isNotEmpty(authorizableConfigBean.getExternalId()));
+    }
+
+    private static String findInitialContent(AcConfiguration acConfiguration, String path) {
+        Collection<AceBean> aceBeans = acConfiguration.getAceConfig();
+        for (AceBean aceBean : aceBeans) {
+            if (StringUtils.equals(aceBean.getJcrPath(), path) && StringUtils.isNotBlank(aceBean.getInitialContent())) {
+                return aceBean.getInitialContent();
+            }
+        }
+        throw new IllegalStateException("No initial content found in configuration for path " + path);
+    }
+
+    private static final class PlannedChange {
+        private final String beforeFingerprint;
+        private final UndoRecord target;
+        private final String initialContent;
+        // only available when the plan has just been created (not persisted)
+        private final String description;
+
+        private PlannedChange(String beforeFingerprint, UndoRecord target, String initialContent, String description) {
+            this.beforeFingerprint = beforeFingerprint;
+            this.target = target;
+            this.initialContent = initialContent;
+            this.description = description;
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.security.AccessControlException;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.jackrabbit.api.JackrabbitWorkspace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Index of the privileges registered in the repository. Each privilege is mapped to a dense bit position and the transitive closure of
+ * aggregate privileges is precomputed as bitset, so resolving aggregates, checking if privileges are covered by others and comparing sets of
+ * privileges are bitset operations instead of recursive {@link AccessControlManager#privilegeFromName(String)} and
+ * {@link Privilege#getDeclaredAggregatePrivileges()} calls.
+ *
+ * The index is created once per installation run (see {@link #create(Session)}). Privileges that were not known when the index was created
+ * (or if the repository does not allow to list the registered privileges) are resolved via the given {@link AccessControlManager} and added
+ * to the index on first use. Thread-safe. */
+public class PrivilegeIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrivilegeIndex.class);
+
+    private final Map<String, Entry> entriesByName = new ConcurrentHashMap<String, Entry>();
+    private final List<Entry> entriesByBitIndex = new CopyOnWriteArrayList<Entry>();
+    private final String registeredPrivilegesHash;
+
+    /** Creates an empty index that is populated on demand. */
+    public PrivilegeIndex() {
+        registeredPrivilegesHash = "";
+    }
+
+    /** Creates an index for the given privileges (and their aggregated privileges). */
+    public PrivilegeIndex(Privilege[] registeredPrivileges) {
+        SortedSet<String> privilegeDefinitions = new TreeSet<String>();
+        for (Privilege privilege : registeredPrivileges) {
+            Entry entry = register(privilege.getName(), privilege);
+            privilegeDefinitions.add(privilege.getName() + "=" + getNames(entry.closure));
+        }
+        registeredPrivilegesHash = DigestUtils.md5Hex(privilegeDefinitions.toString());
+    }
+
+    /** @return an index of all privileges registered in the repository of the given session */
+    public static PrivilegeIndex create(Session session) throws RepositoryException {
+        long startTime = System.currentTimeMillis();
+        Workspace workspace = session.getWorkspace();
+        if (!(workspace instanceof JackrabbitWorkspace)) {
+            LOG.debug("Registered privileges cannot be listed for workspace {}, privileges are indexed on demand", workspace);
+            return new PrivilegeIndex();
+        }
+        PrivilegeIndex privilegeIndex = new PrivilegeIndex(
+                ((JackrabbitWorkspace) workspace).getPrivilegeManager().getRegisteredPrivileges());
+        LOG.debug("Indexed {} privileges in {}ms", privilegeIndex.size(), System.currentTimeMillis() - startTime);
+        return privilegeIndex;
+    }
+
+    /** @return a hash of the privileges (including their aggregation) the index has been created with, it changes when privileges are
+     *         registered in the repository */
+    public String getRegisteredPrivilegesHash() {
+        return registeredPrivilegesHash;
+    }
+
+    /** @return the number of privileges in the index */
+    public int size() {
+        return entriesByBitIndex.size();
+    }
+
+    /** @param privilegeName the name of the privilege
+     * @param acMgr used to resolve privileges that are not yet part of the index (may be null)
+     * @return true if the given privilege exists */
+    public boolean isRegistered(String privilegeName, AccessControlManager acMgr) {
+        if (privilegeName == null) {
+            return false;
+        }
+        try {
+            getEntry(privilegeName, acMgr);
+            return true;
+        } catch (RepositoryException e) {
+            return false;
+        }
+    }
+
+    /** @param privilegeNames the privilege names (may be null)
+     * @param acMgr used to resolve privileges that are not yet part of the index (may be null)
+     * @return the bits of the given privileges including all (transitively) aggregated privileges
+     * @throws AccessControlException if a privilege does not exist */
+    public BitSet getBits(String[] privilegeNames, AccessControlManager acMgr) throws RepositoryException {
+        BitSet bits = new BitSet();
+        if (privilegeNames != null) {
+            for (String privilegeName : privilegeNames) {
+                bits.or(getEntry(privilegeName, acMgr).closure);
+            }
+        }
+        return bits;
+    }
+
+    /** @param privilegeNames the privilege names (may be null)
+     * @param acMgr used to resolve privileges that are not yet part of the index (may be null)
+     * @return the bits of the non-aggregate privileges the given privileges consist of (normalized form, independent of how the
+     *         privileges were aggregated in the given names)
+     * @throws AccessControlException if a privilege does not exist */
+    public BitSet getNonAggregateBits(String[] privilegeNames, AccessControlManager acMgr) throws RepositoryException {
+        BitSet bits = new BitSet();
+        if (privilegeNames != null) {
+            for (String privilegeName : privilegeNames) {
+                bits.or(getEntry(privilegeName, acMgr).nonAggregateClosure);
+            }
+        }
+        return bits;
+    }
+
+    /** @return true if all bits of {@code privilegeBits} are contained in {@code coveringPrivilegeBits} */
+    public static boolean isCoveredBy(BitSet privilegeBits, BitSet coveringPrivilegeBits) {
+        BitSet notCovered = (BitSet) privilegeBits.clone();
+        notCovered.andNot(coveringPrivilegeBits);
+        return notCovered.isEmpty();
+    }
+
+    /** @return the sorted names of the privileges for the given bits */
+    public SortedSet<String> getNames(BitSet privilegeBits) {
+        SortedSet<String> privilegeNames = new TreeSet<String>();
+        for (int i = privilegeBits.nextSetBit(0); i >= 0; i = privilegeBits.nextSetBit(i + 1)) {
+            privilegeNames.add(entriesByBitIndex.get(i).privilege.getName());
+        }
+        return privilegeNames;
+    }
+
+    /** @return the privileges for the given bits */
+    public Privilege[] getPrivileges(BitSet privilegeBits) {
+        Privilege[] privileges = new Privilege[privilegeBits.cardinality()];
+        int j = 0;
+        for (int i = privilegeBits.nextSetBit(0); i >= 0; i = privilegeBits.nextSetBit(i + 1)) {
+            privileges[j++] = entriesByBitIndex.get(i).privilege;
+        }
+        return privileges;
+    }
+
+    private Entry getEntry(String privilegeName, AccessControlManager acMgr) throws RepositoryException {
+        Entry entry = entriesByName.get(privilegeName);
+        if (entry == null) {
+            if (acMgr == null) {
+                throw new AccessControlException("Unknown privilege " + privilegeName);
+            }
+            entry = register(privilegeName, acMgr.privilegeFromName(privilegeName));
+        }
+        return entry;
+    }
+
+    private synchronized Entry register(String privilegeName, Privilege privilege) {
+        Entry entry = entriesByName.get(privilege.getName());
+        if (entry == null) {
+            BitSet closure = new BitSet();
+            BitSet nonAggregateClosure = new BitSet();
+            if (privilege.isAggregate()) {
+                for (Privilege aggregatedPrivilege : privilege.getDeclaredAggregatePrivileges()) {
+                    Entry aggregatedEntry = register(aggregatedPrivilege.getName(), aggregatedPrivilege);
+                    closure.or(aggregatedEntry.closure);
+                    nonAggregateClosure.or(aggregatedEntry.nonAggregateClosure);
+                }
+            }
+            int bitIndex = entriesByBitIndex.size();
+            closure.set(bitIndex);
+            if (!privilege.isAggregate()) {
+                nonAggregateClosure.set(bitIndex);
+            }
+            entry = new Entry(privilege, closure, nonAggregateClosure);
+            entriesByBitIndex.add(entry);
+            entriesByName.put(privilege.getName(), entry);
+        }
+        // the name used for the lookup may differ (e.g. expanded form)
+        entriesByName.put(privilegeName, entry);
+        return entry;
+    }
+
+    /** Immutable once published. */
+    private static final class Entry {
+        private final Privilege privilege;
+        private final BitSet closure;
+        private final BitSet nonAggregateClosure;
+
+        private Entry(Privilege privilege, BitSet closure, BitSet nonAggregateClosure) {
+            this.privilege = privilege;
+            this.closure = closure;
+            this.nonAggregateClosure = nonAggregateClosure;
+        }
+    }
+}
@@ -10,13 +10,21 @@ package biz.netcentric.cq.tools.actool.helper;
 
 import static biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger.msHumanReadable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.ItemNotFoundException;
@@ -32,10 +40,12 @@ import javax.jcr.query.QueryResult;
 import javax.jcr.security.AccessControlList;
 import javax.jcr.security.AccessControlManager;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.util.Text;
+import org.apache.sling.jcr.api.SlingRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +56,7 @@ public class QueryHelper {
     private static final String ROOT_REPO_POLICY_NODE = "/" + Constants.REPO_POLICY_NODE;
     private static final String HOME_REP_POLICY = "/home/rep:policy";
     private static final String OAK_INDEX_PATH_REP_ACL = "/oak:index/repACL";
+    private static final String REP_POLICY_NODE_NAME = "rep:policy";
 
     /** Method that returns a set containing all rep:policy nodes from repository excluding those contained in paths which are excluded from
      * search
@@ -55,6 +66,44 @@ public class QueryHelper {
      * @return all rep:policy nodes delivered by query */
     public static Set<String> getRepPolicyNodePaths(final Session session,
             final List<String> excludePaths) {
+        return getRepPolicyNodePaths(session, excludePaths, null);
+    }
+
+    /** Method that returns a set containing the rep:policy nodes from repository that are relevant for the given restricted paths (in
+     * addition to the ones of the root node and the repository). Only the subtrees of the restricted paths are queried, for regular
+     * expressions the root children that cannot be matched are skipped. The result may contain rep:policy nodes that are outside of the
+     * restricted paths.
+     * 
+     * @param session the JCR session
+     * @param excludePaths paths which are excluded from search
+     * @param restrictedToPaths paths or regular expressions as used for installations with restricted paths, if empty all rep:policy nodes
+     *            are returned
+     * @return all rep:policy nodes delivered by query */
+    public static Set<String> getRepPolicyNodePaths(final Session session,
+            final List<String> excludePaths, final String[] restrictedToPaths) {
+        return getRepPolicyNodePaths(session, excludePaths, restrictedToPaths, null, null, 1, 0, null, null);
+    }
+
+    /** Same as {@link #getRepPolicyNodePaths(Session, List, String[])} but runs the queries for the search roots in parallel on the given
+     * executor with a bounded pool of service sessions. The query for a search root stops after splitThreshold results and the search
+     * root is queried per child node (one level deeper) instead, within the same call. Such search roots are added to
+     * largeQueryRootPaths, calls that pass in the same set query them per child node right away.
+     * 
+     * @param session the JCR session, the queries are run serially using this session if it has pending changes
+     * @param excludePaths paths which are excluded from search
+     * @param restrictedToPaths paths or regular expressions as used for installations with restricted paths, if empty all rep:policy nodes
+     *            are returned
+     * @param repository the repository to log in the service sessions for parallel queries, if null the queries are run serially
+     * @param executorService the executor to run the parallel queries on, if null the queries are run serially
+     * @param maxConcurrentQueries the maximum number of queries (and sessions) in parallel
+     * @param splitThreshold the number of results of the query for a search root that causes it to be queried per child node (for
+     *            repositories without the repACL index the results are ACEs instead of ACLs), 0 to disable splitting
+     * @param largeQueryRootPaths the search roots that are queried per child node, maintained by this method, may be null
+     * @param statistics records duration and result count per query root path, may be null
+     * @return all rep:policy nodes delivered by query */
+    public static Set<String> getRepPolicyNodePaths(final Session session, final List<String> excludePaths,
+            final String[] restrictedToPaths, SlingRepository repository, ExecutorService executorService, int maxConcurrentQueries,
+            final int splitThreshold, Set<String> largeQueryRootPaths, AclQueryStatistics statistics) {
         NodeIterator nodeIt = null;
         try {
             nodeIt = session.getRootNode().getNodes();
@@ -82,7 +131,14 @@ public class QueryHelper {
                 LOG.error("Exception: {}", e);
             }
         }
+        Set<String> searchRootPaths = ArrayUtils.isEmpty(restrictedToPaths) ? rootChildrenPaths
+                : getSearchRootPathsForRestrictedPaths(rootChildrenPaths, restrictedToPaths);
+        LOG.debug("Querying ACLs below {}", searchRootPaths);
+
+        final AclQueryStatistics queryStatistics = statistics != null ? statistics : new AclQueryStatistics();
+        final Set<String> knownLargeQueryRootPaths = largeQueryRootPaths != null ? largeQueryRootPaths : new HashSet<String>();
         Set<String> paths = new HashSet<>();
+        AclQuerySessions querySessions = null;
         try {
             // get the rep:policy node of "/", if existing
             if (session.nodeExists(ROOT_REP_POLICY_NODE)) {
@@ -97,33 +153,294 @@ public class QueryHelper {
                 paths.add(HOME_REP_POLICY);
             }
 
-            boolean indexForRepACLExists = session.nodeExists(OAK_INDEX_PATH_REP_ACL);
+            final boolean indexForRepACLExists = session.nodeExists(OAK_INDEX_PATH_REP_ACL);
             LOG.debug("Index for repACL exists: {}",indexForRepACLExists);
-            String queryForAClNodes = indexForRepACLExists ? 
+            final String queryForAClNodes = indexForRepACLExists ? 
                     "SELECT * FROM [rep:ACL] WHERE ISDESCENDANTNODE([%s])" : 
                     "SELECT ace.* FROM [rep:ACE] AS ace WHERE ace.[rep:principalName] IS NOT NULL AND ISDESCENDANTNODE(ace, [%s])";
             LOG.debug("Query to obtain all ACLs: {}", queryForAClNodes);
-            
-            for (String path : rootChildrenPaths) {
+
+            List<String> queryRootPaths = new ArrayList<String>();
+            List<String> childQueryRootPaths = new ArrayList<String>();
+            for (String path : searchRootPaths) {
                 if(StringUtils.equals(path, ROOT_REP_POLICY_NODE) || StringUtils.equals(path, ROOT_REPO_POLICY_NODE)) {
                     continue;
                 }
-                
-                String query = String.format(queryForAClNodes, path);
+                if (splitThreshold > 0 && knownLargeQueryRootPaths.contains(path) && session.nodeExists(path)) {
+                    addChildQueryRootPaths(session, path, childQueryRootPaths, paths);
+                } else {
+                    queryRootPaths.add(path);
+                }
+            }
+
+            if (repository != null && executorService != null && maxConcurrentQueries > 1 && !session.hasPendingChanges()) {
+                querySessions = new AclQuerySessions(repository, maxConcurrentQueries);
+            }
+
+            // the search roots are queried up to the split threshold, the ones exceeding it are queried per child node afterwards
+            int resultLimit = splitThreshold > 0 ? splitThreshold + 1 : 0;
+            Map<String, Set<String>> resultsByQueryRootPath = runAclQueries(session, queryRootPaths, queryForAClNodes, indexForRepACLExists,
+                    resultLimit, querySessions, executorService, queryStatistics);
+            for (Map.Entry<String, Set<String>> result : resultsByQueryRootPath.entrySet()) {
+                String queryRootPath = result.getKey();
+                if (result.getValue() == null) {
+                    LOG.debug("Query below {} returned more than {} results, it is run per child node", queryRootPath, splitThreshold);
+                    knownLargeQueryRootPaths.add(queryRootPath);
+                    addChildQueryRootPaths(session, queryRootPath, childQueryRootPaths, paths);
+                } else {
+                    paths.addAll(result.getValue());
+                }
+            }
+
+            for (Set<String> result : runAclQueries(session, childQueryRootPaths, queryForAClNodes, indexForRepACLExists, 0,
+                    querySessions, executorService, queryStatistics).values()) {
+                paths.addAll(result);
+            }
 
-                long startTime1 = System.currentTimeMillis();
-                Set<String> nodesResult = indexForRepACLExists ? 
-                        getNodePathsFromQuery(session, query, Query.JCR_SQL2):
-                        getDistinctParentNodePathsFromQuery(session, query, Query.JCR_SQL2);
-                LOG.debug("Query to find ACLs under {} ran in {}ms (count ACLs: {})", path, System.currentTimeMillis()-startTime1, nodesResult.size());
-                paths.addAll(nodesResult);
+            if (splitThreshold > 0) {
+                removeQueryRootPathsNoLongerLarge(knownLargeQueryRootPaths, searchRootPaths, paths, splitThreshold);
             }
         } catch (Exception e) {
             throw new IllegalStateException("Could not query repository for existing ACLs: "+e, e);
+        } finally {
+            if (querySessions != null) {
+                querySessions.logout();
+            }
         }
+        LOG.debug("ACL queries per query root path: {}", queryStatistics);
         return paths;
     }
 
+    /** Runs the queries for the given query root paths, in parallel if query sessions are given.
+     * 
+     * @return the ACL paths by query root path, null for query root paths that returned more results than the given limit */
+    private static Map<String, Set<String>> runAclQueries(Session session, List<String> queryRootPaths, final String queryForAClNodes,
+            final boolean indexForRepACLExists, final int resultLimit, final AclQuerySessions querySessions,
+            ExecutorService executorService, final AclQueryStatistics queryStatistics) throws Exception {
+        Map<String, Set<String>> resultsByQueryRootPath = new LinkedHashMap<String, Set<String>>();
+        if (querySessions == null || queryRootPaths.size() < 2) {
+            for (String path : queryRootPaths) {
+                resultsByQueryRootPath.put(path,
+                        queryAcls(session, path, queryForAClNodes, indexForRepACLExists, resultLimit, queryStatistics));
+            }
+            return resultsByQueryRootPath;
+        }
+
+        Map<String, Future<Set<String>>> futures = new LinkedHashMap<String, Future<Set<String>>>();
+        try {
+            for (final String path : queryRootPaths) {
+                futures.put(path, executorService.submit(new Callable<Set<String>>() {
+                    @Override
+                    public Set<String> call() throws Exception {
+                        Session querySession = querySessions.take();
+                        try {
+                            return queryAcls(querySession, path, queryForAClNodes, indexForRepACLExists, resultLimit, queryStatistics);
+                        } finally {
+                            querySessions.release(querySession);
+                        }
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Set<String>>> future : futures.entrySet()) {
+                resultsByQueryRootPath.put(future.getKey(), future.getValue().get());
+            }
+        } finally {
+            // the executor is shared, only the pending queries of this call are cancelled (without interrupting the running ones)
+            for (Future<Set<String>> future : futures.values()) {
+                future.cancel(false);
+            }
+        }
+        LOG.debug("Ran {} queries for ACLs with up to {} sessions in parallel", queryRootPaths.size(), querySessions.getMaxSessions());
+        return resultsByQueryRootPath;
+    }
+
+    private static void addChildQueryRootPaths(Session session, String path, List<String> queryRootPaths, Set<String> paths)
+            throws RepositoryException {
+        NodeIterator childNodesIt = session.getNode(path).getNodes();
+        while (childNodesIt.hasNext()) {
+            Node childNode = childNodesIt.nextNode();
+            if (REP_POLICY_NODE_NAME.equals(childNode.getName())) {
+                // the ACL of the search root itself
+                paths.add(childNode.getPath());
+            } else {
+                queryRootPaths.add(childNode.getPath());
+            }
+        }
+    }
+
+    private static void removeQueryRootPathsNoLongerLarge(Set<String> largeQueryRootPaths, Set<String> searchRootPaths, Set<String> paths,
+            int splitThreshold) {
+        for (String largeQueryRootPath : largeQueryRootPaths) {
+            if (!searchRootPaths.contains(largeQueryRootPath)) {
+                continue;
+            }
+            int countAcls = 0;
+            for (String path : paths) {
+                if (path.startsWith(largeQueryRootPath + "/")) {
+                    countAcls++;
+                }
+            }
+            if (countAcls <= splitThreshold) {
+                largeQueryRootPaths.remove(largeQueryRootPath);
+            }
+        }
+    }
+
+    /** @return the ACL paths below the given path or null if the query returned more than resultLimit results (if resultLimit > 0) */
+    private static Set<String> queryAcls(Session session, String path, String queryForAClNodes, boolean indexForRepACLExists,
+            int resultLimit, AclQueryStatistics queryStatistics) throws RepositoryException {
+        String query = String.format(queryForAClNodes, path);
+
+        long startTime1 = System.currentTimeMillis();
+        Query jcrQuery = session.getWorkspace().getQueryManager().createQuery(query, Query.JCR_SQL2);
+        if (resultLimit > 0) {
+            jcrQuery.setLimit(resultLimit);
+        }
+        NodeIterator nodeIt = jcrQuery.execute().getNodes();
+        Set<String> nodesResult = new HashSet<String>();
+        int countResults = 0;
+        while (nodeIt.hasNext()) {
+            String resultPath = nodeIt.nextNode().getPath();
+            nodesResult.add(indexForRepACLExists ? resultPath : Text.getRelativeParent(resultPath, 1));
+            if (resultLimit > 0 && ++countResults >= resultLimit) {
+                break;
+            }
+        }
+        long durationMs = System.currentTimeMillis() - startTime1;
+        boolean limitReached = resultLimit > 0 && countResults >= resultLimit;
+        LOG.debug("Query to find ACLs under {} ran in {}ms (count ACLs: {}{})", path, durationMs, nodesResult.size(),
+                limitReached ? ", result limit reached" : "");
+        queryStatistics.recordQuery(path, durationMs, nodesResult.size());
+        return limitReached ? null : nodesResult;
+    }
+
+    /** The service sessions for the parallel queries of one call, they are logged in on demand up to the given maximum. */
+    private static final class AclQuerySessions {
+        private final SlingRepository repository;
+        private final int maxSessions;
+        private final BlockingQueue<Session> idleSessions;
+        private final List<Session> allSessions = new ArrayList<Session>();
+
+        AclQuerySessions(SlingRepository repository, int maxSessions) {
+            this.repository = repository;
+            this.maxSessions = maxSessions;
+            this.idleSessions = new ArrayBlockingQueue<Session>(maxSessions);
+        }
+
+        Session take() throws RepositoryException, InterruptedException {
+            Session session = idleSessions.poll();
+            if (session != null) {
+                return session;
+            }
+            synchronized (allSessions) {
+                if (allSessions.size() < maxSessions) {
+                    session = repository.loginService(null, null);
+                    allSessions.add(session);
+                    return session;
+                }
+            }
+            return idleSessions.take();
+        }
+
+        void release(Session session) throws InterruptedException {
+            idleSessions.put(session);
+        }
+
+        int getMaxSessions() {
+            return maxSessions;
+        }
+
+        void logout() {
+            synchronized (allSessions) {
+                for (Session session : allSessions) {
+                    session.logout();
+                }
+            }
+        }
+    }
+
+    /** Returns true if the given restricted path is a regular expression (as opposed to a plain path that includes its subtree). */
+    public static boolean isRegexPathRestriction(String restrictedToPath) {
+        return StringUtils.containsAny(restrictedToPath, new char[] { '*', '^', '$', '+' });
+    }
+
+    /** Returns true if the given path is contained in the given restricted paths (paths including their subtree or regular expressions), or
+     * if no restricted paths are given. */
+    public static boolean isPathInRestrictedPaths(String path, String[] restrictedToPaths) {
+        if (restrictedToPaths == null || restrictedToPaths.length == 0) {
+            return true;
+        }
+        for (String restrictedToPath : restrictedToPaths) {
+            String regexStr = isRegexPathRestriction(restrictedToPath) ? restrictedToPath : "^" + restrictedToPath + "(/.*|$)";
+            if (path.matches(regexStr)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Set<String> getSearchRootPathsForRestrictedPaths(Set<String> rootChildrenPaths, String[] restrictedToPaths) {
+        Set<String> searchRootPaths = new TreeSet<String>();
+        for (String restrictedToPath : restrictedToPaths) {
+            if (isRegexPathRestriction(restrictedToPath)) {
+                String literalPrefix = getLiteralPrefixOfRegex(restrictedToPath);
+                for (String rootChildPath : rootChildrenPaths) {
+                    if (!literalPrefix.startsWith("/") || rootChildPath.startsWith(literalPrefix)
+                            || literalPrefix.startsWith(rootChildPath + "/")) {
+                        searchRootPaths.add(rootChildPath);
+                    }
+                }
+            } else {
+                String path = StringUtils.removeEnd(restrictedToPath, "/");
+                if (StringUtils.isEmpty(path)) {
+                    searchRootPaths.addAll(rootChildrenPaths);
+                } else if (rootChildrenPaths.contains(Text.getAbsoluteParent(path, 0))) {
+                    // only query paths that are not excluded
+                    searchRootPaths.add(path);
+                }
+            }
+        }
+
+        // remove paths that are contained in the subtree of another search root
+        Set<String> result = new TreeSet<String>();
+        for (String searchRootPath : searchRootPaths) {
+            boolean isContainedInOtherSearchRoot = false;
+            for (String otherSearchRootPath : searchRootPaths) {
+                if (searchRootPath.startsWith(otherSearchRootPath + "/")) {
+                    isContainedInOtherSearchRoot = true;
+                    break;
+                }
+            }
+            if (!isContainedInOtherSearchRoot) {
+                result.add(searchRootPath);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the part of the regular expression that is matched literally at the beginning. Returns an empty string if the regular
+     * expression contains alternatives (in that case the prefix is not reliable). */
+    static String getLiteralPrefixOfRegex(String regex) {
+        if (regex.contains("|")) {
+            return "";
+        }
+        String regexWithoutAnchor = StringUtils.removeStart(regex, "^");
+        StringBuilder literalPrefix = new StringBuilder();
+        for (char c : regexWithoutAnchor.toCharArray()) {
+            if ("?*{".indexOf(c) >= 0) {
+                // the last literal character is optional or repeated
+                if (literalPrefix.length() > 0) {
+                    literalPrefix.setLength(literalPrefix.length() - 1);
+                }
+                break;
+            } else if (".+[]()\\$^".indexOf(c) >= 0) {
+                break;
+            }
+            literalPrefix.append(c);
+        }
+        return literalPrefix.toString();
+    }
+
     /** Get Nodes with XPATH Query. */
     public static Set<String> getNodePathsFromQuery(final Session session,
             final String xpathQuery) throws InvalidQueryException,
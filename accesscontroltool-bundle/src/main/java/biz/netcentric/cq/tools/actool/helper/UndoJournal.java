@@ -0,0 +1,560 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.security.AccessControlEntry;
+import javax.jcr.security.AccessControlManager;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.Restriction;
+import biz.netcentric.cq.tools.actool.history.InstallationLogger;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+/** Records the state of ACLs, authorizables and nodes before they are changed for the first time during an installation. This allows to
+ * roll back an installation that saves the session in batches (the regular rollback by not saving the session is not possible then).
+ *
+ * The records are kept in memory and are additionally persisted as YAML below /var/statistics/achistory with each batch being saved, so
+ * the previous state can be looked up even if the instance went down during the installation. */
+public class UndoJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UndoJournal.class);
+
+    public static final String UNDO_JOURNAL_NODE_NAME_PREFIX = "undo_journal_";
+    private static final String BATCH_NODE_NAME_PREFIX = "batch_";
+    private static final String PROPERTY_RECORDS = "records";
+
+    // content imported via profileContent, preferencesContent or socialContent and rep:externalId are not recorded
+    static final String[] AUTHORIZABLE_PROPERTIES = new String[] { "profile/givenName", "profile/familyName", "profile/email",
+            "profile/aboutMe" };
+
+    private static final String TYPE_ACL = "acl";
+    private static final String TYPE_AUTHORIZABLE = "authorizable";
+    private static final String TYPE_NODE = "node";
+
+    private final List<UndoRecord> records = new ArrayList<UndoRecord>();
+    private int countPersistedRecords = 0;
+
+    private final Set<String> recordedAclPaths = new HashSet<String>();
+    private final Set<String> recordedAuthorizableIds = new HashSet<String>();
+
+    private String journalNodePath;
+    private int countBatches = 0;
+
+    /** Records the current ACL at the given path (if not yet recorded). */
+    public void recordAcl(Session session, String path) throws RepositoryException {
+        String aclPath = StringUtils.defaultString(path);
+        if (!recordedAclPaths.add(aclPath)) {
+            return;
+        }
+        records.add(captureAcl(session, aclPath));
+    }
+
+    /** Records the current state of the given authorizable (if not yet recorded). */
+    public void recordAuthorizable(UserManager userManager, String authorizableId) throws RepositoryException {
+        if (!recordedAuthorizableIds.add(authorizableId)) {
+            return;
+        }
+        records.add(captureAuthorizable(userManager, authorizableId));
+    }
+
+    /** Records that a node has been created at the given path (e.g. for initial content). */
+    public void recordCreatedNode(String path) {
+        records.add(new NodeUndoRecord(path));
+    }
+
+    public int getCountRecords() {
+        return records.size();
+    }
+
+    List<UndoRecord> getRecords() {
+        return records;
+    }
+
+    /** Adds the records that have not been persisted yet to the journal node in the repository. To be called before the session is
+     * saved, so the records are saved together with the changes they describe. */
+    public void persistPendingRecords(Session session) throws RepositoryException {
+        if (countPersistedRecords == records.size()) {
+            return;
+        }
+        Node journalNode;
+        if (journalNodePath == null) {
+            Node acHistoryRootNode = HistoryUtils.getAcHistoryRootNode(session);
+            journalNode = acHistoryRootNode.addNode(UNDO_JOURNAL_NODE_NAME_PREFIX + System.currentTimeMillis(),
+                    HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+            journalNodePath = journalNode.getPath();
+        } else {
+            journalNode = session.getNode(journalNodePath);
+        }
+
+        List<Map<String, Object>> pendingRecords = new ArrayList<Map<String, Object>>();
+        for (UndoRecord record : records.subList(countPersistedRecords, records.size())) {
+            pendingRecords.add(record.toMap());
+        }
+        Node batchNode = journalNode.addNode(BATCH_NODE_NAME_PREFIX + (++countBatches), HistoryUtils.NODETYPE_NT_UNSTRUCTURED);
+        batchNode.setProperty(PROPERTY_RECORDS, new Yaml().dump(pendingRecords));
+        countPersistedRecords = records.size();
+    }
+
+    /** Discards all unsaved changes of the session and restores the recorded state in reverse order. The journal node is removed
+     * afterwards. */
+    public void rollback(Session session, InstallationLogger installLog) throws RepositoryException {
+        session.refresh(false);
+        UserManager userManager = AccessControlUtils.getUserManagerAutoSaveDisabled(session);
+        for (int i = records.size() - 1; i >= 0; i--) {
+            UndoRecord record = records.get(i);
+            if (record instanceof AuthorizableUndoRecord && ((AuthorizableUndoRecord) record).isMissingUser(userManager)) {
+                installLog.addWarning(LOG, "User " + ((AuthorizableUndoRecord) record).getAuthorizableId()
+                        + " does not exist and cannot be restored (the password is not recorded)");
+            }
+            record.restore(session, userManager);
+        }
+        removeJournalNode(session);
+        session.save();
+        installLog.addMessage(LOG, "Rolled back " + records.size() + " changes using the undo journal");
+    }
+
+    /** Removes the journal node after a successful installation. */
+    public void discard(Session session) throws RepositoryException {
+        removeJournalNode(session);
+        if (session.hasPendingChanges()) {
+            session.save();
+        }
+    }
+
+    public String getJournalNodePath() {
+        return journalNodePath;
+    }
+
+    private void removeJournalNode(Session session) throws RepositoryException {
+        if (journalNodePath != null && session.nodeExists(journalNodePath)) {
+            session.getNode(journalNodePath).remove();
+        }
+    }
+
+    static AclUndoRecord captureAcl(Session session, String path) throws RepositoryException {
+        AccessControlManager acMgr = session.getAccessControlManager();
+        boolean hasPolicy = hasPolicy(acMgr, path);
+        List<AceBean> aceBeans = new ArrayList<AceBean>();
+        if (hasPolicy) {
+            JackrabbitAccessControlList acl = AccessControlUtils.getModifiableAcl(acMgr, path);
+            for (AccessControlEntry ace : acl.getAccessControlEntries()) {
+                aceBeans.add(AcHelper.getAceBean(ace, acl));
+            }
+        }
+        return new AclUndoRecord(path, hasPolicy, aceBeans);
+    }
+
+    static AuthorizableUndoRecord captureAuthorizable(UserManager userManager, String authorizableId) throws RepositoryException {
+        Authorizable authorizable = userManager.getAuthorizable(authorizableId);
+        AuthorizableUndoRecord record = new AuthorizableUndoRecord(authorizableId, authorizable != null);
+        if (authorizable != null) {
+            record.isGroup = authorizable.isGroup();
+            record.path = authorizable.getPath();
+            record.principalName = authorizable.getPrincipal().getName();
+            Iterator<Group> memberOfIt = authorizable.declaredMemberOf();
+            while (memberOfIt.hasNext()) {
+                record.memberOf.add(memberOfIt.next().getID());
+            }
+            if (authorizable.isGroup()) {
+                Iterator<Authorizable> membersIt = ((Group) authorizable).getDeclaredMembers();
+                while (membersIt.hasNext()) {
+                    record.members.add(membersIt.next().getID());
+                }
+            } else {
+                User user = (User) authorizable;
+                record.isSystemUser = user.isSystemUser();
+                record.disabledReason = user.isDisabled() ? user.getDisabledReason() : null;
+            }
+            for (String propertyName : AUTHORIZABLE_PROPERTIES) {
+                Value[] values = authorizable.getProperty(propertyName);
+                if (values != null && values.length > 0) {
+                    record.properties.put(propertyName, values[0].getString());
+                }
+            }
+        }
+        return record;
+    }
+
+    /** Creates a record from its map representation as created by {@link UndoRecord#toMap()}. */
+    @SuppressWarnings("unchecked")
+    static UndoRecord recordFromMap(Map<String, Object> map) {
+        String type = (String) map.get("type");
+        if (TYPE_ACL.equals(type)) {
+            List<AceBean> aceBeans = new ArrayList<AceBean>();
+            for (Map<String, Object> ace : (List<Map<String, Object>>) map.get("aces")) {
+                AceBean aceBean = new AceBean();
+                aceBean.setPrincipalName((String) ace.get("principal"));
+                aceBean.setPermission((String) ace.get("permission"));
+                List<String> privileges = (List<String>) ace.get("privileges");
+                aceBean.setPrivilegesString(StringUtils.join(privileges, ","));
+                Map<String, List<String>> restrictions = (Map<String, List<String>>) ace.get("restrictions");
+                if (restrictions != null) {
+                    List<Restriction> restrictionList = new ArrayList<Restriction>();
+                    for (Map.Entry<String, List<String>> restriction : restrictions.entrySet()) {
+                        restrictionList.add(new Restriction(restriction.getKey(),
+                                restriction.getValue().toArray(new String[restriction.getValue().size()])));
+                    }
+                    aceBean.setRestrictions(restrictionList);
+                }
+                aceBeans.add(aceBean);
+            }
+            return new AclUndoRecord((String) map.get("path"), Boolean.TRUE.equals(map.get("hasPolicy")), aceBeans);
+        } else if (TYPE_AUTHORIZABLE.equals(type)) {
+            AuthorizableUndoRecord record = new AuthorizableUndoRecord((String) map.get("id"), Boolean.TRUE.equals(map.get("existed")));
+            if (record.existed) {
+                record.isGroup = Boolean.TRUE.equals(map.get("isGroup"));
+                record.isSystemUser = Boolean.TRUE.equals(map.get("isSystemUser"));
+                record.path = (String) map.get("path");
+                record.principalName = (String) map.get("principalName");
+                record.memberOf.addAll((List<String>) map.get("memberOf"));
+                record.members.addAll((List<String>) map.get("members"));
+                record.properties.putAll((Map<String, String>) map.get("properties"));
+                record.disabledReason = (String) map.get("disabledReason");
+            }
+            return record;
+        } else if (TYPE_NODE.equals(type)) {
+            return new NodeUndoRecord((String) map.get("path"));
+        } else {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+    }
+
+    private static boolean hasPolicy(AccessControlManager acMgr, String path) throws RepositoryException {
+        for (Object policy : acMgr.getPolicies(StringUtils.defaultIfEmpty(path, null))) {
+            if (policy instanceof JackrabbitAccessControlList) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The recorded state of an item. */
+    interface UndoRecord {
+
+        /** Restores the recorded state in the repository. */
+        void restore(Session session, UserManager userManager) throws RepositoryException;
+
+        /** @return a human readable key of the recorded item */
+        String getKey();
+
+        Map<String, Object> toMap();
+    }
+
+    static final class AclUndoRecord implements UndoRecord {
+        private final String path;
+        private final boolean hasPolicy;
+        private final List<AceBean> aceBeans;
+
+        private AclUndoRecord(String path, boolean hasPolicy, List<AceBean> aceBeans) {
+            this.path = path;
+            this.hasPolicy = hasPolicy;
+            this.aceBeans = aceBeans;
+        }
+
+        @Override
+        public String getKey() {
+            return "ACL " + path;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        int getCountAces() {
+            return aceBeans.size();
+        }
+
+        @Override
+        public void restore(Session session, UserManager userManager) throws RepositoryException {
+            AccessControlManager acMgr = session.getAccessControlManager();
+            String policyPath = StringUtils.defaultIfEmpty(path, null);
+            JackrabbitAccessControlList acl = AccessControlUtils.getModifiableAcl(acMgr, policyPath);
+            if (acl == null) {
+                LOG.debug("Path {} does not exist anymore, not restoring its ACL", path);
+                return;
+            }
+            for (AccessControlEntry ace : acl.getAccessControlEntries()) {
+                acl.removeAccessControlEntry(ace);
+            }
+            for (AceBean aceBean : aceBeans) {
+                Principal principal = new PrincipalImpl(aceBean.getPrincipalName());
+                RestrictionsHolder restrictions = new RestrictionsHolder(aceBean.getRestrictions(), session.getValueFactory(), acl);
+                acl.addEntry(principal, AccessControlUtils.privilegesFromNames(acMgr, aceBean.getPrivileges()), aceBean.isAllow(),
+                        restrictions.getSingleValuedRestrictionsMap(), restrictions.getMultiValuedRestrictionsMap());
+            }
+            if (hasPolicy) {
+                acMgr.setPolicy(policyPath, acl);
+            } else if (hasPolicy(acMgr, path)) {
+                acMgr.removePolicy(policyPath, acl);
+            }
+        }
+
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("type", TYPE_ACL);
+            map.put("path", path);
+            map.put("hasPolicy", hasPolicy);
+            List<Map<String, Object>> aces = new ArrayList<Map<String, Object>>();
+            for (AceBean aceBean : aceBeans) {
+                Map<String, Object> ace = new LinkedHashMap<String, Object>();
+                ace.put("principal", aceBean.getPrincipalName());
+                ace.put("permission", aceBean.getPermission());
+                ace.put("privileges", Arrays.asList(aceBean.getPrivileges()));
+                if (!aceBean.getRestrictions().isEmpty()) {
+                    Map<String, Object> restrictions = new LinkedHashMap<String, Object>();
+                    for (Restriction restriction : aceBean.getRestrictions()) {
+                        restrictions.put(restriction.getName(), restriction.getValues());
+                    }
+                    ace.put("restrictions", restrictions);
+                }
+                aces.add(ace);
+            }
+            map.put("aces", aces);
+            return map;
+        }
+    }
+
+    static final class AuthorizableUndoRecord implements UndoRecord {
+        private final String authorizableId;
+        private final boolean existed;
+        private boolean isGroup;
+        private boolean isSystemUser;
+        private String path;
+        private String principalName;
+        private final Set<String> memberOf = new TreeSet<String>();
+        private final Set<String> members = new TreeSet<String>();
+        private final Map<String, String> properties = new LinkedHashMap<String, String>();
+        private String disabledReason;
+
+        private AuthorizableUndoRecord(String authorizableId, boolean existed) {
+            this.authorizableId = authorizableId;
+            this.existed = existed;
+        }
+
+        @Override
+        public String getKey() {
+            return "authorizable " + authorizableId;
+        }
+
+        String getAuthorizableId() {
+            return authorizableId;
+        }
+
+        /** @return true if the record describes an existing regular user, such users cannot be created on restore as the password is not
+         *         recorded */
+        boolean isRegularUser() {
+            return existed && !isGroup && !isSystemUser;
+        }
+
+        /** @return true if the record describes a regular user that does not exist (anymore) and hence cannot be restored */
+        boolean isMissingUser(UserManager userManager) throws RepositoryException {
+            return isRegularUser() && userManager.getAuthorizable(authorizableId) == null;
+        }
+
+        /** @return a short description of the differences to the given record */
+        String getDifferences(AuthorizableUndoRecord other) {
+            List<String> differences = new ArrayList<String>();
+            if (existed != other.existed) {
+                differences.add(existed ? "created" : "removed");
+            } else if (existed) {
+                if (!StringUtils.equals(StringUtils.substringBeforeLast(path, "/"), StringUtils.substringBeforeLast(other.path, "/"))) {
+                    differences.add("moved to " + StringUtils.substringBeforeLast(path, "/"));
+                }
+                addSetDifferences(differences, "memberOf", other.memberOf, memberOf);
+                addSetDifferences(differences, "members", other.members, members);
+                if (!properties.equals(other.properties) || !StringUtils.equals(disabledReason, other.disabledReason)) {
+                    differences.add("properties changed");
+                }
+            }
+            return StringUtils.join(differences, ", ");
+        }
+
+        private static void addSetDifferences(List<String> differences, String label, Set<String> before, Set<String> after) {
+            Set<String> added = new TreeSet<String>(after);
+            added.removeAll(before);
+            Set<String> removed = new TreeSet<String>(before);
+            removed.removeAll(after);
+            if (!added.isEmpty()) {
+                differences.add(label + " +" + added);
+            }
+            if (!removed.isEmpty()) {
+                differences.add(label + " -" + removed);
+            }
+        }
+
+        @Override
+        public void restore(Session session, UserManager userManager) throws RepositoryException {
+            Authorizable authorizable = userManager.getAuthorizable(authorizableId);
+            if (!existed) {
+                if (authorizable != null) {
+                    authorizable.remove();
+                }
+                return;
+            }
+            String intermediatePath = StringUtils.substringBeforeLast(path, "/");
+            if (authorizable != null && isGroup && authorizable.isGroup()
+                    && !StringUtils.equals(intermediatePath, StringUtils.substringBeforeLast(authorizable.getPath(), "/"))) {
+                // memberships are restored below
+                authorizable.remove();
+                authorizable = null;
+            }
+            if (authorizable == null) {
+                authorizable = createAuthorizable(userManager, intermediatePath);
+                if (authorizable == null) {
+                    return;
+                }
+            }
+
+            Set<String> currentMemberOf = new HashSet<String>();
+            Iterator<Group> memberOfIt = authorizable.declaredMemberOf();
+            while (memberOfIt.hasNext()) {
+                Group group = memberOfIt.next();
+                currentMemberOf.add(group.getID());
+                if (!memberOf.contains(group.getID())) {
+                    group.removeMember(authorizable);
+                }
+            }
+            for (String groupId : memberOf) {
+                Authorizable group = userManager.getAuthorizable(groupId);
+                if (!currentMemberOf.contains(groupId) && group != null && group.isGroup()) {
+                    ((Group) group).addMember(authorizable);
+                }
+            }
+
+            if (authorizable.isGroup()) {
+                Group group = (Group) authorizable;
+                Set<String> currentMembers = new HashSet<String>();
+                Iterator<Authorizable> membersIt = group.getDeclaredMembers();
+                while (membersIt.hasNext()) {
+                    Authorizable member = membersIt.next();
+                    currentMembers.add(member.getID());
+                    if (!members.contains(member.getID())) {
+                        group.removeMember(member);
+                    }
+                }
+                for (String memberId : members) {
+                    Authorizable member = userManager.getAuthorizable(memberId);
+                    if (!currentMembers.contains(memberId) && member != null) {
+                        group.addMember(member);
+                    }
+                }
+            } else {
+                ((User) authorizable).disable(disabledReason);
+                if (!StringUtils.equals(StringUtils.substringBeforeLast(path, "/"),
+                        StringUtils.substringBeforeLast(authorizable.getPath(), "/"))) {
+                    LOG.warn("User {} is located at {} and cannot be moved to {}", authorizableId, authorizable.getPath(), path);
+                }
+            }
+
+            for (String propertyName : AUTHORIZABLE_PROPERTIES) {
+                if (properties.containsKey(propertyName)) {
+                    authorizable.setProperty(propertyName, session.getValueFactory().createValue(properties.get(propertyName)));
+                } else if (authorizable.hasProperty(propertyName)) {
+                    authorizable.removeProperty(propertyName);
+                }
+            }
+        }
+
+        private Authorizable createAuthorizable(UserManager userManager, String intermediatePath) throws RepositoryException {
+            Principal principal = new PrincipalImpl(StringUtils.defaultIfEmpty(principalName, authorizableId));
+            if (isGroup) {
+                return userManager.createGroup(authorizableId, principal, intermediatePath);
+            } else if (isSystemUser) {
+                return userManager.createSystemUser(authorizableId, intermediatePath);
+            } else {
+                // callers report this via isMissingUser()
+                LOG.warn("User {} does not exist and cannot be created (the password is not recorded)", authorizableId);
+                return null;
+            }
+        }
+
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("type", TYPE_AUTHORIZABLE);
+            map.put("id", authorizableId);
+            map.put("existed", existed);
+            if (existed) {
+                map.put("isGroup", isGroup);
+                if (isSystemUser) {
+                    map.put("isSystemUser", isSystemUser);
+                }
+                map.put("path", path);
+                map.put("principalName", principalName);
+                map.put("memberOf", new ArrayList<String>(memberOf));
+                map.put("members", new ArrayList<String>(members));
+                map.put("properties", properties);
+                if (disabledReason != null) {
+                    map.put("disabledReason", disabledReason);
+                }
+            }
+            return map;
+        }
+    }
+
+    static final class NodeUndoRecord implements UndoRecord {
+        private final String path;
+
+        private NodeUndoRecord(String path) {
+            this.path = path;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getKey() {
+            return "node " + path;
+        }
+
+        @Override
+        public void restore(Session session, UserManager userManager) throws RepositoryException {
+            if (session.nodeExists(path)) {
+                session.getNode(path).remove();
+            }
+        }
+
+        @Override
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("type", TYPE_NODE);
+            map.put("path", path);
+            return map;
+        }
+    }
+
+}
@@ -35,9 +35,35 @@ public interface InstallationLogger extends InstallationLog {
 
     void incCountAclsNoChange();
 
+    /** To be called (additionally to {@link #incCountAclsNoChange()}) if an ACL has been skipped as its configuration and its rep:policy
+     * node are unchanged since the last installation. */
+    void incCountAclsSkippedByHash();
+
+    int getCountAclsSkippedByHash();
+
+    void addCountAceWrites(int countAceWrites, int countAceWritesSaved);
+
+    int getCountAceWrites();
+
+    int getCountAceWritesSaved();
+
+    /** @param countPolicyWrites the number of setPolicy/removePolicy calls for one ACL path */
+    void addCountPolicyWrites(int countPolicyWrites);
+
+    int getCountPolicyWrites();
+
+    int getMaxCountPolicyWritesPerPath();
+
     void incCountAuthorizablesCreated();
     void incCountAuthorizablesMoved();
 
     int getCountAuthorizablesCreated();
     int getCountAuthorizablesMoved();
+
+    // progress tracking (e.g. to poll the progress of asynchronous installations)
+    void startPhase(String phase, int countItemsInPhase);
+
+    void incCountAuthorizablesProcessed();
+
+    void incCountAclPathsProcessed();
 }
@@ -18,6 +18,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 
@@ -48,17 +49,31 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
     // only for install hook case
     private String crxPackageName;
 
-    private int countAclsNoChange = 0;
-    private int countAclsChanged = 0;
-    private int countAclsPathDoesNotExist = 0;
+    // counters are atomic as ACLs may be installed by multiple threads (parallel shards)
+    private final AtomicInteger countAclsNoChange = new AtomicInteger();
+    private final AtomicInteger countAclsSkippedByHash = new AtomicInteger();
+    private final AtomicInteger countAclsChanged = new AtomicInteger();
+    private final AtomicInteger countAclsPathDoesNotExist = new AtomicInteger();
+    private final AtomicInteger countAceWrites = new AtomicInteger();
+    private final AtomicInteger countAceWritesSaved = new AtomicInteger();
+    private final AtomicInteger countPolicyWrites = new AtomicInteger();
+    private final AtomicInteger maxCountPolicyWritesPerPath = new AtomicInteger();
 
-    private int countActionCacheHit = 0;
-    private int countActionCacheMiss = 0;
+    private final AtomicInteger countActionCacheHit = new AtomicInteger();
+    private final AtomicInteger countActionCacheMiss = new AtomicInteger();
 
-    private int countAuthorizablesCreated = 0;
-    private int countAuthorizablesMoved = 0;
+    private final AtomicInteger countAuthorizablesCreated = new AtomicInteger();
+    private final AtomicInteger countAuthorizablesMoved = new AtomicInteger();
 
-    private int missingParentPathsForInitialContent = 0;
+    private final AtomicInteger missingParentPathsForInitialContent = new AtomicInteger();
+
+    // progress is read by other threads while the installation is running
+    private volatile String currentPhase;
+    private volatile long currentPhaseStartTime;
+    private volatile int countItemsInCurrentPhase = 0;
+    private final AtomicInteger countItemsProcessedInCurrentPhase = new AtomicInteger();
+    private final AtomicInteger countAuthorizablesProcessed = new AtomicInteger();
+    private final AtomicInteger countAclPathsProcessed = new AtomicInteger();
 
     private DateFormat timestampFormat = new SimpleDateFormat("HH:mm:ss.SSS");
 
@@ -117,7 +132,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
         addWarning(warning);
     }
 
-    protected void addWarning(String warning) {
+    protected synchronized void addWarning(String warning) {
         warnings.add(new HistoryEntry(msgIndex, new Timestamp(
                 new Date().getTime()), MSG_IDENTIFIER_WARNING + warning));
         msgIndex++;
@@ -129,7 +144,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
         addMessage(message);
     }
 
-    protected void addMessage(String message) {
+    protected synchronized void addMessage(String message) {
         messages.add(new HistoryEntry(msgIndex, new Timestamp(new Date()
                 .getTime()), " " + message));
         msgIndex++;
@@ -141,7 +156,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
         addError(error, e);
     }
 
-    public void addError(final String error, Throwable e) {
+    public synchronized void addError(final String error, Throwable e) {
         String fullErrorValue = error + " / e=" + e;
         errors.add(new HistoryEntry(msgIndex, new Timestamp(
                 new Date().getTime()), MSG_IDENTIFIER_ERROR + fullErrorValue));
@@ -155,7 +170,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
         addVerboseMessage(message);
     }
 
-    protected void addVerboseMessage(String message) {
+    protected synchronized void addVerboseMessage(String message) {
         verboseMessages.add(new HistoryEntry(msgIndex, new Timestamp(
                 new Date().getTime()), " " + message));
         msgIndex++;
@@ -195,7 +210,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     @SuppressWarnings("unchecked")
-    public String getMessageHistory() {
+    public synchronized String getMessageHistory() {
         return getMessageString(getMessageSet(warnings, messages, errors));
     }
 
@@ -204,7 +219,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     @SuppressWarnings("unchecked")
-    public String getVerboseMessageHistory() {
+    public synchronized String getVerboseMessageHistory() {
         return getMessageString(getMessageSet(warnings, messages,
                 verboseMessages, errors));
     }
@@ -261,7 +276,7 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
 
     @Override
     public void incCountAclsNoChange() {
-        countAclsNoChange++;
+        countAclsNoChange.incrementAndGet();
     }
 
     /* (non-Javadoc)
@@ -269,12 +284,22 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getCountAclsUnchanged() {
-        return countAclsNoChange;
+        return countAclsNoChange.get();
+    }
+
+    @Override
+    public void incCountAclsSkippedByHash() {
+        countAclsSkippedByHash.incrementAndGet();
+    }
+
+    @Override
+    public int getCountAclsSkippedByHash() {
+        return countAclsSkippedByHash.get();
     }
 
     @Override
     public void incCountAclsChanged() {
-        countAclsChanged++;
+        countAclsChanged.incrementAndGet();
     }
 
     /* (non-Javadoc)
@@ -282,12 +307,12 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getCountAclsChanged() {
-        return countAclsChanged;
+        return countAclsChanged.get();
     }
 
     @Override
     public void incCountAclsPathDoesNotExist() {
-        countAclsPathDoesNotExist++;
+        countAclsPathDoesNotExist.incrementAndGet();
     }
 
     /* (non-Javadoc)
@@ -295,12 +320,48 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getCountAclsPathDoesNotExist() {
-        return countAclsPathDoesNotExist;
+        return countAclsPathDoesNotExist.get();
+    }
+
+    @Override
+    public void addCountAceWrites(int countAceWrites, int countAceWritesSaved) {
+        this.countAceWrites.addAndGet(countAceWrites);
+        this.countAceWritesSaved.addAndGet(countAceWritesSaved);
+    }
+
+    @Override
+    public int getCountAceWrites() {
+        return countAceWrites.get();
+    }
+
+    @Override
+    public int getCountAceWritesSaved() {
+        return countAceWritesSaved.get();
+    }
+
+    @Override
+    public void addCountPolicyWrites(int countPolicyWritesOfPath) {
+        countPolicyWrites.addAndGet(countPolicyWritesOfPath);
+        int currentMax;
+        while ((currentMax = maxCountPolicyWritesPerPath.get()) < countPolicyWritesOfPath
+                && !maxCountPolicyWritesPerPath.compareAndSet(currentMax, countPolicyWritesOfPath)) {
+            // retry if another thread has updated the maximum in the meantime
+        }
+    }
+
+    @Override
+    public int getCountPolicyWrites() {
+        return countPolicyWrites.get();
+    }
+
+    @Override
+    public int getMaxCountPolicyWritesPerPath() {
+        return maxCountPolicyWritesPerPath.get();
     }
 
     @Override
     public void incCountActionCacheMiss() {
-        countActionCacheMiss++;
+        countActionCacheMiss.incrementAndGet();
     }
 
     /* (non-Javadoc)
@@ -308,12 +369,12 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getCountActionCacheMiss() {
-        return countActionCacheMiss;
+        return countActionCacheMiss.get();
     }
 
     @Override
     public void incCountActionCacheHit() {
-        countActionCacheHit++;
+        countActionCacheHit.incrementAndGet();
     }
 
     /* (non-Javadoc)
@@ -321,12 +382,12 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getCountActionCacheHit() {
-        return countActionCacheHit;
+        return countActionCacheHit.get();
     }
 
     @Override
     public void incMissingParentPathsForInitialContent() {
-        missingParentPathsForInitialContent++;
+        missingParentPathsForInitialContent.incrementAndGet();
     }
 
     /*
@@ -336,25 +397,76 @@ public class PersistableInstallationLogger implements InstallationLogger, Instal
      */
     @Override
     public int getMissingParentPathsForInitialContent() {
-        return missingParentPathsForInitialContent;
+        return missingParentPathsForInitialContent.get();
     }
 
     @Override
     public void incCountAuthorizablesCreated() {
-        countAuthorizablesCreated++;
+        countAuthorizablesCreated.incrementAndGet();
     }
 
     @Override
     public void incCountAuthorizablesMoved() {
-        countAuthorizablesMoved++;
+        countAuthorizablesMoved.incrementAndGet();
     }
 
     public int getCountAuthorizablesCreated() {
-        return countAuthorizablesCreated;
+        return countAuthorizablesCreated.get();
     }
 
     public int getCountAuthorizablesMoved() {
-        return countAuthorizablesMoved;
+        return countAuthorizablesMoved.get();
+    }
+
+    @Override
+    public void startPhase(String phase, int countItemsInPhase) {
+        currentPhaseStartTime = System.currentTimeMillis();
+        countItemsProcessedInCurrentPhase.set(0);
+        countItemsInCurrentPhase = countItemsInPhase;
+        currentPhase = phase;
+    }
+
+    @Override
+    public void incCountAuthorizablesProcessed() {
+        countAuthorizablesProcessed.incrementAndGet();
+        countItemsProcessedInCurrentPhase.incrementAndGet();
+    }
+
+    @Override
+    public void incCountAclPathsProcessed() {
+        countAclPathsProcessed.incrementAndGet();
+        countItemsProcessedInCurrentPhase.incrementAndGet();
+    }
+
+    public String getCurrentPhase() {
+        return currentPhase;
+    }
+
+    public int getCountItemsInCurrentPhase() {
+        return countItemsInCurrentPhase;
+    }
+
+    public int getCountItemsProcessedInCurrentPhase() {
+        return countItemsProcessedInCurrentPhase.get();
+    }
+
+    public int getCountAuthorizablesProcessed() {
+        return countAuthorizablesProcessed.get();
+    }
+
+    public int getCountAclPathsProcessed() {
+        return countAclPathsProcessed.get();
+    }
+
+    /** @return the estimated remaining time of the current phase in ms (extrapolated from the items processed so far) or -1 if unknown */
+    public long getEstimatedRemainingTimeOfCurrentPhase() {
+        int processed = countItemsProcessedInCurrentPhase.get();
+        int total = countItemsInCurrentPhase;
+        if (processed <= 0 || total <= 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - currentPhaseStartTime;
+        return Math.max(0, elapsed * (total - processed) / processed);
     }
 
 }
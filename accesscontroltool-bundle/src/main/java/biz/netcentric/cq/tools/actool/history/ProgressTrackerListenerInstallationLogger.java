@@ -38,6 +38,12 @@ public class ProgressTrackerListenerInstallationLogger extends PersistableInstal
         super.addError(error, e);
     }
 
+    @Override
+    public void startPhase(String phase, int countItemsInPhase) {
+        listener.onMessage(ProgressTrackerListener.Mode.TEXT, "Phase: " + phase + (countItemsInPhase > 0 ? " (" + countItemsInPhase + " items)" : ""), "");
+        super.startPhase(phase, countItemsInPhase);
+    }
+
     @Override
     protected void addVerboseMessage(String message) {
         // no logging of verbose log in installation log (verbose log can be looked up via JMX)
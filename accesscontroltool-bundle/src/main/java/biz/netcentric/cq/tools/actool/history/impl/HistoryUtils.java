@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -50,6 +51,8 @@ public class HistoryUtils {
     public static final String LOG_FILE_NAME_VERBOSE = "actool-verbose.log";
 
     public static final String HISTORY_NODE_NAME_PREFIX = "history_";
+
+    private static final AtomicLong LAST_HISTORY_TIMESTAMP = new AtomicLong();
     public static final String NODETYPE_NT_UNSTRUCTURED = "nt:unstructured";
     private static final String PROPERTY_SLING_RESOURCE_TYPE = "sling:resourceType";
     public static final String ACHISTORY_ROOT_NODE = "achistory";
@@ -99,7 +102,7 @@ public class HistoryUtils {
             throws RepositoryException {
 
         Node acHistoryRootNode = getAcHistoryRootNode(session);
-        String name = HISTORY_NODE_NAME_PREFIX + System.currentTimeMillis();
+        String name = HISTORY_NODE_NAME_PREFIX + nextHistoryTimestamp();
         StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
         
         String trigger;
@@ -168,6 +171,18 @@ public class HistoryUtils {
         return false;
     }
 
+    /** Returns a strictly increasing timestamp to ensure unique history node names when multiple configuration roots are applied
+     * concurrently. */
+    private static long nextHistoryTimestamp() {
+        while (true) {
+            long lastTimestamp = LAST_HISTORY_TIMESTAMP.get();
+            long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+            if (LAST_HISTORY_TIMESTAMP.compareAndSet(lastTimestamp, timestamp)) {
+                return timestamp;
+            }
+        }
+    }
+
     private static Node safeGetNode(final Node baseNode, final String name,
             final String typeToCreate) throws RepositoryException {
         if (!baseNode.hasNode(name)) {
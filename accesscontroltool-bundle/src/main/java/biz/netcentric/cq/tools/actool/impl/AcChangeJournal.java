@@ -0,0 +1,454 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.util.Text;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.QueryHelper;
+import biz.netcentric.cq.tools.actool.impl.AcChangeJournal.Configuration;
+
+/** Observes changes of ACLs and group memberships that are made outside of the AC Tool and records them in a compact in-memory journal.
+ * ACL paths and authorizables managed by the configuration are marked as dirty, they can be repaired with
+ * {@link AcInstallationServiceImpl#reconcileDirty()} without a full installation. */
+@Component(service = AcChangeJournal.class)
+@Designate(ocd = Configuration.class)
+public class AcChangeJournal implements EventListener {
+    private static final Logger LOG = LoggerFactory.getLogger(AcChangeJournal.class);
+
+    static final String CHANGE_TYPE_ACL = "ACL";
+    static final String CHANGE_TYPE_MEMBERSHIP = "MEMBERSHIP";
+
+    private static final String REP_POLICY_SEGMENT = "/rep:policy";
+    private static final String REP_PRINCIPAL_NAME = "rep:principalName";
+    private static final String REP_MEMBERS = "rep:members";
+    private static final String REP_MEMBERS_LIST_SEGMENT = "/rep:membersList";
+
+    // the parent node of all relevant events has one of these types (the node with rep:policy is mix:AccessControllable)
+    private static final String[] OBSERVED_NODE_TYPES = new String[] { "rep:AccessControllable", "rep:ACL", "rep:ACE",
+            "rep:Restrictions", "rep:Group", "rep:MemberRefsList", "rep:MemberRefs" };
+    private static final int OBSERVED_EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED
+            | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    // number of finished installations whose late delivered events are still ignored
+    private static final int MAX_FINISHED_INSTALLATION_WINDOWS = 20;
+
+    @Reference(policyOption = ReferencePolicyOption.GREEDY)
+    private SlingRepository repository;
+
+    private boolean observeChanges;
+    private int maxJournalEntries = 1000;
+
+    // the session used to register the listener, changes of this user (the AC Tool's service user) are not journaled
+    Session observationSession;
+
+    private final LinkedList<JournalEntry> journalEntries = new LinkedList<JournalEntry>();
+    private final Map<String, Set<String>> dirtyAclPathsWithPrincipals = new TreeMap<String, Set<String>>();
+    private final Set<String> dirtyAuthorizableIds = new TreeSet<String>();
+    private final Map<String, ManagedItems> managedItemsByConfigurationRootPath = new HashMap<String, ManagedItems>();
+    private final LinkedList<InstallationWindow> installationWindows = new LinkedList<InstallationWindow>();
+
+    @ObjectClassDefinition(name = "AC Tool Change Journal",
+            description = "Observes changes of ACLs and group memberships made outside of the AC Tool and marks the affected ACL paths and authorizables as dirty, to be repaired by reconcileDirty() (JMX) without a full installation.",
+            id = "biz.netcentric.cq.tools.actool.impl.AcChangeJournal")
+    protected static @interface Configuration {
+        @AttributeDefinition(name = "Observe changes", description = "Registers an observation listener for changes of rep:policy nodes, ACEs and group memberships")
+        boolean observeChanges() default false;
+
+        @AttributeDefinition(name = "Max journal entries", description = "Number of changes kept in the journal (the oldest entries are dropped first, dirty paths and authorizables are kept until they are reconciled)")
+        int maxJournalEntries() default 1000;
+    }
+
+    @Activate
+    public void activate(Configuration configuration) throws RepositoryException {
+        observeChanges = configuration.observeChanges();
+        maxJournalEntries = Math.max(1, configuration.maxJournalEntries());
+        if (!observeChanges) {
+            LOG.debug("Observation of ACL changes is disabled");
+            return;
+        }
+        observationSession = repository.loginService(null, null);
+        observationSession.getWorkspace().getObservationManager().addEventListener(this, OBSERVED_EVENT_TYPES, "/", true, null,
+                OBSERVED_NODE_TYPES, false);
+        LOG.info("Registered observation listener for changes of ACLs and group memberships");
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (observationSession == null) {
+            return;
+        }
+        try {
+            observationSession.getWorkspace().getObservationManager().removeEventListener(this);
+        } catch (RepositoryException e) {
+            LOG.warn("Could not remove observation listener: " + e, e);
+        } finally {
+            observationSession.logout();
+            observationSession = null;
+        }
+    }
+
+    public boolean isObservingChanges() {
+        return observationSession != null;
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        try {
+            // see the ACEs as of the events
+            observationSession.refresh(false);
+            String acToolUserId = observationSession.getUserID();
+
+            // one change causes events for every node/property, only one entry is recorded per ACL path/principal or group
+            Map<String, JournalEntry> entriesOfEvents = new LinkedHashMap<String, JournalEntry>();
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                if (StringUtils.equals(event.getUserID(), acToolUserId) || isInstallationChange(event.getUserID(), event.getDate())) {
+                    continue;
+                }
+                JournalEntry entry = createJournalEntry(event);
+                if (entry != null && !entriesOfEvents.containsKey(entry.getKey())) {
+                    entriesOfEvents.put(entry.getKey(), entry);
+                }
+            }
+            for (JournalEntry entry : entriesOfEvents.values()) {
+                record(entry);
+            }
+        } catch (Exception e) {
+            LOG.warn("Could not process observation events: " + e, e);
+        }
+    }
+
+    private JournalEntry createJournalEntry(Event event) throws RepositoryException {
+        String path = event.getPath();
+        int policyIndex = path.indexOf(REP_POLICY_SEGMENT + "/");
+        if (policyIndex < 0 && path.endsWith(REP_POLICY_SEGMENT)) {
+            policyIndex = path.length() - REP_POLICY_SEGMENT.length();
+        }
+        if (policyIndex >= 0) {
+            String aclPath = policyIndex == 0 ? "/" : path.substring(0, policyIndex);
+            String principalName = getPrincipalNameOfAce(path, policyIndex);
+            return new JournalEntry(event.getDate(), CHANGE_TYPE_ACL, aclPath, principalName, event.getUserID());
+        }
+
+        if (Text.getName(path).equals(REP_MEMBERS)) {
+            int membersListIndex = path.indexOf(REP_MEMBERS_LIST_SEGMENT + "/");
+            String groupPath = membersListIndex >= 0 ? path.substring(0, membersListIndex) : Text.getRelativeParent(path, 1);
+            UserManager userManager = AccessControlUtils.getUserManagerAutoSaveDisabled(observationSession);
+            Authorizable group = userManager.getAuthorizableByPath(groupPath);
+            if (group == null) {
+                LOG.debug("Group at {} does not exist (anymore), ignoring change of members", groupPath);
+                return null;
+            }
+            return new JournalEntry(event.getDate(), CHANGE_TYPE_MEMBERSHIP, groupPath, group.getID(), event.getUserID());
+        }
+        return null;
+    }
+
+    /** @return the principal name of the ACE the event path belongs to or null if it cannot be determined (e.g. the ACE was removed) */
+    private String getPrincipalNameOfAce(String path, int policyIndex) throws RepositoryException {
+        String pathBelowPolicy = path.substring(policyIndex + REP_POLICY_SEGMENT.length());
+        if (pathBelowPolicy.length() <= 1) {
+            return null;
+        }
+        String aceNodeName = StringUtils.substringBefore(pathBelowPolicy.substring(1), "/");
+        String aceNodePath = path.substring(0, policyIndex) + REP_POLICY_SEGMENT + "/" + aceNodeName;
+        if (!observationSession.nodeExists(aceNodePath)) {
+            return null;
+        }
+        Node aceNode = observationSession.getNode(aceNodePath);
+        return aceNode.hasProperty(REP_PRINCIPAL_NAME)
+                ? aceNode.getProperty(REP_PRINCIPAL_NAME).getString()
+                : null;
+    }
+
+    synchronized void record(JournalEntry entry) {
+        journalEntries.add(entry);
+        while (journalEntries.size() > maxJournalEntries) {
+            journalEntries.removeFirst();
+        }
+
+        if (CHANGE_TYPE_ACL.equals(entry.getType())) {
+            if (isManagedAcl(entry.getPath(), entry.getPrincipalOrAuthorizableId())) {
+                Set<String> principalNames = dirtyAclPathsWithPrincipals.get(entry.getPath());
+                if (principalNames == null) {
+                    principalNames = new TreeSet<String>();
+                    dirtyAclPathsWithPrincipals.put(entry.getPath(), principalNames);
+                }
+                if (entry.getPrincipalOrAuthorizableId() != null) {
+                    principalNames.add(entry.getPrincipalOrAuthorizableId());
+                }
+                LOG.info("ACL at {} has been changed by {} (principal {}), marked as dirty", entry.getPath(), entry.getUserId(),
+                        entry.getPrincipalOrAuthorizableId());
+            }
+        } else if (isManagedAuthorizable(entry.getPrincipalOrAuthorizableId())) {
+            dirtyAuthorizableIds.add(entry.getPrincipalOrAuthorizableId());
+            LOG.info("Members of group {} have been changed by {}, marked as dirty", entry.getPrincipalOrAuthorizableId(),
+                    entry.getUserId());
+        }
+    }
+
+    /** As long as the AC Tool has not been run since activation, every change is marked as dirty (the reconciliation filters them). */
+    private boolean isManagedAcl(String aclPath, String principalName) {
+        if (managedItemsByConfigurationRootPath.isEmpty()) {
+            return true;
+        }
+        for (ManagedItems managedItems : managedItemsByConfigurationRootPath.values()) {
+            if (managedItems.aclPaths.contains(aclPath) || managedItems.principalNames.contains(principalName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isManagedAuthorizable(String authorizableId) {
+        if (managedItemsByConfigurationRootPath.isEmpty()) {
+            return true;
+        }
+        for (ManagedItems managedItems : managedItemsByConfigurationRootPath.values()) {
+            if (managedItems.authorizableIds.contains(authorizableId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Changes of the given user are not journaled until {@link #installationFinished(InstallationWindow)} is called. Used for
+     * installations with sessions of other users than the AC Tool's service user (e.g. the session of the package installation for the
+     * install hook), as their events are delivered asynchronously (after the installation has marked the managed items as reconciled).
+     *
+     * @return the window to be passed to {@link #installationFinished(InstallationWindow)} */
+    synchronized InstallationWindow installationStarted(String userId) {
+        InstallationWindow installationWindow = new InstallationWindow(userId, System.currentTimeMillis());
+        installationWindows.add(installationWindow);
+        return installationWindow;
+    }
+
+    /** Events of the installation are still ignored if they are delivered afterwards (the event date is within the window). */
+    synchronized void installationFinished(InstallationWindow installationWindow) {
+        installationWindow.endTime = System.currentTimeMillis();
+        int countFinished = 0;
+        for (Iterator<InstallationWindow> it = installationWindows.descendingIterator(); it.hasNext();) {
+            if (it.next().endTime != Long.MAX_VALUE && ++countFinished > MAX_FINISHED_INSTALLATION_WINDOWS) {
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized boolean isInstallationChange(String userId, long date) {
+        for (InstallationWindow installationWindow : installationWindows) {
+            if (StringUtils.equals(userId, installationWindow.userId) && date >= installationWindow.startTime
+                    && date <= installationWindow.endTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Remembers the ACL paths and authorizables managed by the given configuration. As the configuration has just been installed, the
+     * dirty items managed by it are reset. For installations with restricted paths, only the dirty ACL paths within the restricted paths
+     * are reset (all authorizables are installed also with restricted paths).
+     *
+     * @param restrictedToPaths the restricted paths of the installation, null or empty for a full installation */
+    synchronized void setManagedItems(String configurationRootPath, AcConfiguration acConfiguration, String[] restrictedToPaths) {
+        ManagedItems managedItems = new ManagedItems(acConfiguration.getAceConfig().getJcrPaths(),
+                acConfiguration.getAuthorizablesConfig().getPrincipalNames(),
+                acConfiguration.getAuthorizablesConfig().getAuthorizableIds());
+        managedItemsByConfigurationRootPath.put(configurationRootPath, managedItems);
+
+        for (String aclPath : new ArrayList<String>(dirtyAclPathsWithPrincipals.keySet())) {
+            Set<String> principalNames = dirtyAclPathsWithPrincipals.get(aclPath);
+            boolean isManaged = managedItems.aclPaths.contains(aclPath) || managedItems.principalNames.containsAll(principalNames);
+            if (isManaged && QueryHelper.isPathInRestrictedPaths(aclPath, restrictedToPaths)) {
+                dirtyAclPathsWithPrincipals.remove(aclPath);
+            }
+        }
+        dirtyAuthorizableIds.removeAll(managedItems.authorizableIds);
+    }
+
+    /** @return the dirty ACL paths and authorizables, they are no longer marked as dirty afterwards */
+    synchronized DirtyItems takeDirtyItems() {
+        DirtyItems dirtyItems = new DirtyItems(new TreeMap<String, Set<String>>(dirtyAclPathsWithPrincipals),
+                new TreeSet<String>(dirtyAuthorizableIds));
+        dirtyAclPathsWithPrincipals.clear();
+        dirtyAuthorizableIds.clear();
+        return dirtyItems;
+    }
+
+    /** Marks the given items as dirty again (used if the reconciliation failed). */
+    synchronized void markDirty(DirtyItems dirtyItems) {
+        for (Map.Entry<String, Set<String>> aclPathWithPrincipals : dirtyItems.getAclPathsWithPrincipals().entrySet()) {
+            Set<String> principalNames = dirtyAclPathsWithPrincipals.get(aclPathWithPrincipals.getKey());
+            if (principalNames == null) {
+                principalNames = new TreeSet<String>();
+                dirtyAclPathsWithPrincipals.put(aclPathWithPrincipals.getKey(), principalNames);
+            }
+            principalNames.addAll(aclPathWithPrincipals.getValue());
+        }
+        dirtyAuthorizableIds.addAll(dirtyItems.getAuthorizableIds());
+    }
+
+    synchronized List<JournalEntry> getJournalEntries() {
+        return new ArrayList<JournalEntry>(journalEntries);
+    }
+
+    /** @return the journal entries (newest first) and the dirty items as text */
+    public synchronized String getJournalAsString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Observing changes: ").append(isObservingChanges()).append("\n");
+        sb.append("Dirty ACL paths: ").append(dirtyAclPathsWithPrincipals.keySet()).append("\n");
+        sb.append("Dirty authorizables: ").append(dirtyAuthorizableIds).append("\n");
+        sb.append("Journal (").append(journalEntries.size()).append(" entries, newest first):\n");
+        for (int i = journalEntries.size() - 1; i >= 0; i--) {
+            sb.append(journalEntries.get(i)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /** A change of an ACL or of the members of a group. */
+    static final class JournalEntry {
+        private final long time;
+        private final String type;
+        private final String path;
+        private final String principalOrAuthorizableId;
+        private final String userId;
+
+        JournalEntry(long time, String type, String path, String principalOrAuthorizableId, String userId) {
+            this.time = time;
+            this.type = type;
+            this.path = path;
+            this.principalOrAuthorizableId = principalOrAuthorizableId;
+            this.userId = userId;
+        }
+
+        private String getKey() {
+            return type + "|" + path + "|" + principalOrAuthorizableId + "|" + userId;
+        }
+
+        long getTime() {
+            return time;
+        }
+
+        String getType() {
+            return type;
+        }
+
+        /** @return the ACL path (for ACL changes) or the path of the group (for membership changes) */
+        String getPath() {
+            return path;
+        }
+
+        /** @return the principal of the changed ACE (null if unknown) or the id of the group whose members have changed */
+        String getPrincipalOrAuthorizableId() {
+            return principalOrAuthorizableId;
+        }
+
+        String getUserId() {
+            return userId;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(time)) + " " + type + " " + path
+                    + (principalOrAuthorizableId != null ? " (" + principalOrAuthorizableId + ")" : "") + " by " + userId;
+        }
+    }
+
+    /** ACL paths (with the principals of the changed ACEs) and authorizables to be reconciled. */
+    static final class DirtyItems {
+        private final Map<String, Set<String>> aclPathsWithPrincipals;
+        private final Set<String> authorizableIds;
+
+        DirtyItems(Map<String, Set<String>> aclPathsWithPrincipals, Set<String> authorizableIds) {
+            this.aclPathsWithPrincipals = aclPathsWithPrincipals;
+            this.authorizableIds = authorizableIds;
+        }
+
+        Map<String, Set<String>> getAclPathsWithPrincipals() {
+            return aclPathsWithPrincipals;
+        }
+
+        Set<String> getAuthorizableIds() {
+            return authorizableIds;
+        }
+
+        boolean isEmpty() {
+            return aclPathsWithPrincipals.isEmpty() && authorizableIds.isEmpty();
+        }
+    }
+
+    /** The time an installation has been running with a session of the given user. */
+    static final class InstallationWindow {
+        private final String userId;
+        private final long startTime;
+        // the installation is running as long as the end is not set
+        private volatile long endTime = Long.MAX_VALUE;
+
+        private InstallationWindow(String userId, long startTime) {
+            this.userId = userId;
+            this.startTime = startTime;
+        }
+
+        long getStartTime() {
+            return startTime;
+        }
+
+        long getEndTime() {
+            return endTime;
+        }
+    }
+
+    private static final class ManagedItems {
+        private final Set<String> aclPaths;
+        private final Set<String> principalNames;
+        private final Set<String> authorizableIds;
+
+        private ManagedItems(Set<String> aclPaths, Set<String> principalNames, Set<String> authorizableIds) {
+            this.aclPaths = new HashSet<String>(aclPaths);
+            this.principalNames = new HashSet<String>(principalNames);
+            this.authorizableIds = new HashSet<String>(authorizableIds);
+        }
+    }
+}
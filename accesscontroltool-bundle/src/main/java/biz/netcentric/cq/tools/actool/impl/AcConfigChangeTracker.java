@@ -12,6 +12,7 @@ import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import biz.netcentric.cq.tools.actool.helper.InstallationCheckpoint;
 import biz.netcentric.cq.tools.actool.helper.runtime.RuntimeHelper;
 import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
 
@@ -52,6 +53,12 @@ public class AcConfigChangeTracker {
         return false;
     }
 
+    /** Creates a checkpoint for the execution of the given config files that allows to resume an aborted installation. */
+    public InstallationCheckpoint createCheckpoint(Map<String, String> configFiles, String[] restrictedToPaths, Session session)
+            throws Exception {
+        return new InstallationCheckpoint(createExecutionKey(configFiles, restrictedToPaths, session), createHashOverConfigFiles(configFiles));
+    }
+
     private String createExecutionKey(Map<String, String> configFiles, String[] restrictedToPaths, Session session) {
         boolean isCompositeNodeStore= RuntimeHelper.isCompositeNodeStore(session);
         String restrictedToPathsKey = restrictedToPaths==null || restrictedToPaths.length==0 ? "ALL_PATHS" : StringUtils.join(restrictedToPaths, "+").replace("$", "").replace("^", "");
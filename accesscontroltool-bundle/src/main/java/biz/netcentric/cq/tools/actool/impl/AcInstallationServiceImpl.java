@@ -19,10 +19,21 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.jcr.AccessDeniedException;
 import javax.jcr.PathNotFoundException;
@@ -51,11 +62,13 @@ import org.osgi.framework.FrameworkUtil;
 import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -77,13 +90,21 @@ import biz.netcentric.cq.tools.actool.dumpservice.ConfigDumpService;
 import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
 import biz.netcentric.cq.tools.actool.helper.AclBean;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
+import biz.netcentric.cq.tools.actool.helper.ClusterInstallationLock;
+import biz.netcentric.cq.tools.actool.helper.InstallationAbortSignal;
+import biz.netcentric.cq.tools.actool.helper.InstallationCheckpoint;
+import biz.netcentric.cq.tools.actool.helper.InstallationPlan;
 import biz.netcentric.cq.tools.actool.helper.PurgeHelper;
 import biz.netcentric.cq.tools.actool.helper.QueryHelper;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal;
 import biz.netcentric.cq.tools.actool.helper.runtime.RuntimeHelper;
 import biz.netcentric.cq.tools.actool.history.AcHistoryService;
+import biz.netcentric.cq.tools.actool.history.AcToolExecution;
 import biz.netcentric.cq.tools.actool.history.InstallationLogger;
 import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
 import biz.netcentric.cq.tools.actool.impl.AcInstallationServiceImpl.Configuration;
+import biz.netcentric.cq.tools.actool.impl.InstallationCoordinator.InstallationRequest;
 import biz.netcentric.cq.tools.actool.installationhistory.AcInstallationHistoryPojo;
 import biz.netcentric.cq.tools.actool.slingsettings.ExtendedSlingSettingsService;
 
@@ -95,8 +116,13 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
     private static final String CONFIG_PID = "biz.netcentric.cq.tools.actool.impl.AcInstallationServiceImpl";
     private static final String LEGACY_CONFIG_PID = "biz.netcentric.cq.tools.actool.aceservice.impl.AceServiceImpl";
     private static final String LEGACY_PROPERTY_CONFIGURATION_PATH = "AceService.configurationPath";
+    static final String ACL_DISCOVERY_FULL_DUMP = "fullDump";
+    static final String ACL_DISCOVERY_PRINCIPAL_SCOPED = "principalScoped";
+
     private static final String LEGACY_PROPERTY_INTERMEDIATE_SAVES = "intermediateSaves";
 
+    private static final long CLUSTER_LOCK_POLL_INTERVAL_MS = 2000;
+
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     AuthorizableInstallerService authorizableCreatorService;
 
@@ -132,10 +158,38 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
     
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     private ExtendedSlingSettingsService slingSettingsService;
+
+    @Reference(policyOption = ReferencePolicyOption.GREEDY)
+    private AcChangeJournal acChangeJournal;
     
     private List<String> configurationRootPaths;
 
+    final InstallationCoordinator installationCoordinator = new InstallationCoordinator();
+    private final Object reconcileDirtyLock = new Object();
+    private InstallationJobs installationJobs;
+
+    private boolean clusterLeaderElection;
+    private int clusterLockLeaseSec;
+    private ScheduledExecutorService clusterLockRenewalExecutor;
+    // set while the installation thread holds the cluster lock, aborts the installation if the lease cannot be renewed
+    private final ThreadLocal<InstallationAbortSignal> clusterLockAbortSignal = new ThreadLocal<InstallationAbortSignal>();
+
     private boolean intermediateSaves;
+    private int saveBatchSizeAclPaths;
+    private int saveBatchSizeAuthorizables;
+    private int saveFlushIntervalMs;
+    private boolean undoJournalForBatchedSaves;
+
+    private boolean applyConfigurationRootsConcurrently;
+    private int maxConcurrentConfigurationRoots;
+
+    private boolean installAclsInParallelSubtrees;
+    private int maxConcurrentAclSubtrees;
+
+    private boolean pipelineConfigParsingAndAclDump;
+
+    private String aclDiscoveryStrategy;
+    private int aclDiscoveryPrincipalBatchSize;
     
     @ObjectClassDefinition(name = "AC Tool Installation Service", 
             description="Service that installs groups & ACEs according to textual configuration files",
@@ -145,8 +199,54 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
         @AttributeDefinition(name="Configuration path(s)", description="JCR path(s) where the config files reside (usually it's just one, can be multiple for multitenant setups)")
         String[] configurationRootPaths() default {};
 
-        @AttributeDefinition(name="Use intermediate saves", description="Saves ACLs for each path individually - this can be used to avoid problems with large changesets and MongoDB (OAK-5557), however the rollback is disabled then.")
+        @AttributeDefinition(name="Use intermediate saves", description="Saves ACLs for each path individually - this can be used to avoid problems with large changesets and MongoDB (OAK-5557), however the regular rollback is disabled then (see 'Undo journal for batched saves').")
         boolean intermediateSaves() default false;
+
+        @AttributeDefinition(name="Save batch size for ACLs", description="Saves the session after the given number of ACL paths (0 to disable). Takes precedence over 'Use intermediate saves' (which equals a batch size of 1). As with intermediate saves, the regular rollback is disabled then.")
+        int saveBatchSizeAclPaths() default 0;
+
+        @AttributeDefinition(name="Save batch size for authorizables", description="Saves the session after the given number of authorizables (0 to disable). The regular rollback is disabled then.")
+        int saveBatchSizeAuthorizables() default 0;
+
+        @AttributeDefinition(name="Save flush interval", description="Saves the session if the given number of milliseconds has passed since the last save (checked after each ACL path/authorizable, 0 to disable). The regular rollback is disabled then.")
+        int saveFlushIntervalMs() default 0;
+
+        @AttributeDefinition(name="Undo journal for batched saves", description="If the session is saved in batches (intermediate saves, save batch sizes or flush interval), the previous state of changed ACLs and authorizables is recorded in an undo journal below /var/statistics/achistory. If the installation fails, the already saved batches are rolled back using the journal.")
+        boolean undoJournalForBatchedSaves() default true;
+
+        @AttributeDefinition(name="Apply configuration roots concurrently", description="If multiple configuration root paths are configured, apply them in parallel (each root with its own session). Falls back to sequential execution if the roots share ACL paths or authorizables.")
+        boolean applyConfigurationRootsConcurrently() default false;
+
+        @AttributeDefinition(name="Max concurrent configuration roots", description="Maximum number of configuration roots that are applied in parallel (only relevant if 'Apply configuration roots concurrently' is enabled)")
+        int maxConcurrentConfigurationRoots() default 4;
+
+        @AttributeDefinition(name="Install ACLs of subtrees in parallel", description="Installs the ACLs of disjoint top-level subtrees (e.g. /content, /conf, /home) in parallel, each subtree with its own session that is saved separately (the regular rollback is disabled then). Falls back to serial installation if repository-level ACLs or initial content are configured or if the undo journal is used for batched saves.")
+        boolean installAclsInParallelSubtrees() default false;
+
+        @AttributeDefinition(name="Max concurrent ACL subtrees", description="Maximum number of subtrees whose ACLs are installed in parallel (only relevant if 'Install ACLs of subtrees in parallel' is enabled)")
+        int maxConcurrentAclSubtrees() default 4;
+
+        @AttributeDefinition(name="Cluster leader election", description="Only one instance of a cluster (e.g. MongoMK) applies a configuration root path at a time: the instance that acquires a lock node below /var/statistics/achistory. Other instances triggering the same installation (e.g. via startup hook) wait for it and report its result.")
+        boolean clusterLeaderElection() default false;
+
+        @AttributeDefinition(name="Cluster lock lease", description="Seconds after which the cluster lock expires if the leader does not renew it (it is renewed every third of the lease while the installation is running)")
+        int clusterLockLeaseSec() default 60;
+
+        @AttributeDefinition(name="Max concurrent asynchronous installations", description="Number of threads to execute installations triggered via applyAsync() (installations of the same configuration root path are never executed in parallel)")
+        int maxConcurrentAsyncInstallations() default 2;
+
+        @AttributeDefinition(name="Pipeline config parsing and ACL dump", description="Retrieves the existing ACLs from the repository (using a separate read-only session) while the configuration files are parsed, merged and validated.")
+        boolean pipelineConfigParsingAndAclDump() default false;
+
+        @AttributeDefinition(name="ACL discovery strategy", description="How existing ACEs of configured authorizables are found in the repository (to clean them up from paths not contained in the configuration). 'fullDump' reads all ACLs of the repository, 'principalScoped' only retrieves the ACLs that contain entries for configured principals (falls back to 'fullDump' if it fails). 'principalScoped' cannot be combined with the pipelined config parsing.",
+            options={
+                @Option(label = "Full repository dump", value = ACL_DISCOVERY_FULL_DUMP),
+                @Option(label = "Principal scoped", value = ACL_DISCOVERY_PRINCIPAL_SCOPED)
+        })
+        String aclDiscoveryStrategy() default ACL_DISCOVERY_FULL_DUMP;
+
+        @AttributeDefinition(name="ACL discovery principal batch size", description="Number of principals to retrieve the ACLs for at once (only relevant for ACL discovery strategy 'principalScoped')")
+        int aclDiscoveryPrincipalBatchSize() default 100;
     }
 
     @Activate
@@ -165,6 +265,17 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
         }
         
         intermediateSaves = configuration.intermediateSaves();
+        saveBatchSizeAclPaths = configuration.saveBatchSizeAclPaths();
+        saveBatchSizeAuthorizables = configuration.saveBatchSizeAuthorizables();
+        saveFlushIntervalMs = configuration.saveFlushIntervalMs();
+        undoJournalForBatchedSaves = configuration.undoJournalForBatchedSaves();
+        applyConfigurationRootsConcurrently = configuration.applyConfigurationRootsConcurrently();
+        maxConcurrentConfigurationRoots = Math.max(1, configuration.maxConcurrentConfigurationRoots());
+        installAclsInParallelSubtrees = configuration.installAclsInParallelSubtrees();
+        maxConcurrentAclSubtrees = Math.max(1, configuration.maxConcurrentAclSubtrees());
+        pipelineConfigParsingAndAclDump = configuration.pipelineConfigParsingAndAclDump();
+        aclDiscoveryStrategy = configuration.aclDiscoveryStrategy();
+        aclDiscoveryPrincipalBatchSize = Math.max(1, configuration.aclDiscoveryPrincipalBatchSize());
 
         // Fallback to old PID: only fall back to legacy config if new config does not exist
         if (configDict == null) {
@@ -176,10 +287,28 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             }
         }
 
+        clusterLeaderElection = configuration.clusterLeaderElection();
+        clusterLockLeaseSec = Math.max(3, configuration.clusterLockLeaseSec());
+        if (clusterLeaderElection) {
+            clusterLockRenewalExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
+
+        installationJobs = new InstallationJobs(Math.max(1, configuration.maxConcurrentAsyncInstallations()));
+
         LOG.info("Activated AC Tool at start level "+RuntimeHelper.getCurrentStartLevel(bundleContext) + " default config path: "+configurationRootPaths);
 
     }
 
+    @Deactivate
+    public void deactivate() {
+        if (installationJobs != null) {
+            installationJobs.shutdown();
+        }
+        if (clusterLockRenewalExecutor != null) {
+            clusterLockRenewalExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public InstallationLog apply() {
         return apply(null, null);
@@ -202,6 +331,38 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
 
     @Override
     public InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged) {
+        return apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, false);
+    }
+
+    @Override
+    public InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged, boolean resume) {
+        return apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, resume, null);
+    }
+
+    @Override
+    public String applyAsync(final String configurationRootPath, final String[] restrictedToPaths, final boolean skipIfConfigUnchanged) {
+        return installationJobs.submit(configurationRootPath, new InstallationJobs.AsyncInstallation() {
+            @Override
+            public InstallationLog install(InstallationJob job) {
+                return apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, false, job);
+            }
+        });
+    }
+
+    @Override
+    public InstallationJob getInstallationJob(String jobId) {
+        return installationJobs.getJob(jobId);
+    }
+
+    private InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged, boolean resume,
+            final InstallationJob job) {
+        return apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, resume, job, null);
+    }
+
+    /** @param job the asynchronous job the installation is executed for (null for synchronous installations)
+     * @param parsedConfiguration the configuration parsed before for the given root path or null */
+    private InstallationLog apply(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged, boolean resume,
+            final InstallationJob job, final ParsedConfiguration parsedConfiguration) {
 
         if(StringUtils.isBlank(configurationRootPath)) {
             if(CollectionUtils.isEmpty(configurationRootPaths)) {
@@ -209,11 +370,207 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             } else if(configurationRootPaths.size() == 1) {
                 configurationRootPath = configurationRootPaths.get(0);
             } else {
-                return applyMultipleConfigurations(restrictedToPaths, skipIfConfigUnchanged);
+                return applyMultipleConfigurations(restrictedToPaths, skipIfConfigUnchanged, resume, job);
             }
         }
         
-        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        try {
+            return executeCoordinated(new InstallationRequest(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, resume),
+                    job, new InstallationCoordinator.Installation() {
+                        @Override
+                        public void install(InstallationRequest request, PersistableInstallationLogger installLog) {
+                            applyConfigurationRootPath(request, installLog, parsedConfiguration);
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+            installLog.addError(LOG, "Interrupted while waiting for installation of " + configurationRootPath, e);
+            return installLog;
+        }
+    }
+
+    /** Executes the installation after the previous installations of the configuration root path have finished (and as cluster leader
+     * if cluster leader election is enabled). */
+    private InstallationLog executeCoordinated(InstallationRequest request, final InstallationJob job,
+            final InstallationCoordinator.Installation installation) throws InterruptedException {
+        return installationCoordinator.execute(request, new InstallationCoordinator.Installation() {
+            @Override
+            public void install(InstallationRequest request, PersistableInstallationLogger installLog) {
+                if (job != null) {
+                    job.installLogCreated(installLog);
+                }
+                if (clusterLeaderElection) {
+                    applyAsClusterLeader(request, installLog, installation);
+                } else {
+                    installation.install(request, installLog);
+                }
+            }
+        });
+    }
+
+    /** Applies the configuration if this instance can acquire the cluster lock for the configuration root path. Otherwise waits for the
+     * instance holding the lock and reports the result of its installation (dirty ACLs and authorizables are reconciled and plans are
+     * applied after the lock has been released, as the other instance does not cover them). */
+    private void applyAsClusterLeader(InstallationRequest request, PersistableInstallationLogger installLog,
+            InstallationCoordinator.Installation installation) {
+        String instanceId = slingSettingsService.getSlingId();
+        ClusterInstallationLock lock = new ClusterInstallationLock(request.getConfigurationRootPath(), instanceId,
+                clusterLockLeaseSec * 1000L);
+        String leaderInstanceId = null;
+        String lastLogsPathBeforeLeader = null;
+        long waitStartTime = System.currentTimeMillis();
+        try {
+            while (true) {
+                Session session = repository.loginService(null, null);
+                try {
+                    ClusterInstallationLock.State state = lock.getState(session);
+                    if (state == ClusterInstallationLock.State.HELD_BY_OTHER_INSTANCE) {
+                        if (leaderInstanceId == null) {
+                            leaderInstanceId = lock.getOwner(session);
+                            AcToolExecution lastExecution = getLastAcToolExecution(request.getConfigurationRootPath());
+                            lastLogsPathBeforeLeader = lastExecution != null ? lastExecution.getLogsPath() : null;
+                            installLog.addMessage(LOG, "Configuration " + request.getConfigurationRootPath()
+                                    + " is being applied by cluster instance " + leaderInstanceId + ", waiting for its result");
+                        }
+                    } else if (state == ClusterInstallationLock.State.FREE && leaderInstanceId != null
+                            && request.isCoveredByInstallationOfOtherInstance()) {
+                        reportClusterLeaderResult(request.getConfigurationRootPath(), leaderInstanceId, lastLogsPathBeforeLeader,
+                                System.currentTimeMillis() - waitStartTime, installLog);
+                        return;
+                    } else if (lock.tryAcquire(session)) {
+                        break;
+                    }
+                } finally {
+                    session.logout();
+                }
+                Thread.sleep(CLUSTER_LOCK_POLL_INTERVAL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            installLog.addError(LOG, "Interrupted while waiting for cluster lock of " + request.getConfigurationRootPath(), e);
+            return;
+        } catch (RepositoryException e) {
+            installLog.addError(LOG, "Could not acquire cluster lock for " + request.getConfigurationRootPath(), e);
+            persistHistory(installLog);
+            return;
+        }
+
+        installLog.addMessage(LOG, "Acquired cluster lock for " + request.getConfigurationRootPath() + " (instance " + instanceId + ")");
+        InstallationAbortSignal abortSignal = new InstallationAbortSignal();
+        ScheduledFuture<?> leaseRenewal = clusterLockRenewalExecutor.scheduleWithFixedDelay(new ClusterLockRenewal(lock, abortSignal),
+                clusterLockLeaseSec * 1000L / 3, clusterLockLeaseSec * 1000L / 3, TimeUnit.MILLISECONDS);
+        clusterLockAbortSignal.set(abortSignal);
+        try {
+            installation.install(request, installLog);
+        } finally {
+            clusterLockAbortSignal.remove();
+            leaseRenewal.cancel(false);
+            if (abortSignal.isAborted()) {
+                LOG.error("Installation of " + request.getConfigurationRootPath() + " was aborted: " + abortSignal.getReason());
+            }
+            Session session = null;
+            try {
+                session = repository.loginService(null, null);
+                lock.release(session);
+            } catch (RepositoryException e) {
+                LOG.warn("Could not release cluster lock for " + request.getConfigurationRootPath() + " (it expires after "
+                        + clusterLockLeaseSec + "s): " + e, e);
+            } finally {
+                if (session != null) {
+                    session.logout();
+                }
+            }
+        }
+    }
+
+    /** @throws IllegalStateException if the cluster lock held for the current installation has been lost (the installation is rolled back
+     *         then) */
+    private void checkClusterLockNotLost() {
+        InstallationAbortSignal abortSignal = clusterLockAbortSignal.get();
+        if (abortSignal != null) {
+            abortSignal.checkNotAborted();
+        }
+    }
+
+    private AcToolExecution getLastAcToolExecution(String configurationRootPath) {
+        for (AcToolExecution acToolExecution : acHistoryService.getAcToolExecutions()) {
+            if (StringUtils.equals(configurationRootPath, acToolExecution.getConfigurationRootPath())) {
+                return acToolExecution;
+            }
+        }
+        return null;
+    }
+
+    /** Reports the result of the installation of the leader (the newest history entry for the root path that did not exist before the
+     * leader started). */
+    private void reportClusterLeaderResult(String configurationRootPath, String leaderInstanceId, String lastLogsPathBeforeLeader,
+            long waitTime, PersistableInstallationLogger installLog) {
+        List<AcToolExecution> acToolExecutions = acHistoryService.getAcToolExecutions();
+        for (int i = 0; i < acToolExecutions.size(); i++) {
+            AcToolExecution acToolExecution = acToolExecutions.get(i);
+            if (StringUtils.equals(configurationRootPath, acToolExecution.getConfigurationRootPath())) {
+                if (StringUtils.equals(lastLogsPathBeforeLeader, acToolExecution.getLogsPath())) {
+                    break;
+                }
+                installLog.addMessage(LOG, "Cluster instance " + leaderInstanceId + " has applied the configuration "
+                        + (acToolExecution.isSuccess() ? "successfully" : "with errors") + " (waited " + msHumanReadable(waitTime)
+                        + "), its log:\n" + acHistoryService.getLogFromHistory(i + 1, false, false));
+                installLog.setSuccess(acToolExecution.isSuccess());
+                return;
+            }
+        }
+        // e.g. skipped because the config was unchanged (no history is persisted then)
+        installLog.addMessage(LOG, "Cluster instance " + leaderInstanceId + " has finished (waited " + msHumanReadable(waitTime)
+                + "), no installation history was found for " + configurationRootPath);
+    }
+
+    /** Renews the lease of the cluster lock. If the lock has been lost or could not be renewed in time (another instance may take it over
+     * then), the installation is aborted via the given signal (it is rolled back with its next save). */
+    private final class ClusterLockRenewal implements Runnable {
+        private final ClusterInstallationLock lock;
+        private final InstallationAbortSignal abortSignal;
+        private long lastRenewalTime = System.currentTimeMillis();
+
+        private ClusterLockRenewal(ClusterInstallationLock lock, InstallationAbortSignal abortSignal) {
+            this.lock = lock;
+            this.abortSignal = abortSignal;
+        }
+
+        @Override
+        public void run() {
+            Session session = null;
+            try {
+                session = repository.loginService(null, null);
+                if (lock.renew(session)) {
+                    lastRenewalTime = System.currentTimeMillis();
+                } else {
+                    abort("the cluster lock is not held by this instance anymore");
+                }
+            } catch (RepositoryException e) {
+                long leaseMs = clusterLockLeaseSec * 1000L;
+                if (System.currentTimeMillis() - lastRenewalTime + leaseMs / 3 >= leaseMs) {
+                    // the next attempt (after a third of the lease) would be too late
+                    abort("the lease of the cluster lock could not be renewed before it expires: " + e);
+                } else {
+                    LOG.warn("Could not renew lease of cluster lock (retrying with next renewal): " + e, e);
+                }
+            } finally {
+                if (session != null) {
+                    session.logout();
+                }
+            }
+        }
+
+        private void abort(String reason) {
+            LOG.error("Aborting installation: " + reason);
+            abortSignal.abort(reason);
+        }
+    }
+
+    private void applyConfigurationRootPath(InstallationRequest request, PersistableInstallationLogger installLog,
+            ParsedConfiguration parsedConfiguration) {
+        String configurationRootPath = request.getConfigurationRootPath();
         Session session = null;
         try {
             session = repository.loginService(null, null);
@@ -225,11 +582,14 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             } catch (Exception e) {
                 installLog.addError("Could not retrieve configuration from path "+configurationRootPath+": "+e.getMessage(), e);
                 persistHistory(installLog);
-                return installLog;
+                return;
             }
 
             // install config files
-            installConfigurationFiles(installLog, configFiles, restrictedToPaths, session, skipIfConfigUnchanged);
+            // the configuration parsed before can only be used if the files have not changed in the meantime
+            installConfigurationFiles(installLog, configFiles, request.getRestrictedToPaths(), session, request.isSkipIfConfigUnchanged(),
+                    request.isResume(), parsedConfiguration != null && parsedConfiguration.configFiles.equals(configFiles)
+                            ? parsedConfiguration : null);
             
         } catch (AuthorizableCreatorException e) {
             // exception was added to history in installConfigurationFiles() before it was saved
@@ -248,19 +608,481 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
                 session.logout();
             }
         }
-        return installLog;
     }
 
-    private InstallationLog applyMultipleConfigurations(String[] restrictedToPaths, boolean skipIfConfigUnchanged) {
+    private InstallationLog applyMultipleConfigurations(final String[] restrictedToPaths, final boolean skipIfConfigUnchanged,
+            final boolean resume, final InstallationJob job) {
         PersistableInstallationLogger overviewInstallLog = new PersistableInstallationLogger();
         overviewInstallLog.addMessage(LOG, "Applying multiple configs (this log only shows what was applied, check the individual logs for details)");
-        for(String rootPath: configurationRootPaths) {
-            overviewInstallLog.addMessage(LOG, "Applying config at root path "+rootPath);
-            apply(rootPath, restrictedToPaths, skipIfConfigUnchanged);
+
+        StopWatch sw = new StopWatch();
+        sw.start();
+
+        final Map<String, ParsedConfiguration> parsedConfigurations = new HashMap<String, ParsedConfiguration>();
+        boolean runConcurrently = applyConfigurationRootsConcurrently && maxConcurrentConfigurationRoots > 1
+                && configurationRootPaths.size() > 1 && configurationRootsAreDisjoint(overviewInstallLog, parsedConfigurations);
+
+        Map<String, ConfigurationRootResult> results = new LinkedHashMap<String, ConfigurationRootResult>();
+        if (runConcurrently) {
+            int poolSize = Math.min(maxConcurrentConfigurationRoots, configurationRootPaths.size());
+            overviewInstallLog.addMessage(LOG, "Applying " + configurationRootPaths.size() + " config root paths concurrently with "
+                    + poolSize + " workers");
+            ExecutorService executorService = Executors.newFixedThreadPool(poolSize);
+            try {
+                Map<String, Future<ConfigurationRootResult>> futures = new LinkedHashMap<String, Future<ConfigurationRootResult>>();
+                for (final String rootPath : configurationRootPaths) {
+                    futures.put(rootPath, executorService.submit(new Callable<ConfigurationRootResult>() {
+                        @Override
+                        public ConfigurationRootResult call() {
+                            return applyConfigurationRoot(rootPath, restrictedToPaths, skipIfConfigUnchanged, resume, job,
+                                    parsedConfigurations.get(rootPath));
+                        }
+                    }));
+                }
+                for (Map.Entry<String, Future<ConfigurationRootResult>> future : futures.entrySet()) {
+                    try {
+                        results.put(future.getKey(), future.getValue().get());
+                    } catch (ExecutionException e) {
+                        overviewInstallLog.addError(LOG, "Could not apply config at root path " + future.getKey(), e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                overviewInstallLog.addError(LOG, "Interrupted while applying multiple configs", e);
+            } finally {
+                executorService.shutdownNow();
+            }
+        } else {
+            for (String rootPath : configurationRootPaths) {
+                overviewInstallLog.addMessage(LOG, "Applying config at root path " + rootPath);
+                // overlapping configurations are parsed again as the installation of a previous root path might affect the result
+                results.put(rootPath, applyConfigurationRoot(rootPath, restrictedToPaths, skipIfConfigUnchanged, resume, job, null));
+            }
+        }
+
+        for (Map.Entry<String, ConfigurationRootResult> result : results.entrySet()) {
+            boolean rootSuccess = result.getValue().isSuccess();
+            overviewInstallLog.addMessage(LOG, "Applied config at root path " + result.getKey() + " in "
+                    + msHumanReadable(result.getValue().executionTime) + (rootSuccess ? "" : " (FAILED)"));
+            if (!rootSuccess) {
+                overviewInstallLog.setSuccess(false);
+            }
         }
+
+        sw.stop();
+        overviewInstallLog.setExecutionTime(sw.getTime());
+        overviewInstallLog.addMessage(LOG, "Applied " + results.size() + " configs " + (runConcurrently ? "concurrently" : "sequentially")
+                + " in " + msHumanReadable(sw.getTime()));
         return overviewInstallLog;
     }
 
+    private ConfigurationRootResult applyConfigurationRoot(String rootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged,
+            boolean resume, InstallationJob job, ParsedConfiguration parsedConfiguration) {
+        long startTime = System.currentTimeMillis();
+        InstallationLog installLog = apply(rootPath, restrictedToPaths, skipIfConfigUnchanged, resume, job, parsedConfiguration);
+        return new ConfigurationRootResult(installLog, System.currentTimeMillis() - startTime);
+    }
+
+    /** Parses the configurations of all root paths upfront to ensure they can be applied in parallel without interfering with each other.
+     *
+     * @param parsedConfigurations is filled with the parsed configurations by root path, to be reused for the installation */
+    private boolean configurationRootsAreDisjoint(InstallationLogger overviewInstallLog,
+            Map<String, ParsedConfiguration> parsedConfigurations) {
+        Map<String, AcConfiguration> configurationsByRootPath = new LinkedHashMap<String, AcConfiguration>();
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            for (String rootPath : configurationRootPaths) {
+                Map<String, String> configFiles = configFilesRetriever.getConfigFileContentFromNode(rootPath, session);
+                PersistableInstallationLogger parseLog = new PersistableInstallationLogger();
+                AcConfiguration acConfiguration = configurationMerger.getMergedConfigurations(configFiles, parseLog, configReader, session);
+                configurationsByRootPath.put(rootPath, acConfiguration);
+                parsedConfigurations.put(rootPath,
+                        new ParsedConfiguration(configFiles, acConfiguration, parseLog.getMergedAndProcessedConfig()));
+            }
+        } catch (Exception e) {
+            parsedConfigurations.clear();
+            overviewInstallLog.addWarning(LOG, "Could not check config root paths for overlaps, applying them sequentially: " + e);
+            return false;
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+
+        List<String> overlaps = findOverlapsBetweenConfigurations(configurationsByRootPath);
+        if (!overlaps.isEmpty()) {
+            overviewInstallLog.addMessage(LOG, "Config root paths overlap, applying them sequentially: " + StringUtils.join(overlaps, "; "));
+            return false;
+        }
+        return true;
+    }
+
+    static List<String> findOverlapsBetweenConfigurations(Map<String, AcConfiguration> configurationsByRootPath) {
+        List<String> overlaps = new ArrayList<String>();
+        List<String> rootPaths = new ArrayList<String>(configurationsByRootPath.keySet());
+        for (int i = 0; i < rootPaths.size(); i++) {
+            AcConfiguration config1 = configurationsByRootPath.get(rootPaths.get(i));
+            for (int j = i + 1; j < rootPaths.size(); j++) {
+                AcConfiguration config2 = configurationsByRootPath.get(rootPaths.get(j));
+
+                Set<String> sharedAuthorizables = new TreeSet<String>(getAffectedAuthorizableIds(config1));
+                sharedAuthorizables.retainAll(getAffectedAuthorizableIds(config2));
+                if (!sharedAuthorizables.isEmpty()) {
+                    overlaps.add(rootPaths.get(i) + " and " + rootPaths.get(j) + " share authorizables " + sharedAuthorizables);
+                }
+
+                Set<String> sharedPaths = new TreeSet<String>(config1.getAceConfig().getJcrPaths());
+                sharedPaths.retainAll(config2.getAceConfig().getJcrPaths());
+                if (!sharedPaths.isEmpty()) {
+                    overlaps.add(rootPaths.get(i) + " and " + rootPaths.get(j) + " share ACL paths " + sharedPaths);
+                }
+
+                Set<String> nestedPaths = getNestedPaths(config1.getAceConfig().getJcrPaths(), config2.getAceConfig().getJcrPaths());
+                nestedPaths.addAll(getNestedPaths(config2.getAceConfig().getJcrPaths(), config1.getAceConfig().getJcrPaths()));
+                if (!nestedPaths.isEmpty()) {
+                    overlaps.add(rootPaths.get(i) + " and " + rootPaths.get(j) + " have nested ACL paths " + nestedPaths);
+                }
+            }
+        }
+        return overlaps;
+    }
+
+    /** @return descriptions of the paths that are located below one of the ancestor paths */
+    private static Set<String> getNestedPaths(Set<String> paths, Set<String> ancestorPaths) {
+        Set<String> nestedPaths = new TreeSet<String>();
+        for (String path : paths) {
+            // the empty path (repository level permissions) is not an ancestor of other paths
+            int separatorPos = path.length() > 1 ? path.lastIndexOf('/') : -1;
+            while (separatorPos >= 0) {
+                String ancestorPath = separatorPos > 0 ? path.substring(0, separatorPos) : "/";
+                if (ancestorPaths.contains(ancestorPath)) {
+                    nestedPaths.add(path + " below " + ancestorPath);
+                }
+                separatorPos = path.lastIndexOf('/', separatorPos - 1);
+            }
+        }
+        return nestedPaths;
+    }
+
+    private static Set<String> getAffectedAuthorizableIds(AcConfiguration acConfiguration) {
+        Set<String> authorizableIds = new HashSet<String>(acConfiguration.getAuthorizablesConfig().getAuthorizableIds());
+        authorizableIds.addAll(acConfiguration.getObsoleteAuthorizables());
+        return authorizableIds;
+    }
+
+    /** Configuration of a root path parsed before the installation along with the files it was parsed from. */
+    private static final class ParsedConfiguration {
+        private final Map<String, String> configFiles;
+        private final AcConfiguration acConfiguration;
+        private final String mergedAndProcessedConfig;
+
+        private ParsedConfiguration(Map<String, String> configFiles, AcConfiguration acConfiguration, String mergedAndProcessedConfig) {
+            this.configFiles = configFiles;
+            this.acConfiguration = acConfiguration;
+            this.mergedAndProcessedConfig = mergedAndProcessedConfig;
+        }
+    }
+
+    private static final class ConfigurationRootResult {
+        private final InstallationLog installLog;
+        private final long executionTime;
+
+        private ConfigurationRootResult(InstallationLog installLog, long executionTime) {
+            this.installLog = installLog;
+            this.executionTime = executionTime;
+        }
+
+        private boolean isSuccess() {
+            return !(installLog instanceof PersistableInstallationLogger) || ((PersistableInstallationLogger) installLog).isSuccess();
+        }
+    }
+
+    @Override
+    public InstallationLog plan(String configurationRootPath, String[] restrictedToPaths) {
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        if (StringUtils.isBlank(configurationRootPath)) {
+            if (CollectionUtils.isEmpty(configurationRootPaths) || configurationRootPaths.size() > 1) {
+                throw new IllegalArgumentException("A plan can only be created for a single configuration root path.");
+            }
+            configurationRootPath = configurationRootPaths.get(0);
+        }
+
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            StopWatch sw = new StopWatch();
+            sw.start();
+            installLog.addMessage(LOG, "*** Creating plan for AC Tool configuration at " + configurationRootPath
+                    + (!ArrayUtils.isEmpty(restrictedToPaths) ? " with restricted paths: " + Arrays.asList(restrictedToPaths) : "")
+                    + " (dry-run, no changes are saved)...");
+
+            Map<String, String> configFiles = configFilesRetriever.getConfigFileContentFromNode(configurationRootPath, session);
+            installLog.setConfigFileContentsByName(configFiles);
+            AcConfiguration acConfiguration = configurationMerger.getMergedConfigurations(configFiles, installLog, configReader, session);
+
+            UndoJournal planRecorder = new UndoJournal();
+            installMergedConfigurations(installLog, acConfiguration, null, restrictedToPaths, null, planRecorder, session);
+
+            Set<String> authorizablesToPurge = new LinkedHashSet<String>(acConfiguration.getObsoleteAuthorizables());
+            for (AuthorizableConfigBean virtualGroup : acConfiguration.getVirtualGroups()) {
+                authorizablesToPurge.add(virtualGroup.getAuthorizableId());
+            }
+            removeNonExistingAuthorizables(authorizablesToPurge, session);
+
+            InstallationPlan plan = InstallationPlan.create(planRecorder, acConfiguration, authorizablesToPurge, configurationRootPath,
+                    restrictedToPaths, session);
+            // discard the changes of the dry-run
+            session.refresh(false);
+
+            for (String changeDescription : plan.getChangeDescriptions()) {
+                installLog.addVerboseMessage(LOG, changeDescription);
+            }
+            String planId = plan.persist(session);
+            session.save();
+
+            sw.stop();
+            installLog.setExecutionTime(sw.getTime());
+            installLog.addMessage(LOG, "Created plan " + planId + " with " + plan.getCountChanges() + " changes and "
+                    + authorizablesToPurge.size() + " authorizables to purge in " + msHumanReadable(sw.getTime())
+                    + " (see verbose log for details)");
+        } catch (Exception e) {
+            installLog.addError(LOG, "Could not create plan for configuration at " + configurationRootPath, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+            persistHistory(installLog);
+        }
+        return installLog;
+    }
+
+    @Override
+    public InstallationLog applyPlan(final String planId) {
+        String configurationRootPath;
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            configurationRootPath = InstallationPlan.load(session, planId).getConfigurationRootPath();
+        } catch (Exception e) {
+            PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+            installLog.addError(LOG, "Could not apply plan " + planId, e);
+            persistHistory(installLog);
+            return installLog;
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+
+        try {
+            return executeCoordinated(InstallationRequest.forPlan(configurationRootPath, planId), null,
+                    new InstallationCoordinator.Installation() {
+                        @Override
+                        public void install(InstallationRequest request, PersistableInstallationLogger installLog) {
+                            applyPlan(request.getPlanId(), installLog);
+                        }
+                    });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+            installLog.addError(LOG, "Interrupted while waiting for installation of " + configurationRootPath, e);
+            return installLog;
+        }
+    }
+
+    private void applyPlan(String planId, PersistableInstallationLogger installLog) {
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            StopWatch sw = new StopWatch();
+            sw.start();
+
+            // loaded again as the plan might have been applied by the previous run
+            InstallationPlan plan = InstallationPlan.load(session, planId);
+            installLog.addMessage(LOG, "*** Applying plan " + planId + " for AC Tool configuration at " + plan.getConfigurationRootPath()
+                    + " with " + plan.getCountChanges() + " changes...");
+
+            List<String> changedItems = plan.findChangedItems(session);
+            if (!changedItems.isEmpty()) {
+                throw new IllegalStateException("The repository has changed since the plan was created, a new plan needs to be created "
+                        + "(changed items: " + StringUtils.join(changedItems, ", ") + ")");
+            }
+
+            plan.apply(session, installLog);
+            InstallationPlan.remove(session, planId);
+            checkClusterLockNotLost();
+            session.save();
+            installLog.addMessage(LOG, "Persisted " + plan.getCountChanges() + " planned changes");
+
+            if (!plan.getAuthorizablesToPurge().isEmpty()) {
+                purgeAuthorizables(new HashSet<String>(plan.getAuthorizablesToPurge()), session, installLog, true);
+            }
+
+            sw.stop();
+            installLog.setExecutionTime(sw.getTime());
+            installLog.addMessage(LOG, "Successfully applied plan " + planId + " in " + msHumanReadable(sw.getTime()));
+        } catch (Exception e) {
+            installLog.addError(LOG, "Could not apply plan " + planId, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+            persistHistory(installLog);
+        }
+    }
+
+    @Override
+    public InstallationLog reconcileDirty() {
+        if (CollectionUtils.isEmpty(configurationRootPaths)) {
+            throw new IllegalArgumentException("Configuration root path not configured.");
+        }
+        // the dirty items are taken from the journal upfront, a concurrent reconciliation must not join a run with other dirty items
+        synchronized (reconcileDirtyLock) {
+            PersistableInstallationLogger overviewInstallLog = new PersistableInstallationLogger();
+            if (!acChangeJournal.isObservingChanges()) {
+                overviewInstallLog.addWarning(LOG, "Changes are not observed (enable it at PID "
+                        + "biz.netcentric.cq.tools.actool.impl.AcChangeJournal), only changes recorded before are reconciled");
+            }
+            final AcChangeJournal.DirtyItems dirtyItems = acChangeJournal.takeDirtyItems();
+            if (dirtyItems.isEmpty()) {
+                overviewInstallLog.addMessage(LOG,
+                        "No ACLs or authorizables have been changed outside of the AC Tool since the last installation");
+                return overviewInstallLog;
+            }
+
+            StopWatch sw = new StopWatch();
+            sw.start();
+            overviewInstallLog.addMessage(LOG, "*** Reconciling " + dirtyItems.getAclPathsWithPrincipals().size() + " dirty ACL paths "
+                    + dirtyItems.getAclPathsWithPrincipals().keySet() + " and " + dirtyItems.getAuthorizableIds().size()
+                    + " dirty authorizables " + dirtyItems.getAuthorizableIds() + "...");
+            try {
+                for (String configurationRootPath : configurationRootPaths) {
+                    long startTime = System.currentTimeMillis();
+                    InstallationLog installLog = executeCoordinated(InstallationRequest.forReconcileDirty(configurationRootPath), null,
+                            new InstallationCoordinator.Installation() {
+                                @Override
+                                public void install(InstallationRequest request, PersistableInstallationLogger installLog) {
+                                    if (request.isReconcileDirty()) {
+                                        reconcileConfigurationRootPath(request.getConfigurationRootPath(), dirtyItems, installLog);
+                                    } else {
+                                        // coalesced with a pending installation of the root path
+                                        applyConfigurationRootPath(request, installLog, null);
+                                    }
+                                }
+                            });
+                    ConfigurationRootResult result = new ConfigurationRootResult(installLog, System.currentTimeMillis() - startTime);
+                    overviewInstallLog.addMessage(LOG, "Reconciled config root path " + configurationRootPath + " in "
+                            + msHumanReadable(result.executionTime) + (result.isSuccess() ? "" : " (FAILED)") + ", its log:\n"
+                            + installLog.getMessageHistory());
+                    if (!result.isSuccess()) {
+                        overviewInstallLog.setSuccess(false);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                overviewInstallLog.addError(LOG, "Interrupted while reconciling dirty ACLs and authorizables", e);
+            }
+
+            sw.stop();
+            overviewInstallLog.setExecutionTime(sw.getTime());
+            if (overviewInstallLog.isSuccess()) {
+                overviewInstallLog.addMessage(LOG, "Successfully reconciled dirty ACLs and authorizables in " + msHumanReadable(sw.getTime()));
+            } else {
+                acChangeJournal.markDirty(dirtyItems);
+                overviewInstallLog.addMessage(LOG, "Could not reconcile dirty ACLs and authorizables (they remain marked as dirty)");
+            }
+            return overviewInstallLog;
+        }
+    }
+
+    private void reconcileConfigurationRootPath(String configurationRootPath, AcChangeJournal.DirtyItems dirtyItems,
+            PersistableInstallationLogger installLog) {
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            StopWatch sw = new StopWatch();
+            sw.start();
+            installDirtyItems(installLog, configurationRootPath, dirtyItems, session);
+            sw.stop();
+            installLog.setExecutionTime(sw.getTime());
+            installLog.addMessage(LOG, "Reconciled dirty ACLs and authorizables of configuration at " + configurationRootPath + " in "
+                    + msHumanReadable(sw.getTime()));
+        } catch (Exception e) {
+            installLog.addError(LOG, "Could not reconcile dirty ACLs and authorizables of configuration at " + configurationRootPath, e);
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+            persistHistory(installLog);
+        }
+    }
+
+    /** Installs the dirty authorizables and ACL paths that are managed by the configuration at the given root path. */
+    private void installDirtyItems(PersistableInstallationLogger installLog, String configurationRootPath,
+            AcChangeJournal.DirtyItems dirtyItems, Session session) throws Exception {
+        Map<String, String> configFiles = configFilesRetriever.getConfigFileContentFromNode(configurationRootPath, session);
+        AcConfiguration acConfiguration = configurationMerger.getMergedConfigurations(configFiles, installLog, configReader, session);
+
+        AuthorizablesConfig dirtyAuthorizablesConfig = getAuthorizablesToReconcile(acConfiguration.getAuthorizablesConfig(),
+                dirtyItems.getAuthorizableIds());
+
+        // the ACL is relevant if the path is configured or if it contains ACEs of configured principals (to be cleaned up)
+        Set<String> principalsInConfig = getPrincipalNamesToRemoveAcesFor(acConfiguration.getAuthorizablesConfig());
+        List<String> dirtyAclPaths = new ArrayList<String>();
+        for (Map.Entry<String, Set<String>> aclPathWithPrincipals : dirtyItems.getAclPathsWithPrincipals().entrySet()) {
+            if (acConfiguration.getAceConfig().containsPath(aclPathWithPrincipals.getKey())
+                    || CollectionUtils.containsAny(principalsInConfig, aclPathWithPrincipals.getValue())) {
+                dirtyAclPaths.add(aclPathWithPrincipals.getKey());
+            }
+        }
+
+        if (dirtyAuthorizablesConfig.isEmpty() && dirtyAclPaths.isEmpty()) {
+            installLog.addMessage(LOG, "None of the dirty ACLs and authorizables is managed by configuration at " + configurationRootPath);
+            return;
+        }
+        installLog.addMessage(LOG, "Reconciling " + dirtyAclPaths.size() + " ACL paths and " + dirtyAuthorizablesConfig.size()
+                + " authorizables managed by configuration at " + configurationRootPath);
+
+        if (!dirtyAuthorizablesConfig.isEmpty()) {
+            authorizableCreatorService.installAuthorizables(acConfiguration, dirtyAuthorizablesConfig, session, installLog,
+                    new BatchedSessionSaver(session, 0, 0, null, null));
+        }
+
+        if (!dirtyAclPaths.isEmpty()) {
+            // the paths are queried as subtrees, but only the dirty paths themselves are installed (restricted via exact regex)
+            String[] dirtyAclPathsArr = dirtyAclPaths.toArray(new String[dirtyAclPaths.size()]);
+            Map<String, Set<AceBean>> repositoryDumpAceMap = new HashMap<String, Set<AceBean>>(
+                    createRepositoryDumpAceMap(dirtyAclPathsArr, session));
+            repositoryDumpAceMap.keySet().retainAll(dirtyAclPaths);
+            String[] restrictedToPaths = new String[dirtyAclPaths.size()];
+            for (int i = 0; i < dirtyAclPaths.size(); i++) {
+                restrictedToPaths[i] = "^" + Pattern.quote(dirtyAclPaths.get(i)) + "$";
+            }
+            installAces(installLog, acConfiguration, repositoryDumpAceMap, restrictedToPaths, null, null, false, session);
+        }
+
+        if (session.hasPendingChanges()) {
+            checkClusterLockNotLost();
+            session.save();
+        }
+    }
+
+    /** The members of a group are changed by the group itself (for members configured via "members") and by the members (configured via
+     * "isMemberOf"), hence the configured authorizables that are member of a dirty group are installed as well.
+     *
+     * @return the configured authorizables among the dirty ones and the configured members of dirty groups */
+    static AuthorizablesConfig getAuthorizablesToReconcile(AuthorizablesConfig authorizablesConfig, Set<String> dirtyAuthorizableIds) {
+        AuthorizablesConfig authorizablesToReconcile = new AuthorizablesConfig();
+        for (AuthorizableConfigBean authorizableConfigBean : authorizablesConfig) {
+            if (dirtyAuthorizableIds.contains(authorizableConfigBean.getAuthorizableId())
+                    || (authorizableConfigBean.isMemberOfOtherGroups()
+                            && CollectionUtils.containsAny(dirtyAuthorizableIds, Arrays.asList(authorizableConfigBean.getIsMemberOf())))) {
+                authorizablesToReconcile.add(authorizableConfigBean);
+            }
+        }
+        return authorizablesToReconcile;
+    }
 
     // called from install hook, skipIfConfigUnchanged always false
     @Override
@@ -270,20 +1092,41 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
         installConfigurationFiles(installLog, configurationFileContentsByFilename, restrictedToPaths, session, false);
     }
 
+    public void installConfigurationFiles(PersistableInstallationLogger installLog, Map<String, String> configurationFileContentsByFilename,
+            String[] restrictedToPaths, Session session, boolean skipIfConfigUnchanged)
+            throws Exception {
+        installConfigurationFiles(installLog, configurationFileContentsByFilename, restrictedToPaths, session, skipIfConfigUnchanged, false);
+    }
+
     /** Common entry point for JMX and install hook */
     // TODO: should not be exported as using non-API class PersistableInstallationLogger / https://github.com/Netcentric/accesscontroltool/issues/394
     public void installConfigurationFiles(PersistableInstallationLogger installLog, Map<String, String> configurationFileContentsByFilename,
-            String[] restrictedToPaths, Session session, boolean skipIfConfigUnchanged)
+            String[] restrictedToPaths, Session session, boolean skipIfConfigUnchanged, boolean resume)
+            throws Exception {
+        installConfigurationFiles(installLog, configurationFileContentsByFilename, restrictedToPaths, session, skipIfConfigUnchanged, resume,
+                null);
+    }
+
+    /** @param parsedConfiguration the configuration already parsed from the given files or null if the files have to be parsed */
+    private void installConfigurationFiles(PersistableInstallationLogger installLog, Map<String, String> configurationFileContentsByFilename,
+            String[] restrictedToPaths, Session session, boolean skipIfConfigUnchanged, boolean resume, ParsedConfiguration parsedConfiguration)
             throws Exception {
 
+        InstallationCheckpoint checkpoint = createCheckpoint(installLog, configurationFileContentsByFilename, restrictedToPaths, resume,
+                session);
         boolean configsIdenticalToLastExecution = acConfigChangeTracker.configIsUnchangedComparedToLastExecution(configurationFileContentsByFilename, restrictedToPaths, session);
-        if(skipIfConfigUnchanged && configsIdenticalToLastExecution) {
+        // the config hash is saved with the first batch, hence an aborted installation also has an identical config
+        boolean isResumed = checkpoint != null && checkpoint.isResumed();
+        if(skipIfConfigUnchanged && configsIdenticalToLastExecution && !isResumed) {
             installLog.addMessage(LOG, "Config files are identical to last execution");
             // returning outside of below try will not persist history (this is the desired behaviour for this case)
             return;
         }
 
         String origThreadName = Thread.currentThread().getName();
+        ExecutorService aclDumpExecutor = null;
+        // the changes of the session (e.g. of the package installation for the install hook) must not be marked as dirty
+        AcChangeJournal.InstallationWindow installationWindow = acChangeJournal.installationStarted(session.getUserID());
         try {
             
 
@@ -292,35 +1135,133 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             sw.start();
 
             installLog.addMessage(LOG, "*** Applying AC Tool Configuration...");
+            installLog.startPhase("Reading configuration", 0);
             installLog.addMessage(LOG, "Running with v" + getVersion() + " on instance id "+slingSettingsService.getSlingId() + (!ArrayUtils.isEmpty(restrictedToPaths) ? " with restricted paths: "+Arrays.asList(restrictedToPaths) : ""));
 
             if (configurationFileContentsByFilename != null) {
 
                 installLog.setConfigFileContentsByName(configurationFileContentsByFilename);
 
-                AcConfiguration acConfiguration = configurationMerger.getMergedConfigurations(configurationFileContentsByFilename, installLog,
-                        configReader, session);
+                Future<RepositoryAclDump> repositoryAclDumpFuture = null;
+                // the parallel session would not see pending changes of the given session
+                if (pipelineConfigParsingAndAclDump && !isPrincipalScopedAclDiscovery() && !session.hasPendingChanges()) {
+                    aclDumpExecutor = Executors.newSingleThreadExecutor();
+                    repositoryAclDumpFuture = aclDumpExecutor.submit(new RepositoryAclDumpTask(restrictedToPaths));
+                }
+
+                long configProcessingStartTime = System.currentTimeMillis();
+                AcConfiguration acConfiguration;
+                if (parsedConfiguration != null) {
+                    installLog.addMessage(LOG, "Using configuration parsed when checking the config root paths for overlaps");
+                    installLog.setMergedAndProcessedConfig(parsedConfiguration.mergedAndProcessedConfig);
+                    acConfiguration = parsedConfiguration.acConfiguration;
+                } else {
+                    acConfiguration = configurationMerger.getMergedConfigurations(configurationFileContentsByFilename, installLog,
+                            configReader, session);
+                }
+                long configProcessingEndTime = System.currentTimeMillis();
+
+                Map<String, Set<AceBean>> repositoryDumpAceMap;
+                if (repositoryAclDumpFuture != null) {
+                    repositoryDumpAceMap = joinRepositoryAclDump(installLog, repositoryAclDumpFuture, configProcessingStartTime,
+                            configProcessingEndTime);
+                } else {
+                    repositoryDumpAceMap = null;
+                }
 
-                installMergedConfigurations(installLog, acConfiguration, restrictedToPaths, session);
+                installMergedConfigurations(installLog, acConfiguration, repositoryDumpAceMap, restrictedToPaths, checkpoint, null,
+                        session);
 
+                installLog.startPhase("Removing obsolete authorizables", 0);
                 ensureVirtualGroupsAreRemoved(installLog, acConfiguration, session);
                 removeObsoleteAuthorizables(installLog, acConfiguration.getObsoleteAuthorizables(), session);
 
+                acChangeJournal.setManagedItems(AcConfigChangeTracker.getEffectiveConfigRootPath(configurationFileContentsByFilename),
+                        acConfiguration, restrictedToPaths);
+
+                if (checkpoint != null) {
+                    checkpoint.remove(session);
+                    if (session.hasPendingChanges()) {
+                        session.save();
+                    }
+                }
+
             }
             sw.stop();
             long executionTime = sw.getTime();
             installLog.setExecutionTime(executionTime);
+            installLog.startPhase("Finished", 0);
             installLog.addMessage(LOG, "Successfully applied AC Tool configuration in " + msHumanReadable(executionTime));
         } catch (Exception e) {
             installLog.addError("Could not process yaml files", e); // ensure exception is added to installLog before it's persisted in log in finally clause
             throw e; // handling is different depending on JMX or install hook case
         } finally {
+            if (aclDumpExecutor != null) {
+                aclDumpExecutor.shutdownNow();
+            }
+            acChangeJournal.installationFinished(installationWindow);
             persistHistory(installLog);
             Thread.currentThread().setName(origThreadName);
         }
 
     }
 
+    /** @return the checkpoint to track the progress of batched saves or null if the session is not saved in batches */
+    private InstallationCheckpoint createCheckpoint(InstallationLogger installLog, Map<String, String> configurationFileContentsByFilename,
+            String[] restrictedToPaths, boolean resume, Session session) {
+        if (configurationFileContentsByFilename == null || !isBatchedSaves()) {
+            if (resume) {
+                installLog.addMessage(LOG, "Resuming is only possible with batched saves, running full installation");
+            }
+            return null;
+        }
+        try {
+            InstallationCheckpoint checkpoint = acConfigChangeTracker.createCheckpoint(configurationFileContentsByFilename,
+                    restrictedToPaths, session);
+            if (!resume) {
+                checkpoint.remove(session);
+            } else if (checkpoint.load(session)) {
+                installLog.addMessage(LOG, "Resuming installation from checkpoint (" + checkpoint.getCountCompletedAuthorizables()
+                        + " authorizables and " + checkpoint.getCountCompletedAclPaths() + " ACLs have been installed already)");
+            } else {
+                installLog.addMessage(LOG, "No checkpoint found for current configuration, running full installation");
+            }
+            return checkpoint;
+        } catch (Exception e) {
+            installLog.addWarning(LOG, "Could not create checkpoint, installation will not be resumable: " + e);
+            return null;
+        }
+    }
+
+    private Map<String, Set<AceBean>> joinRepositoryAclDump(InstallationLogger installLog, Future<RepositoryAclDump> repositoryAclDumpFuture,
+            long configProcessingStartTime, long configProcessingEndTime) throws Exception {
+        StopWatch waitStopWatch = new StopWatch();
+        waitStopWatch.start();
+        RepositoryAclDump repositoryAclDump;
+        try {
+            repositoryAclDump = repositoryAclDumpFuture.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        waitStopWatch.stop();
+
+        // the dump task may only start after the configuration processing started (or even after it ended)
+        long overlapTime = getOverlapTime(configProcessingStartTime, configProcessingEndTime, repositoryAclDump.startTime,
+                repositoryAclDump.endTime);
+        installLog.addMessage(LOG, "Retrieved existing ACLs from repository in "
+                + msHumanReadable(repositoryAclDump.endTime - repositoryAclDump.startTime)
+                + " in parallel to processing the configuration in " + msHumanReadable(configProcessingEndTime - configProcessingStartTime)
+                + " (phases overlapped for " + msHumanReadable(overlapTime) + ", waited " + msHumanReadable(waitStopWatch.getTime())
+                + " for ACL dump)");
+        return repositoryAclDump.aceMap;
+    }
+
+    /** @return the time in ms both time ranges (given as start and end timestamps) have in common */
+    static long getOverlapTime(long startTime1, long endTime1, long startTime2, long endTime2) {
+        return Math.max(0, Math.min(endTime1, endTime2) - Math.max(startTime1, startTime2));
+    }
+
     private void persistHistory(PersistableInstallationLogger installLog) {
         try {
             acHistoryService.persistHistory(installLog);
@@ -332,7 +1273,8 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
 
     private void installAcConfiguration(
             AcConfiguration acConfiguration, InstallationLogger installLog,
-            Map<String, Set<AceBean>> repositoryDumpAceMap, String[] restrictedToPaths, Session session) throws Exception {
+            Map<String, Set<AceBean>> repositoryDumpAceMap, String[] restrictedToPaths, InstallationCheckpoint checkpoint,
+            UndoJournal planRecorder, Session session) throws Exception {
 
         if (acConfiguration.getAceConfig() == null) {
             String message = "ACE config not found in YAML file! installation aborted!";
@@ -340,19 +1282,52 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             throw new IllegalArgumentException(message);
         }
 
-        installAuthorizables(installLog, acConfiguration, session);
+        // for a dry-run, the session is never saved and the plan recorder records the state before the changes
+        boolean dryRun = planRecorder != null;
+        UndoJournal undoJournal = dryRun ? planRecorder : (isBatchedSaves() && undoJournalForBatchedSaves ? new UndoJournal() : null);
+        try {
+            installAuthorizables(installLog, acConfiguration, undoJournal, checkpoint, dryRun, session);
+
+            installAces(installLog, acConfiguration, repositoryDumpAceMap, restrictedToPaths, undoJournal, checkpoint, dryRun, session);
+        } catch (Exception e) {
+            if (undoJournal != null && !dryRun) {
+                rollbackWithUndoJournal(installLog, undoJournal, checkpoint, session);
+            }
+            throw e;
+        }
+        if (undoJournal != null && !dryRun) {
+            undoJournal.discard(session);
+        }
+    }
+
+    private boolean isBatchedSaves() {
+        return intermediateSaves || saveBatchSizeAclPaths > 0 || saveBatchSizeAuthorizables > 0 || saveFlushIntervalMs > 0;
+    }
 
-        installAces(installLog, acConfiguration, repositoryDumpAceMap, restrictedToPaths, session);
+    private void rollbackWithUndoJournal(InstallationLogger installLog, UndoJournal undoJournal, InstallationCheckpoint checkpoint,
+            Session session) {
+        try {
+            undoJournal.rollback(session, installLog);
+            if (checkpoint != null) {
+                // the completed items have been rolled back as well
+                checkpoint.remove(session);
+                session.save();
+            }
+        } catch (Exception e) {
+            installLog.addError(LOG, "Could not roll back batched saves using the undo journal - the previous state can be looked up at "
+                    + undoJournal.getJournalNodePath(), e);
+        }
     }
 
     private void removeAcesForPathsNotInConfig(InstallationLogger installLog, Session session, Set<String> principalsInConfig,
-            Map<String, Set<AceBean>> repositoryDumpAceMap, AcConfiguration acConfiguration)
+            Map<String, Set<AceBean>> repositoryDumpAceMap, AcConfiguration acConfiguration, String[] restrictedToPaths,
+            BatchedSessionSaver sessionSaver)
             throws UnsupportedRepositoryOperationException, RepositoryException {
 
         int countAcesCleaned = 0;
         int countPathsCleaned = 0;
         Set<String> relevantPathsForCleanup = getRelevantPathsForAceCleanup(principalsInConfig, repositoryDumpAceMap,
-                acConfiguration.getAceConfig());
+                acConfiguration.getAceConfig(), restrictedToPaths);
 
         for (String relevantPath : relevantPathsForCleanup) {
             Set<String> principalsToRemoveAcesForAtThisPath = acConfiguration.getAuthorizablesConfig()
@@ -360,6 +1335,7 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
                             acConfiguration.getGlobalConfiguration().getDefaultUnmanagedAcePathsRegex());
 
             // delete ACE if principal *is* in config, but the path *is not* in config
+            sessionSaver.beforeAclChange(relevantPath);
             int countRemoved = AccessControlUtils.deleteAllEntriesForPrincipalsFromACL(session,
                     relevantPath, principalsToRemoveAcesForAtThisPath.toArray(new String[principalsToRemoveAcesForAtThisPath.size()]));
 
@@ -381,7 +1357,7 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
     }
 
     private Set<String> getRelevantPathsForAceCleanup(Set<String> authorizablesInConfig, Map<String, Set<AceBean>> repositoryDumpAceMap,
-            AcesConfig aceBeansFromConfig) {
+            AcesConfig aceBeansFromConfig, String[] restrictedToPaths) {
         // loop through all ACLs found in the repository
         Set<String> relevantPathsForCleanup = new HashSet<String>();
         for (Map.Entry<String, Set<AceBean>> entry : repositoryDumpAceMap.entrySet()) {
@@ -401,6 +1377,12 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
                             + "path {}", principalName, jcrPath);
                     continue;
                 }
+
+                // the dump is only complete for the restricted paths
+                if (!ArrayUtils.isEmpty(restrictedToPaths) && (jcrPath == null || !isRelevantPath(jcrPath, restrictedToPaths))) {
+                    LOG.trace("Path {} is not contained in restricted paths, hence not cleaning it", jcrPath);
+                    continue;
+                }
                 relevantPathsForCleanup.add(jcrPath);
             }
         }
@@ -408,18 +1390,7 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
     }
 
     boolean isRelevantPath(String path, String[] restrictedToPaths) {
-        if (restrictedToPaths == null || restrictedToPaths.length == 0) {
-            return true;
-        }
-        boolean isRelevant = false;
-        for (String restrictedToPath : restrictedToPaths) {
-            boolean isRegEx = StringUtils.containsAny(restrictedToPath, new char[] {'*', '^', '$', '+'});
-            String regexStr = isRegEx ? restrictedToPath : "^" + restrictedToPath + "(/.*|$)";
-            if (path.matches(regexStr)) {
-                isRelevant = true;
-            }
-        }
-        return isRelevant;
+        return QueryHelper.isPathInRestrictedPaths(path, restrictedToPaths);
     }
 
 
@@ -466,15 +1437,23 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
     }
 
     private void installAces(InstallationLogger installLog,
-            AcConfiguration acConfiguration, Map<String, Set<AceBean>> repositoryDumpAceMap, String[] restrictedToPaths, Session session)
+            AcConfiguration acConfiguration, Map<String, Set<AceBean>> repositoryDumpAceMap, String[] restrictedToPaths,
+            UndoJournal undoJournal, InstallationCheckpoint checkpoint, boolean dryRun, Session session)
             throws Exception {
 
+        int aclBatchSize = saveBatchSizeAclPaths <= 0 && intermediateSaves ? 1 : saveBatchSizeAclPaths;
+        BatchedSessionSaver sessionSaver = dryRun ? new BatchedSessionSaver(session, 0, 0, undoJournal, null)
+                : new BatchedSessionSaver(session, aclBatchSize, saveFlushIntervalMs, undoJournal, checkpoint);
+        sessionSaver.setAbortSignal(clusterLockAbortSignal.get());
+
         // --- installation of ACEs from configuration ---
         Map<String, Set<AceBean>> pathBasedAceMapFromConfig = AcHelper
                 .getPathBasedAceMap(acConfiguration.getAceConfig(), AcHelper.ACE_ORDER_ACTOOL_BEST_PRACTICE);
 
+        installLog.startPhase("Removing ACEs from paths not in configuration", 0);
         Set<String> principalsToRemoveAcesFor = getPrincipalNamesToRemoveAcesFor(acConfiguration.getAuthorizablesConfig());
-        removeAcesForPathsNotInConfig(installLog, session, principalsToRemoveAcesFor, repositoryDumpAceMap, acConfiguration);
+        removeAcesForPathsNotInConfig(installLog, session, principalsToRemoveAcesFor, repositoryDumpAceMap, acConfiguration,
+                restrictedToPaths, sessionSaver);
 
         Map<String, Set<AceBean>> filteredPathBasedAceMapFromConfig = filterForRestrictedPaths(pathBasedAceMapFromConfig,
                 restrictedToPaths, installLog);
@@ -489,15 +1468,20 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
                             + filteredPathBasedAceMapFromConfig.size() + " paths in content nodes using strategy "
                             + aceBeanInstaller.getClass().getSimpleName() + "...");
 
+            installLog.startPhase("Installing ACLs", filteredPathBasedAceMapFromConfig.size());
+            int maxConcurrentShards = installAclsInParallelSubtrees && !dryRun ? maxConcurrentAclSubtrees : 1;
             aceBeanInstaller.installPathBasedACEs(filteredPathBasedAceMapFromConfig, acConfiguration, session, installLog,
-                    principalsToRemoveAcesFor, intermediateSaves);
+                    principalsToRemoveAcesFor, sessionSaver, repository, maxConcurrentShards);
         } else {
             installLog.addMessage(LOG, "No relevant ACEs to install");
         }
 
         // if everything went fine (no exceptions), save the session
         // thus persisting the changed ACLs
-        if (session.hasPendingChanges()) {
+        if (dryRun) {
+            installLog.addVerboseMessage(LOG, "Not saving changes of ACLs (dry-run)");
+        } else if (session.hasPendingChanges()) {
+            checkClusterLockNotLost();
             session.save();
             installLog.addMessage(LOG, "Persisted changes of ACLs");
         } else {
@@ -536,8 +1520,8 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
         return count;
     }
 
-    private void installAuthorizables(InstallationLogger installLog, AcConfiguration acConfiguration, Session session)
-            throws RepositoryException, Exception {
+    private void installAuthorizables(InstallationLogger installLog, AcConfiguration acConfiguration, UndoJournal undoJournal,
+            InstallationCheckpoint checkpoint, boolean dryRun, Session session) throws RepositoryException, Exception {
         // --- installation of Authorizables from configuration ---
 
         StopWatch stopWatch = new StopWatch();
@@ -545,14 +1529,21 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
 
         AuthorizablesConfig authorizablesConfig = acConfiguration.getAuthorizablesConfig();
         installLog.addMessage(LOG, "*** Starting installation of " + authorizablesConfig.size() + " authorizables from configuration...");
+        installLog.startPhase("Installing authorizables", authorizablesConfig.size());
 
         try {
             // only save session if no exceptions occurred
-            authorizableCreatorService.installAuthorizables(acConfiguration, authorizablesConfig, session, installLog);
+            BatchedSessionSaver sessionSaver = dryRun ? new BatchedSessionSaver(session, 0, 0, undoJournal, null)
+                    : new BatchedSessionSaver(session, saveBatchSizeAuthorizables, saveFlushIntervalMs, undoJournal, checkpoint);
+            sessionSaver.setAbortSignal(clusterLockAbortSignal.get());
+            authorizableCreatorService.installAuthorizables(acConfiguration, authorizablesConfig, session, installLog, sessionSaver);
+            if (sessionSaver.isEnabled()) {
+                sessionSaver.flush();
+                installLog.addMessage(LOG, "Batched saves of authorizables: " + sessionSaver.getStatistics());
+            }
 
-            if (intermediateSaves) {
-                if (session.hasPendingChanges()) {
-                    session.save();
+            if (!dryRun && (intermediateSaves || saveBatchSizeAclPaths > 0)) {
+                if (sessionSaver.save()) {
                     installLog.addVerboseMessage(LOG, "Saved session after installing authorizables.");
                 } else {
                     installLog.addVerboseMessage(LOG,
@@ -649,24 +1640,95 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
 
     }
 
-    private void installMergedConfigurations(InstallationLogger installLog, AcConfiguration acConfiguration, 
-            String[] restrictedToPaths, Session session) throws ValueFormatException,  RepositoryException, Exception {
+    void installMergedConfigurations(InstallationLogger installLog, AcConfiguration acConfiguration, 
+            Map<String, Set<AceBean>> repositoryDumpAceMap, String[] restrictedToPaths, InstallationCheckpoint checkpoint,
+            UndoJournal planRecorder, Session session) throws ValueFormatException, RepositoryException, Exception {
 
         installLog.addVerboseMessage(LOG, "Starting installation of merged configurations...");
 
+        if (repositoryDumpAceMap == null && isPrincipalScopedAclDiscovery()) {
+            repositoryDumpAceMap = createPrincipalScopedDumpAceMap(installLog, acConfiguration, session);
+        }
+
+        if (repositoryDumpAceMap == null) {
+            StopWatch stopWatch = new StopWatch();
+            stopWatch.start();
+
+            LOG.debug("Building dump from repository (to compare delta with config to be installed)");
+            repositoryDumpAceMap = createRepositoryDumpAceMap(restrictedToPaths, session);
+
+            installLog.addMessage(LOG, "Retrieved existing ACLs from repository in " + msHumanReadable(stopWatch.getTime())
+                    + (!ArrayUtils.isEmpty(restrictedToPaths) ? " (restricted to paths " + Arrays.asList(restrictedToPaths) + ")" : ""));
+        }
+
+        installAcConfiguration(acConfiguration, installLog, repositoryDumpAceMap, restrictedToPaths, checkpoint, planRecorder, session);
+
+    }
+
+    private Map<String, Set<AceBean>> createRepositoryDumpAceMap(String[] restrictedToPaths, Session session) throws RepositoryException {
+        return dumpservice.createAclDumpMap(AcHelper.PATH_BASED_ORDER,
+                AcHelper.ACE_ORDER_NONE,
+                Collections.<String>emptyList(), true, restrictedToPaths, session).getAceDump();
+    }
+
+    private boolean isPrincipalScopedAclDiscovery() {
+        return ACL_DISCOVERY_PRINCIPAL_SCOPED.equals(aclDiscoveryStrategy);
+    }
+
+    /** @return the ACEs of the configured principals or null if they could not be retrieved (the full dump is used then) */
+    private Map<String, Set<AceBean>> createPrincipalScopedDumpAceMap(InstallationLogger installLog, AcConfiguration acConfiguration,
+            Session session) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
+        Set<String> principalNames = getPrincipalNamesToRemoveAcesFor(acConfiguration.getAuthorizablesConfig());
+        try {
+            LOG.debug("Retrieving ACLs of {} configured principals from repository", principalNames.size());
+            Map<String, Set<AceBean>> repositoryDumpAceMap = dumpservice
+                    .createPrincipalScopedAclDumpMap(principalNames, aclDiscoveryPrincipalBatchSize, session).getAceDump();
+            installLog.addMessage(LOG, "Retrieved existing ACLs of " + principalNames.size() + " configured principals from repository in "
+                    + msHumanReadable(stopWatch.getTime()) + " (" + repositoryDumpAceMap.size() + " paths)");
+            return repositoryDumpAceMap;
+        } catch (Exception e) {
+            installLog.addWarning(LOG, "Could not retrieve ACLs for configured principals, falling back to full repository dump: " + e);
+            return null;
+        }
+    }
 
-        Map<String, Set<AceBean>> repositoryDumpAceMap = null;
-        LOG.debug("Building dump from repository (to compare delta with config to be installed)");
-        repositoryDumpAceMap = dumpservice.createAclDumpMap(AcHelper.PATH_BASED_ORDER,
-                AcHelper.ACE_ORDER_NONE,
-                Collections.<String>emptyList(), true, session).getAceDump();
+    /** Builds the ACL dump using its own session, to be run in parallel to processing the configuration. */
+    private final class RepositoryAclDumpTask implements Callable<RepositoryAclDump> {
+        private final String[] restrictedToPaths;
 
-        installLog.addMessage(LOG, "Retrieved existing ACLs from repository in " + msHumanReadable(stopWatch.getTime()));
+        private RepositoryAclDumpTask(String[] restrictedToPaths) {
+            this.restrictedToPaths = restrictedToPaths;
+        }
+
+        @Override
+        public RepositoryAclDump call() throws Exception {
+            long startTime = System.currentTimeMillis();
+            Session dumpSession = null;
+            try {
+                dumpSession = repository.loginService(null, null);
+                LOG.debug("Building dump from repository in parallel to processing the configuration");
+                Map<String, Set<AceBean>> aceMap = createRepositoryDumpAceMap(restrictedToPaths, dumpSession);
+                return new RepositoryAclDump(aceMap, startTime, System.currentTimeMillis());
+            } finally {
+                if (dumpSession != null) {
+                    dumpSession.logout();
+                }
+            }
+        }
+    }
 
-        installAcConfiguration(acConfiguration, installLog, repositoryDumpAceMap, restrictedToPaths, session);
+    private static final class RepositoryAclDump {
+        private final Map<String, Set<AceBean>> aceMap;
+        private final long startTime;
+        private final long endTime;
 
+        private RepositoryAclDump(Map<String, Set<AceBean>> aceMap, long startTime, long endTime) {
+            this.aceMap = aceMap;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
     }
 
     @Override
@@ -782,7 +1844,7 @@ public class AcInstallationServiceImpl implements AcInstallationService, AcInsta
             Map<String, Set<AceBean>> aceDump = dumpservice
                     .createAclDumpMap(AcHelper.PATH_BASED_ORDER, AcHelper.ACE_ORDER_NONE, Collections.<String> emptyList(), true, session)
                     .getAceDump();
-            installAces(installLog, acConfiguration, aceDump, null, session);
+            installAces(installLog, acConfiguration, aceDump, null, null, null, false, session);
             installLog.addMessage(LOG, "Purged ACLs for " + acConfiguration.getAuthorizablesConfig().size() + " authorizables in "
                     + msHumanReadable(System.currentTimeMillis() - startAclPurge));
 
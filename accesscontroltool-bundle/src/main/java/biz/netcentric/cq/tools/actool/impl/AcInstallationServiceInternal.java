@@ -65,4 +65,9 @@ public interface AcInstallationServiceInternal extends AcInstallationService {
     
     /** Returns the version of the AC Tool. */
     public String getVersion();
+
+    /** @param jobId the id as returned by {@link #applyAsync(String, String[], boolean)}
+     * @return the job of an asynchronous installation or null if the job does not exist (anymore) */
+    public InstallationJob getInstallationJob(String jobId);
+
 }
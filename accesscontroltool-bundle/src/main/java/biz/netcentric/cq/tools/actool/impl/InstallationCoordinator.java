@@ -0,0 +1,296 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import static biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger.msHumanReadable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.api.InstallationLog;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+/** Ensures that only one installation per configuration root path is active at a time, independent of the trigger (JMX, UI, upload
+ * listener, startup hook etc.).
+ *
+ * <ul>
+ * <li>A request that is identical to the active run receives the log of the active run.</li>
+ * <li>All other requests arriving during an active run are coalesced into at most one follow-up run (restricted paths are joined, the
+ * follow-up is only skipped for an unchanged config if all coalesced requests allow it).</li>
+ * <li>Requests to apply a plan are only coalesced with requests for the same plan, other requests wait until they can queue their own
+ * follow-up run.</li>
+ * </ul>
+ */
+class InstallationCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstallationCoordinator.class);
+
+    /** The installation to be executed by the coordinator. */
+    interface Installation {
+        /** @param request the (possibly coalesced) request to execute
+         * @param installLog the log to use for the run, already contains the coordination statistics */
+        void install(InstallationRequest request, PersistableInstallationLogger installLog);
+    }
+
+    private final Map<String, RootState> rootStates = new HashMap<String, RootState>();
+
+    /** Executes the given request (in the calling thread) or waits for an active/follow-up run that covers it.
+     *
+     * @return the log of the run that covered the request */
+    InstallationLog execute(InstallationRequest request, Installation installation) throws InterruptedException {
+        long requestTime = System.currentTimeMillis();
+        Run run;
+        boolean executeInThisThread;
+        int countCoalescedRequests = 0;
+        InstallationRequest requestToExecute = null;
+        synchronized (this) {
+            RootState rootState;
+            while (true) {
+                rootState = rootStates.get(request.getConfigurationRootPath());
+                if (rootState == null) {
+                    rootState = new RootState();
+                    rootStates.put(request.getConfigurationRootPath(), rootState);
+                }
+                if (rootState.activeRun == null && rootState.followUpRun == null) {
+                    run = new Run(request, requestTime, 0);
+                    rootState.activeRun = run;
+                    executeInThisThread = true;
+                    break;
+                } else if (rootState.activeRun != null && rootState.activeRun.request.equals(request)) {
+                    run = rootState.activeRun;
+                    run.countJoinedRequests++;
+                    executeInThisThread = false;
+                    break;
+                } else if (rootState.followUpRun == null) {
+                    run = new Run(request, requestTime, 1 + rootState.activeRun.countJoinedRequests);
+                    rootState.followUpRun = run;
+                    executeInThisThread = true;
+                    break;
+                } else if (rootState.followUpRun.request.canCoalesce(request)) {
+                    run = rootState.followUpRun;
+                    run.request = run.request.coalesce(request);
+                    run.countJoinedRequests++;
+                    executeInThisThread = false;
+                    break;
+                }
+                // e.g. a plan cannot be coalesced with other requests, wait until the follow-up run has become the active run
+                wait();
+            }
+
+            if (executeInThisThread) {
+                // the follow-up run has to be executed even if this thread is interrupted, as other requests might have been coalesced into it
+                boolean interrupted = false;
+                while (rootState.activeRun != run) {
+                    if (rootState.activeRun == null) {
+                        rootState.activeRun = run;
+                        rootState.followUpRun = null;
+                        // requests that could not be coalesced into the follow-up run can now queue a new one
+                        notifyAll();
+                    } else {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                countCoalescedRequests = run.countJoinedRequests;
+                requestToExecute = run.request;
+            }
+        }
+
+        if (!executeInThisThread) {
+            LOG.debug("Waiting for run of {} covering request {}", request.getConfigurationRootPath(), request);
+            InstallationLog installLog = run.awaitResult();
+            LOG.info("Received log of run of {} after waiting {} (request {})", request.getConfigurationRootPath(),
+                    msHumanReadable(System.currentTimeMillis() - requestTime), request);
+            return installLog;
+        }
+
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        try {
+            long waitTime = System.currentTimeMillis() - run.queuedTime;
+            installLog.addMessage(LOG, "Execution coordinator: queue depth=" + run.queueDepth + ", waited "
+                    + msHumanReadable(waitTime) + " for previous run, " + countCoalescedRequests + " further request(s) coalesced");
+            installation.install(requestToExecute, installLog);
+        } finally {
+            synchronized (this) {
+                RootState rootState = rootStates.get(request.getConfigurationRootPath());
+                rootState.activeRun = null;
+                if (rootState.followUpRun == null) {
+                    rootStates.remove(request.getConfigurationRootPath());
+                }
+                notifyAll();
+            }
+            run.complete(installLog);
+        }
+        return installLog;
+    }
+
+    /** @return number of runs that are active or waiting for the given root path */
+    synchronized int getCountRuns(String configurationRootPath) {
+        RootState rootState = rootStates.get(configurationRootPath);
+        if (rootState == null) {
+            return 0;
+        }
+        return (rootState.activeRun != null ? 1 : 0) + (rootState.followUpRun != null ? 1 : 0);
+    }
+
+    private static final class RootState {
+        private Run activeRun;
+        private Run followUpRun;
+    }
+
+    private static final class Run {
+        private InstallationRequest request;
+        private final long queuedTime;
+        private final int queueDepth;
+        private int countJoinedRequests = 0;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile InstallationLog result;
+
+        private Run(InstallationRequest request, long queuedTime, int queueDepth) {
+            this.request = request;
+            this.queuedTime = queuedTime;
+            this.queueDepth = queueDepth;
+        }
+
+        private void complete(InstallationLog installLog) {
+            result = installLog;
+            done.countDown();
+        }
+
+        private InstallationLog awaitResult() throws InterruptedException {
+            done.await();
+            return result;
+        }
+    }
+
+    /** Parameters of an apply(), reconcileDirty() or applyPlan() call for one configuration root path. */
+    static final class InstallationRequest {
+        private final String configurationRootPath;
+        private final Set<String> restrictedToPaths;
+        private final boolean skipIfConfigUnchanged;
+        private final boolean resume;
+        private final boolean reconcileDirty;
+        private final String planId;
+
+        InstallationRequest(String configurationRootPath, String[] restrictedToPaths, boolean skipIfConfigUnchanged, boolean resume) {
+            this(configurationRootPath, restrictedToPaths == null || restrictedToPaths.length == 0 ? null
+                    : new TreeSet<String>(Arrays.asList(restrictedToPaths)), skipIfConfigUnchanged, resume, false, null);
+        }
+
+        private InstallationRequest(String configurationRootPath, Set<String> restrictedToPaths, boolean skipIfConfigUnchanged,
+                boolean resume, boolean reconcileDirty, String planId) {
+            this.configurationRootPath = configurationRootPath;
+            this.restrictedToPaths = restrictedToPaths;
+            this.skipIfConfigUnchanged = skipIfConfigUnchanged;
+            this.resume = resume;
+            this.reconcileDirty = reconcileDirty;
+            this.planId = planId;
+        }
+
+        /** @return a request to only install the dirty ACLs and authorizables (as marked by the change journal) */
+        static InstallationRequest forReconcileDirty(String configurationRootPath) {
+            return new InstallationRequest(configurationRootPath, null, false, false, true, null);
+        }
+
+        /** @return a request to apply the given plan (it is only coalesced with requests for the same plan) */
+        static InstallationRequest forPlan(String configurationRootPath, String planId) {
+            return new InstallationRequest(configurationRootPath, null, false, false, false, planId);
+        }
+
+        String getConfigurationRootPath() {
+            return configurationRootPath;
+        }
+
+        /** @return the restricted paths or null for no restriction */
+        String[] getRestrictedToPaths() {
+            return restrictedToPaths != null ? restrictedToPaths.toArray(new String[restrictedToPaths.size()]) : null;
+        }
+
+        boolean isSkipIfConfigUnchanged() {
+            return skipIfConfigUnchanged;
+        }
+
+        boolean isResume() {
+            return resume;
+        }
+
+        boolean isReconcileDirty() {
+            return reconcileDirty;
+        }
+
+        /** @return the plan to apply or null if the configuration is to be installed */
+        String getPlanId() {
+            return planId;
+        }
+
+        /** @return true if the installation of the configuration by another cluster instance covers this request */
+        boolean isCoveredByInstallationOfOtherInstance() {
+            return !reconcileDirty && planId == null;
+        }
+
+        boolean canCoalesce(InstallationRequest other) {
+            return StringUtils.equals(planId, other.planId);
+        }
+
+        /** @return a request that covers both this and the other request (the full installation covers the reconciliation), only to be
+         *         called if {@link #canCoalesce(InstallationRequest)} */
+        InstallationRequest coalesce(InstallationRequest other) {
+            Set<String> coalescedRestrictedToPaths = null;
+            if (restrictedToPaths != null && other.restrictedToPaths != null) {
+                coalescedRestrictedToPaths = new TreeSet<String>(restrictedToPaths);
+                coalescedRestrictedToPaths.addAll(other.restrictedToPaths);
+            }
+            return new InstallationRequest(configurationRootPath, coalescedRestrictedToPaths,
+                    skipIfConfigUnchanged && other.skipIfConfigUnchanged, resume || other.resume, reconcileDirty && other.reconcileDirty,
+                    planId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(
+                    new Object[] { configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, resume, reconcileDirty, planId });
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof InstallationRequest)) {
+                return false;
+            }
+            InstallationRequest other = (InstallationRequest) obj;
+            return StringUtils.equals(configurationRootPath, other.configurationRootPath)
+                    && (restrictedToPaths == null ? other.restrictedToPaths == null : restrictedToPaths.equals(other.restrictedToPaths))
+                    && skipIfConfigUnchanged == other.skipIfConfigUnchanged && resume == other.resume
+                    && reconcileDirty == other.reconcileDirty && StringUtils.equals(planId, other.planId);
+        }
+
+        @Override
+        public String toString() {
+            return "[restrictedToPaths=" + restrictedToPaths + ", skipIfConfigUnchanged=" + skipIfConfigUnchanged + ", resume=" + resume
+                    + (reconcileDirty ? ", reconcileDirty" : "") + (planId != null ? ", planId=" + planId : "") + "]";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import static org.apache.commons.lang3.StringEscapeUtils.escapeJson;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import biz.netcentric.cq.tools.actool.api.InstallationLog;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+/** An installation that is executed asynchronously (see {@link AcInstallationServiceImpl#applyAsync(String, String[], boolean)}). The
+ * progress can be polled while the installation is running. */
+public class InstallationJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final String configurationRootPath;
+    private final long submittedTime;
+
+    private volatile long startTime = -1;
+    private volatile long endTime = -1;
+
+    /** the logs of the configuration root paths applied so far (the last one is the current one) */
+    private final List<PersistableInstallationLogger> installLogs = new CopyOnWriteArrayList<PersistableInstallationLogger>();
+    private volatile InstallationLog result;
+
+    InstallationJob(String id, String configurationRootPath) {
+        this.id = id;
+        this.configurationRootPath = configurationRootPath;
+        this.submittedTime = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        if (result != null) {
+            return isSuccess(result) ? State.SUCCEEDED : State.FAILED;
+        } else if (endTime > 0) {
+            return State.FAILED;
+        } else if (startTime > 0) {
+            return State.RUNNING;
+        } else {
+            return State.QUEUED;
+        }
+    }
+
+    public boolean isFinished() {
+        return endTime > 0;
+    }
+
+    /** @return the log of the finished installation or null if the installation has not finished yet */
+    public InstallationLog getResult() {
+        return result;
+    }
+
+    void started() {
+        startTime = System.currentTimeMillis();
+    }
+
+    void installLogCreated(PersistableInstallationLogger installLog) {
+        installLogs.add(installLog);
+    }
+
+    void finished(InstallationLog installLog) {
+        result = installLog;
+        endTime = System.currentTimeMillis();
+    }
+
+    long getEndTime() {
+        return endTime;
+    }
+
+    /** @return the current progress (or the result if the job has finished) as JSON */
+    public String getProgressAsJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"jobId\":\"").append(escapeJson(id)).append("\"");
+        json.append(",\"state\":\"").append(getState()).append("\"");
+        if (configurationRootPath != null) {
+            json.append(",\"configurationRootPath\":\"").append(escapeJson(configurationRootPath)).append("\"");
+        }
+        long now = endTime > 0 ? endTime : System.currentTimeMillis();
+        json.append(",\"queuedMs\":").append((startTime > 0 ? startTime : now) - submittedTime);
+        json.append(",\"elapsedMs\":").append(startTime > 0 ? now - startTime : 0);
+
+        PersistableInstallationLogger currentInstallLog = installLogs.isEmpty() ? null : installLogs.get(installLogs.size() - 1);
+        if (currentInstallLog != null) {
+            int countAuthorizablesProcessed = 0;
+            int countAclPathsProcessed = 0;
+            for (PersistableInstallationLogger installLog : installLogs) {
+                countAuthorizablesProcessed += installLog.getCountAuthorizablesProcessed();
+                countAclPathsProcessed += installLog.getCountAclPathsProcessed();
+            }
+            if (currentInstallLog.getCurrentPhase() != null) {
+                json.append(",\"phase\":\"").append(escapeJson(currentInstallLog.getCurrentPhase())).append("\"");
+            }
+            json.append(",\"itemsInPhase\":").append(currentInstallLog.getCountItemsInCurrentPhase());
+            json.append(",\"itemsProcessedInPhase\":").append(currentInstallLog.getCountItemsProcessedInCurrentPhase());
+            json.append(",\"authorizablesProcessed\":").append(countAuthorizablesProcessed);
+            json.append(",\"aclPathsProcessed\":").append(countAclPathsProcessed);
+            if (!isFinished()) {
+                json.append(",\"phaseEtaMs\":").append(currentInstallLog.getEstimatedRemainingTimeOfCurrentPhase());
+            }
+        }
+
+        InstallationLog finishedLog = result;
+        if (finishedLog != null) {
+            json.append(",\"success\":").append(isSuccess(finishedLog));
+            json.append(",\"log\":\"").append(escapeJson(finishedLog.getMessageHistory())).append("\"");
+        }
+        json.append("}");
+        return json.toString();
+    }
+
+    private static boolean isSuccess(InstallationLog installLog) {
+        return !(installLog instanceof PersistableInstallationLogger) || ((PersistableInstallationLogger) installLog).isSuccess();
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import biz.netcentric.cq.tools.actool.api.InstallationLog;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+/** Executes installations asynchronously and keeps the jobs (including the finished ones for some time) to allow polling their progress. */
+class InstallationJobs {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstallationJobs.class);
+
+    private static final int MAX_FINISHED_JOBS = 20;
+    private static final long FINISHED_JOBS_RETENTION_MS = 60L * 60 * 1000;
+
+    private final Map<String, InstallationJob> jobs = new LinkedHashMap<String, InstallationJob>();
+    private final ExecutorService executorService;
+
+    InstallationJobs(int countThreads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(countThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ACTool-Async-Installation-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /** The installation to be executed asynchronously, it has to report the created logs to the job. */
+    interface AsyncInstallation {
+        InstallationLog install(InstallationJob job) throws Exception;
+    }
+
+    String submit(String configurationRootPath, final AsyncInstallation installation) {
+        final InstallationJob job = new InstallationJob(UUID.randomUUID().toString(), configurationRootPath);
+        synchronized (jobs) {
+            removeExpiredJobs();
+            jobs.put(job.getId(), job);
+        }
+        executorService.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                job.started();
+                InstallationLog installLog;
+                try {
+                    installLog = installation.install(job);
+                } catch (Exception e) {
+                    PersistableInstallationLogger errorLog = new PersistableInstallationLogger();
+                    errorLog.addError(LOG, "Asynchronous installation " + job.getId() + " failed", e);
+                    installLog = errorLog;
+                }
+                job.finished(installLog);
+                LOG.info("Finished asynchronous installation {} with state {}", job.getId(), job.getState());
+                return null;
+            }
+        });
+        LOG.info("Submitted asynchronous installation {} for configuration root path {}", job.getId(), configurationRootPath);
+        return job.getId();
+    }
+
+    /** @return the job or null if there is no such job (anymore) */
+    InstallationJob getJob(String jobId) {
+        synchronized (jobs) {
+            return jobs.get(jobId);
+        }
+    }
+
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private void removeExpiredJobs() {
+        int countFinishedJobs = 0;
+        for (InstallationJob job : jobs.values()) {
+            if (job.isFinished()) {
+                countFinishedJobs++;
+            }
+        }
+        long now = System.currentTimeMillis();
+        Iterator<InstallationJob> jobsIt = jobs.values().iterator();
+        while (jobsIt.hasNext()) {
+            InstallationJob job = jobsIt.next();
+            if (job.isFinished() && (countFinishedJobs >= MAX_FINISHED_JOBS || now - job.getEndTime() > FINISHED_JOBS_RETENTION_MS)) {
+                jobsIt.remove();
+                countFinishedJobs--;
+            }
+        }
+    }
+}
@@ -50,6 +50,33 @@ public interface AceServiceMBean {
             @Name("paths") @Description("comma separated list of paths to apply the configuration to, other paths will be skipped") String restrictedToPaths, 
             @Name("skipIfConfigUnchanged") @Description("If true, will only apply config if it has changed") boolean skipIfConfigUnchanged);
 
+    @Description("Applies the ACE configuration, but restricted to given paths and optionally resumes a previously aborted installation (requires batched saves)")
+    public String applyRestrictedToPaths(@Name("configurationRootPath") @Description("The configuration root path") String configurationRootPath,
+            @Name("paths") @Description("comma separated list of paths to apply the configuration to, other paths will be skipped") String restrictedToPaths, 
+            @Name("skipIfConfigUnchanged") @Description("If true, will only apply config if it has changed") boolean skipIfConfigUnchanged,
+            @Name("resume") @Description("If true, skips authorizables and ACLs that have already been saved by a previously aborted installation of the same configuration") boolean resume);
+
+    @Description("Starts applying the ACE configuration asynchronously and returns the job id, the progress can be polled with getAsyncInstallationProgress()")
+    String applyAsync(@Name("configurationRootPath") @Description("The configuration root path (leave empty to use the configured one)") String configurationRootPath,
+            @Name("paths") @Description("comma separated list of paths to apply the configuration to, other paths will be skipped") String restrictedToPaths,
+            @Name("skipIfConfigUnchanged") @Description("If true, will only apply config if it has changed") boolean skipIfConfigUnchanged);
+
+    @Description("Returns the progress of an asynchronous installation as JSON (contains the log once the installation has finished)")
+    String getAsyncInstallationProgress(@Name("jobId") @Description("The job id as returned by applyAsync()") String jobId);
+
+    @Description("Computes the changes the ACE configuration would make without saving them (dry-run) and stores them as plan")
+    String plan(@Name("configurationRootPath") @Description("The configuration root path (leave empty to use the configured one)") String configurationRootPath,
+            @Name("paths") @Description("comma separated list of paths to apply the configuration to, other paths will be skipped") String restrictedToPaths);
+
+    @Description("Applies a plan as created by plan() if the affected ACLs and authorizables have not changed since")
+    String applyPlan(@Name("planId") @Description("The id of the plan as returned by plan()") String planId);
+
+    @Description("Re-applies the ACE configuration only to the ACL paths and authorizables that have been changed outside of the AC Tool (requires the change journal to be enabled)")
+    String reconcileDirty();
+
+    @Description("Returns the recorded changes of ACLs and group memberships made outside of the AC Tool and the dirty ACL paths and authorizables")
+    String showChangeJournal();
+
     @Description("Purges the AccessControlList of the given path, if existing")
     String purgeACL(@Name("path") final String path);
 
@@ -69,6 +96,18 @@ public interface AceServiceMBean {
     @Description("Returns a configuration dump containing all groups and all ACEs ordered by groups (can be used as template for AC Tool configuration file)")
     public String groupBasedDump();
 
+    @Description("Writes a configuration dump containing all groups and all ACLs ordered by path to a file in the temp directory (the ACLs are streamed one by one) and returns the file path")
+    public String pathBasedDumpToFile();
+
+    @Description("Writes a configuration dump containing all groups and all ACEs ordered by groups to a file in the temp directory and returns the file path")
+    public String groupBasedDumpToFile();
+
+    @Description("Lists the dumps persisted in the repository with their storage size (compressed, complete or as delta to the previous dump) and the number of dumps to read to reconstruct them")
+    public String showPersistedDumps();
+
+    @Description("Returns a dump persisted in the repository (dumps stored as delta are reconstructed, the reconstruction time is given in the first line)")
+    public String showPersistedDump(@Name("dumpName") @Description("The name of the dump as listed by showPersistedDumps()") String dumpName);
+
     @Description("Returns installation log for the given ordinal")
     public String showInstallationLog(
             @Name("installationLogNumber") @Description("Ordinal of the installation log to be shown") final String historyLogNumber, 
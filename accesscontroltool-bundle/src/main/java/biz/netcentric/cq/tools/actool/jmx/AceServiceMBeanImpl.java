@@ -8,10 +8,18 @@
  */
 package biz.netcentric.cq.tools.actool.jmx;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Set;
 
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 import javax.management.NotCompliantMBeanException;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.sling.jcr.api.SlingRepository;
@@ -24,8 +32,12 @@ import org.slf4j.LoggerFactory;
 import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
 
 import biz.netcentric.cq.tools.actool.dumpservice.ConfigDumpService;
+import biz.netcentric.cq.tools.actool.dumpservice.PersistedDumpInfo;
+import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.history.AcHistoryService;
+import biz.netcentric.cq.tools.actool.impl.AcChangeJournal;
 import biz.netcentric.cq.tools.actool.impl.AcInstallationServiceInternal;
+import biz.netcentric.cq.tools.actool.impl.InstallationJob;
 
 @Component(property = {
         "jmx.objectname=biz.netcentric.cq.tools:type=ACTool",
@@ -40,6 +52,9 @@ public class AceServiceMBeanImpl extends AnnotatedStandardMBean implements AceSe
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     AcHistoryService acHistoryService;
 
+    @Reference(policyOption = ReferencePolicyOption.GREEDY)
+    AcChangeJournal acChangeJournal;
+
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     ConfigDumpService dumpService;
 
@@ -77,7 +92,46 @@ public class AceServiceMBeanImpl extends AnnotatedStandardMBean implements AceSe
         String[] restrictedToPaths = commaSeparatedStringToArr(paths);
         return acInstallationService.apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged).toString();
     }
+
+    @Override
+    public String applyRestrictedToPaths(String configurationRootPath, String paths, boolean skipIfConfigUnchanged, boolean resume) {
+        String[] restrictedToPaths = commaSeparatedStringToArr(paths);
+        return acInstallationService.apply(configurationRootPath, restrictedToPaths, skipIfConfigUnchanged, resume).toString();
+    }
    
+    @Override
+    public String applyAsync(String configurationRootPath, String paths, boolean skipIfConfigUnchanged) {
+        String[] restrictedToPaths = commaSeparatedStringToArr(paths);
+        return acInstallationService.applyAsync(StringUtils.trimToNull(configurationRootPath), restrictedToPaths, skipIfConfigUnchanged);
+    }
+
+    @Override
+    public String getAsyncInstallationProgress(String jobId) {
+        InstallationJob job = acInstallationService.getInstallationJob(StringUtils.trim(jobId));
+        return job != null ? job.getProgressAsJson() : "No installation job found for id " + jobId;
+    }
+
+    @Override
+    public String plan(String configurationRootPath, String paths) {
+        String[] restrictedToPaths = commaSeparatedStringToArr(paths);
+        return acInstallationService.plan(configurationRootPath, restrictedToPaths).toString();
+    }
+
+    @Override
+    public String applyPlan(String planId) {
+        return acInstallationService.applyPlan(StringUtils.trim(planId)).toString();
+    }
+
+    @Override
+    public String reconcileDirty() {
+        return acInstallationService.reconcileDirty().toString();
+    }
+
+    @Override
+    public String showChangeJournal() {
+        return acChangeJournal.getJournalAsString();
+    }
+
     @Override
     public String purgeACL(final String path) {
         return acInstallationService.purgeACL(path);
@@ -131,6 +185,72 @@ public class AceServiceMBeanImpl extends AnnotatedStandardMBean implements AceSe
         return dump;
     }
 
+    @Override
+    public String pathBasedDumpToFile() {
+        return dumpToFile(AcHelper.PATH_BASED_ORDER);
+    }
+
+    @Override
+    public String groupBasedDumpToFile() {
+        return dumpToFile(AcHelper.PRINCIPAL_BASED_ORDER);
+    }
+
+    private String dumpToFile(int keyOrder) {
+        StopWatch sw = new StopWatch();
+        sw.start();
+        try {
+            File dumpFile = dumpService.getCompleteDumpAsFile(keyOrder, true);
+            sw.stop();
+            return "Dump written to " + dumpFile.getAbsolutePath() + " (" + dumpFile.length() + " bytes) in " + sw.getTime() + " ms";
+        } catch (IOException e) {
+            LOG.error("Could not write dump to file: " + e, e);
+            return "Could not write dump to file: " + e;
+        }
+    }
+
+    @Override
+    public String showPersistedDumps() {
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            List<PersistedDumpInfo> dumpInfos = dumpService.getPersistedDumpInfos(session);
+            if (dumpInfos.isEmpty()) {
+                return "no persisted dumps found";
+            }
+            return StringUtils.join(dumpInfos, "\n");
+        } catch (IOException | RepositoryException e) {
+            LOG.error("Could not read persisted dumps: " + e, e);
+            return "Could not read persisted dumps: " + e;
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+    }
+
+    @Override
+    public String showPersistedDump(String dumpName) {
+        Session session = null;
+        try {
+            session = repository.loginService(null, null);
+            StopWatch sw = new StopWatch();
+            sw.start();
+            String dump;
+            try (InputStream dumpInputStream = dumpService.openPersistedDump(StringUtils.trim(dumpName), session)) {
+                dump = IOUtils.toString(dumpInputStream, StandardCharsets.UTF_8);
+            }
+            sw.stop();
+            return "# Reconstructed in " + sw.getTime() + " ms\n" + dump;
+        } catch (IOException | RepositoryException e) {
+            LOG.error("Could not read persisted dump " + dumpName + ": " + e, e);
+            return "Could not read persisted dump " + dumpName + ": " + e;
+        } finally {
+            if (session != null) {
+                session.logout();
+            }
+        }
+    }
+
     @Override
     public String showInstallationLog(final String n, boolean verbose) {
         int i;
@@ -52,6 +52,13 @@ public class AcToolTouchUiServlet extends SlingAllMethodsServlet {
             return;
         }
 
+        String requestUri = req.getRequestURI();
+        if ((requestUri.endsWith(AcToolUiService.PATH_SEGMENT_DUMP) || requestUri.endsWith(AcToolUiService.PATH_SEGMENT_PROGRESS))
+                && !mayApplyConfig(req.getResourceResolver().adaptTo(User.class))) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN, "You do not have sufficient permissions to access the dump or progress");
+            return;
+        }
+
         acToolUiService.doGet(req, resp, req.getRequestPathInfo().getResourcePath(), true);
 
     }
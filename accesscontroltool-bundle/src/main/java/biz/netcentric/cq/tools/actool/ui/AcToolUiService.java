@@ -2,7 +2,10 @@ package biz.netcentric.cq.tools.actool.ui;
 
 import static org.apache.commons.lang3.StringEscapeUtils.escapeHtml4;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -14,6 +17,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.felix.webconsole.WebConsoleConstants;
 import org.osgi.service.component.annotations.Component;
@@ -25,11 +29,13 @@ import org.slf4j.LoggerFactory;
 import biz.netcentric.cq.tools.actool.api.AcInstallationService;
 import biz.netcentric.cq.tools.actool.api.InstallationLog;
 import biz.netcentric.cq.tools.actool.dumpservice.ConfigDumpService;
+import biz.netcentric.cq.tools.actool.helper.AcHelper;
 import biz.netcentric.cq.tools.actool.history.AcHistoryService;
 import biz.netcentric.cq.tools.actool.history.AcToolExecution;
 import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
 import biz.netcentric.cq.tools.actool.impl.AcInstallationServiceImpl;
 import biz.netcentric.cq.tools.actool.impl.AcInstallationServiceInternal;
+import biz.netcentric.cq.tools.actool.impl.InstallationJob;
 
 @Component(service = { AcToolUiService.class })
 public class AcToolUiService {
@@ -41,10 +47,24 @@ public class AcToolUiService {
     public static final String PARAM_BASE_PATHS = "basePaths";
     public static final String PARAM_SHOW_LOG_NO = "showLogNo";
     public static final String PARAM_SHOW_LOG_VERBOSE = "showLogVerbose";
+    public static final String PARAM_ACTION = "action";
+    public static final String PARAM_PLAN_ID = "planId";
+    public static final String PARAM_ASYNC = "async";
+    public static final String PARAM_JOB_ID = "jobId";
+    public static final String PARAM_STREAM = "stream";
+    public static final String PARAM_ORDER = "order";
+
+    static final String ORDER_PATH = "path";
+
+    static final String ACTION_PLAN = "plan";
+    static final String ACTION_APPLY_PLAN = "applyPlan";
 
     public static final String PAGE_NAME = "actool";
 
     static final String PATH_SEGMENT_DUMP = "dump.yaml";
+    static final String PATH_SEGMENT_PROGRESS = "progress.json";
+
+    private static final long PROGRESS_STREAM_INTERVAL_MS = 1000;
 
     @Reference(policyOption = ReferencePolicyOption.GREEDY)
     private ConfigDumpService dumpService;
@@ -62,7 +82,9 @@ public class AcToolUiService {
             throws ServletException, IOException {
 
         if (req.getRequestURI().endsWith(PATH_SEGMENT_DUMP)) {
-            streamDumpToResponse(resp);
+            streamDumpToResponse(req, resp);
+        } else if (req.getRequestURI().endsWith(PATH_SEGMENT_PROGRESS)) {
+            streamProgressToResponse(req, resp);
         } else {
             renderUi(req, resp, postPath, isTouchUi);
         }
@@ -74,10 +96,37 @@ public class AcToolUiService {
     protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws IOException, ServletException {
 
         RequestParameters reqParams = RequestParameters.fromRequest(req, acInstallationService);
-        LOG.info("Received POST request to apply AC Tool config with configurationRootPath={} basePaths={}", reqParams.configurationRootPath, reqParams.basePaths);
+        String action = req.getParameter(PARAM_ACTION);
+
+        if (StringUtils.isBlank(action) && Boolean.valueOf(req.getParameter(PARAM_ASYNC))) {
+            LOG.info("Received POST request to apply AC Tool config asynchronously with configurationRootPath={} basePaths={}",
+                    reqParams.configurationRootPath, reqParams.basePaths);
+            String jobId = acInstallationService.applyAsync(reqParams.configurationRootPath, reqParams.getBasePathsArr(),
+                    reqParams.applyOnlyIfChanged);
+            resp.setContentType("text/plain");
+            resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+            resp.getWriter().print(jobId);
+            return;
+        }
 
-        InstallationLog log = acInstallationService.apply(reqParams.configurationRootPath, reqParams.getBasePathsArr(),
-                reqParams.applyOnlyIfChanged);
+        InstallationLog log;
+        String actionLabel;
+        if (ACTION_PLAN.equals(action)) {
+            LOG.info("Received POST request to create plan for AC Tool config with configurationRootPath={} basePaths={}",
+                    reqParams.configurationRootPath, reqParams.basePaths);
+            log = acInstallationService.plan(reqParams.configurationRootPath, reqParams.getBasePathsArr());
+            actionLabel = "creating plan for AC Tool config from " + reqParams.configurationRootPath;
+        } else if (ACTION_APPLY_PLAN.equals(action)) {
+            String planId = StringUtils.trim(req.getParameter(PARAM_PLAN_ID));
+            LOG.info("Received POST request to apply plan {}", planId);
+            log = acInstallationService.applyPlan(planId);
+            actionLabel = "applying plan " + planId;
+        } else {
+            LOG.info("Received POST request to apply AC Tool config with configurationRootPath={} basePaths={}", reqParams.configurationRootPath, reqParams.basePaths);
+            log = acInstallationService.apply(reqParams.configurationRootPath, reqParams.getBasePathsArr(),
+                    reqParams.applyOnlyIfChanged);
+            actionLabel = "applying AC Tool config from " + reqParams.configurationRootPath;
+        }
 
         String msg = log.getMessageHistory().trim();
         msg = msg.contains("\n") ? StringUtils.substringAfterLast(msg, "\n") : msg;
@@ -86,10 +135,10 @@ public class AcToolUiService {
         resp.setContentType("text/plain");
         if (((PersistableInstallationLogger) log).isSuccess()) {
             resp.setStatus(HttpServletResponse.SC_OK);
-            pw.println("Applied AC Tool config from " + reqParams.configurationRootPath + ":\n" + msg);
+            pw.println("Finished " + actionLabel + ":\n" + msg);
         } else {
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            pw.println("Error while applying AC Tool config from " + reqParams.configurationRootPath);
+            pw.println("Error while " + actionLabel);
         }
     }
 
@@ -113,12 +162,54 @@ public class AcToolUiService {
         }
     }
 
-    void streamDumpToResponse(final HttpServletResponse resp) throws IOException {
-        resp.setContentType("application/x-yaml");
-        resp.setHeader("Content-Disposition", "inline; filename=\"actool-dump.yaml\"");
-        String dumpAsString = dumpService.getCompletePrincipalBasedDumpsAsString();
+    /** Streams the dump from a temporary file to the response (the dump is not persisted in the repository). With parameter order=path,
+     * the dump is ordered by path (the ACLs are then also read one by one), otherwise by principal. */
+    void streamDumpToResponse(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        int keyOrder = ORDER_PATH.equals(req.getParameter(PARAM_ORDER)) ? AcHelper.PATH_BASED_ORDER : AcHelper.PRINCIPAL_BASED_ORDER;
+        File dumpFile = dumpService.getCompleteDumpAsFile(keyOrder, false);
+        try {
+            resp.setContentType("application/x-yaml");
+            resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            resp.setHeader("Content-Disposition", "inline; filename=\"actool-dump.yaml\"");
+            resp.setContentLengthLong(dumpFile.length());
+            try (InputStream dumpInputStream = new FileInputStream(dumpFile)) {
+                IOUtils.copy(dumpInputStream, resp.getOutputStream());
+            }
+            resp.getOutputStream().flush();
+        } finally {
+            if (!dumpFile.delete()) {
+                LOG.debug("Could not delete dump file {}", dumpFile);
+            }
+        }
+    }
+
+    /** Writes the progress of an asynchronous installation as JSON. With parameter stream=true, the progress is written as one JSON object
+     * per line (chunked) until the installation has finished. */
+    void streamProgressToResponse(final HttpServletRequest req, final HttpServletResponse resp) throws IOException {
+        InstallationJob job = acInstallationService.getInstallationJob(StringUtils.trim(req.getParameter(PARAM_JOB_ID)));
+        if (job == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "No installation job found for id " + req.getParameter(PARAM_JOB_ID));
+            return;
+        }
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        resp.setHeader("Cache-Control", "no-cache");
         PrintWriter out = resp.getWriter();
-        out.println(dumpAsString);
+        if (!Boolean.valueOf(req.getParameter(PARAM_STREAM))) {
+            out.println(job.getProgressAsJson());
+            return;
+        }
+        while (!job.isFinished() && !out.checkError()) {
+            out.println(job.getProgressAsJson());
+            out.flush();
+            try {
+                Thread.sleep(PROGRESS_STREAM_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        out.println(job.getProgressAsJson());
         out.flush();
     }
 
@@ -265,8 +356,7 @@ public class AcToolUiService {
 
         writer.tr();
         writer.openTd();
-        String onClick = "var as=$('#applySpinner');as.show(); var b=$('#applyButton');b.prop('disabled', true); oldL = b.text();b.text(' Applying AC Tool Configuration... ');var f=$('#acForm');var fd=f.serialize();$.post(f.attr('action'), fd).done(function(text){alert(text)}).fail(function(xhr){alert(xhr.status===403?'Permission Denied':'Config could not be applied - check log for errors')}).always(function(text) { var ll=text&amp;&amp;text.indexOf&amp;&amp;text.indexOf('identical to last execution')===-1?'"
-                + PARAM_SHOW_LOG_NO + "=1&':'';as.hide();b.text(oldL);b.prop('disabled', false);location.href='" + PAGE_NAME + "?'+ll+fd; });return false";
+        String onClick = getApplyOnClick(postPath);
         writer.println("<button " + getCoralButtonAtts(isTouchUI) + " id='applyButton' onclick=\"" + onClick + "\"> Apply AC Tool Configuration </button>");
         writer.closeTd();
         writer.openTd();
@@ -278,10 +368,44 @@ public class AcToolUiService {
 
         writer.closeTr();
 
+        writer.tr();
+        writer.openTd();
+        writer.println("<b>Plan</b> (dry-run that stores the changes,<br/> the plan can be applied later using its id)");
+        writer.closeTd();
+        writer.openTd();
+        writer.println("<input type='text' name='" + PARAM_PLAN_ID + "' value='' class='input' size='30' placeholder='plan id'>");
+        writer.println("<button " + getCoralButtonAtts(isTouchUI) + " id='planButton' onclick=\"" + getPlanOnClick(ACTION_PLAN) + "\"> Create Plan </button>");
+        writer.println("<button " + getCoralButtonAtts(isTouchUI) + " id='applyPlanButton' onclick=\"" + getPlanOnClick(ACTION_APPLY_PLAN) + "\"> Apply Plan </button>");
+        writer.closeTd();
+        writer.openTd();
+        writer.println("");
+        writer.closeTd();
+        writer.closeTr();
+
         writer.println("</form>");
         writer.closeTable();
     }
 
+    /** Starts the installation asynchronously and polls its progress (to not run into request timeouts for large configurations). */
+    private String getApplyOnClick(String postPath) {
+        return "var as=$('#applySpinner');as.show(); var b=$('#applyButton');b.prop('disabled', true); oldL = b.text();b.text(' Applying AC Tool Configuration... ');var f=$('#acForm');var fd=f.serialize();"
+                + "var done=function(text) { var ll=text&amp;&amp;text.indexOf&amp;&amp;text.indexOf('identical to last execution')===-1?'"
+                + PARAM_SHOW_LOG_NO + "=1&':'';as.hide();b.text(oldL);b.prop('disabled', false);location.href='" + PAGE_NAME + "?'+ll+fd; };"
+                + "$.post(f.attr('action'), fd+'&" + PARAM_ASYNC + "=true').done(function(jobId){"
+                + "var poll=function(){$.getJSON('" + postPath + ".html/" + PATH_SEGMENT_PROGRESS + "?" + PARAM_JOB_ID + "='+encodeURIComponent(jobId)).done(function(p){"
+                + "if(p.success===undefined){b.text(' '+(p.phase||p.state)+(p.itemsInPhase>0?' '+p.itemsProcessedInPhase+'/'+p.itemsInPhase:'')+(p.phaseEtaMs>0?' (ETA '+Math.ceil(p.phaseEtaMs/1000)+'s)':'')+'... ');setTimeout(poll,2000);}"
+                + "else{var msg=$.trim(p.log);msg=msg.substring(msg.lastIndexOf('\\n')+1);alert(p.success?'Finished applying AC Tool config:\\n'+msg:'Config could not be applied - check log for errors');done(p.log);}"
+                + "}).fail(function(){alert('Progress of installation '+jobId+' could not be retrieved');done();});};poll();"
+                + "}).fail(function(xhr){alert(xhr.status===403?'Permission Denied':'Config could not be applied - check log for errors');done();});return false";
+    }
+
+    private String getPlanOnClick(String action) {
+        return "var as=$('#applySpinner');as.show();var f=$('#acForm');var fd=f.serialize();$.post(f.attr('action'), fd+'&"
+                + PARAM_ACTION + "=" + action
+                + "').done(function(text){alert(text)}).fail(function(xhr){alert(xhr.status===403?'Permission Denied':'Action failed - check log for errors')}).always(function() {as.hide();location.href='"
+                + PAGE_NAME + "?" + PARAM_SHOW_LOG_NO + "=1&'+fd; });return false";
+    }
+
 
     private void printCss(boolean isTouchUI, final HtmlWriter writer) {
         StringBuilder css = new StringBuilder();
@@ -27,6 +27,7 @@ import com.day.cq.security.util.CqActions;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.configmodel.Restriction;
 import biz.netcentric.cq.tools.actool.helper.AccessControlUtils;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.validators.AceBeanValidator;
 import biz.netcentric.cq.tools.actool.validators.Validators;
 import biz.netcentric.cq.tools.actool.validators.exceptions.AcConfigBeanValidationException;
@@ -52,6 +53,8 @@ public class AceBeanValidatorImpl implements AceBeanValidator {
 
     private String previousAuthorizableId;
 
+    private PrivilegeIndex privilegeIndex;
+
     public AceBeanValidatorImpl(Set<String> authorizableIdsFromCurrentConfig) {
         this.authorizableIdsFromCurrentConfig = authorizableIdsFromCurrentConfig;
     }
@@ -59,6 +62,12 @@ public class AceBeanValidatorImpl implements AceBeanValidator {
     public AceBeanValidatorImpl() {
     }
 
+    /** @param privilegeIndex the index to validate privileges against (if not set, each privilege is looked up via the
+     *            AccessControlManager) */
+    public void setPrivilegeIndex(PrivilegeIndex privilegeIndex) {
+        this.privilegeIndex = privilegeIndex;
+    }
+
     @Override
     public boolean validate(final AceBean aceBean, AccessControlManager aclManager)
             throws AcConfigBeanValidationException {
@@ -240,7 +249,9 @@ public class AceBeanValidatorImpl implements AceBeanValidator {
             // remove leading and trailing blanks from privilege name
             privileges[i] = StringUtils.strip(privileges[i]);
 
-            if (!Validators.isValidJcrPrivilege(privileges[i], aclManager)) {
+            boolean isValidPrivilege = privilegeIndex != null ? privilegeIndex.isRegistered(privileges[i], aclManager)
+                    : Validators.isValidJcrPrivilege(privileges[i], aclManager);
+            if (!isValidPrivilege) {
                 final String errorMessage = getBeanDescription(
                         this.currentBeanCounter, aceBean.getAuthorizableId())
                         + ",  invalid jcr privilege: " + privileges[i];
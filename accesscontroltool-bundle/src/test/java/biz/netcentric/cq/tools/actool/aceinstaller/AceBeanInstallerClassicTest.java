@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static biz.netcentric.cq.tools.actool.aceinstaller.AceBeanInstallerIncrementalTest.createTestBean;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport;
+import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupport.AemCqActions;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+public class AceBeanInstallerClassicTest {
+
+    String testPath = "/content/testpath";
+
+    @Spy
+    @InjectMocks
+    AceBeanInstallerClassic aceBeanInstallerClassic;
+
+    @Spy
+    PersistableInstallationLogger installLog;
+
+    @Mock
+    JackrabbitAccessControlList jackrabbitAccessControlList;
+
+    @Mock
+    Session session;
+
+    @Mock
+    JackrabbitAccessControlManager accessControlManager;
+
+    @Mock
+    AemCqActionsSupport aemCqActionsSupport;
+
+    @Mock
+    AemCqActions aemCqActions;
+
+    @Before
+    public void setup() throws RepositoryException {
+        initMocks(this);
+
+        doReturn(accessControlManager).when(session).getAccessControlManager();
+        doReturn(new AccessControlPolicy[] { jackrabbitAccessControlList }).when(accessControlManager).getPolicies(testPath);
+
+        JackrabbitAccessControlEntry existingAce = mock(JackrabbitAccessControlEntry.class);
+        doReturn(new PrincipalImpl("testPrincipal1")).when(existingAce).getPrincipal();
+        doReturn(new JackrabbitAccessControlEntry[] { existingAce }).when(jackrabbitAccessControlList).getAccessControlEntries();
+
+        doReturn(true).when(aceBeanInstallerClassic).installPrivileges(any(AceBean.class), any(Principal.class),
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), any(PrivilegeIndex.class));
+
+        doAnswer(new Answer<Privilege>() {
+            public Privilege answer(InvocationOnMock invocation) {
+                Privilege privilege = mock(Privilege.class);
+                doReturn(invocation.getArguments()[0].toString()).when(privilege).getName();
+                doReturn(new Privilege[0]).when(privilege).getDeclaredAggregatePrivileges();
+                return privilege;
+            }
+        }).when(accessControlManager).privilegeFromName(anyString());
+
+        doReturn(aemCqActions).when(aemCqActionsSupport).getCqActions(session);
+        doReturn(mock(Node.class)).when(session).getNode(testPath);
+    }
+
+    @Test
+    public void testAclIsWrittenOnce() throws Exception {
+        aceBeanInstallerClassic.resolveActionsInMemory = true;
+        Set<AceBean> aceBeans = new LinkedHashSet<AceBean>();
+        aceBeans.add(createTestBean(testPath, "testPrincipal1", true, "jcr:read", ""));
+        aceBeans.add(createTestBean(testPath, "testPrincipal2", true, "", "read,modify"));
+        aceBeans.add(createTestBean(testPath, "testPrincipal3", false, "rep:write", ""));
+
+        aceBeanInstallerClassic.installAcl(aceBeans, testPath, Collections.singleton("testPrincipal1"), session, installLog,
+                new PrivilegeIndex());
+
+        InOrder inOrder = inOrder(jackrabbitAccessControlList, accessControlManager);
+        inOrder.verify(jackrabbitAccessControlList).removeAccessControlEntry(any(JackrabbitAccessControlEntry.class));
+        inOrder.verify(accessControlManager).setPolicy(testPath, jackrabbitAccessControlList);
+        verify(accessControlManager, times(1)).setPolicy(anyString(), any(AccessControlPolicy.class));
+        verify(accessControlManager, times(1)).getPolicies(testPath);
+        assertEquals(1, installLog.getCountPolicyWrites());
+        assertEquals(1, installLog.getCountAclsChanged());
+    }
+
+    @Test
+    public void testAclIsWrittenBeforeEvaluatingInheritedActions() throws Exception {
+        aceBeanInstallerClassic.resolveActionsInMemory = true;
+        doReturn(true).when(aemCqActionsSupport).definesContent(any(Node.class));
+        doReturn(Collections.singleton("modify")).when(aemCqActions).getAllowedActions(eq(testPath), anySetOf(Principal.class));
+
+        // the entries of testPrincipal1 are changed before its allowed actions are evaluated
+        Set<AceBean> aceBeans = new LinkedHashSet<AceBean>();
+        aceBeans.add(createTestBean(testPath, "testPrincipal1", true, "jcr:read", ""));
+        aceBeans.add(createTestBean(testPath, "testPrincipal1", true, "", "create"));
+
+        aceBeanInstallerClassic.installAcl(aceBeans, testPath, Collections.singleton("testPrincipal1"), session, installLog,
+                new PrivilegeIndex());
+
+        InOrder inOrder = inOrder(accessControlManager, aemCqActions);
+        inOrder.verify(accessControlManager).setPolicy(testPath, jackrabbitAccessControlList);
+        inOrder.verify(aemCqActions).getAllowedActions(eq(testPath), anySetOf(Principal.class));
+        inOrder.verify(accessControlManager).setPolicy(testPath, jackrabbitAccessControlList);
+        assertEquals(2, installLog.getCountPolicyWrites());
+        assertEquals(2, installLog.getMaxCountPolicyWritesPerPath());
+    }
+
+    @Test
+    public void testAclIsNotWrittenBeforeEvaluatingInheritedActionsOfUnchangedPrincipal() throws Exception {
+        aceBeanInstallerClassic.resolveActionsInMemory = true;
+        doReturn(true).when(aemCqActionsSupport).definesContent(any(Node.class));
+        doReturn(Collections.singleton("modify")).when(aemCqActions).getAllowedActions(eq(testPath), anySetOf(Principal.class));
+
+        // only the entries of testPrincipal1 are changed before the allowed actions of testPrincipal2 are evaluated
+        Set<AceBean> aceBeans = new LinkedHashSet<AceBean>();
+        aceBeans.add(createTestBean(testPath, "testPrincipal1", true, "jcr:read", ""));
+        aceBeans.add(createTestBean(testPath, "testPrincipal2", true, "", "create"));
+
+        aceBeanInstallerClassic.installAcl(aceBeans, testPath, Collections.singleton("testPrincipal1"), session, installLog,
+                new PrivilegeIndex());
+
+        InOrder inOrder = inOrder(accessControlManager, aemCqActions);
+        inOrder.verify(aemCqActions).getAllowedActions(eq(testPath), anySetOf(Principal.class));
+        inOrder.verify(accessControlManager).setPolicy(testPath, jackrabbitAccessControlList);
+        verify(accessControlManager, times(1)).setPolicy(anyString(), any(AccessControlPolicy.class));
+        assertEquals(1, installLog.getCountPolicyWrites());
+    }
+
+    @Test
+    public void testActionsAreInstalledWithCqActionsIfNotResolvedInMemory() throws Exception {
+        aceBeanInstallerClassic.resolveActionsInMemory = false;
+        doReturn(Collections.singleton(mock(Privilege.class))).when(aemCqActions).getPrivileges(anyString());
+
+        Set<AceBean> aceBeans = new LinkedHashSet<AceBean>();
+        aceBeans.add(createTestBean(testPath, "testPrincipal1", true, "jcr:read", ""));
+        aceBeans.add(createTestBean(testPath, "testPrincipal2", true, "", "read,modify"));
+
+        aceBeanInstallerClassic.installAcl(aceBeans, testPath, Collections.singleton("testPrincipal1"), session, installLog,
+                new PrivilegeIndex());
+
+        // the pending changes are written before CqActions modifies the ACL, afterwards the ACL is retrieved again
+        InOrder inOrder = inOrder(accessControlManager, aemCqActions);
+        inOrder.verify(accessControlManager).setPolicy(testPath, jackrabbitAccessControlList);
+        inOrder.verify(aemCqActions).installActions(eq(testPath), eq(new PrincipalImpl("testPrincipal2")), anyMapOf(String.class,
+                Boolean.class), anyCollectionOf(String.class));
+        inOrder.verify(accessControlManager).getPolicies(testPath);
+        verify(accessControlManager, times(2)).getPolicies(testPath);
+    }
+
+    @Test
+    public void testUnchangedAclIsNotWritten() throws Exception {
+        AceBean initialContentOnlyBean = createTestBean(testPath, "testPrincipal1", true, "", "");
+        initialContentOnlyBean.setPermission(null);
+        initialContentOnlyBean.setInitialContent("[{\"jcr:primaryType\": \"nt:unstructured\"}]");
+
+        aceBeanInstallerClassic.installAcl(Collections.singleton(initialContentOnlyBean), testPath, Collections.<String> emptySet(),
+                session, installLog, new PrivilegeIndex());
+
+        verify(accessControlManager, never()).setPolicy(anyString(), any(AccessControlPolicy.class));
+        verify(accessControlManager, never()).removePolicy(anyString(), any(AccessControlPolicy.class));
+        assertEquals(0, installLog.getCountPolicyWrites());
+    }
+}
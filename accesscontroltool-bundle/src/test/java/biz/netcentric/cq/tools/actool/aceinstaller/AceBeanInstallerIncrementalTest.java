@@ -18,7 +18,9 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -40,6 +42,7 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
 import javax.jcr.ValueFormatException;
+import javax.jcr.security.AccessControlEntry;
 import javax.jcr.security.AccessControlManager;
 import javax.jcr.security.Privilege;
 
@@ -50,6 +53,8 @@ import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -61,6 +66,7 @@ import biz.netcentric.cq.tools.actool.aem.AemCqActionsSupportImpl;
 import biz.netcentric.cq.tools.actool.configmodel.AceBean;
 import biz.netcentric.cq.tools.actool.configmodel.Restriction;
 import biz.netcentric.cq.tools.actool.configreader.YamlConfigReader;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
 import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
 
 public class AceBeanInstallerIncrementalTest {
@@ -86,6 +92,8 @@ public class AceBeanInstallerIncrementalTest {
     @InjectMocks
     AceBeanInstallerIncremental aceBeanInstallerIncremental;
 
+    PrivilegeIndex privilegeIndex = new PrivilegeIndex();
+
     @Spy
     PersistableInstallationLogger installLog;
 
@@ -117,7 +125,7 @@ public class AceBeanInstallerIncrementalTest {
         doReturn(jackrabbitAccessControlList).when(aceBeanInstallerIncremental).getAccessControlList(eq(accessControlManager), anyString());
 
         doReturn(true).when(aceBeanInstallerIncremental).installPrivileges(any(AceBean.class), any(Principal.class),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), any(PrivilegeIndex.class));
 
         // default privilege is a simple privilege with the given string name
         doAnswer(new Answer<Privilege>() {
@@ -170,21 +178,83 @@ public class AceBeanInstallerIncrementalTest {
 
     }
 
+    @Test
+    public void testAceFingerprint() throws RepositoryException {
+        AceFingerprint.Factory aceFingerprints = new AceFingerprint.Factory();
+        PrivilegeIndex privilegeIndex = new PrivilegeIndex();
+
+        AceFingerprint fingerprintRead = aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, true, "jcr:read", "", new Restriction("rep:glob", "*"),
+                        new Restriction("rep:ntNames", new String[] { "cq:Page", "dam:Asset" })),
+                privilegeIndex, accessControlManager);
+        AceFingerprint fingerprintNonAggregates = aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, true, "jcr:readProperties,jcr:readNodes", "",
+                        new Restriction("rep:ntNames", new String[] { "cq:Page", "dam:Asset" }), new Restriction("rep:glob", "*")),
+                privilegeIndex, accessControlManager);
+        assertTrue("aggregates resolved and restrictions sorted must result in the same interned instance",
+                fingerprintRead == fingerprintNonAggregates);
+        assertEquals("testPrincipal1 allow [jcr:readNodes, jcr:readProperties][[Restriction name=rep:glob, values=[*]], "
+                + "[Restriction name=rep:ntNames, values=[cq:Page, dam:Asset]]]", fingerprintRead.toString());
+
+        assertFalse(fingerprintRead.equals(aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, false, "jcr:read", "", new Restriction("rep:glob", "*"),
+                        new Restriction("rep:ntNames", new String[] { "cq:Page", "dam:Asset" })),
+                privilegeIndex, accessControlManager)));
+        assertFalse(fingerprintRead.equals(aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, true, "jcr:read", "", new Restriction("rep:glob", "*"),
+                        new Restriction("rep:ntNames", new String[] { "dam:Asset", "cq:Page" })),
+                privilegeIndex, accessControlManager)));
+        assertFalse(fingerprintRead.equals(aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, true, "jcr:readNodes", "", new Restriction("rep:glob", "*"),
+                        new Restriction("rep:ntNames", new String[] { "cq:Page", "dam:Asset" })),
+                privilegeIndex, accessControlManager)));
+        assertEquals(4, aceFingerprints.getCountInterned());
+
+        aceFingerprints.clear();
+        assertEquals(0, aceFingerprints.getCountInterned());
+
+        assertFalse("fingerprints of different privilege indexes must not be equal", fingerprintRead.equals(aceFingerprints.create(
+                createTestBean(testPath, testPrincipal1, true, "jcr:read", "", new Restriction("rep:glob", "*"),
+                        new Restriction("rep:ntNames", new String[] { "cq:Page", "dam:Asset" })),
+                new PrivilegeIndex(), accessControlManager)));
+    }
+
+    @Test
+    public void testUnchangedAclIsSkippedByHash() throws Exception {
+        aceBeanInstallerIncremental.installAcl(asSet(bean1, bean2), testPath, asSet(testPrincipal1, testPrincipal2), session, installLog, privilegeIndex);
+        verify(aceBeanInstallerIncremental, times(1)).getAccessControlList(accessControlManager, testPath);
+
+        // same config and unchanged rep:policy node
+        aceBeanInstallerIncremental.installAcl(asSet(bean1, bean2), testPath, asSet(testPrincipal1, testPrincipal2), session, installLog, privilegeIndex);
+        verify(aceBeanInstallerIncremental, times(1)).getAccessControlList(accessControlManager, testPath);
+        assertEquals(1, installLog.getCountAclsSkippedByHash());
+
+        // changed config
+        aceBeanInstallerIncremental.installAcl(asSet(bean1, bean3), testPath, asSet(testPrincipal1, testPrincipal3), session, installLog, privilegeIndex);
+        verify(aceBeanInstallerIncremental, times(2)).getAccessControlList(accessControlManager, testPath);
+
+        // forced full compare
+        aceBeanInstallerIncremental.forceFullAclCompare = true;
+        aceBeanInstallerIncremental.installAcl(asSet(bean1, bean3), testPath, asSet(testPrincipal1, testPrincipal3), session, installLog, privilegeIndex);
+        verify(aceBeanInstallerIncremental, times(3)).getAccessControlList(accessControlManager, testPath);
+        assertEquals(1, installLog.getCountAclsSkippedByHash());
+    }
+
     @Test
     public void testSimplePrivilegesAcesAdditive() throws Exception {
 
         aceBeanInstallerIncremental.installAcl(
                 asSet(bean1, bean2, bean3), testPath,
-                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog);
+                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog, privilegeIndex);
 
         verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(any(JackrabbitAccessControlEntry.class));
 
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean1), eq(new PrincipalImpl(testPrincipal1)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean2), eq(new PrincipalImpl(testPrincipal2)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean3), eq(new PrincipalImpl(testPrincipal3)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
 
     }
 
@@ -198,12 +268,12 @@ public class AceBeanInstallerIncrementalTest {
 
         aceBeanInstallerIncremental.installAcl(
                 asSet(bean1, bean2, bean3), testPath,
-                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog);
+                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog, privilegeIndex);
 
         verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(any(JackrabbitAccessControlEntry.class));
 
         verify(aceBeanInstallerIncremental, never()).installPrivileges(any(AceBean.class), any(Principal.class),
-                any(JackrabbitAccessControlList.class), any(Session.class), any(AccessControlManager.class));
+                any(JackrabbitAccessControlList.class), any(Session.class), any(AccessControlManager.class), any(PrivilegeIndex.class));
 
     }
 
@@ -218,42 +288,127 @@ public class AceBeanInstallerIncrementalTest {
 
         aceBeanInstallerIncremental.installAcl(
                 Collections.<AceBean> emptySet(), testPath,
-                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog);
+                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog, privilegeIndex);
 
         verify(jackrabbitAccessControlList).removeAccessControlEntry(ace1);
         verify(jackrabbitAccessControlList).removeAccessControlEntry(ace2);
         verify(jackrabbitAccessControlList).removeAccessControlEntry(ace3);
 
         verify(aceBeanInstallerIncremental, never()).installPrivileges(any(AceBean.class), any(Principal.class),
-                any(JackrabbitAccessControlList.class), any(Session.class), any(AccessControlManager.class));
+                any(JackrabbitAccessControlList.class), any(Session.class), any(AccessControlManager.class), any(PrivilegeIndex.class));
 
     }
 
+    @Test
+    public void testSimplePrivilegesAceInsertedInTheMiddle() throws Exception {
+
+        JackrabbitAccessControlEntry ace1 = aceBeanToAce(bean1);
+        JackrabbitAccessControlEntry ace2 = aceBeanToAce(bean2);
+        JackrabbitAccessControlEntry ace3 = aceBeanToAce(bean3);
+        // after bean2 has been added, it is the last entry
+        Mockito.when(jackrabbitAccessControlList.getAccessControlEntries()).thenReturn(
+                new JackrabbitAccessControlEntry[] { ace1, ace3 },
+                new JackrabbitAccessControlEntry[] { ace1, ace3 },
+                new JackrabbitAccessControlEntry[] { ace1, ace3, ace2 });
+
+        aceBeanInstallerIncremental.installAcl(
+                asSet(bean1, bean2, bean3), testPath,
+                asSet(testPrincipal1, testPrincipal2, testPrincipal3), session, installLog, privilegeIndex);
+
+        verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(any(JackrabbitAccessControlEntry.class));
+        verify(aceBeanInstallerIncremental).installPrivileges(eq(bean2), eq(new PrincipalImpl(testPrincipal2)),
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
+        verify(aceBeanInstallerIncremental, never()).installPrivileges(eq(bean3), any(Principal.class),
+                any(JackrabbitAccessControlList.class), any(Session.class), any(AccessControlManager.class), any(PrivilegeIndex.class));
+        verify(jackrabbitAccessControlList).orderBefore(ace2, ace3);
+
+        assertEquals(1, installLog.getCountAceWrites());
+        // rewriting from first difference would have been: remove ace3, add bean2 and bean3
+        assertEquals(2, installLog.getCountAceWritesSaved());
+    }
+
+    @Test
+    public void testAcesAreNotInsertedBeforeUnmanagedAces() throws Exception {
+
+        JackrabbitAccessControlEntry ace1 = aceBeanToAce(bean1);
+        JackrabbitAccessControlEntry ace2 = aceBeanToAce(bean2);
+        JackrabbitAccessControlEntry unmanagedAce = aceBeanToAce(bean3);
+        doReturn(new JackrabbitAccessControlEntry[] { ace1, ace2, unmanagedAce }).when(jackrabbitAccessControlList)
+                .getAccessControlEntries();
+        AceBean newBean = createTestBean(testPath, testPrincipal1, false, "jcr:write", "");
+
+        aceBeanInstallerIncremental.installAcl(
+                asSet(bean1, newBean, bean2), testPath,
+                asSet(testPrincipal1, testPrincipal2), session, installLog, privilegeIndex);
+
+        // as before, everything after the first difference is appended after the unmanaged ACE (instead of inserting before ace2)
+        verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(ace1);
+        verify(jackrabbitAccessControlList).removeAccessControlEntry(ace2);
+        verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(unmanagedAce);
+        InOrder inOrder = inOrder(aceBeanInstallerIncremental);
+        inOrder.verify(aceBeanInstallerIncremental).installPrivileges(eq(newBean), eq(new PrincipalImpl(testPrincipal1)),
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
+        inOrder.verify(aceBeanInstallerIncremental).installPrivileges(eq(bean2), eq(new PrincipalImpl(testPrincipal2)),
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
+        verify(jackrabbitAccessControlList, never()).orderBefore(any(AccessControlEntry.class), any(AccessControlEntry.class));
+    }
+
     @Test
     public void testGetPrincipalAceBeansForActionAceBeanIsCalledToResolveActions() throws Exception {
 
+        aceBeanInstallerIncremental.resolveActionsInMemory = false;
+
         // read maps to one simple bean
-        doReturn(asSet(bean1)).when(aceBeanInstallerIncremental).getPrincipalAceBeansForActionAceBean(beanWithAction1, session);
+        doReturn(asSet(bean1)).when(aceBeanInstallerIncremental).getPrincipalAceBeansForActionAceBean(beanWithAction1, session,
+                privilegeIndex);
         // read,create,modify,delete maps to two beans
         doReturn(asSet(bean2, bean2Content)).when(aceBeanInstallerIncremental).getPrincipalAceBeansForActionAceBean(beanWithAction2,
-                session);
+                session, privilegeIndex);
 
         aceBeanInstallerIncremental.installAcl(
                 asSet(beanWithAction1, beanWithAction2), testPath,
-                asSet(testPrincipal1, testPrincipal2), session, installLog);
+                asSet(testPrincipal1, testPrincipal2), session, installLog, privilegeIndex);
 
         verify(jackrabbitAccessControlList, never()).removeAccessControlEntry(any(JackrabbitAccessControlEntry.class));
 
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean1), eq(new PrincipalImpl(testPrincipal1)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean2), eq(new PrincipalImpl(testPrincipal2)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
         verify(aceBeanInstallerIncremental).installPrivileges(eq(bean2Content), eq(new PrincipalImpl(testPrincipal2)),
-                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager));
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
 
     }
 
 
+    @Test
+    public void testActionsAreResolvedInMemory() throws Exception {
+
+        aceBeanInstallerIncremental.resolveActionsInMemory = true;
+        aceBeanInstallerIncremental.installAcl(
+                asSet(beanWithAction1, beanWithAction2), testPath,
+                asSet(testPrincipal1, testPrincipal2), session, installLog, privilegeIndex);
+
+        verify(slingRepository, never()).loginService(anyString(), anyString());
+        verify(aceBeanInstallerIncremental, never()).getPrincipalAceBeansForActionAceBean(any(AceBean.class), any(Session.class),
+                any(PrivilegeIndex.class));
+
+        ArgumentCaptor<AceBean> installedAceBeans = ArgumentCaptor.forClass(AceBean.class);
+        verify(aceBeanInstallerIncremental, times(3)).installPrivileges(installedAceBeans.capture(), any(Principal.class),
+                eq(jackrabbitAccessControlList), eq(session), eq(accessControlManager), eq(privilegeIndex));
+        AceBean installedBean2 = installedAceBeans.getAllValues().get(1);
+        assertEquals(testPrincipal2, installedBean2.getPrincipalName());
+        assertEquals(testPath, installedBean2.getJcrPath());
+        assertEquals(createComparablePrivSet("jcr:read,jcr:lockManagement,jcr:versionManagement,jcr:modifyProperties,jcr:addChildNodes,"
+                + "jcr:nodeTypeManagement,jcr:removeChildNodes,jcr:removeNode"), createComparablePrivSet(installedBean2.getPrivilegesString()));
+        assertTrue(installedBean2.getRestrictions().isEmpty());
+        AceBean installedBean2Content = installedAceBeans.getAllValues().get(2);
+        assertEquals(createComparablePrivSet(bean2Content.getPrivilegesString()),
+                createComparablePrivSet(installedBean2Content.getPrivilegesString()));
+        assertEquals("*/jcr:content*", installedBean2Content.getRestrictions().get(0).getValue());
+        assertEquals(2, installLog.getCountActionCacheMiss());
+    }
+
     @Test
     public void testGetPrincipalAceBeansForActionRead() throws Exception {
 
@@ -266,7 +421,7 @@ public class AceBeanInstallerIncrementalTest {
         }).when(jackrabbitAccessControlList).getAccessControlEntries();
 
         Set<AceBean> resultAceBeans = aceBeanInstallerIncremental.getPrincipalAceBeansForActionAceBean(beanWithAction1,
-                session);
+                session, privilegeIndex);
 
         assertEquals(1, resultAceBeans.size());
 
@@ -295,7 +450,7 @@ public class AceBeanInstallerIncrementalTest {
         }).when(jackrabbitAccessControlList).getAccessControlEntries();
 
         Set<AceBean> resultAceBeans = aceBeanInstallerIncremental.getPrincipalAceBeansForActionAceBean(beanWithAction2,
-                session);
+                session, privilegeIndex);
 
         assertEquals(2, resultAceBeans.size());
 
@@ -339,7 +494,7 @@ public class AceBeanInstallerIncrementalTest {
     }
 
     private String createComparablePrivSet(String privsIn) throws RepositoryException {
-        return aceBeanInstallerIncremental.privilegesToComparableSet(privsIn.split(" *, *"), accessControlManager);
+        return aceBeanInstallerIncremental.privilegesToComparableSet(privsIn.split(" *, *"), privilegeIndex, accessControlManager);
     }
 
     public static JackrabbitAccessControlEntry aceBeanToAce(final AceBean bean) {
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AclDiffTest {
+
+    @Test
+    public void testInsertAtTop() {
+        AclDiff<String> aclDiff = new AclDiff<String>(list("b", "c", "d", "e"), list("a", "b", "c", "d", "e"));
+        assertEquals(0, aclDiff.getCountRemovals());
+        assertEquals(1, aclDiff.getCountInsertions());
+        assertEquals(-1, aclDiff.getMatchedActualIndex(0));
+        assertEquals(0, aclDiff.getInsertBeforeActualIndex(0));
+        assertEquals(9, aclDiff.getCountWritesRewritingFromFirstDifference());
+    }
+
+    @Test
+    public void testChangedEntryInTheMiddle() {
+        AclDiff<String> aclDiff = new AclDiff<String>(list("a", "b", "x", "d", "e"), list("a", "b", "c", "d", "e"));
+        assertEquals(1, aclDiff.getCountRemovals());
+        assertFalse(aclDiff.isActualKept(2));
+        assertEquals(1, aclDiff.getCountInsertions());
+        assertEquals(3, aclDiff.getInsertBeforeActualIndex(2));
+        assertEquals(6, aclDiff.getCountWritesRewritingFromFirstDifference());
+    }
+
+    @Test
+    public void testReorderedAndAppended() {
+        AclDiff<String> aclDiff = new AclDiff<String>(list("a", "c", "b", "d"), list("a", "b", "c", "d", "e"));
+        assertTrue(aclDiff.isActualKept(0));
+        assertTrue(aclDiff.isActualKept(3));
+        assertEquals(1, aclDiff.getCountRemovals());
+        assertEquals(2, aclDiff.getCountInsertions());
+        // e is appended
+        assertEquals(-1, aclDiff.getMatchedActualIndex(4));
+        assertEquals(-1, aclDiff.getInsertBeforeActualIndex(4));
+    }
+
+    @Test
+    public void testEmptyLists() {
+        AclDiff<String> aclDiff = new AclDiff<String>(Collections.<String> emptyList(), list("a", "b"));
+        assertEquals(2, aclDiff.getCountInsertions());
+        assertEquals(-1, aclDiff.getInsertBeforeActualIndex(0));
+
+        aclDiff = new AclDiff<String>(list("a", "b"), Collections.<String> emptyList());
+        assertEquals(2, aclDiff.getCountRemovals());
+        assertEquals(4, new AclDiff<String>(list("a", "b"), list("c", "d")).getCountWritesRewritingFromFirstDifference());
+    }
+
+    @Test
+    public void testEntriesBeforeAnchorAreOnlyKeptInCommonPrefix() {
+        // a, b and c are followed by unmanaged entries, only a is kept as part of the common prefix
+        AclDiff<String> aclDiff = new AclDiff<String>(list("a", "b", "c", "d"), list("a", "x", "b", "c", "d"), 3);
+        assertTrue(aclDiff.isActualKept(0));
+        assertFalse(aclDiff.isActualKept(1));
+        assertFalse(aclDiff.isActualKept(2));
+        assertTrue(aclDiff.isActualKept(3));
+        assertEquals(3, aclDiff.getCountInsertions());
+        // x, b and c are inserted before d (which is after the unmanaged entries)
+        assertEquals(3, aclDiff.getInsertBeforeActualIndex(1));
+        assertEquals(3, aclDiff.getInsertBeforeActualIndex(3));
+
+        // no entry after the unmanaged entries: appended
+        aclDiff = new AclDiff<String>(list("a", "b"), list("a", "x", "b"), 2);
+        assertFalse(aclDiff.isActualKept(1));
+        assertEquals(-1, aclDiff.getInsertBeforeActualIndex(1));
+    }
+
+    @Test
+    public void testLargeListsAreRewrittenBetweenPrefixAndSuffix() {
+        int size = (int) Math.sqrt(AclDiff.MAX_LCS_MATRIX_CELLS) + 1;
+        List<String> actual = new ArrayList<String>();
+        List<String> configured = new ArrayList<String>();
+        actual.add("a");
+        configured.add("a");
+        for (int i = 0; i < size; i++) {
+            actual.add("x" + i);
+            configured.add("y" + i);
+        }
+        // common subsequence that is not matched due to the size
+        actual.add("m");
+        configured.add(1, "m");
+        actual.add("z");
+        configured.add("z");
+
+        AclDiff<String> aclDiff = new AclDiff<String>(actual, configured);
+        assertTrue(aclDiff.isActualKept(0));
+        assertTrue(aclDiff.isActualKept(actual.size() - 1));
+        assertEquals(size + 1, aclDiff.getCountRemovals());
+        assertEquals(size + 1, aclDiff.getCountInsertions());
+    }
+
+    private static List<String> list(String... elements) {
+        return Arrays.asList(elements);
+    }
+}
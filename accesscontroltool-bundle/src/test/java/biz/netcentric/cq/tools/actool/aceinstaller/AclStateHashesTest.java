@@ -0,0 +1,123 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.PropertyIteratorAdapter;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class AclStateHashesTest {
+
+    private static final String PATH = "/content/site";
+
+    @Test
+    public void testIsUnchanged() {
+        AclStateHashes aclStateHashes = new AclStateHashes();
+        assertFalse(aclStateHashes.isUnchanged(PATH, "config1", "state1"));
+
+        aclStateHashes.put(PATH, "config1", "state1");
+        assertTrue(aclStateHashes.isUnchanged(PATH, "config1", "state1"));
+        assertFalse(aclStateHashes.isUnchanged(PATH, "config2", "state1"));
+        assertFalse(aclStateHashes.isUnchanged(PATH, "config1", "state2"));
+        assertFalse(aclStateHashes.isUnchanged("/content/other", "config1", "state1"));
+    }
+
+    @Test
+    public void testAclStateHash() throws RepositoryException {
+        Session session = mock(Session.class);
+        assertEquals("none", AclStateHashes.getAclStateHash(session, PATH));
+
+        mockPolicyNode(session, aceNode("allow", "rep:GrantACE", "group1", "jcr:read"),
+                aceNode("deny", "rep:DenyACE", "group2", "jcr:write"));
+        String aclStateHash = AclStateHashes.getAclStateHash(session, PATH);
+        assertEquals(aclStateHash, AclStateHashes.getAclStateHash(session, PATH));
+
+        mockPolicyNode(session, aceNode("deny", "rep:DenyACE", "group2", "jcr:write"),
+                aceNode("allow", "rep:GrantACE", "group1", "jcr:read"));
+        assertNotEquals("order of ACEs is relevant", aclStateHash, AclStateHashes.getAclStateHash(session, PATH));
+
+        mockPolicyNode(session, aceNode("allow", "rep:GrantACE", "group1", "jcr:read"),
+                aceNode("deny", "rep:DenyACE", "group2", "jcr:write", "jcr:read"));
+        assertNotEquals("privileges are relevant", aclStateHash, AclStateHashes.getAclStateHash(session, PATH));
+    }
+
+    private void mockPolicyNode(Session session, Node... aceNodes) throws RepositoryException {
+        String policyNodePath = PATH + "/rep:policy";
+        Node policyNode = mockNode("rep:policy", aceNodes, property("jcr:primaryType", "rep:ACL"));
+        doReturn(true).when(session).nodeExists(policyNodePath);
+        doReturn(policyNode).when(session).getNode(policyNodePath);
+    }
+
+    private Node aceNode(String name, String primaryType, String principalName, String... privileges) throws RepositoryException {
+        return mockNode(name, new Node[0], property("jcr:primaryType", primaryType), property("rep:principalName", principalName),
+                property("rep:privileges", privileges));
+    }
+
+    private Node mockNode(String name, final Node[] childNodes, final Property... properties) throws RepositoryException {
+        Node node = mock(Node.class);
+        doReturn(name).when(node).getName();
+        // new iterators for each call
+        when(node.getProperties()).thenAnswer(new Answer<PropertyIterator>() {
+            @Override
+            public PropertyIterator answer(InvocationOnMock invocation) {
+                return new PropertyIteratorAdapter(Arrays.asList(properties));
+            }
+        });
+        when(node.getNodes()).thenAnswer(new Answer<NodeIterator>() {
+            @Override
+            public NodeIterator answer(InvocationOnMock invocation) {
+                return new NodeIteratorAdapter(Arrays.asList(childNodes));
+            }
+        });
+        return node;
+    }
+
+    private Property property(String name, String value) throws RepositoryException {
+        Property property = mock(Property.class);
+        doReturn(name).when(property).getName();
+        doReturn(value).when(property).getString();
+        return property;
+    }
+
+    private Property property(String name, String[] values) throws RepositoryException {
+        Property property = mock(Property.class);
+        doReturn(name).when(property).getName();
+        doReturn(true).when(property).isMultiple();
+        List<Value> jcrValues = new ArrayList<Value>();
+        for (String value : values) {
+            Value jcrValue = mock(Value.class);
+            doReturn(value).when(jcrValue).getString();
+            jcrValues.add(jcrValue);
+        }
+        doReturn(jcrValues.toArray(new Value[jcrValues.size()])).when(property).getValues();
+        return property;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.Restriction;
+
+public class ActionsToPrivilegesCacheTest {
+
+    @Test
+    public void testYamlRoundTrip() {
+        ActionsToPrivilegesCache cache = new ActionsToPrivilegesCache(10);
+        cache.put("definesContent-allow-[]-[read, modify]", aceBeans(aceBean("allow", "jcr:read,rep:write"),
+                aceBean("allow", "jcr:removeNode", new Restriction(AceBean.RESTRICTION_NAME_GLOB, "*/jcr:content*"))));
+        cache.put("simple-deny-[]-[delete]", aceBeans(aceBean("deny", "jcr:removeNode,jcr:removeChildNodes")));
+
+        ActionsToPrivilegesCache loadedCache = new ActionsToPrivilegesCache(10);
+        loadedCache.fromYaml(cache.toYaml());
+
+        assertEquals(2, loadedCache.size());
+        List<AceBean> aceBeans = new ArrayList<AceBean>(loadedCache.get("definesContent-allow-[]-[read, modify]"));
+        assertEquals(2, aceBeans.size());
+        assertEquals("allow", aceBeans.get(0).getPermission());
+        assertEquals("jcr:read,rep:write", aceBeans.get(0).getPrivilegesString());
+        assertTrue(aceBeans.get(0).getRestrictions().isEmpty());
+        assertEquals("jcr:removeNode", aceBeans.get(1).getPrivilegesString());
+        assertEquals(AceBean.RESTRICTION_NAME_GLOB, aceBeans.get(1).getRestrictions().get(0).getName());
+        assertEquals(Arrays.asList("*/jcr:content*"), aceBeans.get(1).getRestrictions().get(0).getValues());
+        assertEquals("deny", loadedCache.get("simple-deny-[]-[delete]").iterator().next().getPermission());
+    }
+
+    @Test
+    public void testLruEviction() {
+        ActionsToPrivilegesCache cache = new ActionsToPrivilegesCache(2);
+        cache.put("a", aceBeans(aceBean("allow", "jcr:read")));
+        cache.put("b", aceBeans(aceBean("allow", "jcr:read")));
+        assertNotNull(cache.get("a"));
+        cache.put("c", aceBeans(aceBean("allow", "jcr:read")));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void testValidityKey() {
+        ActionsToPrivilegesCache cache = new ActionsToPrivilegesCache(10);
+        assertFalse(cache.ensureValidityKey("key1"));
+        cache.put("a", aceBeans(aceBean("allow", "jcr:read")));
+        assertFalse(cache.ensureValidityKey("key1"));
+        assertEquals(1, cache.size());
+
+        assertTrue(cache.ensureValidityKey("key2"));
+        assertEquals(0, cache.size());
+    }
+
+    private static AceBean aceBean(String permission, String privileges, Restriction... restrictions) {
+        AceBean aceBean = new AceBean();
+        aceBean.setPermission(permission);
+        aceBean.setPrivilegesString(privileges);
+        aceBean.setRestrictions(new ArrayList<Restriction>(Arrays.asList(restrictions)));
+        return aceBean;
+    }
+
+    private static Set<AceBean> aceBeans(AceBean... aceBeans) {
+        Set<AceBean> aceBeanSet = new LinkedHashSet<AceBean>();
+        Collections.addAll(aceBeanSet, aceBeans);
+        return aceBeanSet;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeDefinition;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.security.AccessControlException;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.day.cq.security.util.CqActions;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+
+/** Differential test: the ACEs produced by {@link ActionsToPrivilegesResolver} have to match the ones that {@link CqActions} writes to an
+ * (emulated) ACL for all combinations of actions, permission, "definesContent" and inherited allows. */
+public class ActionsToPrivilegesResolverTest {
+
+    private static final String TEST_PATH = "/content/site/page";
+    private static final Principal TEST_PRINCIPAL = new PrincipalImpl("actool-tester-action-mapper");
+
+    @Test
+    public void testResolveMatchesCqActions() throws RepositoryException {
+        assertResolveMatchesCqActions(new TestRepository(true));
+    }
+
+    @Test
+    public void testResolveMatchesCqActionsWithoutReplicatePrivilege() throws RepositoryException {
+        assertResolveMatchesCqActions(new TestRepository(false));
+    }
+
+    @Test
+    public void testResolve() {
+        TestRepository repository = new TestRepository(true);
+        ActionsToPrivilegesResolver resolver = new ActionsToPrivilegesResolver(repository.privilegeIndex, repository.acMgr);
+
+        List<AceBean> aceBeans = resolver.resolve(new String[] { "read", "create" }, true, true, null);
+        assertEquals(2, aceBeans.size());
+        assertEquals("allow", aceBeans.get(0).getPermission());
+        assertEquals("jcr:read,jcr:addChildNodes,jcr:nodeTypeManagement", aceBeans.get(0).getPrivilegesString());
+        assertEquals(0, aceBeans.get(0).getRestrictions().size());
+        // without modify, the structure below jcr:content must not be changed
+        assertEquals("deny", aceBeans.get(1).getPermission());
+        assertEquals("jcr:addChildNodes,jcr:nodeTypeManagement", aceBeans.get(1).getPrivilegesString());
+        assertEquals(AceBean.RESTRICTION_NAME_GLOB, aceBeans.get(1).getRestrictions().get(0).getName());
+        assertEquals("*/jcr:content*", aceBeans.get(1).getRestrictions().get(0).getValue());
+
+        assertEquals(1, resolver.resolve(new String[] { "read", "create" }, true, false, null).size());
+        assertEquals(0, resolver.resolve(new String[0], true, true, null).size());
+    }
+
+    private void assertResolveMatchesCqActions(TestRepository repository) throws RepositoryException {
+        List<String> allActions = ActionsToPrivilegesResolver.getActions();
+        ActionsToPrivilegesResolver resolver = new ActionsToPrivilegesResolver(repository.privilegeIndex, repository.acMgr);
+        List<Collection<String>> inheritedAllowsVariants = Arrays.<Collection<String>> asList(Collections.<String> emptySet(),
+                Collections.singleton(ActionsToPrivilegesResolver.ACTION_MODIFY));
+
+        for (int actionBits = 1; actionBits < (1 << allActions.size()); actionBits++) {
+            List<String> actionList = new ArrayList<String>();
+            for (int i = 0; i < allActions.size(); i++) {
+                if ((actionBits & (1 << i)) != 0) {
+                    actionList.add(allActions.get(i));
+                }
+            }
+            String[] actions = actionList.toArray(new String[actionList.size()]);
+
+            for (boolean allow : new boolean[] { true, false }) {
+                for (boolean definesContent : new boolean[] { true, false }) {
+                    List<String> resultsForInheritedAllows = new ArrayList<String>();
+                    for (Collection<String> inheritedAllows : inheritedAllowsVariants) {
+                        String message = Arrays.toString(actions) + " allow=" + allow + " definesContent=" + definesContent
+                                + " inheritedAllows=" + inheritedAllows;
+
+                        List<String> expected = repository.installActionsWithCqActions(actions, allow, definesContent, inheritedAllows);
+                        List<String> actual = repository.toComparableEntries(
+                                resolver.resolve(actions, allow, definesContent, inheritedAllows));
+                        assertEquals(message, expected, actual);
+                        resultsForInheritedAllows.add(actual.toString());
+                    }
+                    if (!ActionsToPrivilegesResolver.dependsOnInheritedAllows(actions, definesContent)) {
+                        assertEquals(1, new LinkedHashSet<String>(resultsForInheritedAllows).size());
+                    }
+                }
+            }
+        }
+    }
+
+    /** Emulates the parts of the repository that {@link CqActions} uses. The ACL merges entries like Oak does (entries with same
+     * permission and restrictions are merged, the privileges are removed from entries with opposite permission). */
+    private static class TestRepository {
+
+        private final Map<String, Privilege> privilegesByName = new HashMap<String, Privilege>();
+        private final AccessControlManager acMgr = mock(AccessControlManager.class);
+        private final PrivilegeIndex privilegeIndex;
+        private final List<TestEntry> entries = new ArrayList<TestEntry>();
+
+        TestRepository(boolean withReplicatePrivilege) {
+            Privilege modifyProperties = privilege("jcr:modifyProperties", privilege("rep:addProperties"),
+                    privilege("rep:alterProperties"), privilege("rep:removeProperties"));
+            Privilege write = privilege("jcr:write", modifyProperties, privilege("jcr:addChildNodes"), privilege("jcr:removeNode"),
+                    privilege("jcr:removeChildNodes"));
+            privilege("rep:write", write, privilege("jcr:nodeTypeManagement"));
+            privilege("jcr:read", privilege("rep:readNodes"), privilege("rep:readProperties"));
+            privilege("jcr:lockManagement");
+            privilege("jcr:versionManagement");
+            privilege("jcr:readAccessControl");
+            privilege("jcr:modifyAccessControl");
+            if (withReplicatePrivilege) {
+                privilege("crx:replicate");
+            }
+            privilegeIndex = new PrivilegeIndex(privilegesByName.values().toArray(new Privilege[privilegesByName.size()]));
+
+            try {
+                doAnswer(new Answer<Privilege>() {
+                    public Privilege answer(InvocationOnMock invocation) throws AccessControlException {
+                        String name = ((String) invocation.getArguments()[0])
+                                .replace("{http://www.jcp.org/jcr/1.0}", "jcr:")
+                                .replace("{http://www.day.com/crx/1.0}", "crx:");
+                        Privilege privilege = privilegesByName.get(name);
+                        if (privilege == null) {
+                            throw new AccessControlException("Unknown privilege " + name);
+                        }
+                        return privilege;
+                    }
+                }).when(acMgr).privilegeFromName(anyString());
+            } catch (RepositoryException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        List<String> installActionsWithCqActions(String[] actions, boolean allow, boolean definesContent,
+                Collection<String> inheritedAllows) throws RepositoryException {
+            entries.clear();
+            Session session = mock(Session.class);
+            doReturn(acMgr).when(session).getAccessControlManager();
+            doReturn(ValueFactoryImpl.getInstance()).when(session).getValueFactory();
+            Node node = mockNode(definesContent);
+            doReturn(node).when(session).getNode(TEST_PATH);
+            doReturn(new AccessControlPolicy[] { createAcl() }).when(acMgr).getPolicies(TEST_PATH);
+
+            Map<String, Boolean> actionMap = new HashMap<String, Boolean>();
+            for (String action : actions) {
+                actionMap.put(action, allow);
+            }
+            new CqActions(session).installActions(TEST_PATH, TEST_PRINCIPAL, actionMap, inheritedAllows);
+
+            List<String> comparableEntries = new ArrayList<String>();
+            for (TestEntry entry : entries) {
+                comparableEntries.add(entry.toString());
+            }
+            return comparableEntries;
+        }
+
+        List<String> toComparableEntries(List<AceBean> aceBeans) throws RepositoryException {
+            List<String> comparableEntries = new ArrayList<String>();
+            for (AceBean aceBean : aceBeans) {
+                String restrictions = aceBean.getRestrictions().isEmpty() ? ""
+                        : aceBean.getRestrictions().get(0).getName() + "=" + aceBean.getRestrictions().get(0).getValue();
+                comparableEntries.add(new TestEntry(aceBean.isAllow(), privilegeIndex.getNonAggregateBits(aceBean.getPrivileges(), acMgr),
+                        restrictions).toString());
+            }
+            return comparableEntries;
+        }
+
+        private JackrabbitAccessControlList createAcl() throws RepositoryException {
+            JackrabbitAccessControlList acl = mock(JackrabbitAccessControlList.class);
+            doReturn(new String[] { AceBean.RESTRICTION_NAME_GLOB }).when(acl).getRestrictionNames();
+            doReturn(PropertyType.STRING).when(acl).getRestrictionType(AceBean.RESTRICTION_NAME_GLOB);
+            doAnswer(new Answer<Boolean>() {
+                public Boolean answer(InvocationOnMock invocation) throws RepositoryException {
+                    Object[] args = invocation.getArguments();
+                    return addEntry((Privilege[]) args[1], (Boolean) args[2], Collections.<String, Value> emptyMap());
+                }
+            }).when(acl).addEntry(any(Principal.class), any(Privilege[].class), anyBoolean());
+            doAnswer(new Answer<Boolean>() {
+                @SuppressWarnings("unchecked")
+                public Boolean answer(InvocationOnMock invocation) throws RepositoryException {
+                    Object[] args = invocation.getArguments();
+                    return addEntry((Privilege[]) args[1], (Boolean) args[2], (Map<String, Value>) args[3]);
+                }
+            }).when(acl).addEntry(any(Principal.class), any(Privilege[].class), anyBoolean(), anyMap());
+            return acl;
+        }
+
+        private boolean addEntry(Privilege[] privileges, boolean allow, Map<String, Value> restrictionsMap) throws RepositoryException {
+            String[] privilegeNames = new String[privileges.length];
+            for (int i = 0; i < privileges.length; i++) {
+                privilegeNames[i] = privileges[i].getName();
+            }
+            StringBuilder restrictions = new StringBuilder();
+            for (Map.Entry<String, Value> restriction : restrictionsMap.entrySet()) {
+                restrictions.append(restriction.getKey() + "=" + restriction.getValue().getString());
+            }
+            TestEntry newEntry = new TestEntry(allow, privilegeIndex.getNonAggregateBits(privilegeNames, acMgr), restrictions.toString());
+
+            for (TestEntry entry : entries) {
+                if (entry.allow == allow && entry.restrictions.equals(newEntry.restrictions)) {
+                    entry.privileges.or(newEntry.privileges);
+                    return true;
+                }
+            }
+            Iterator<TestEntry> entriesIt = entries.iterator();
+            while (entriesIt.hasNext()) {
+                TestEntry entry = entriesIt.next();
+                if (entry.restrictions.equals(newEntry.restrictions)) {
+                    entry.privileges.andNot(newEntry.privileges);
+                    if (entry.privileges.isEmpty()) {
+                        entriesIt.remove();
+                    }
+                }
+            }
+            entries.add(newEntry);
+            return true;
+        }
+
+        private Node mockNode(boolean definesContent) throws RepositoryException {
+            Node node = mock(Node.class);
+            NodeType nodeType = mock(NodeType.class);
+            doReturn(nodeType).when(node).getPrimaryNodeType();
+            NodeDefinition[] childNodeDefinitions;
+            if (definesContent) {
+                NodeDefinition contentDefinition = mock(NodeDefinition.class);
+                doReturn("jcr:content").when(contentDefinition).getName();
+                childNodeDefinitions = new NodeDefinition[] { contentDefinition };
+            } else {
+                childNodeDefinitions = new NodeDefinition[0];
+            }
+            doReturn(childNodeDefinitions).when(nodeType).getChildNodeDefinitions();
+            return node;
+        }
+
+        private Privilege privilege(String name, Privilege... declaredAggregatePrivileges) {
+            Set<Privilege> aggregatePrivileges = new LinkedHashSet<Privilege>();
+            for (Privilege declaredAggregatePrivilege : declaredAggregatePrivileges) {
+                aggregatePrivileges.add(declaredAggregatePrivilege);
+                aggregatePrivileges.addAll(Arrays.asList(declaredAggregatePrivilege.getAggregatePrivileges()));
+            }
+            Privilege privilege = mock(Privilege.class);
+            doReturn(name).when(privilege).getName();
+            doReturn(declaredAggregatePrivileges.length > 0).when(privilege).isAggregate();
+            doReturn(declaredAggregatePrivileges).when(privilege).getDeclaredAggregatePrivileges();
+            doReturn(aggregatePrivileges.toArray(new Privilege[aggregatePrivileges.size()])).when(privilege).getAggregatePrivileges();
+            privilegesByName.put(name, privilege);
+            return privilege;
+        }
+
+        private final class TestEntry {
+            private final boolean allow;
+            private final BitSet privileges;
+            private final String restrictions;
+
+            private TestEntry(boolean allow, BitSet privileges, String restrictions) {
+                this.allow = allow;
+                this.privileges = privileges;
+                this.restrictions = restrictions;
+            }
+
+            @Override
+            public String toString() {
+                return (allow ? "allow " : "deny ") + privilegeIndex.getNames(privileges) + " " + restrictions;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.aceinstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.AccessControlPolicy;
+
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
+import biz.netcentric.cq.tools.actool.configmodel.GlobalConfiguration;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
+import biz.netcentric.cq.tools.actool.helper.InstallationCheckpoint;
+import biz.netcentric.cq.tools.actool.helper.PrivilegeIndex;
+import biz.netcentric.cq.tools.actool.history.InstallationLogger;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BaseAceBeanInstallerTest {
+
+    @Mock
+    SlingRepository repository;
+
+    @Mock
+    Session session;
+
+    @Mock
+    Session workerSession1;
+
+    @Mock
+    Session workerSession2;
+
+    private final Map<String, Session> sessionsByInstalledPath = new ConcurrentHashMap<String, Session>();
+    private final Map<String, PrivilegeIndex> privilegeIndexesByInstalledPath = new ConcurrentHashMap<String, PrivilegeIndex>();
+
+    private final BaseAceBeanInstaller aceBeanInstaller = new BaseAceBeanInstaller() {
+        @Override
+        protected void installAcl(Set<AceBean> aceBeanSetFromConfig, String path, Set<String> authorizablesToRemoveAcesFor,
+                Session session, InstallationLogger history, PrivilegeIndex privilegeIndex) {
+            sessionsByInstalledPath.put(String.valueOf(path), session);
+            privilegeIndexesByInstalledPath.put(String.valueOf(path), privilegeIndex);
+            history.incCountAclsChanged();
+        }
+    };
+
+    private AcConfiguration acConfiguration;
+    private PersistableInstallationLogger history;
+
+    @Before
+    public void setup() throws RepositoryException {
+        acConfiguration = new AcConfiguration();
+        acConfiguration.setAuthorizablesConfig(new AuthorizablesConfig());
+        acConfiguration.setGlobalConfiguration(new GlobalConfiguration());
+        history = new PersistableInstallationLogger();
+
+        for (Session s : Arrays.asList(session, workerSession1, workerSession2)) {
+            AccessControlManager acMgr = mock(AccessControlManager.class);
+            when(acMgr.getPolicies(anyString())).thenReturn(new AccessControlPolicy[] { mock(JackrabbitAccessControlList.class) });
+            when(s.getAccessControlManager()).thenReturn(acMgr);
+        }
+        when(repository.loginService(null, null)).thenReturn(workerSession1, workerSession2);
+    }
+
+    @Test
+    public void testPartitionBySubtree() {
+        Map<String, List<String>> shards = BaseAceBeanInstaller
+                .partitionBySubtree(Arrays.asList("/content/site2", "/conf", "/content/site1", "/", "/home/groups", "/conf/site1"));
+        assertEquals(Arrays.asList("/", "/conf", "/content", "/home"), Arrays.asList(shards.keySet().toArray()));
+        assertEquals(Arrays.asList("/content/site2", "/content/site1"), shards.get("/content"));
+        assertEquals(Arrays.asList("/conf", "/conf/site1"), shards.get("/conf"));
+        assertEquals(Arrays.asList("/"), shards.get("/"));
+    }
+
+    @Test
+    public void testInstallInParallelShards() throws Exception {
+        Map<String, Set<AceBean>> aceMap = aceMap("/content/site1", "/content/site2", "/conf/site1");
+        aceBeanInstaller.installPathBasedACEs(aceMap, acConfiguration, session, history, Collections.<String> emptySet(),
+                new BatchedSessionSaver(session, 0, 0), repository, 4);
+
+        assertEquals(3, sessionsByInstalledPath.size());
+        assertEquals(sessionsByInstalledPath.get("/content/site1"), sessionsByInstalledPath.get("/content/site2"));
+        assertTrue(sessionsByInstalledPath.get("/content/site1") != sessionsByInstalledPath.get("/conf/site1"));
+        assertEquals(new HashSet<Session>(Arrays.asList(workerSession1, workerSession2)),
+                new HashSet<Session>(sessionsByInstalledPath.values()));
+        assertEquals(3, history.getCountAclsChanged());
+        assertEquals(3, history.getCountAclPathsProcessed());
+        verify(workerSession1).logout();
+        verify(workerSession2).logout();
+    }
+
+    @Test
+    public void testPrivilegeIndexOfConfigurationIsUsed() throws Exception {
+        PrivilegeIndex privilegeIndex = new PrivilegeIndex();
+        acConfiguration.setPrivilegeIndex(privilegeIndex);
+        Map<String, Set<AceBean>> aceMap = aceMap("/content/site1", "/conf/site1");
+        aceBeanInstaller.installPathBasedACEs(aceMap, acConfiguration, session, history, Collections.<String> emptySet(),
+                new BatchedSessionSaver(session, 0, 0), repository, 4);
+
+        assertEquals(2, privilegeIndexesByInstalledPath.size());
+        assertEquals(Collections.singleton(privilegeIndex), new HashSet<PrivilegeIndex>(privilegeIndexesByInstalledPath.values()));
+    }
+
+    @Test
+    public void testSerialFallbackForRepositoryLevelAcl() throws Exception {
+        Map<String, Set<AceBean>> aceMap = aceMap("/content/site1", "/conf/site1", null);
+        aceBeanInstaller.installPathBasedACEs(aceMap, acConfiguration, session, history, Collections.<String> emptySet(),
+                new BatchedSessionSaver(session, 0, 0), repository, 4);
+
+        assertSerialInstallation(3);
+        assertTrue(history.getMessageHistory(), history.getMessageHistory().contains("repository-level ACLs"));
+    }
+
+    @Test
+    public void testSerialFallbackForInitialContent() throws Exception {
+        Map<String, Set<AceBean>> aceMap = aceMap("/content/site1", "/conf/site1");
+        aceMap.get("/conf/site1").iterator().next().setInitialContent("{\"jcr:primaryType\": \"nt:unstructured\"}");
+        aceBeanInstaller.installPathBasedACEs(aceMap, acConfiguration, session, history, Collections.<String> emptySet(),
+                new BatchedSessionSaver(session, 0, 0), repository, 4);
+
+        assertSerialInstallation(2);
+        assertTrue(history.getMessageHistory(), history.getMessageHistory().contains("initial content"));
+    }
+
+    @Test
+    public void testSerialFallbackForCheckpoint() throws Exception {
+        Map<String, Set<AceBean>> aceMap = aceMap("/content/site1", "/conf/site1");
+        aceBeanInstaller.installPathBasedACEs(aceMap, acConfiguration, session, history, Collections.<String> emptySet(),
+                new BatchedSessionSaver(session, 0, 0, null, new InstallationCheckpoint("/apps/config", "hash")), repository, 4);
+
+        assertSerialInstallation(2);
+    }
+
+    private void assertSerialInstallation(int expectedCountPaths) throws RepositoryException {
+        assertEquals(expectedCountPaths, sessionsByInstalledPath.size());
+        assertEquals(Collections.singleton(session), new HashSet<Session>(sessionsByInstalledPath.values()));
+        verify(repository, never()).loginService(null, null);
+        assertEquals(expectedCountPaths, history.getCountAclsChanged());
+    }
+
+    private static Map<String, Set<AceBean>> aceMap(String... paths) {
+        Map<String, Set<AceBean>> aceMap = new LinkedHashMap<String, Set<AceBean>>();
+        for (String path : paths) {
+            AceBean aceBean = new AceBean();
+            aceBean.setJcrPath(path);
+            aceBean.setPrincipalName("group1");
+            aceBean.setPermission("allow");
+            aceBean.setPrivilegesString("jcr:read");
+            aceMap.put(path, new HashSet<AceBean>(Collections.singleton(aceBean)));
+        }
+        return aceMap;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.helper.AcHelper;
+import biz.netcentric.cq.tools.actool.helper.Constants;
+
+public class AcDumpElementYamlVisitorTest {
+
+    @Test
+    public void testStreamingVisitorWritesSameYamlAsStringBuilderVisitor() {
+        StringBuilder sb = new StringBuilder();
+        visitElements(new AcDumpElementYamlVisitor(AcHelper.PATH_BASED_ORDER, sb));
+
+        StringWriter writer = new StringWriter();
+        visitElements(new AcDumpElementYamlVisitor(AcHelper.PATH_BASED_ORDER, writer));
+
+        assertEquals(sb.toString(), writer.toString());
+        assertTrue(writer.toString(), writer.toString().contains("- principal: group1"));
+    }
+
+    @Test
+    public void testElementsAreWrittenWhenVisited() {
+        StringWriter writer = new StringWriter();
+        AcDumpElementYamlVisitor visitor = new AcDumpElementYamlVisitor(AcHelper.PATH_BASED_ORDER, writer);
+
+        visitor.visit(new DumpSectionElement(Constants.ACE_CONFIGURATION_KEY));
+        int lengthAfterSection = writer.getBuffer().length();
+        assertTrue(lengthAfterSection > 0);
+
+        visitor.visit(createAceBean("/content", "group1"));
+        assertTrue(writer.getBuffer().length() > lengthAfterSection);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriterExceptionIsWrapped() {
+        Writer failingWriter = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        new AcDumpElementYamlVisitor(AcHelper.PATH_BASED_ORDER, failingWriter).visit(new DumpComment("test"));
+    }
+
+    private void visitElements(AcDumpElementYamlVisitor visitor) {
+        visitor.visit(new DumpComment("Dump created: today"));
+        visitor.visit(new DumpSectionElement(Constants.ACE_CONFIGURATION_KEY));
+        visitor.visit(new MapKey("/content", null));
+        visitor.visit(createAceBean("/content", "group1"));
+        visitor.visit(createAceBean("/content", "group2"));
+    }
+
+    private static AceBean createAceBean(String path, String principalName) {
+        AceBean aceBean = new AceBean();
+        aceBean.setJcrPath(path);
+        aceBean.setPrincipalName(principalName);
+        aceBean.setAuthorizableId(principalName);
+        aceBean.setPermission("allow");
+        aceBean.setPrivilegesString("jcr:read");
+        return aceBean;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.security.AccessControlEntry;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlEntry;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlManager;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DumpServiceImplTest {
+
+    DumpServiceImpl dumpService = new DumpServiceImpl();
+
+    @Mock
+    JackrabbitSession session;
+
+    @Mock
+    UserManager userManager;
+
+    @Mock
+    JackrabbitAccessControlManager acMgr;
+
+    @Mock
+    DumpServiceImpl.Configuration configuration;
+
+    @Before
+    public void setup() throws Exception {
+        when(configuration.DumpService_queryExcludePaths()).thenReturn(new String[] { "/home", "/tmp" });
+        dumpService.activate(configuration);
+        when(session.getAccessControlManager()).thenReturn(acMgr);
+        when(session.getUserManager()).thenReturn(userManager);
+        mockGroup("group1", "group1-id");
+        mockGroup("group2", "group2-id");
+        mockGroup("otherGroup", "otherGroup-id");
+    }
+
+    @Test
+    public void testCreatePrincipalScopedAclDumpMap() throws RepositoryException {
+        JackrabbitAccessControlList contentAcl = createAcl("/content",
+                createAce("group1", "jcr:read"),
+                createAce("otherGroup", "jcr:read"),
+                createAce("group2", "jcr:write"),
+                createAce("legacyPrincipal", "jcr:read"));
+        JackrabbitAccessControlList homeAcl = createAcl("/home", createAce("group1", "jcr:read"));
+        JackrabbitAccessControlList homeUsersAcl = createAcl("/home/users/a", createAce("group1", "jcr:read"));
+
+        when(acMgr.getEffectivePolicies(anySetOf(Principal.class)))
+                .thenReturn(new AccessControlPolicy[] { contentAcl, homeAcl, homeUsersAcl })
+                .thenReturn(new AccessControlPolicy[] {});
+
+        Set<String> principalNames = new LinkedHashSet<String>(Arrays.asList("group1", "group2", "group3", "legacyPrincipal"));
+        Map<String, Set<AceBean>> aceMap = dumpService.createPrincipalScopedAclDumpMap(principalNames, 2, session).getAceDump();
+
+        verify(acMgr, times(2)).getEffectivePolicies(anySetOf(Principal.class));
+        assertEquals(2, aceMap.size());
+        assertEquals(2, aceMap.get("/content").size());
+        for (AceBean aceBean : aceMap.get("/content")) {
+            assertEquals("/content", aceBean.getJcrPath());
+            assertEquals(aceBean.getPrincipalName() + "-id", aceBean.getAuthorizableId());
+        }
+        assertEquals("group1", aceMap.get("/home").iterator().next().getPrincipalName());
+    }
+
+    private void mockGroup(String principalName, String authorizableId) throws RepositoryException {
+        Group group = mock(Group.class);
+        when(group.getID()).thenReturn(authorizableId);
+        when(group.isGroup()).thenReturn(true);
+        when(userManager.getAuthorizable(eq(new PrincipalImpl(principalName)))).thenReturn(group);
+    }
+
+    private JackrabbitAccessControlList createAcl(String path, AccessControlEntry... aces) throws RepositoryException {
+        JackrabbitAccessControlList acl = mock(JackrabbitAccessControlList.class);
+        when(acl.getPath()).thenReturn(path);
+        when(acl.getAccessControlEntries()).thenReturn(aces);
+        return acl;
+    }
+
+    private JackrabbitAccessControlEntry createAce(String principalName, String privilegeName) throws RepositoryException {
+        Privilege privilege = mock(Privilege.class);
+        when(privilege.getName()).thenReturn(privilegeName);
+        JackrabbitAccessControlEntry ace = mock(JackrabbitAccessControlEntry.class);
+        when(ace.getPrincipal()).thenReturn(new PrincipalImpl(principalName));
+        when(ace.getPrivileges()).thenReturn(new Privilege[] { privilege });
+        when(ace.isAllow()).thenReturn(true);
+        when(ace.getRestrictionNames()).thenReturn(new String[] {});
+        return ace;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LineDeltaTest {
+
+    @Test
+    public void testSplitAndJoinKeepExactText() {
+        for (String text : Arrays.asList("", "a", "a\n", "a\n\nb", "\n", "a\r\nb\n")) {
+            assertEquals(text, LineDelta.join(LineDelta.splitLines(text)));
+        }
+    }
+
+    @Test
+    public void testIdenticalTextIsOneCopy() {
+        List<String> lines = createDumpLines(200);
+        assertEquals(Arrays.asList("=0," + lines.size()), LineDelta.encode(lines, lines));
+    }
+
+    @Test
+    public void testChangedDumpIsReconstructed() {
+        List<String> base = createDumpLines(500);
+        List<String> target = new ArrayList<String>(base);
+        target.set(10, "      privileges: jcr:read,rep:write");
+        target.add(100, "  - /content/new:");
+        target.add(101, "    - principal: group-new");
+        target.subList(300, 320).clear();
+        target.add("");
+
+        List<String> delta = LineDelta.encode(base, target);
+        assertEquals(target, LineDelta.apply(base, delta));
+        assertTrue("delta is small: " + delta, delta.size() < 20);
+    }
+
+    @Test
+    public void testRandomChangesAreReconstructed() {
+        Random random = new Random(42);
+        List<String> base = createDumpLines(300);
+        for (int run = 0; run < 20; run++) {
+            List<String> target = new ArrayList<String>(base);
+            for (int change = 0; change < 10; change++) {
+                int position = random.nextInt(target.size());
+                switch (random.nextInt(3)) {
+                case 0:
+                    target.remove(position);
+                    break;
+                case 1:
+                    target.add(position, "line " + random.nextInt(5));
+                    break;
+                default:
+                    target.set(position, base.get(random.nextInt(base.size())));
+                }
+            }
+            assertEquals(target, LineDelta.apply(base, LineDelta.encode(base, target)));
+            base = target;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDeltaNotMatchingBase() {
+        LineDelta.apply(Arrays.asList("a", "b"), Arrays.asList("=1,5"));
+    }
+
+    private static List<String> createDumpLines(int countAcls) {
+        List<String> lines = new ArrayList<String>();
+        lines.add("- ace_config:");
+        for (int i = 0; i < countAcls; i++) {
+            lines.add("  - /content/site" + i + ":");
+            lines.add("    - principal: group" + (i % 7));
+            lines.add("      permission: allow");
+            lines.add("      privileges: jcr:read");
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.ValueFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import biz.netcentric.cq.tools.actool.dumpservice.PersistedDumpInfo;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PersistedDumpStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    Session session;
+
+    @Mock
+    ValueFactory valueFactory;
+
+    private long countCreatedNodes = 0;
+
+    private NodeAnswer root;
+    private Node rootNode;
+
+    @Before
+    public void setup() throws RepositoryException {
+        when(session.getValueFactory()).thenReturn(valueFactory);
+        when(valueFactory.createBinary(any(InputStream.class))).thenAnswer(new Answer<Binary>() {
+            @Override
+            public Binary answer(InvocationOnMock invocation) throws Throwable {
+                return createBinary(IOUtils.toByteArray((InputStream) invocation.getArguments()[0]));
+            }
+        });
+        root = new NodeAnswer("achistory", null);
+        rootNode = mock(Node.class, root);
+        root.node = rootNode;
+    }
+
+    @Test
+    public void testFullDumpEveryNthSave() throws Exception {
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 10, 3);
+        List<String> dumps = new ArrayList<String>();
+        for (int i = 0; i < 7; i++) {
+            dumps.add(createDump(i));
+            store.persist(dumps.get(i), rootNode);
+        }
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertEquals(7, dumpInfos.size());
+        // newest first: dumps 0, 3 and 6 are stored completely
+        boolean[] expectedDeltas = new boolean[] { false, true, true, false, true, true, false };
+        for (int i = 0; i < dumps.size(); i++) {
+            PersistedDumpInfo dumpInfo = dumpInfos.get(dumps.size() - 1 - i);
+            assertEquals(dumpInfo.toString(), expectedDeltas[i], dumpInfo.isDelta());
+            assertEquals(dumps.get(i).getBytes(StandardCharsets.UTF_8).length, dumpInfo.getSize());
+            assertEquals(dumps.get(i), read(store, dumpInfo.getName()));
+        }
+    }
+
+    @Test
+    public void testDeltaChain() throws Exception {
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 10, 10);
+        List<String> dumps = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            dumps.add(createDump(i));
+            store.persist(dumps.get(i), rootNode);
+        }
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertFalse(dumpInfos.get(4).isDelta());
+        assertNull(dumpInfos.get(4).getBaseDumpName());
+        for (int i = 0; i < 4; i++) {
+            // each delta is based on the previous dump
+            assertTrue(dumpInfos.get(i).isDelta());
+            assertEquals(dumpInfos.get(i + 1).getName(), dumpInfos.get(i).getBaseDumpName());
+            assertEquals(5 - i, dumpInfos.get(i).getCountDumpsToRead());
+            assertTrue(dumpInfos.get(i).toString(), dumpInfos.get(i).getStorageSize() < dumpInfos.get(4).getStorageSize());
+        }
+        // the newest dump is reconstructed from the complete dump and all deltas
+        assertEquals(dumps.get(4), read(store, dumpInfos.get(0).getName()));
+        assertEquals(dumps.get(2), read(store, dumpInfos.get(2).getName()));
+    }
+
+    @Test
+    public void testCompletelyChangedDumpIsStoredCompletely() throws Exception {
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 10, 10);
+        store.persist(createDump(0), rootNode);
+        String otherDump = createDump(0).replace("group", "other-group");
+        store.persist(otherDump, rootNode);
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertFalse(dumpInfos.get(0).isDelta());
+        assertEquals(otherDump, read(store, dumpInfos.get(0).getName()));
+    }
+
+    @Test
+    public void testPurgeRewritesNextDeltaAsFullDump() throws Exception {
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 2, 10);
+        List<String> dumps = new ArrayList<String>();
+        for (int i = 0; i < 4; i++) {
+            dumps.add(createDump(i));
+            store.persist(dumps.get(i), rootNode);
+        }
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertEquals(2, dumpInfos.size());
+        assertEquals(2, root.childNodes.size());
+        // the oldest remaining dump was a delta to a removed dump
+        assertFalse(dumpInfos.get(1).isDelta());
+        assertEquals(dumps.get(2), read(store, dumpInfos.get(1).getName()));
+        assertTrue(dumpInfos.get(0).isDelta());
+        assertEquals(dumpInfos.get(1).getName(), dumpInfos.get(0).getBaseDumpName());
+        assertEquals(dumps.get(3), read(store, dumpInfos.get(0).getName()));
+    }
+
+    @Test
+    public void testDumpFileIsStoredCompletely() throws Exception {
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 10, 10);
+        store.persist(createDump(0), rootNode);
+        String dump = createDump(1);
+        File dumpFile = folder.newFile("dump.yaml");
+        FileUtils.writeStringToFile(dumpFile, dump, StandardCharsets.UTF_8);
+        store.persist(dumpFile, rootNode);
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertEquals(2, dumpInfos.size());
+        assertFalse(dumpInfos.get(0).isDelta());
+        assertEquals(1, dumpInfos.get(0).getCountDumpsToRead());
+        assertEquals(dumpFile.length(), dumpInfos.get(0).getSize());
+        assertTrue(dumpInfos.get(0).getStorageSize() < dumpFile.length());
+        assertEquals(dump, read(store, dumpInfos.get(0).getName()));
+    }
+
+    @Test
+    public void testLegacyUncompressedDump() throws Exception {
+        String legacyDump = createDump(0);
+        Node legacyContentNode = root.addChildNode("dump_1000.yaml").addNode("jcr:content", "nt:resource");
+        legacyContentNode.setProperty("jcr:data", createBinary(legacyDump.getBytes(StandardCharsets.UTF_8)));
+
+        PersistedDumpStore store = new PersistedDumpStore("dump_", ".yaml", 10, 10);
+        assertEquals(legacyDump, read(store, "dump_1000.yaml"));
+
+        String dump = createDump(1);
+        store.persist(dump, rootNode);
+
+        List<PersistedDumpInfo> dumpInfos = store.getDumpInfos(rootNode);
+        assertEquals(2, dumpInfos.size());
+        assertEquals("dump_1000.yaml", dumpInfos.get(1).getName());
+        assertFalse(dumpInfos.get(1).isDelta());
+        assertEquals(legacyDump.getBytes(StandardCharsets.UTF_8).length, dumpInfos.get(1).getSize());
+        // the new dump can be based on the legacy dump
+        assertTrue(dumpInfos.get(0).isDelta());
+        assertEquals("dump_1000.yaml", dumpInfos.get(0).getBaseDumpName());
+        assertEquals(dump, read(store, dumpInfos.get(0).getName()));
+    }
+
+    private static String createDump(int version) {
+        StringBuilder dump = new StringBuilder("- ace_config:\n");
+        for (int i = 0; i < 50; i++) {
+            dump.append("  - /content/site" + i + ":\n");
+            dump.append("    - principal: group" + (i % 7) + "\n");
+            dump.append("      permission: allow\n");
+            // each version changes one ACE
+            dump.append("      privileges: " + (i == version ? "jcr:read,rep:write" : "jcr:read") + "\n");
+        }
+        return dump.toString();
+    }
+
+    private String read(PersistedDumpStore store, String dumpName) throws IOException, RepositoryException {
+        try (InputStream in = store.open(rootNode, dumpName)) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Binary createBinary(final byte[] bytes) {
+        return mock(Binary.class, new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                switch (invocation.getMethod().getName()) {
+                case "getSize":
+                    return (long) bytes.length;
+                case "getStream":
+                    return new ByteArrayInputStream(bytes);
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    private static Property createProperty(final Object value) {
+        return mock(Property.class, new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                switch (invocation.getMethod().getName()) {
+                case "getString":
+                    return String.valueOf(value);
+                case "getLong":
+                    return value;
+                case "getDate":
+                    return value;
+                case "getBinary":
+                    return value;
+                case "getLength":
+                    return ((Binary) value).getSize();
+                default:
+                    return RETURNS_DEFAULTS.answer(invocation);
+                }
+            }
+        });
+    }
+
+    /** Node mock behaviour keeping child nodes (in order) and properties in memory. Implemented as default answer as stubbing is not
+     * possible while the tested code invokes a mock (e.g. when adding a node). */
+    private class NodeAnswer implements Answer<Object> {
+        private final String name;
+        private final NodeAnswer parent;
+        private final Map<String, Object> properties = new HashMap<String, Object>();
+        private final Map<Node, NodeAnswer> childNodes = new LinkedHashMap<Node, NodeAnswer>();
+        private Node node;
+
+        NodeAnswer(String name, NodeAnswer parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            switch (invocation.getMethod().getName()) {
+            case "getName":
+                return name;
+            case "getParent":
+                return parent.node;
+            case "getSession":
+                return session;
+            case "getNodes":
+                return new NodeIteratorAdapter(new ArrayList<Node>(childNodes.keySet()));
+            case "hasNode":
+                return getChildNode((String) args[0]) != null;
+            case "getNode":
+                return getChildNode((String) args[0]);
+            case "addNode":
+                return addChildNode((String) args[0]);
+            case "orderBefore":
+                orderBefore(getChildNode((String) args[0]), getChildNode((String) args[1]));
+                return null;
+            case "remove":
+                parent.childNodes.remove(node);
+                return null;
+            case "setProperty":
+                if (args[1] == null) {
+                    properties.remove(args[0]);
+                } else {
+                    properties.put((String) args[0], args[1]);
+                }
+                return null;
+            case "hasProperty":
+                return properties.containsKey(args[0]);
+            case "getProperty":
+                return createProperty(properties.get(args[0]));
+            default:
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        Node addChildNode(String childName) {
+            // dump node names are based on the current time and are equal for dumps persisted within the same millisecond
+            String uniqueChildName = getChildNode(childName) == null ? childName : countCreatedNodes + "-" + childName;
+            NodeAnswer child = new NodeAnswer(uniqueChildName, this);
+            Calendar created = Calendar.getInstance();
+            created.setTimeInMillis(++countCreatedNodes);
+            child.properties.put("jcr:created", created);
+            child.node = mock(Node.class, child);
+            childNodes.put(child.node, child);
+            return child.node;
+        }
+
+        Node getChildNode(String childName) {
+            for (Map.Entry<Node, NodeAnswer> childNode : childNodes.entrySet()) {
+                if (childNode.getValue().name.equals(childName)) {
+                    return childNode.getKey();
+                }
+            }
+            return null;
+        }
+
+        private void orderBefore(Node childNode, Node beforeChildNode) {
+            Map<Node, NodeAnswer> orderedChildNodes = new LinkedHashMap<Node, NodeAnswer>();
+            for (Map.Entry<Node, NodeAnswer> entry : childNodes.entrySet()) {
+                if (entry.getKey() == beforeChildNode) {
+                    orderedChildNodes.put(childNode, childNodes.get(childNode));
+                }
+                if (entry.getKey() != childNode) {
+                    orderedChildNodes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            childNodes.clear();
+            childNodes.putAll(orderedChildNodes);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.dumpservice.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.api.security.user.Authorizable;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.Query;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PrincipalResolutionCacheTest {
+
+    @Mock
+    UserManager userManager;
+
+    @Test
+    public void testGroupsArePrefetchedAndMissingPrincipalsAreCached() throws RepositoryException {
+        Group group1 = mock(Group.class);
+        when(group1.getPrincipal()).thenReturn(new PrincipalImpl("group1"));
+        Group group2 = mock(Group.class);
+        when(group2.getPrincipal()).thenReturn(new PrincipalImpl("group2"));
+        Iterator<Authorizable> groupsIt = Arrays.<Authorizable> asList(group1, group2).iterator();
+        when(userManager.findAuthorizables(any(Query.class))).thenReturn(groupsIt);
+        User user1 = mock(User.class);
+        when(userManager.getAuthorizable(new PrincipalImpl("user1"))).thenReturn(user1);
+
+        PrincipalResolutionCache principalResolutionCache = new PrincipalResolutionCache(userManager);
+        principalResolutionCache.prefetchGroups();
+
+        assertSame(group1, principalResolutionCache.getAuthorizable("group1"));
+        assertSame(group2, principalResolutionCache.getAuthorizable("group2"));
+        assertSame(group1, principalResolutionCache.getAuthorizable("group1"));
+        assertSame(user1, principalResolutionCache.getAuthorizable("user1"));
+        assertSame(user1, principalResolutionCache.getAuthorizable("user1"));
+        assertNull(principalResolutionCache.getAuthorizable("legacyPrincipal"));
+        assertNull(principalResolutionCache.getAuthorizable("legacyPrincipal"));
+
+        verify(userManager, never()).getAuthorizable(new PrincipalImpl("group1"));
+        verify(userManager, times(1)).getAuthorizable(new PrincipalImpl("user1"));
+        verify(userManager, times(1)).getAuthorizable(new PrincipalImpl("legacyPrincipal"));
+        verify(userManager, times(2)).getAuthorizable(any(Principal.class));
+        assertEquals(2, principalResolutionCache.getCountPrefetched());
+        assertEquals(5, principalResolutionCache.getCountHits());
+        assertEquals(2, principalResolutionCache.getCountMisses());
+    }
+}
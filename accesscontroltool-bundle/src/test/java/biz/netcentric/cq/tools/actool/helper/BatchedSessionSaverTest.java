@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchedSessionSaverTest {
+
+    @Mock
+    Session session;
+
+    long currentTime = 1000;
+
+    @Test
+    public void testDisabled() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(true);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 0, 0);
+        assertFalse(sessionSaver.isEnabled());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(sessionSaver.itemProcessed());
+        }
+        assertFalse(sessionSaver.flush());
+        verify(session, never()).save();
+    }
+
+    @Test
+    public void testBatchSize() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(true);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 3, 0);
+        assertFalse(sessionSaver.itemProcessed());
+        assertFalse(sessionSaver.itemProcessed());
+        assertTrue(sessionSaver.itemProcessed());
+        assertFalse(sessionSaver.itemProcessed());
+        assertTrue(sessionSaver.flush());
+        verify(session, times(2)).save();
+        assertEquals(2, sessionSaver.getCountSaves());
+        assertTrue(sessionSaver.getStatistics(), sessionSaver.getStatistics().startsWith("2 saves"));
+        assertTrue(sessionSaver.getStatistics(), sessionSaver.getStatistics().contains("<10ms=2"));
+    }
+
+    @Test
+    public void testNoSaveWithoutPendingChanges() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(false);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 1, 0);
+        assertFalse(sessionSaver.itemProcessed());
+        verify(session, never()).save();
+        assertEquals("0 saves", sessionSaver.getStatistics());
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        when(session.hasPendingChanges()).thenReturn(true);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 0, 200) {
+            @Override
+            long currentTimeMillis() {
+                return currentTime;
+            }
+        };
+        assertTrue(sessionSaver.isEnabled());
+        currentTime += 199;
+        assertFalse(sessionSaver.itemProcessed());
+        currentTime += 1;
+        assertTrue(sessionSaver.itemProcessed());
+        verify(session, times(1)).save();
+
+        // the interval starts again with the save
+        currentTime += 150;
+        assertFalse(sessionSaver.itemProcessed());
+        currentTime += 50;
+        assertTrue(sessionSaver.itemProcessed());
+        verify(session, times(2)).save();
+    }
+
+    @Test
+    public void testUndoJournalIsPersistedBeforeSave() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(true);
+        UndoJournal undoJournal = Mockito.mock(UndoJournal.class);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 1, 0, undoJournal);
+        sessionSaver.nodeCreated("/content/test");
+        assertTrue(sessionSaver.itemProcessed());
+
+        verify(undoJournal).recordCreatedNode("/content/test");
+        InOrder inOrder = Mockito.inOrder(undoJournal, session);
+        inOrder.verify(undoJournal).persistPendingRecords(session);
+        inOrder.verify(session).save();
+    }
+
+    @Test
+    public void testCheckpoint() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(true);
+        InstallationCheckpoint checkpoint = Mockito.spy(new InstallationCheckpoint("hash(\\conf,ALL_PATHS,stdRepo)", "abc"));
+        Mockito.doNothing().when(checkpoint).persistPendingItems(session);
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 2, 0, null, checkpoint);
+
+        assertFalse(sessionSaver.isAclPathCompleted("/content/test"));
+        sessionSaver.aclPathCompleted("/content/test");
+        sessionSaver.authorizableCompleted("group-a");
+        assertTrue(sessionSaver.isAclPathCompleted("/content/test"));
+        assertTrue(sessionSaver.isAuthorizableCompleted("group-a"));
+        assertFalse(sessionSaver.isAuthorizableCompleted("group-b"));
+        assertEquals(1, checkpoint.getCountCompletedAclPaths());
+
+        assertFalse(sessionSaver.itemProcessed());
+        assertTrue(sessionSaver.itemProcessed());
+        InOrder inOrder = Mockito.inOrder(checkpoint, session);
+        inOrder.verify(checkpoint).persistPendingItems(session);
+        inOrder.verify(session).save();
+    }
+
+    @Test
+    public void testWithoutCheckpoint() {
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 2, 0);
+        sessionSaver.aclPathCompleted("/content/test");
+        assertFalse(sessionSaver.isAclPathCompleted("/content/test"));
+    }
+
+    @Test
+    public void testAbort() throws RepositoryException {
+        when(session.hasPendingChanges()).thenReturn(true);
+        InstallationAbortSignal abortSignal = new InstallationAbortSignal();
+        BatchedSessionSaver sessionSaver = new BatchedSessionSaver(session, 2, 0);
+        sessionSaver.setAbortSignal(abortSignal);
+        assertFalse(sessionSaver.itemProcessed());
+
+        abortSignal.abort("cluster lock lost");
+        try {
+            sessionSaver.itemProcessed();
+            fail("Expected the aborted installation to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("cluster lock lost"));
+        }
+        try {
+            sessionSaver.forSession(session).save();
+            fail("Expected the savers of worker sessions to be aborted as well");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        verify(session, never()).save();
+    }
+
+}
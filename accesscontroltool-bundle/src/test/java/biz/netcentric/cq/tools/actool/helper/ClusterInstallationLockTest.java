@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import biz.netcentric.cq.tools.actool.helper.ClusterInstallationLock.State;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterInstallationLockTest {
+
+    private static final String ROOT_PATH = "/conf/actool";
+    private static final long LEASE_MS = 60000;
+
+    @Mock
+    Session session;
+
+    @Mock
+    Node rootNode;
+
+    @Mock
+    Node statisticsNode;
+
+    @Mock
+    Node acHistoryNode;
+
+    // the lock nodes of the mocked repository by path
+    private final Map<String, Node> lockNodes = new HashMap<String, Node>();
+
+    ClusterInstallationLock lockInstance1 = new ClusterInstallationLock(ROOT_PATH, "instance1", LEASE_MS);
+    ClusterInstallationLock lockInstance2 = new ClusterInstallationLock(ROOT_PATH, "instance2", LEASE_MS);
+
+    @Before
+    public void setup() throws RepositoryException {
+        when(session.getRootNode()).thenReturn(rootNode);
+        when(rootNode.hasNode(HistoryUtils.STATISTICS_ROOT_NODE)).thenReturn(true);
+        when(rootNode.getNode(HistoryUtils.STATISTICS_ROOT_NODE)).thenReturn(statisticsNode);
+        when(statisticsNode.hasNode(HistoryUtils.ACHISTORY_ROOT_NODE)).thenReturn(true);
+        when(statisticsNode.getNode(HistoryUtils.ACHISTORY_ROOT_NODE)).thenReturn(acHistoryNode);
+
+        when(acHistoryNode.addNode(anyString(), anyString())).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) throws Throwable {
+                return createLockNode(HistoryUtils.ACHISTORY_PATH + "/" + invocation.getArguments()[0]);
+            }
+        });
+        when(session.nodeExists(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return lockNodes.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        when(session.getNode(anyString())).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) throws Throwable {
+                return lockNodes.get(invocation.getArguments()[0]);
+            }
+        });
+    }
+
+    @Test
+    public void testAcquire() throws RepositoryException {
+        assertEquals(State.FREE, lockInstance1.getState(session));
+        assertNull(lockInstance1.getOwner(session));
+
+        assertTrue(lockInstance1.tryAcquire(session));
+        verify(session).save();
+        assertEquals(1, lockNodes.size());
+        assertEquals(State.HELD, lockInstance1.getState(session));
+        assertEquals(State.HELD_BY_OTHER_INSTANCE, lockInstance2.getState(session));
+        assertEquals("instance1", lockInstance2.getOwner(session));
+
+        // acquiring a held lock again does not write
+        assertTrue(lockInstance1.tryAcquire(session));
+        verify(session, times(1)).save();
+
+        // locks of other root paths are independent
+        ClusterInstallationLock otherRootPathLock = new ClusterInstallationLock("/conf/other", "instance2", LEASE_MS);
+        assertEquals(State.FREE, otherRootPathLock.getState(session));
+    }
+
+    @Test
+    public void testContendedAcquire() throws RepositoryException {
+        assertTrue(lockInstance1.tryAcquire(session));
+
+        // the lease of instance1 is still valid
+        assertFalse(lockInstance2.tryAcquire(session));
+        verify(session, times(1)).save();
+        assertEquals("instance1", lockInstance2.getOwner(session));
+    }
+
+    @Test
+    public void testConcurrentAcquireLosesOnConflictingSave() throws RepositoryException {
+        // another instance saved the lock node in the meantime
+        doThrow(new InvalidItemStateException("conflicting save")).when(session).save();
+
+        assertFalse(lockInstance1.tryAcquire(session));
+        verify(session).refresh(false);
+    }
+
+    @Test
+    public void testExpiredLease() throws RepositoryException {
+        // an instance that does not renew its lease (simulated by a lease that is expired including the clock skew tolerance)
+        ClusterInstallationLock deadInstanceLock = new ClusterInstallationLock(ROOT_PATH, "instance1",
+                -ClusterInstallationLock.DEFAULT_CLOCK_SKEW_TOLERANCE_MS - 1000);
+        assertFalse(deadInstanceLock.tryAcquire(session));
+        assertEquals(State.EXPIRED, deadInstanceLock.getState(session));
+        assertEquals(State.EXPIRED, lockInstance2.getState(session));
+
+        assertTrue(lockInstance2.tryAcquire(session));
+        assertEquals(State.HELD, lockInstance2.getState(session));
+        assertEquals("instance2", lockInstance1.getOwner(session));
+        assertEquals(State.HELD_BY_OTHER_INSTANCE, lockInstance1.getState(session));
+        assertEquals(1, lockNodes.size());
+    }
+
+    @Test
+    public void testLeaseIsNotExpiredForOtherInstancesWithinClockSkewTolerance() throws RepositoryException {
+        // the lease has just run out according to the clock of this instance, the clock of the owner might be behind
+        ClusterInstallationLock ownerLock = new ClusterInstallationLock(ROOT_PATH, "instance1", -1000);
+        assertFalse(ownerLock.tryAcquire(session));
+        assertEquals(State.EXPIRED, ownerLock.getState(session));
+        assertEquals(State.HELD_BY_OTHER_INSTANCE, lockInstance2.getState(session));
+        assertFalse(lockInstance2.tryAcquire(session));
+
+        ClusterInstallationLock lockWithoutTolerance = new ClusterInstallationLock(ROOT_PATH, "instance2", LEASE_MS, 0);
+        assertEquals(State.EXPIRED, lockWithoutTolerance.getState(session));
+    }
+
+    @Test
+    public void testRenew() throws RepositoryException {
+        assertFalse(lockInstance1.renew(session));
+
+        assertTrue(lockInstance1.tryAcquire(session));
+        assertTrue(lockInstance1.renew(session));
+        assertFalse(lockInstance2.renew(session));
+        assertEquals(State.HELD, lockInstance1.getState(session));
+        verify(session, times(2)).save();
+    }
+
+    @Test
+    public void testRelease() throws RepositoryException {
+        assertTrue(lockInstance1.tryAcquire(session));
+
+        // only the owner can release the lock
+        lockInstance2.release(session);
+        assertEquals(State.HELD, lockInstance1.getState(session));
+        verify(session, times(1)).save();
+
+        lockInstance1.release(session);
+        verify(session, times(2)).save();
+        assertTrue(lockNodes.isEmpty());
+        assertEquals(State.FREE, lockInstance2.getState(session));
+        assertTrue(lockInstance2.tryAcquire(session));
+    }
+
+    @Test
+    public void testReleaseFreeLock() throws RepositoryException {
+        lockInstance1.release(session);
+        verify(session, never()).save();
+    }
+
+    /** @return a lock node mock that keeps its properties in a map */
+    private Node createLockNode(final String path) throws RepositoryException {
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        Answer<Property> setProperty = new Answer<Property>() {
+            @Override
+            public Property answer(InvocationOnMock invocation) throws Throwable {
+                properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        };
+
+        Node lockNode = mock(Node.class);
+        when(lockNode.getPath()).thenReturn(path);
+        when(lockNode.setProperty(anyString(), anyString())).thenAnswer(setProperty);
+        when(lockNode.setProperty(anyString(), anyLong())).thenAnswer(setProperty);
+        when(lockNode.hasProperty(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return properties.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        when(lockNode.getProperty(anyString())).thenAnswer(new Answer<Property>() {
+            @Override
+            public Property answer(InvocationOnMock invocation) throws Throwable {
+                Object value = properties.get(invocation.getArguments()[0]);
+                Property property = mock(Property.class);
+                when(property.getString()).thenReturn(String.valueOf(value));
+                if (value instanceof Long) {
+                    when(property.getLong()).thenReturn((Long) value);
+                }
+                return property;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                lockNodes.remove(path);
+                return null;
+            }
+        }).when(lockNode).remove();
+        lockNodes.put(path, lockNode);
+        return lockNode;
+    }
+}
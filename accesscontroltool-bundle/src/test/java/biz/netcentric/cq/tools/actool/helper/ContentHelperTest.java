@@ -12,20 +12,34 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
+import javax.jcr.Session;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.io.Archive;
 import org.apache.jackrabbit.vault.fs.io.Archive.Entry;
 import org.junit.Test;
 
-import biz.netcentric.cq.tools.actool.helper.ContentHelper.SingleContentFileArchive.SingleContentFileArchiveEntry;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
 
 public class ContentHelperTest {
 
     @Test
-    public void testSingleContentFileArchiveEntry() {
+    public void testSingleContentFileArchive() throws Exception {
 
-        Entry root = new SingleContentFileArchiveEntry("/jcr_root/pathToFile/.content.xml");
+        Archive archive = new ContentHelper.ContentFilesArchive(Collections.singletonMap("/pathToFile", "<jcr:root />"));
+        Entry root = archive.getRoot();
 
         Collection<? extends Entry> children = root.getChildren();
         assertEquals(1, children.size());
@@ -50,4 +64,59 @@ public class ContentHelperTest {
 
     }
 
+    @Test
+    public void testContentFilesArchive() throws Exception {
+        Map<String, String> xmlContentByPath = new LinkedHashMap<String, String>();
+        xmlContentByPath.put("/content/site1", "<jcr:root site1/>");
+        xmlContentByPath.put("/content/site2", "<jcr:root site2/>");
+        xmlContentByPath.put("/content/site1/page", "<jcr:root page/>");
+        Archive archive = new ContentHelper.ContentFilesArchive(xmlContentByPath);
+
+        Entry contentEntry = archive.getJcrRoot().getChild("content");
+        assertEquals(2, contentEntry.getChildren().size());
+        Entry site1Entry = contentEntry.getChild("site1");
+        assertTrue(site1Entry.isDirectory());
+        assertEquals(2, site1Entry.getChildren().size());
+        assertEquals("<jcr:root site1/>", IOUtils.toString(archive.openInputStream(site1Entry.getChild(".content.xml")), "UTF-8"));
+        assertEquals("<jcr:root page/>",
+                IOUtils.toString(archive.openInputStream(archive.getEntry("/jcr_root/content/site1/page/.content.xml")), "UTF-8"));
+        assertNull(archive.openInputStream(site1Entry));
+        assertFalse(site1Entry.getChild(".content.xml").isDirectory());
+
+        Set<String> filterRoots = new HashSet<String>();
+        for (PathFilterSet pathFilterSet : archive.getMetaInf().getFilter().getFilterSets()) {
+            filterRoots.add(pathFilterSet.getRoot());
+        }
+        assertEquals(xmlContentByPath.keySet(), filterRoots);
+    }
+
+    @Test
+    public void testCreateInitialContentReportsFailuresPerPath() throws Exception {
+        Session session = mock(Session.class);
+        doReturn(true).when(session).nodeExists("/content");
+        doReturn(true).when(session).nodeExists("/content/existing");
+
+        Map<String, Set<AceBean>> aceMap = new LinkedHashMap<String, Set<AceBean>>();
+        aceMap.put("/content/invalid", aceBeansWithInitialContent("/content/invalid", "<node/>"));
+        aceMap.put("/content/existing", aceBeansWithInitialContent("/content/existing", "<jcr:root />"));
+        aceMap.put("/missing/parent", aceBeansWithInitialContent("/missing/parent", "<jcr:root />"));
+        aceMap.put("/content/noInitialContent", aceBeansWithInitialContent("/content/noInitialContent", null));
+        PersistableInstallationLogger history = new PersistableInstallationLogger();
+
+        Set<String> pathsWithCreatedContent = ContentHelper.createInitialContent(session, history, aceMap.keySet(), aceMap);
+
+        assertTrue(pathsWithCreatedContent.isEmpty());
+        assertEquals(1, history.getMissingParentPathsForInitialContent());
+        assertTrue(history.getMessageHistory(), history.getMessageHistory().contains("Failed creating initial content for path /content/invalid"));
+        assertFalse(history.getMessageHistory(), history.getMessageHistory().contains("/content/existing"));
+    }
+
+    private static Set<AceBean> aceBeansWithInitialContent(String path, String initialContent) {
+        AceBean aceBean = new AceBean();
+        aceBean.setJcrPath(path);
+        aceBean.setPrincipalName("group1");
+        aceBean.setInitialContent(initialContent);
+        return Collections.singleton(aceBean);
+    }
+
 }
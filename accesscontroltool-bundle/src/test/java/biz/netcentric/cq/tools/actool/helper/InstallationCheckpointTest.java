@@ -0,0 +1,274 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstallationCheckpointTest {
+
+    private static final String EXECUTION_KEY = "/conf/actool,ALL_PATHS";
+
+    @Mock
+    Session session;
+
+    @Mock
+    Node rootNode;
+
+    @Mock
+    Node statisticsNode;
+
+    // the nodes below /var/statistics/achistory of the mocked repository by path
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+    @Before
+    public void setup() throws RepositoryException {
+        Node acHistoryNode = createNode(HistoryUtils.ACHISTORY_PATH);
+        when(session.getRootNode()).thenReturn(rootNode);
+        when(rootNode.hasNode(HistoryUtils.STATISTICS_ROOT_NODE)).thenReturn(true);
+        when(rootNode.getNode(HistoryUtils.STATISTICS_ROOT_NODE)).thenReturn(statisticsNode);
+        when(statisticsNode.hasNode(HistoryUtils.ACHISTORY_ROOT_NODE)).thenReturn(true);
+        when(statisticsNode.getNode(HistoryUtils.ACHISTORY_ROOT_NODE)).thenReturn(acHistoryNode);
+        when(session.nodeExists(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return nodes.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        when(session.getNode(anyString())).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) throws Throwable {
+                return nodes.get(invocation.getArguments()[0]);
+            }
+        });
+    }
+
+    @Test
+    public void testResumeAfterAbortedInstallation() throws RepositoryException {
+        InstallationCheckpoint checkpoint = new InstallationCheckpoint(EXECUTION_KEY, "hash1");
+        assertFalse(checkpoint.load(session));
+        checkpoint.authorizableCompleted("group-a");
+        checkpoint.aclPathCompleted("/content/a");
+        checkpoint.persistPendingItems(session);
+        // the repository-level ACL
+        checkpoint.aclPathCompleted(null);
+        checkpoint.persistPendingItems(session);
+        // the installation is aborted before the items completed after the last save are persisted
+        checkpoint.aclPathCompleted("/content/b");
+
+        InstallationCheckpoint resumedCheckpoint = new InstallationCheckpoint(EXECUTION_KEY, "hash1");
+        assertTrue(resumedCheckpoint.load(session));
+        assertTrue(resumedCheckpoint.isResumed());
+        assertTrue(resumedCheckpoint.isAuthorizableCompleted("group-a"));
+        assertTrue(resumedCheckpoint.isAclPathCompleted("/content/a"));
+        assertTrue(resumedCheckpoint.isAclPathCompleted(null));
+        assertFalse(resumedCheckpoint.isAclPathCompleted("/content/b"));
+        assertEquals(1, resumedCheckpoint.getCountCompletedAuthorizables());
+        assertEquals(2, resumedCheckpoint.getCountCompletedAclPaths());
+
+        // the resumed installation continues with the next batch
+        resumedCheckpoint.aclPathCompleted("/content/b");
+        resumedCheckpoint.persistPendingItems(session);
+        assertEquals(3, getBatchNodes().size());
+        assertTrue(new InstallationCheckpoint(EXECUTION_KEY, "hash1").load(session));
+    }
+
+    @Test
+    public void testPersistedItems() throws RepositoryException {
+        InstallationCheckpoint checkpoint = new InstallationCheckpoint(EXECUTION_KEY, "hash1");
+        // nothing is written without completed items
+        checkpoint.persistPendingItems(session);
+        assertEquals(1, nodes.size());
+
+        checkpoint.authorizableCompleted("group-a");
+        checkpoint.authorizableCompleted("group-b");
+        checkpoint.authorizableCompleted("group-a");
+        checkpoint.aclPathCompleted("/content/a");
+        checkpoint.persistPendingItems(session);
+        checkpoint.aclPathCompleted("/content/a");
+        checkpoint.persistPendingItems(session);
+
+        List<Node> batchNodes = getBatchNodes();
+        assertEquals(1, batchNodes.size());
+        Node checkpointNode = getCheckpointNode();
+        assertEquals(EXECUTION_KEY, checkpointNode.getProperty("executionKey").getString());
+        assertEquals("hash1", checkpointNode.getProperty("configHash").getString());
+        assertArrayEquals(new String[] { "group-a", "group-b" }, getStrings(batchNodes.get(0), "completedAuthorizables"));
+        assertArrayEquals(new String[] { "/content/a" }, getStrings(batchNodes.get(0), "completedAclPaths"));
+    }
+
+    @Test
+    public void testCheckpointOfChangedConfigurationIsDiscarded() throws RepositoryException {
+        InstallationCheckpoint checkpoint = new InstallationCheckpoint(EXECUTION_KEY, "hash1");
+        checkpoint.authorizableCompleted("group-a");
+        checkpoint.persistPendingItems(session);
+        // checkpoints of other executions are independent
+        assertFalse(new InstallationCheckpoint("/conf/actool,/content", "hash1").load(session));
+
+        InstallationCheckpoint checkpointOfChangedConfig = new InstallationCheckpoint(EXECUTION_KEY, "hash2");
+        assertFalse(checkpointOfChangedConfig.load(session));
+        assertFalse(checkpointOfChangedConfig.isResumed());
+        assertFalse(checkpointOfChangedConfig.isAuthorizableCompleted("group-a"));
+        assertEquals(1, nodes.size());
+    }
+
+    @Test
+    public void testRemoveAfterSuccessfulInstallation() throws RepositoryException {
+        InstallationCheckpoint checkpoint = new InstallationCheckpoint(EXECUTION_KEY, "hash1");
+        checkpoint.authorizableCompleted("group-a");
+        checkpoint.aclPathCompleted("/content/a");
+        checkpoint.persistPendingItems(session);
+
+        checkpoint.remove(session);
+        assertEquals(1, nodes.size());
+        assertEquals(0, checkpoint.getCountCompletedAuthorizables());
+        assertEquals(0, checkpoint.getCountCompletedAclPaths());
+        assertFalse(new InstallationCheckpoint(EXECUTION_KEY, "hash1").load(session));
+
+        // removing a checkpoint that was never persisted
+        new InstallationCheckpoint(EXECUTION_KEY, "hash1").remove(session);
+        assertEquals(1, nodes.size());
+    }
+
+    private Node getCheckpointNode() {
+        for (Map.Entry<String, Node> node : nodes.entrySet()) {
+            if (node.getKey().startsWith(HistoryUtils.ACHISTORY_PATH + "/" + InstallationCheckpoint.CHECKPOINT_NODE_NAME_PREFIX)
+                    && !node.getKey().contains("/batch_")) {
+                return node.getValue();
+            }
+        }
+        return null;
+    }
+
+    private List<Node> getBatchNodes() {
+        List<Node> batchNodes = new ArrayList<Node>();
+        for (Map.Entry<String, Node> node : nodes.entrySet()) {
+            if (node.getKey().contains("/batch_")) {
+                batchNodes.add(node.getValue());
+            }
+        }
+        return batchNodes;
+    }
+
+    private static String[] getStrings(Node node, String propertyName) throws RepositoryException {
+        Value[] values = node.getProperty(propertyName).getValues();
+        String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = values[i].getString();
+        }
+        return strings;
+    }
+
+    /** @return a node mock that keeps its properties in a map and its child nodes in {@link #nodes} */
+    private Node createNode(final String path) throws RepositoryException {
+        final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        Answer<Property> setProperty = new Answer<Property>() {
+            @Override
+            public Property answer(InvocationOnMock invocation) throws Throwable {
+                properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        };
+
+        Node node = mock(Node.class);
+        when(node.getPath()).thenReturn(path);
+        when(node.setProperty(anyString(), anyString())).thenAnswer(setProperty);
+        when(node.setProperty(anyString(), any(String[].class))).thenAnswer(setProperty);
+        when(node.hasProperty(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                return properties.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        when(node.getProperty(anyString())).thenAnswer(new Answer<Property>() {
+            @Override
+            public Property answer(InvocationOnMock invocation) throws Throwable {
+                Object value = properties.get(invocation.getArguments()[0]);
+                Property property = mock(Property.class);
+                if (value instanceof String[]) {
+                    String[] strings = (String[]) value;
+                    Value[] values = new Value[strings.length];
+                    for (int i = 0; i < strings.length; i++) {
+                        values[i] = mock(Value.class);
+                        when(values[i].getString()).thenReturn(strings[i]);
+                    }
+                    when(property.getValues()).thenReturn(values);
+                } else {
+                    when(property.getString()).thenReturn(String.valueOf(value));
+                }
+                return property;
+            }
+        });
+        when(node.addNode(anyString(), anyString())).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) throws Throwable {
+                return createNode(path + "/" + invocation.getArguments()[0]);
+            }
+        });
+        when(node.getNodes()).thenAnswer(new Answer<NodeIterator>() {
+            @Override
+            public NodeIterator answer(InvocationOnMock invocation) throws Throwable {
+                List<Node> childNodes = new ArrayList<Node>();
+                for (Map.Entry<String, Node> node : nodes.entrySet()) {
+                    if (node.getKey().startsWith(path + "/") && node.getKey().indexOf('/', path.length() + 1) < 0) {
+                        childNodes.add(node.getValue());
+                    }
+                }
+                return new NodeIteratorAdapter(childNodes);
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Iterator<String> pathsIt = nodes.keySet().iterator();
+                while (pathsIt.hasNext()) {
+                    String nodePath = pathsIt.next();
+                    if (nodePath.equals(path) || nodePath.startsWith(path + "/")) {
+                        pathsIt.remove();
+                    }
+                }
+                return null;
+            }
+        }).when(node).remove();
+        nodes.put(path, node);
+        return node;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.util.Collections;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+import biz.netcentric.cq.tools.actool.history.impl.HistoryUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstallationPlanTest {
+
+    @Mock
+    JackrabbitSession session;
+
+    @Mock
+    UserManager userManager;
+
+    @Before
+    public void setup() throws RepositoryException {
+        when(session.getUserManager()).thenReturn(userManager);
+    }
+
+    @Test
+    public void testPlanCreatingRegularUserIsRejected() throws RepositoryException {
+        UndoJournal recorder = new UndoJournal();
+        recorder.recordAuthorizable(userManager, "user-a");
+        mockUser("user-a", false);
+
+        try {
+            InstallationPlan.create(recorder, new AcConfiguration(), Collections.<String> emptySet(), "/conf/actool", null, session);
+            fail("Plan creating a regular user must be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[user-a]"));
+        }
+    }
+
+    @Test
+    public void testPlanCreatingSystemUser() throws RepositoryException {
+        UndoJournal recorder = new UndoJournal();
+        recorder.recordAuthorizable(userManager, "system-user-a");
+        mockUser("system-user-a", true);
+
+        InstallationPlan plan = InstallationPlan.create(recorder, new AcConfiguration(), Collections.<String> emptySet(), "/conf/actool",
+                null, session);
+        assertEquals(1, plan.getCountChanges());
+    }
+
+    @Test
+    public void testPlanForAuthorizableWithProfileContentIsRejected() throws RepositoryException {
+        UndoJournal recorder = new UndoJournal();
+        recorder.recordAuthorizable(userManager, "system-user-a");
+        mockUser("system-user-a", true);
+        AuthorizableConfigBean userConfig = new AuthorizableConfigBean();
+        userConfig.setAuthorizableId("system-user-a");
+        userConfig.setProfileContent("<jcr:root jcr:primaryType=\"nt:unstructured\"/>");
+        AuthorizablesConfig authorizablesConfig = new AuthorizablesConfig();
+        authorizablesConfig.add(userConfig);
+        AcConfiguration acConfiguration = new AcConfiguration();
+        acConfiguration.setAuthorizablesConfig(authorizablesConfig);
+
+        try {
+            InstallationPlan.create(recorder, acConfiguration, Collections.<String> emptySet(), "/conf/actool", null, session);
+            fail("Plan for an authorizable with profile content must be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[system-user-a]"));
+            assertTrue(e.getMessage(), e.getMessage().contains("profileContent"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testApplyFailsForMissingRegularUser() throws RepositoryException {
+        InstallationPlan plan = loadPlan("configurationRootPath: /conf/actool\n"
+                + "changes:\n"
+                + "- before: abc\n"
+                + "  target: {type: authorizable, id: group-a, existed: true, isGroup: true, path: /home/groups/a/group-a,\n"
+                + "    principalName: group-a, memberOf: [], members: [], properties: {}}\n"
+                + "- before: def\n"
+                + "  target: {type: authorizable, id: user-a, existed: true, isGroup: false, path: /home/users/a/user-a,\n"
+                + "    principalName: user-a, memberOf: [group-a], members: [], properties: {}}\n"
+                + "purgeAuthorizables: []\n");
+        try {
+            plan.apply(session, new PersistableInstallationLogger());
+        } finally {
+            // no change is applied
+            verify(userManager, never()).createGroup(anyString(), any(Principal.class), anyString());
+        }
+    }
+
+    private InstallationPlan loadPlan(String planYaml) throws RepositoryException {
+        String planPath = HistoryUtils.ACHISTORY_PATH + "/plan_1";
+        Node planNode = mock(Node.class);
+        Property planProperty = mock(Property.class);
+        when(planProperty.getString()).thenReturn(planYaml);
+        when(planNode.getProperty("plan")).thenReturn(planProperty);
+        when(session.nodeExists(planPath)).thenReturn(true);
+        when(session.getNode(planPath)).thenReturn(planNode);
+        return InstallationPlan.load(session, "plan_1");
+    }
+
+    /** The user does not exist when it is recorded, but afterwards (as created by the dry-run). */
+    private void mockUser(String userId, boolean isSystemUser) throws RepositoryException {
+        User user = mock(User.class);
+        when(user.getID()).thenReturn(userId);
+        when(user.getPath()).thenReturn("/home/users/a/" + userId);
+        when(user.getPrincipal()).thenReturn(new PrincipalImpl(userId));
+        when(user.declaredMemberOf()).thenReturn(Collections.<Group> emptyIterator());
+        when(user.isSystemUser()).thenReturn(isSystemUser);
+        when(userManager.getAuthorizable(userId)).thenReturn(user);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.BitSet;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.security.AccessControlException;
+import javax.jcr.security.AccessControlManager;
+import javax.jcr.security.Privilege;
+
+import org.junit.Test;
+
+public class PrivilegeIndexTest {
+
+    private final Privilege readNodes = privilege("jcr:readNodes");
+    private final Privilege readProperties = privilege("jcr:readProperties");
+    private final Privilege read = privilege("jcr:read", readNodes, readProperties);
+    private final Privilege addChildNodes = privilege("jcr:addChildNodes");
+    private final Privilege write = privilege("jcr:write", addChildNodes);
+    private final Privilege all = privilege("jcr:all", read, write);
+
+    private final PrivilegeIndex privilegeIndex = new PrivilegeIndex(new Privilege[] { all, read, readNodes });
+
+    @Test
+    public void testAggregateResolution() throws RepositoryException {
+        assertEquals(6, privilegeIndex.size());
+
+        assertEquals("[jcr:read, jcr:readNodes, jcr:readProperties]",
+                privilegeIndex.getNames(privilegeIndex.getBits(new String[] { "jcr:read" }, null)).toString());
+        assertEquals("[jcr:addChildNodes, jcr:readNodes, jcr:readProperties]",
+                privilegeIndex.getNames(privilegeIndex.getNonAggregateBits(new String[] { "jcr:all" }, null)).toString());
+        assertEquals(privilegeIndex.getNonAggregateBits(new String[] { "jcr:read", "jcr:write" }, null),
+                privilegeIndex.getNonAggregateBits(new String[] { "jcr:addChildNodes", "jcr:readProperties", "jcr:readNodes" }, null));
+        assertEquals(3, privilegeIndex.getPrivileges(privilegeIndex.getNonAggregateBits(new String[] { "jcr:all" }, null)).length);
+    }
+
+    @Test
+    public void testIsCoveredBy() throws RepositoryException {
+        BitSet allBits = privilegeIndex.getBits(new String[] { "jcr:all" }, null);
+        BitSet readBits = privilegeIndex.getBits(new String[] { "jcr:read" }, null);
+        assertTrue(PrivilegeIndex.isCoveredBy(readBits, allBits));
+        assertTrue(PrivilegeIndex.isCoveredBy(privilegeIndex.getBits(new String[] { "jcr:readNodes" }, null), readBits));
+        assertFalse(PrivilegeIndex.isCoveredBy(allBits, readBits));
+        assertFalse(PrivilegeIndex.isCoveredBy(privilegeIndex.getBits(new String[] { "jcr:write" }, null), readBits));
+    }
+
+    @Test
+    public void testUnknownPrivileges() throws RepositoryException {
+        AccessControlManager acMgr = mock(AccessControlManager.class);
+        Privilege custom = privilege("custom:privilege");
+        doReturn(custom).when(acMgr).privilegeFromName("custom:privilege");
+        doThrow(new AccessControlException("unknown")).when(acMgr).privilegeFromName("custom:invalid");
+
+        assertTrue(privilegeIndex.isRegistered("jcr:read", acMgr));
+        verify(acMgr, never()).privilegeFromName("jcr:read");
+
+        assertFalse(privilegeIndex.isRegistered("custom:privilege", null));
+        assertTrue(privilegeIndex.isRegistered("custom:privilege", acMgr));
+        assertFalse(privilegeIndex.isRegistered("custom:invalid", acMgr));
+        assertEquals(7, privilegeIndex.size());
+        assertEquals("[custom:privilege, jcr:readNodes]",
+                privilegeIndex.getNames(privilegeIndex.getNonAggregateBits(new String[] { "custom:privilege", "jcr:readNodes" }, null))
+                        .toString());
+    }
+
+    private static Privilege privilege(String name, Privilege... aggregatedPrivileges) {
+        Privilege privilege = mock(Privilege.class);
+        doReturn(name).when(privilege).getName();
+        doReturn(aggregatedPrivileges.length > 0).when(privilege).isAggregate();
+        doReturn(aggregatedPrivileges).when(privilege).getDeclaredAggregatePrivileges();
+        return privilege;
+    }
+}
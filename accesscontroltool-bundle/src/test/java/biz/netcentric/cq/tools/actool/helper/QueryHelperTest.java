@@ -0,0 +1,217 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class QueryHelperTest {
+
+    private static final Set<String> ROOT_CHILDREN = new TreeSet<String>(Arrays.asList("/apps", "/conf", "/content", "/etc", "/var"));
+
+    private final Map<String, List<String>> aclPathsByQueryRootPath = new HashMap<String, List<String>>();
+
+    private final Set<String> largeQueryRootPaths = new HashSet<String>();
+
+    private ExecutorService executorService;
+
+    @Before
+    public void setup() {
+        executorService = Executors.newFixedThreadPool(4);
+        aclPathsByQueryRootPath.put("/apps", Arrays.asList("/apps/rep:policy"));
+        aclPathsByQueryRootPath.put("/content", Arrays.asList("/content/a/rep:policy", "/content/b/rep:policy"));
+        aclPathsByQueryRootPath.put("/content/a", Arrays.asList("/content/a/rep:policy"));
+        aclPathsByQueryRootPath.put("/content/b", Arrays.asList("/content/b/rep:policy"));
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testGetLiteralPrefixOfRegex() {
+        assertEquals("/content/tenant", QueryHelper.getLiteralPrefixOfRegex("^/content/tenant.*"));
+        assertEquals("/content/", QueryHelper.getLiteralPrefixOfRegex("/content/.*"));
+        assertEquals("/content/tenant", QueryHelper.getLiteralPrefixOfRegex("/content/tenantA?"));
+        assertEquals("/content", QueryHelper.getLiteralPrefixOfRegex("/content$"));
+        assertEquals("", QueryHelper.getLiteralPrefixOfRegex(".*/jcr:content"));
+        assertEquals("", QueryHelper.getLiteralPrefixOfRegex("/content/.*|/apps/.*"));
+    }
+
+    @Test
+    public void testGetSearchRootPathsForRestrictedPaths() {
+        assertEquals(new TreeSet<String>(Arrays.asList("/content/tenantA")),
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { "/content/tenantA" }));
+        assertEquals(new TreeSet<String>(Arrays.asList("/content")),
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { "/content/tenantA/", "/content" }));
+        assertEquals(new TreeSet<String>(Arrays.asList("/conf/tenantA", "/content")),
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { "/conf/tenantA", "^/content/tenant.*" }));
+        assertEquals(new TreeSet<String>(Arrays.asList("/conf", "/content")),
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { "/con.*" }));
+        assertEquals(ROOT_CHILDREN,
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { ".*/jcr:content" }));
+
+        // excluded root children are not queried
+        assertEquals(new TreeSet<String>(),
+                QueryHelper.getSearchRootPathsForRestrictedPaths(ROOT_CHILDREN, new String[] { "/home/groups" }));
+    }
+
+    @Test
+    public void testGetRepPolicyNodePathsInParallel() throws RepositoryException {
+        Session session = mockSession();
+        Session querySession1 = mockSession();
+        Session querySession2 = mockSession();
+        SlingRepository repository = mock(SlingRepository.class);
+        when(repository.loginService(null, null)).thenReturn(querySession1, querySession2);
+
+        AclQueryStatistics statistics = new AclQueryStatistics();
+        Set<String> paths = QueryHelper.getRepPolicyNodePaths(session, Collections.<String> emptyList(), null, repository,
+                executorService, 4, 0, largeQueryRootPaths, statistics);
+
+        assertEquals(new TreeSet<String>(Arrays.asList("/apps/rep:policy", "/content/a/rep:policy", "/content/b/rep:policy")),
+                new TreeSet<String>(paths));
+        assertEquals(2, statistics.getCountQueries());
+        assertEquals(2, statistics.getCountAcls("/content"));
+        verify(session, never()).getWorkspace();
+        verify(querySession1).logout();
+        verify(querySession2).logout();
+    }
+
+    @Test
+    public void testLargeQueryRootIsSplitInSameCall() throws RepositoryException {
+        Session session = mockSession();
+        mockContentChildNodes(session);
+
+        AclQueryStatistics statistics = new AclQueryStatistics();
+        Set<String> paths = QueryHelper.getRepPolicyNodePaths(session, Collections.<String> emptyList(), null, null, null, 1, 1,
+                largeQueryRootPaths, statistics);
+
+        assertEquals(new TreeSet<String>(Arrays.asList("/apps/rep:policy", "/content/rep:policy", "/content/a/rep:policy",
+                "/content/b/rep:policy")), new TreeSet<String>(paths));
+        assertEquals(new TreeSet<String>(Arrays.asList("/apps", "/content", "/content/a", "/content/b")),
+                new TreeSet<String>(statistics.getQueryRootPaths()));
+        assertEquals(Collections.singleton("/content"), largeQueryRootPaths);
+    }
+
+    @Test
+    public void testLargeQueryRootIsSplitInSubsequentQueries() throws RepositoryException {
+        Session session = mockSession();
+        mockContentChildNodes(session);
+        largeQueryRootPaths.add("/content");
+
+        Session querySession1 = mockSession();
+        Session querySession2 = mockSession();
+        SlingRepository repository = mock(SlingRepository.class);
+        when(repository.loginService(null, null)).thenReturn(querySession1, querySession2);
+
+        AclQueryStatistics statistics = new AclQueryStatistics();
+        Set<String> paths = QueryHelper.getRepPolicyNodePaths(session, Collections.<String> emptyList(), null, repository,
+                executorService, 2, 1, largeQueryRootPaths, statistics);
+
+        assertEquals(new TreeSet<String>(Arrays.asList("/apps", "/content/a", "/content/b")), new TreeSet<String>(statistics.getQueryRootPaths()));
+        assertTrue(paths.contains("/content/rep:policy"));
+        assertTrue(paths.contains("/content/a/rep:policy"));
+        assertEquals(Collections.singleton("/content"), largeQueryRootPaths);
+        verify(querySession1).logout();
+
+        // the paths learned by one caller do not affect others
+        AclQueryStatistics otherStatistics = new AclQueryStatistics();
+        QueryHelper.getRepPolicyNodePaths(session, Collections.<String> emptyList(), null, null, null, 1, 0, null, otherStatistics);
+        assertEquals(new TreeSet<String>(Arrays.asList("/apps", "/content")), new TreeSet<String>(otherStatistics.getQueryRootPaths()));
+    }
+
+    private void mockContentChildNodes(Session session) throws RepositoryException {
+        Node contentNode = mock(Node.class);
+        doReturn(true).when(session).nodeExists("/content");
+        doReturn(contentNode).when(session).getNode("/content");
+        doReturn(new NodeIteratorAdapter(Arrays.asList(mockNode("/content/rep:policy"), mockNode("/content/a"), mockNode("/content/b"))))
+                .when(contentNode).getNodes();
+    }
+
+    private Session mockSession() throws RepositoryException {
+        Session session = mock(Session.class);
+        Node rootNode = mock(Node.class);
+        doReturn(rootNode).when(session).getRootNode();
+        final List<Node> rootChildNodes = Arrays.asList(mockNode("/apps"), mockNode("/content"));
+        // new iterator for each call
+        when(rootNode.getNodes()).thenAnswer(new Answer<NodeIterator>() {
+            @Override
+            public NodeIterator answer(InvocationOnMock invocation) {
+                return new NodeIteratorAdapter(rootChildNodes);
+            }
+        });
+        doReturn(true).when(session).nodeExists("/oak:index/repACL");
+
+        Workspace workspace = mock(Workspace.class);
+        QueryManager queryManager = mock(QueryManager.class);
+        doReturn(workspace).when(session).getWorkspace();
+        doReturn(queryManager).when(workspace).getQueryManager();
+        when(queryManager.createQuery(anyString(), anyString())).thenAnswer(new Answer<Query>() {
+            @Override
+            public Query answer(InvocationOnMock invocation) throws Throwable {
+                String queryRootPath = StringUtils.substringBetween((String) invocation.getArguments()[0], "ISDESCENDANTNODE([", "])");
+                List<Node> resultNodes = new ArrayList<Node>();
+                for (String aclPath : aclPathsByQueryRootPath.get(queryRootPath)) {
+                    resultNodes.add(mockNode(aclPath));
+                }
+                Query query = mock(Query.class);
+                QueryResult queryResult = mock(QueryResult.class);
+                doReturn(queryResult).when(query).execute();
+                doReturn(new NodeIteratorAdapter(resultNodes)).when(queryResult).getNodes();
+                return query;
+            }
+        });
+        return session;
+    }
+
+    private static Node mockNode(String path) throws RepositoryException {
+        Node node = mock(Node.class);
+        doReturn(path).when(node).getPath();
+        doReturn(StringUtils.substringAfterLast(path, "/")).when(node).getName();
+        return node;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.AuthorizableUndoRecord;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal.UndoRecord;
+
+public class UndoJournalTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAclRecordRoundTrip() {
+        String aclYaml = "type: acl\n"
+                + "path: /content/test\n"
+                + "hasPolicy: true\n"
+                + "aces:\n"
+                + "- principal: group-a\n"
+                + "  permission: allow\n"
+                + "  privileges: [jcr:read, rep:write]\n"
+                + "  restrictions:\n"
+                + "    rep:glob: ['*/jcr:content*']\n"
+                + "- principal: group-b\n"
+                + "  permission: deny\n"
+                + "  privileges: [jcr:read]\n";
+        Map<String, Object> map = (Map<String, Object>) new Yaml().load(aclYaml);
+
+        UndoRecord record = UndoJournal.recordFromMap(map);
+        assertEquals("ACL /content/test", record.getKey());
+        assertEquals(map, record.toMap());
+        assertEquals(InstallationPlan.fingerprint(record), InstallationPlan.fingerprint(UndoJournal.recordFromMap(record.toMap())));
+    }
+
+    @Test
+    public void testAuthorizableRecordDifferences() {
+        AuthorizableUndoRecord before = (AuthorizableUndoRecord) UndoJournal
+                .recordFromMap(authorizableMap("/home/groups/a/group-x", "group-a", "group-b"));
+        AuthorizableUndoRecord after = (AuthorizableUndoRecord) UndoJournal
+                .recordFromMap(authorizableMap("/home/groups/b/group-x", "group-b", "group-c"));
+
+        assertEquals("moved to /home/groups/b, memberOf +[group-c], memberOf -[group-a]", after.getDifferences(before));
+        assertEquals("", before.getDifferences(before));
+        assertNotEquals(InstallationPlan.fingerprint(before), InstallationPlan.fingerprint(after));
+
+        Map<String, Object> notExisting = new LinkedHashMap<String, Object>();
+        notExisting.put("type", "authorizable");
+        notExisting.put("id", "group-x");
+        notExisting.put("existed", false);
+        assertEquals("created", before.getDifferences((AuthorizableUndoRecord) UndoJournal.recordFromMap(notExisting)));
+    }
+
+    private Map<String, Object> authorizableMap(String path, String... memberOf) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("type", "authorizable");
+        map.put("id", "group-x");
+        map.put("existed", true);
+        map.put("isGroup", true);
+        map.put("path", path);
+        map.put("principalName", "group-x");
+        map.put("memberOf", Arrays.asList(memberOf));
+        map.put("members", Arrays.asList());
+        map.put("properties", new LinkedHashMap<String, String>());
+        return map;
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.api.security.user.UserManager;
+import org.apache.jackrabbit.commons.iterator.EventIteratorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.AcesConfig;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AcChangeJournalTest {
+
+    private static final String AC_TOOL_USER = "actool-service";
+
+    @Mock
+    JackrabbitSession session;
+
+    @Mock
+    UserManager userManager;
+
+    AcChangeJournal acChangeJournal = new AcChangeJournal();
+
+    @Before
+    public void setup() throws RepositoryException {
+        when(session.getUserID()).thenReturn(AC_TOOL_USER);
+        when(session.getUserManager()).thenReturn(userManager);
+        acChangeJournal.observationSession = session;
+    }
+
+    @Test
+    public void testChangesAreJournaledOncePerAclAndGroup() throws RepositoryException {
+        mockAceNode("/content/site/rep:policy/allow", "group1");
+        Group group = mock(Group.class);
+        when(group.getID()).thenReturn("group2");
+        when(userManager.getAuthorizableByPath("/home/groups/g/group2")).thenReturn(group);
+
+        acChangeJournal.onEvent(new EventIteratorAdapter(Arrays.asList(
+                event("/content/site/rep:policy/allow", "admin"),
+                event("/content/site/rep:policy/allow/rep:privileges", "admin"),
+                event("/content/site/rep:policy/allow/rep:restrictions/rep:glob", "admin"),
+                event("/content/site/jcr:title", "admin"),
+                event("/content/other/rep:policy/allow/rep:privileges", AC_TOOL_USER),
+                event("/home/groups/g/group2/rep:membersList/0/rep:members", "admin"))));
+
+        List<AcChangeJournal.JournalEntry> journalEntries = acChangeJournal.getJournalEntries();
+        assertEquals(2, journalEntries.size());
+        assertEquals(AcChangeJournal.CHANGE_TYPE_ACL, journalEntries.get(0).getType());
+        assertEquals("/content/site", journalEntries.get(0).getPath());
+        assertEquals("group1", journalEntries.get(0).getPrincipalOrAuthorizableId());
+        assertEquals("admin", journalEntries.get(0).getUserId());
+        assertEquals(AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, journalEntries.get(1).getType());
+        assertEquals("group2", journalEntries.get(1).getPrincipalOrAuthorizableId());
+
+        // nothing is known about the configuration yet, hence all changes are dirty
+        AcChangeJournal.DirtyItems dirtyItems = acChangeJournal.takeDirtyItems();
+        assertEquals(Collections.singleton("/content/site"), dirtyItems.getAclPathsWithPrincipals().keySet());
+        assertEquals(Collections.singleton("group1"), dirtyItems.getAclPathsWithPrincipals().get("/content/site"));
+        assertEquals(Collections.singleton("group2"), dirtyItems.getAuthorizableIds());
+        assertTrue(acChangeJournal.takeDirtyItems().isEmpty());
+
+        acChangeJournal.markDirty(dirtyItems);
+        assertEquals(Collections.singleton("group2"), acChangeJournal.takeDirtyItems().getAuthorizableIds());
+    }
+
+    @Test
+    public void testOnlyManagedItemsAreMarkedDirty() {
+        acChangeJournal.setManagedItems("/conf/actool", createAcConfiguration("/content/site", "group1"), null);
+
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(1, AcChangeJournal.CHANGE_TYPE_ACL, "/content/site", null, "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(2, AcChangeJournal.CHANGE_TYPE_ACL, "/content/other", "group1", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(3, AcChangeJournal.CHANGE_TYPE_ACL, "/content/unmanaged", "other", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(4, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/g1", "group1", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(5, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/o", "other", "admin"));
+
+        assertEquals(5, acChangeJournal.getJournalEntries().size());
+        AcChangeJournal.DirtyItems dirtyItems = acChangeJournal.takeDirtyItems();
+        assertEquals(Arrays.asList("/content/other", "/content/site"),
+                Arrays.asList(dirtyItems.getAclPathsWithPrincipals().keySet().toArray()));
+        assertEquals(Collections.singleton("group1"), dirtyItems.getAuthorizableIds());
+
+        // a full installation repairs all dirty items it manages
+        acChangeJournal.markDirty(dirtyItems);
+        acChangeJournal.setManagedItems("/conf/actool", createAcConfiguration("/content/site", "group1"), null);
+        assertTrue(acChangeJournal.takeDirtyItems().isEmpty());
+    }
+
+    @Test
+    public void testInstallationWithRestrictedPathsOnlyRepairsDirtyAclsWithinRestrictedPaths() {
+        acChangeJournal.setManagedItems("/conf/actool", createAcConfiguration("/content/site", "group1"), null);
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(1, AcChangeJournal.CHANGE_TYPE_ACL, "/content/site", "group1", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(2, AcChangeJournal.CHANGE_TYPE_ACL, "/content/other", "group1", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(3, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/g1", "group1", "admin"));
+
+        acChangeJournal.setManagedItems("/conf/actool", createAcConfiguration("/content/site", "group1"), new String[] { "/content/other" });
+        AcChangeJournal.DirtyItems dirtyItems = acChangeJournal.takeDirtyItems();
+        assertEquals(Collections.singleton("/content/site"), dirtyItems.getAclPathsWithPrincipals().keySet());
+        // the authorizables are installed completely also with restricted paths
+        assertTrue(dirtyItems.getAuthorizableIds().isEmpty());
+
+        acChangeJournal.markDirty(dirtyItems);
+        acChangeJournal.setManagedItems("/conf/actool", createAcConfiguration("/content/site", "group1"), new String[] { "^/content/s.*" });
+        assertTrue(acChangeJournal.takeDirtyItems().isEmpty());
+    }
+
+    @Test
+    public void testChangesOfInstallationSessionAreNotJournaled() throws RepositoryException {
+        mockAceNode("/content/site/rep:policy/allow", "group1");
+        mockAceNode("/content/other/rep:policy/allow", "group1");
+
+        AcChangeJournal.InstallationWindow installationWindow = acChangeJournal.installationStarted("admin");
+        long duringInstallation = installationWindow.getStartTime();
+        acChangeJournal.onEvent(new EventIteratorAdapter(Arrays.asList(
+                event("/content/site/rep:policy/allow/rep:privileges", "admin", duringInstallation),
+                event("/content/other/rep:policy/allow/rep:privileges", "author", duringInstallation))));
+        acChangeJournal.installationFinished(installationWindow);
+
+        // the events of the installation might be delivered after it has finished
+        acChangeJournal.onEvent(new EventIteratorAdapter(Arrays.asList(
+                event("/content/site/rep:policy/allow/rep:privileges", "admin", duringInstallation))));
+        List<AcChangeJournal.JournalEntry> journalEntries = acChangeJournal.getJournalEntries();
+        assertEquals(1, journalEntries.size());
+        assertEquals("/content/other", journalEntries.get(0).getPath());
+
+        // later changes of the same user are journaled
+        acChangeJournal.onEvent(new EventIteratorAdapter(Arrays.asList(
+                event("/content/site/rep:policy/allow/rep:privileges", "admin", installationWindow.getEndTime() + 1))));
+        assertEquals(2, acChangeJournal.getJournalEntries().size());
+        assertEquals(new TreeSet<String>(Arrays.asList("/content/other", "/content/site")),
+                acChangeJournal.takeDirtyItems().getAclPathsWithPrincipals().keySet());
+    }
+
+    private AcConfiguration createAcConfiguration(String path, String authorizableId) {
+        AuthorizableConfigBean authorizableConfigBean = new AuthorizableConfigBean();
+        authorizableConfigBean.setAuthorizableId(authorizableId);
+        authorizableConfigBean.setPrincipalName(authorizableId);
+        AuthorizablesConfig authorizablesConfig = new AuthorizablesConfig();
+        authorizablesConfig.add(authorizableConfigBean);
+
+        AceBean aceBean = new AceBean();
+        aceBean.setJcrPath(path);
+        aceBean.setAuthorizableId(authorizableId);
+        aceBean.setPrincipalName(authorizableId);
+        AcesConfig acesConfig = new AcesConfig();
+        acesConfig.add(aceBean);
+
+        AcConfiguration acConfiguration = new AcConfiguration();
+        acConfiguration.setAuthorizablesConfig(authorizablesConfig);
+        acConfiguration.setAceConfig(acesConfig);
+        return acConfiguration;
+    }
+
+    private void mockAceNode(String path, String principalName) throws RepositoryException {
+        Node aceNode = mock(Node.class);
+        Property principalNameProperty = mock(Property.class);
+        when(principalNameProperty.getString()).thenReturn(principalName);
+        when(aceNode.hasProperty("rep:principalName")).thenReturn(true);
+        when(aceNode.getProperty("rep:principalName")).thenReturn(principalNameProperty);
+        when(session.nodeExists(path)).thenReturn(true);
+        when(session.getNode(path)).thenReturn(aceNode);
+    }
+
+    private Event event(String path, String userId) throws RepositoryException {
+        return event(path, userId, System.currentTimeMillis());
+    }
+
+    private Event event(String path, String userId, long date) throws RepositoryException {
+        Event event = mock(Event.class);
+        when(event.getPath()).thenReturn(path);
+        when(event.getUserID()).thenReturn(userId);
+        when(event.getDate()).thenReturn(date);
+        return event;
+    }
+}
@@ -1,29 +1,137 @@
 package biz.netcentric.cq.tools.actool.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.Group;
 import org.apache.jackrabbit.api.security.user.User;
+import org.apache.sling.jcr.api.SlingRepository;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+import org.osgi.service.cm.ConfigurationAdmin;
+
+import biz.netcentric.cq.tools.actool.authorizableinstaller.AuthorizableCreatorException;
+import biz.netcentric.cq.tools.actool.authorizableinstaller.AuthorizableInstallerService;
+import biz.netcentric.cq.tools.actool.configmodel.AcConfiguration;
+import biz.netcentric.cq.tools.actool.configmodel.AceBean;
+import biz.netcentric.cq.tools.actool.configmodel.AcesConfig;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizableConfigBean;
+import biz.netcentric.cq.tools.actool.configmodel.AuthorizablesConfig;
+import biz.netcentric.cq.tools.actool.configreader.ConfigFilesRetriever;
+import biz.netcentric.cq.tools.actool.configreader.ConfigReader;
+import biz.netcentric.cq.tools.actool.configreader.ConfigurationMerger;
+import biz.netcentric.cq.tools.actool.dumpservice.AceDumpData;
+import biz.netcentric.cq.tools.actool.dumpservice.ConfigDumpService;
+import biz.netcentric.cq.tools.actool.helper.BatchedSessionSaver;
+import biz.netcentric.cq.tools.actool.helper.InstallationCheckpoint;
+import biz.netcentric.cq.tools.actool.helper.UndoJournal;
+import biz.netcentric.cq.tools.actool.history.AcHistoryService;
+import biz.netcentric.cq.tools.actool.history.InstallationLogger;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+import biz.netcentric.cq.tools.actool.slingsettings.ExtendedSlingSettingsService;
 
 @RunWith(MockitoJUnitRunner.class)
 public class AcInstallationServiceImplTest {
 
+    private static final String ROOT_PATH = "/conf/actool";
+
+    @InjectMocks
     AcInstallationServiceImpl acInstallationServiceImpl = new AcInstallationServiceImpl();
 
+    @Mock
+    SlingRepository repository;
+
+    @Mock
+    Session session;
+
+    @Mock
+    ConfigurationAdmin configAdmin;
+
+    @Mock
+    org.osgi.service.cm.Configuration osgiConfiguration;
+
+    @Mock
+    AcInstallationServiceImpl.Configuration configuration;
+
+    @Mock
+    BundleContext bundleContext;
+
+    @Mock
+    Bundle systemBundle;
+
+    @Mock
+    FrameworkStartLevel frameworkStartLevel;
+
+    @Mock
+    ConfigFilesRetriever configFilesRetriever;
+
+    @Mock
+    ConfigurationMerger configurationMerger;
+
+    @Mock
+    AuthorizableInstallerService authorizableCreatorService;
+
+    @Mock
+    AcHistoryService acHistoryService;
+
+    @Mock
+    ConfigDumpService dumpservice;
+
+    @Mock
+    AcConfigChangeTracker acConfigChangeTracker;
+
+    @Mock
+    ExtendedSlingSettingsService slingSettingsService;
+
+    @Mock
+    Session dumpSession;
+
+    @Spy
+    AcChangeJournal acChangeJournal = new AcChangeJournal();
+
     @Mock
     Group group1;
 
@@ -117,4 +225,256 @@ public class AcInstallationServiceImplTest {
             return groups.iterator();
         }
     }
+
+    @Test
+    public void testFindOverlapsBetweenConfigurations() {
+        Map<String, AcConfiguration> configurationsByRootPath = new LinkedHashMap<String, AcConfiguration>();
+        configurationsByRootPath.put("/conf/root1", createConfiguration("group1", "/content/site1"));
+        configurationsByRootPath.put("/conf/root2", createConfiguration("group2", "/content/site2"));
+        assertTrue(AcInstallationServiceImpl.findOverlapsBetweenConfigurations(configurationsByRootPath).isEmpty());
+
+        configurationsByRootPath.put("/conf/root3", createConfiguration("group3", "/content/site1"));
+        List<String> overlaps = AcInstallationServiceImpl.findOverlapsBetweenConfigurations(configurationsByRootPath);
+        assertEquals(Arrays.asList("/conf/root1 and /conf/root3 share ACL paths [/content/site1]"), overlaps);
+
+        AcConfiguration configWithObsoleteGroup = createConfiguration("group4", "/content/site4");
+        configWithObsoleteGroup.getObsoleteAuthorizables().add("group2");
+        configurationsByRootPath.remove("/conf/root3");
+        configurationsByRootPath.put("/conf/root4", configWithObsoleteGroup);
+        overlaps = AcInstallationServiceImpl.findOverlapsBetweenConfigurations(configurationsByRootPath);
+        assertEquals(Arrays.asList("/conf/root2 and /conf/root4 share authorizables [group2]"), overlaps);
+
+        configurationsByRootPath.remove("/conf/root4");
+        configurationsByRootPath.put("/conf/root5", createConfiguration("group5", "/content/site2/subpage"));
+        configurationsByRootPath.put("/conf/root6", createConfiguration("group6", "/"));
+        configurationsByRootPath.put("/conf/root7", createConfiguration("group7", "/content/site10"));
+        overlaps = AcInstallationServiceImpl.findOverlapsBetweenConfigurations(configurationsByRootPath);
+        assertEquals(Arrays.asList(
+                "/conf/root1 and /conf/root6 have nested ACL paths [/content/site1 below /]",
+                "/conf/root2 and /conf/root5 have nested ACL paths [/content/site2/subpage below /content/site2]",
+                "/conf/root2 and /conf/root6 have nested ACL paths [/content/site2 below /]",
+                "/conf/root5 and /conf/root6 have nested ACL paths [/content/site2/subpage below /]",
+                "/conf/root6 and /conf/root7 have nested ACL paths [/content/site10 below /]"), overlaps);
+    }
+
+    @Test
+    public void testReconcileDirtyGroupWithConfiguredMemberGroups() throws Exception {
+        final AcConfiguration acConfiguration = setupReconcileDirty();
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(1, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/g/group-a",
+                "group-a", "admin"));
+        final List<Integer> countRunsWhileInstalling = new ArrayList<Integer>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                countRunsWhileInstalling.add(acInstallationServiceImpl.installationCoordinator.getCountRuns(ROOT_PATH));
+                return null;
+            }
+        }).when(authorizableCreatorService).installAuthorizables(eq(acConfiguration), any(AuthorizablesConfig.class), eq(session),
+                any(InstallationLogger.class), any(BatchedSessionSaver.class));
+
+        PersistableInstallationLogger installLog = (PersistableInstallationLogger) acInstallationServiceImpl.reconcileDirty();
+
+        assertTrue(installLog.getMessageHistory(), installLog.isSuccess());
+        ArgumentCaptor<AuthorizablesConfig> authorizablesConfig = ArgumentCaptor.forClass(AuthorizablesConfig.class);
+        verify(authorizableCreatorService).installAuthorizables(eq(acConfiguration), authorizablesConfig.capture(), eq(session),
+                any(InstallationLogger.class), any(BatchedSessionSaver.class));
+        // group-b is added to group-a via isMemberOf
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("group-a", "group-b")), authorizablesConfig.getValue().getAuthorizableIds());
+        // installed as run of the installation coordinator
+        assertEquals(Arrays.asList(1), countRunsWhileInstalling);
+        assertEquals(0, acInstallationServiceImpl.installationCoordinator.getCountRuns(ROOT_PATH));
+        assertTrue(acChangeJournal.takeDirtyItems().isEmpty());
+        verify(acHistoryService).persistHistory(any(PersistableInstallationLogger.class));
+        verify(session).logout();
+    }
+
+    @Test
+    public void testReconcileDirtyKeepsItemsDirtyIfInstallationFails() throws Exception {
+        setupReconcileDirty();
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(1, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/g/group-c",
+                "group-c", "admin"));
+        doThrow(new AuthorizableCreatorException("group-c cannot be installed")).when(authorizableCreatorService).installAuthorizables(
+                any(AcConfiguration.class), any(AuthorizablesConfig.class), eq(session), any(InstallationLogger.class),
+                any(BatchedSessionSaver.class));
+
+        PersistableInstallationLogger installLog = (PersistableInstallationLogger) acInstallationServiceImpl.reconcileDirty();
+
+        assertFalse(installLog.isSuccess());
+        assertTrue(installLog.getMessageHistory(), installLog.getMessageHistory().contains("remain marked as dirty"));
+        assertEquals(new TreeSet<String>(Arrays.asList("group-c")), acChangeJournal.takeDirtyItems().getAuthorizableIds());
+        verify(session).logout();
+    }
+
+    @Test
+    public void testReconcileDirtyIgnoresUnmanagedItems() throws Exception {
+        setupReconcileDirty();
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(1, AcChangeJournal.CHANGE_TYPE_MEMBERSHIP, "/home/groups/o/other",
+                "other", "admin"));
+        acChangeJournal.record(new AcChangeJournal.JournalEntry(2, AcChangeJournal.CHANGE_TYPE_ACL, "/content/other", "other", "admin"));
+
+        PersistableInstallationLogger installLog = (PersistableInstallationLogger) acInstallationServiceImpl.reconcileDirty();
+
+        assertTrue(installLog.getMessageHistory(), installLog.isSuccess());
+        assertTrue(installLog.getMessageHistory(), installLog.getMessageHistory().contains("None of the dirty ACLs and authorizables"));
+        verify(authorizableCreatorService, never()).installAuthorizables(any(AcConfiguration.class), any(AuthorizablesConfig.class),
+                any(Session.class), any(InstallationLogger.class), any(BatchedSessionSaver.class));
+    }
+
+    @Test
+    public void testReconcileDirtyWithoutDirtyItems() throws Exception {
+        setupReconcileDirty();
+
+        PersistableInstallationLogger installLog = (PersistableInstallationLogger) acInstallationServiceImpl.reconcileDirty();
+
+        assertTrue(installLog.isSuccess());
+        verify(repository, never()).loginService(anyString(), anyString());
+        verify(acHistoryService, never()).persistHistory(any(PersistableInstallationLogger.class));
+    }
+
+    @Test
+    public void testAclDumpIsRetrievedInParallelToConfigProcessing() throws Exception {
+        when(configuration.pipelineConfigParsingAndAclDump()).thenReturn(true);
+        AcInstallationServiceImpl service = setupInstallConfigurationFiles();
+        Map<String, Set<AceBean>> repositoryDumpAceMap = new LinkedHashMap<String, Set<AceBean>>();
+        AceDumpData aceDumpData = new AceDumpData();
+        aceDumpData.setAceDump(repositoryDumpAceMap);
+        when(repository.loginService(null, null)).thenReturn(dumpSession);
+        when(dumpservice.createAclDumpMap(anyInt(), anyInt(), anyListOf(String.class), anyBoolean(), any(String[].class),
+                eq(dumpSession))).thenReturn(aceDumpData);
+
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        service.installConfigurationFiles(installLog, Collections.singletonMap(ROOT_PATH + "/config.yaml", "- group_config:"), null,
+                session);
+
+        verify(service).installMergedConfigurations(any(InstallationLogger.class), any(AcConfiguration.class), eq(repositoryDumpAceMap),
+                any(String[].class), any(InstallationCheckpoint.class), any(UndoJournal.class), eq(session));
+        verify(dumpSession).logout();
+        assertTrue(installLog.getMessageHistory(), installLog.getMessageHistory().contains("in parallel to processing the configuration"));
+    }
+
+    @Test
+    public void testAclDumpIsRetrievedSequentiallyForSessionWithPendingChanges() throws Exception {
+        when(configuration.pipelineConfigParsingAndAclDump()).thenReturn(true);
+        AcInstallationServiceImpl service = setupInstallConfigurationFiles();
+        // the parallel session would not see the pending changes
+        when(session.hasPendingChanges()).thenReturn(true);
+
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        service.installConfigurationFiles(installLog, Collections.singletonMap(ROOT_PATH + "/config.yaml", "- group_config:"), null,
+                session);
+
+        verify(service).installMergedConfigurations(any(InstallationLogger.class), any(AcConfiguration.class),
+                Matchers.<Map<String, Set<AceBean>>> eq(null), any(String[].class), any(InstallationCheckpoint.class),
+                any(UndoJournal.class), eq(session));
+        verify(repository, never()).loginService(anyString(), anyString());
+        assertFalse(installLog.getMessageHistory(), installLog.getMessageHistory().contains("in parallel to processing the configuration"));
+    }
+
+    @Test
+    public void testInstallationWithRestrictedPathsOnlyRepairsDirtyItemsWithinRestrictedPaths() throws Exception {
+        AcInstallationServiceImpl service = setupInstallConfigurationFiles();
+        String[] restrictedToPaths = new String[] { "/content/other" };
+
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        service.installConfigurationFiles(installLog, Collections.singletonMap(ROOT_PATH + "/config.yaml", "- group_config:"),
+                restrictedToPaths, session);
+
+        assertTrue(installLog.getMessageHistory(), installLog.isSuccess());
+        verify(acChangeJournal).setManagedItems(anyString(), any(AcConfiguration.class), eq(restrictedToPaths));
+    }
+
+    @Test
+    public void testGetOverlapTime() {
+        assertEquals(50, AcInstallationServiceImpl.getOverlapTime(100, 200, 150, 300));
+        assertEquals(50, AcInstallationServiceImpl.getOverlapTime(150, 300, 100, 200));
+        assertEquals(100, AcInstallationServiceImpl.getOverlapTime(100, 200, 0, 300));
+        // the dump started after the configuration was processed
+        assertEquals(0, AcInstallationServiceImpl.getOverlapTime(100, 200, 250, 300));
+    }
+
+    /** @return a spy of the service that does not install the configuration but records the repository dump passed to it */
+    private AcInstallationServiceImpl setupInstallConfigurationFiles() throws Exception {
+        activate();
+        AcConfiguration acConfiguration = createConfiguration("group-a", "/content/site");
+        when(configurationMerger.getMergedConfigurations(anyMapOf(String.class, String.class), any(PersistableInstallationLogger.class),
+                any(ConfigReader.class), eq(session))).thenReturn(acConfiguration);
+        AcInstallationServiceImpl service = spy(acInstallationServiceImpl);
+        doReturn("1.0.0").when(service).getVersion();
+        doNothing().when(service).installMergedConfigurations(any(InstallationLogger.class), any(AcConfiguration.class),
+                Matchers.<Map<String, Set<AceBean>>> any(), any(String[].class), any(InstallationCheckpoint.class), any(UndoJournal.class),
+                any(Session.class));
+        return service;
+    }
+
+    private void activate() throws Exception {
+        when(configAdmin.getConfiguration(anyString())).thenReturn(osgiConfiguration);
+        when(configuration.configurationRootPaths()).thenReturn(new String[] { ROOT_PATH });
+        when(bundleContext.getBundle(0L)).thenReturn(systemBundle);
+        when(systemBundle.adapt(FrameworkStartLevel.class)).thenReturn(frameworkStartLevel);
+        acInstallationServiceImpl.activate(configuration, bundleContext);
+    }
+
+    /** @return the configuration at {@link #ROOT_PATH} with group-a, group-b (member of group-a) and group-c */
+    private AcConfiguration setupReconcileDirty() throws Exception {
+        activate();
+
+        AcConfiguration acConfiguration = createConfiguration("group-a", "/content/site");
+        acConfiguration.getAuthorizablesConfig().add(createGroup("group-b", "group-a"));
+        acConfiguration.getAuthorizablesConfig().add(createGroup("group-c"));
+        Map<String, String> configFiles = Collections.singletonMap(ROOT_PATH + "/config.yaml", "- group_config:");
+        when(repository.loginService(null, null)).thenReturn(session);
+        when(configFilesRetriever.getConfigFileContentFromNode(ROOT_PATH, session)).thenReturn(configFiles);
+        when(configurationMerger.getMergedConfigurations(eq(configFiles), any(PersistableInstallationLogger.class),
+                any(ConfigReader.class), eq(session))).thenReturn(acConfiguration);
+        return acConfiguration;
+    }
+
+    @Test
+    public void testGetAuthorizablesToReconcileForDirtyGroupWithMemberGroups() {
+        AuthorizablesConfig authorizablesConfig = new AuthorizablesConfig();
+        authorizablesConfig.add(createGroup("group-a"));
+        authorizablesConfig.add(createGroup("group-b", "group-a"));
+        authorizablesConfig.add(createGroup("group-c", "group-other", "group-a"));
+        authorizablesConfig.add(createGroup("group-d", "group-other"));
+        authorizablesConfig.add(createGroup("group-e"));
+
+        // the members added to group-a via isMemberOf are installed with group-a
+        AuthorizablesConfig authorizablesToReconcile = AcInstallationServiceImpl.getAuthorizablesToReconcile(authorizablesConfig,
+                new HashSet<String>(Arrays.asList("group-a", "group-unmanaged")));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("group-a", "group-b", "group-c")), authorizablesToReconcile.getAuthorizableIds());
+
+        // the member itself is dirty
+        authorizablesToReconcile = AcInstallationServiceImpl.getAuthorizablesToReconcile(authorizablesConfig,
+                new HashSet<String>(Arrays.asList("group-d")));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("group-d")), authorizablesToReconcile.getAuthorizableIds());
+    }
+
+    private static AuthorizableConfigBean createGroup(String authorizableId, String... isMemberOf) {
+        AuthorizableConfigBean authorizableConfigBean = new AuthorizableConfigBean();
+        authorizableConfigBean.setAuthorizableId(authorizableId);
+        authorizableConfigBean.setIsGroup(true);
+        if (isMemberOf.length > 0) {
+            authorizableConfigBean.setIsMemberOf(isMemberOf);
+        }
+        return authorizableConfigBean;
+    }
+
+    private AcConfiguration createConfiguration(String authorizableId, String jcrPath) {
+        AuthorizableConfigBean authorizableConfigBean = new AuthorizableConfigBean();
+        authorizableConfigBean.setAuthorizableId(authorizableId);
+        AuthorizablesConfig authorizablesConfig = new AuthorizablesConfig();
+        authorizablesConfig.add(authorizableConfigBean);
+
+        AceBean aceBean = new AceBean();
+        aceBean.setAuthorizableId(authorizableId);
+        aceBean.setJcrPath(jcrPath);
+        AcesConfig acesConfig = new AcesConfig();
+        acesConfig.add(aceBean);
+
+        AcConfiguration acConfiguration = new AcConfiguration();
+        acConfiguration.setAuthorizablesConfig(authorizablesConfig);
+        acConfiguration.setAceConfig(acesConfig);
+        return acConfiguration;
+    }
+
 }
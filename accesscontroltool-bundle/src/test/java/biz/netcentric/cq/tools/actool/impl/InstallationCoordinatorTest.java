@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import biz.netcentric.cq.tools.actool.api.InstallationLog;
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+import biz.netcentric.cq.tools.actool.impl.InstallationCoordinator.InstallationRequest;
+
+public class InstallationCoordinatorTest {
+
+    private static final String ROOT_PATH = "/apps/config";
+
+    private final InstallationCoordinator coordinator = new InstallationCoordinator();
+    private final List<InstallationRequest> executedRequests = Collections.synchronizedList(new ArrayList<InstallationRequest>());
+    private final CountDownLatch firstRunCanFinish = new CountDownLatch(1);
+
+    private final InstallationCoordinator.Installation installation = new InstallationCoordinator.Installation() {
+        @Override
+        public void install(InstallationRequest request, PersistableInstallationLogger installLog) {
+            executedRequests.add(request);
+            try {
+                firstRunCanFinish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Test
+    public void testIdenticalRequestsJoinAndOthersAreCoalesced() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Future<InstallationLog> firstRun = submit(executorService, new InstallationRequest(ROOT_PATH, null, false, false));
+            waitForCountRuns(1);
+            Future<InstallationLog> identicalRun = submit(executorService, new InstallationRequest(ROOT_PATH, null, false, false));
+            Thread.sleep(100);
+            Future<InstallationLog> followUpRun = submit(executorService,
+                    new InstallationRequest(ROOT_PATH, new String[] { "/content/a" }, true, false));
+            waitForCountRuns(2);
+            Future<InstallationLog> coalescedRun = submit(executorService,
+                    new InstallationRequest(ROOT_PATH, new String[] { "/content/b" }, false, false));
+            Thread.sleep(100);
+
+            firstRunCanFinish.countDown();
+
+            assertSame(firstRun.get(5, TimeUnit.SECONDS), identicalRun.get(5, TimeUnit.SECONDS));
+            assertSame(followUpRun.get(5, TimeUnit.SECONDS), coalescedRun.get(5, TimeUnit.SECONDS));
+
+            assertEquals(2, executedRequests.size());
+            InstallationRequest executedFollowUp = executedRequests.get(1);
+            assertArrayEquals(new String[] { "/content/a", "/content/b" }, executedFollowUp.getRestrictedToPaths());
+            assertEquals(false, executedFollowUp.isSkipIfConfigUnchanged());
+            assertTrue(followUpRun.get().getMessageHistory().contains("queue depth=2"));
+            assertTrue(followUpRun.get().getMessageHistory().contains("1 further request(s) coalesced"));
+            assertEquals(0, coordinator.getCountRuns(ROOT_PATH));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPlanIsNotCoalescedWithOtherRequests() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            Future<InstallationLog> firstRun = submit(executorService, new InstallationRequest(ROOT_PATH, null, false, false));
+            waitForCountRuns(1);
+            Future<InstallationLog> followUpRun = submit(executorService,
+                    new InstallationRequest(ROOT_PATH, new String[] { "/content/a" }, false, false));
+            waitForCountRuns(2);
+            Future<InstallationLog> planRun = submit(executorService, InstallationRequest.forPlan(ROOT_PATH, "plan_1"));
+            Thread.sleep(100);
+            // the plan waits until it can queue its own follow-up run
+            assertEquals(2, coordinator.getCountRuns(ROOT_PATH));
+
+            firstRunCanFinish.countDown();
+
+            firstRun.get(5, TimeUnit.SECONDS);
+            assertNotSame(followUpRun.get(5, TimeUnit.SECONDS), planRun.get(5, TimeUnit.SECONDS));
+            assertEquals(3, executedRequests.size());
+            assertNull(executedRequests.get(1).getPlanId());
+            assertEquals("plan_1", executedRequests.get(2).getPlanId());
+            assertFalse(executedRequests.get(2).isCoveredByInstallationOfOtherInstance());
+            assertEquals(0, coordinator.getCountRuns(ROOT_PATH));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCoalesce() {
+        InstallationRequest restricted = new InstallationRequest(ROOT_PATH, new String[] { "/content/a" }, true, false);
+        InstallationRequest unrestricted = new InstallationRequest(ROOT_PATH, null, true, true);
+
+        InstallationRequest coalesced = restricted.coalesce(unrestricted);
+        assertNull(coalesced.getRestrictedToPaths());
+        assertTrue(coalesced.isSkipIfConfigUnchanged());
+        assertTrue(coalesced.isResume());
+        assertEquals(restricted, new InstallationRequest(ROOT_PATH, new String[] { "/content/a" }, true, false));
+    }
+
+    @Test
+    public void testCoalesceReconcileDirty() {
+        InstallationRequest reconcileDirty = InstallationRequest.forReconcileDirty(ROOT_PATH);
+        assertTrue(reconcileDirty.coalesce(InstallationRequest.forReconcileDirty(ROOT_PATH)).isReconcileDirty());
+        assertFalse(reconcileDirty.equals(new InstallationRequest(ROOT_PATH, null, false, false)));
+
+        // the full installation also repairs the dirty ACLs and authorizables
+        InstallationRequest coalesced = reconcileDirty.coalesce(
+                new InstallationRequest(ROOT_PATH, new String[] { "/content/a" }, true, false));
+        assertFalse(coalesced.isReconcileDirty());
+        assertNull(coalesced.getRestrictedToPaths());
+        assertFalse(coalesced.isSkipIfConfigUnchanged());
+    }
+
+    private Future<InstallationLog> submit(ExecutorService executorService, final InstallationRequest request) {
+        return executorService.submit(new Callable<InstallationLog>() {
+            @Override
+            public InstallationLog call() throws Exception {
+                return coordinator.execute(request, installation);
+            }
+        });
+    }
+
+    private void waitForCountRuns(int expectedCountRuns) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (coordinator.getCountRuns(ROOT_PATH) < expectedCountRuns && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedCountRuns, coordinator.getCountRuns(ROOT_PATH));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2026 Netcentric AG.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package biz.netcentric.cq.tools.actool.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import biz.netcentric.cq.tools.actool.history.PersistableInstallationLogger;
+
+public class InstallationJobTest {
+
+    @Test
+    public void testProgress() {
+        InstallationJob job = new InstallationJob("job1", "/apps/config");
+        assertEquals(InstallationJob.State.QUEUED, job.getState());
+
+        job.started();
+        PersistableInstallationLogger installLog = new PersistableInstallationLogger();
+        job.installLogCreated(installLog);
+        installLog.startPhase("Installing authorizables", 2);
+        installLog.incCountAuthorizablesProcessed();
+        installLog.startPhase("Installing ACLs", 4);
+        installLog.incCountAclPathsProcessed();
+
+        assertEquals(InstallationJob.State.RUNNING, job.getState());
+        String progress = job.getProgressAsJson();
+        assertTrue(progress, progress.contains("\"phase\":\"Installing ACLs\",\"itemsInPhase\":4,\"itemsProcessedInPhase\":1"));
+        assertTrue(progress, progress.contains("\"authorizablesProcessed\":1,\"aclPathsProcessed\":1"));
+        assertTrue(progress, progress.contains("\"phaseEtaMs\":"));
+        assertFalse(progress, progress.contains("\"success\""));
+
+        installLog.addError("Failed \"badly\"", new IllegalStateException());
+        job.finished(installLog);
+        assertEquals(InstallationJob.State.FAILED, job.getState());
+        progress = job.getProgressAsJson();
+        assertTrue(progress, progress.contains("\"success\":false"));
+        assertTrue(progress, progress.contains("Failed \\\"badly\\\""));
+        assertFalse(progress, progress.contains("phaseEtaMs"));
+    }
+
+}